@@ -6,16 +6,15 @@ import de.invesdwin.util.time.fdate.FDate;
 import de.invesdwin.util.time.fdate.FDates;
 
 @ThreadSafe
-public abstract class ADailyExpiringDelegateRangeTable<H, R, V> extends ADelegateRangeTable<H, R, V> {
+public abstract class ADailyExpiringDelegateRangeTable<H, R, V> extends AExpiringDelegateRangeTable<H, R, V> {
 
     public ADailyExpiringDelegateRangeTable(final String name) {
         super(name);
     }
 
     @Override
-    protected boolean shouldPurgeTable() {
-        final FDate tableCreationTime = getTableCreationTime();
-        return tableCreationTime != null && !FDates.isSameJulianDay(tableCreationTime, new FDate());
+    protected boolean isExpired(final FDate writeTime) {
+        return !FDates.isSameJulianDay(writeTime, new FDate());
     }
 
 }
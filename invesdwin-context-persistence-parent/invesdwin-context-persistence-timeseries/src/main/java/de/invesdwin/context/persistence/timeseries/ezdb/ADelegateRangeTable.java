@@ -2,30 +2,50 @@ package de.invesdwin.context.persistence.timeseries.ezdb;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
 import javax.annotation.concurrent.ThreadSafe;
 
 import org.apache.commons.io.FileUtils;
-import org.iq80.leveldb.DB;
-import org.iq80.leveldb.DBIterator;
 
 import de.invesdwin.context.ContextProperties;
 import de.invesdwin.context.integration.retry.RetryLaterRuntimeException;
+import de.invesdwin.context.log.Log;
 import de.invesdwin.context.log.error.Err;
+import de.invesdwin.context.persistence.timeseries.ezdb.engine.IRangeTableEngine;
+import de.invesdwin.context.persistence.timeseries.ezdb.engine.IRangeTableEngineCallback;
+import de.invesdwin.context.persistence.timeseries.ezdb.engine.IRangeTableRawAccess;
+import de.invesdwin.context.persistence.timeseries.ezdb.engine.IRawRowIterator;
+import de.invesdwin.context.persistence.timeseries.ezdb.engine.LevelDbJniRangeTableEngine;
 import de.invesdwin.context.persistence.timeseries.serde.ExtendedTypeDelegateSerde;
 import de.invesdwin.util.bean.tuple.Pair;
 import de.invesdwin.util.collections.iterable.ACloseableIterator;
+import de.invesdwin.util.collections.iterable.ATransformingCloseableIterator;
 import de.invesdwin.util.collections.iterable.ICloseableIterator;
+import de.invesdwin.util.concurrent.Executors;
+import de.invesdwin.util.concurrent.WrappedScheduledExecutorService;
 import de.invesdwin.util.concurrent.lock.Locks;
-import de.invesdwin.util.error.Throwables;
+import de.invesdwin.util.error.FastNoSuchElementException;
 import de.invesdwin.util.lang.Reflections;
 import de.invesdwin.util.lang.Strings;
 import de.invesdwin.util.lang.finalizer.AFinalizer;
+import de.invesdwin.util.time.Instant;
+import de.invesdwin.util.time.duration.Duration;
 import de.invesdwin.util.time.fdate.FDate;
 import ezdb.Db;
 import ezdb.RangeTable;
@@ -36,13 +56,21 @@ import ezdb.batch.Batch;
 import ezdb.batch.RangeBatch;
 import ezdb.comparator.LexicographicalComparator;
 import ezdb.comparator.SerdeComparator;
-import ezdb.leveldb.EzLevelDb;
-import ezdb.leveldb.EzLevelDbJniFactory;
 import ezdb.serde.Serde;
+import ezdb.util.Util;
 
 @ThreadSafe
 public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V> {
 
+    private static final WrappedScheduledExecutorService PENDING_WRITES_FLUSH_EXECUTOR = Executors
+            .newScheduledThreadPool(ADelegateRangeTable.class.getSimpleName() + "_flushPendingWrites",
+                    Executors.getCpuThreadPoolCount());
+    /**
+     * ConcurrentHashMap does not accept null values, thus pending puts of null are stored with this marker.
+     */
+    private static final Object NULL_PENDING_VALUE = new Object();
+
+    private final Log log = new Log(this);
     private final Serde<H> hashKeySerde;
     private final Serde<R> rangeKeySerde;
     private final Serde<V> valueSerde;
@@ -55,20 +83,39 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
     private final String name;
     private final File directory;
     private final File timestampFile;
+    private final File formatVersionFile;
+    /**
+     * Caches the outcome of comparing the version file, so that it is only read once instead of for every validated
+     * row and every reopen. Null means that it was not checked yet.
+     */
+    private volatile Boolean formatVersionValid;
     private final TableFinalizer<H, R, V> tableFinalizer;
     /**
      * used against too often accessing the timestampFile
      */
     private volatile FDate tableCreationTime;
+    /**
+     * puts that are not yet written when write coalescing is enabled, the range key is null for puts without one
+     */
+    private final Map<Pair<H, R>, Object> pendingWrites = new ConcurrentHashMap<Pair<H, R>, Object>();
+    private final AtomicBoolean pendingWritesFlushScheduled = new AtomicBoolean(false);
+    private final Object pendingWritesFlushLock = new Object();
+    /**
+     * only available for engines that support raw access, e.g. the ones based on LevelDB
+     */
+    private volatile IRangeTableRawAccess rawAccess;
+    private final Set<SnapshotFinalizer> openSnapshots = ConcurrentHashMap.newKeySet();
+    private volatile Duration openDuration;
 
     public ADelegateRangeTable(final String name) {
         this.name = name;
         this.directory = getDirectory();
         this.timestampFile = new File(new File(directory, getName()), "createdTimestamp");
+        this.formatVersionFile = new File(new File(directory, getName()), "formatVersion");
 
         this.hashKeySerde = newHashKeySerde();
         this.rangeKeySerde = newRangeKeySerde();
-        this.valueSerde = newValueSerde();
+        this.valueSerde = decorateValueSerde(newValueSerde());
         this.hashKeyComparator = newHashKeyComparator();
         this.rangeKeyComparator = newRangeKeyComparator();
         this.tableLock = Locks
@@ -96,6 +143,64 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
         return false;
     }
 
+    /**
+     * When enabled, puts without a batch are collected and written together in one batch once enough puts are pending
+     * or the coalescing window has passed. Point lookups see the pending puts, all other operations write the pending
+     * puts before they access the table.
+     */
+    protected boolean isWriteCoalescingEnabled() {
+        return false;
+    }
+
+    protected int getWriteCoalescingMaxPendingWrites() {
+        return 1000;
+    }
+
+    protected long getWriteCoalescingWindowMillis() {
+        return 10;
+    }
+
+    /**
+     * Override to tune LevelDB for the access pattern of this table, system properties can still override the
+     * individual options.
+     */
+    protected RangeTableOptions newOptions() {
+        return RangeTableOptions.DEFAULT;
+    }
+
+    /**
+     * Override to back this table with a different storage engine, e.g. to benchmark engines per table.
+     */
+    protected IRangeTableEngine newEngine() {
+        return LevelDbJniRangeTableEngine.INSTANCE;
+    }
+
+    /**
+     * When a version is given, it is stored next to the table data and opening an existing table only compares it
+     * instead of deserializing the first and last row. The version should be changed whenever the serdes of the table
+     * change in an incompatible way, then the table gets reset on the next open. Tables without a stored version are
+     * validated by deserializing once. Null disables the marker and always deserializes.
+     */
+    protected String getFormatVersion() {
+        return null;
+    }
+
+    /**
+     * Allows base classes to add the version of their own storage format to the version of the subclass, see
+     * decorateValueSerde.
+     */
+    protected String decorateFormatVersion(final String formatVersion) {
+        return formatVersion;
+    }
+
+    /**
+     * When true, existing rows without a stored version are treated like a changed version and the table gets reset.
+     * This is needed when the serdes can not detect rows that were written in an older format.
+     */
+    protected boolean isFormatVersionRequired() {
+        return false;
+    }
+
     protected Comparator<byte[]> newHashKeyComparator() {
         //order is not so important on the hashkey, so use bytes only
         return new LexicographicalComparator();
@@ -111,6 +216,20 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
         return new ExtendedTypeDelegateSerde<V>(type);
     }
 
+    /**
+     * Allows base classes to change the storage format of the values independently of the serde of the subclass.
+     */
+    protected Serde<V> decorateValueSerde(final Serde<V> valueSerde) {
+        return valueSerde;
+    }
+
+    /**
+     * Allows base classes to filter the rows of the range iterators, e.g. to skip rows that are only marked as deleted.
+     */
+    protected TableIterator<H, R, V> decorateTableIterator(final TableIterator<H, R, V> iterator) {
+        return iterator;
+    }
+
     @SuppressWarnings("unchecked")
     protected Serde<R> newRangeKeySerde() {
         final Class<R> type = (Class<R>) Reflections.resolveTypeArguments(getClass(), ADelegateRangeTable.class)[1];
@@ -140,34 +259,13 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
 
     private Db initDB() {
         initDirectory();
-        return new EzLevelDb(directory, new EzLevelDbJniFactory() {
+        final RangeTableOptions rangeTableOptions = newOptions().withSystemProperties(getName());
+        return newEngine().newDb(directory, rangeTableOptions, new IRangeTableEngineCallback() {
             @Override
-            public DB open(final File path, final org.iq80.leveldb.Options options) throws IOException {
-                options.verifyChecksums(false);
-                options.paranoidChecks(false);
-                final DB open = super.open(path, options);
-                try {
-                    //do some sanity checks just to be safe
-                    try (DBIterator iterator = open.iterator()) {
-                        iterator.seekToFirst();
-                        if (iterator.hasNext()) {
-                            final Entry<byte[], byte[]> next = iterator.next();
-                            validateRow(next);
-                        }
-                        iterator.seekToLast();
-                        if (iterator.hasPrev()) {
-                            final Entry<byte[], byte[]> prev = iterator.prev();
-                            validateRow(prev);
-                        }
-                    }
-                    return open;
-                } catch (final Throwable t) {
-                    open.close();
-                    throw Throwables.propagate(t);
+            public void validateRow(final Entry<byte[], byte[]> rawRow) {
+                if (isFormatVersionValid()) {
+                    return;
                 }
-            }
-
-            private void validateRow(final Entry<byte[], byte[]> rawRow) {
                 //fst library might have been updated, in that case deserialization might fail
                 final RawTableRow<H, R, V> row = new RawTableRow<H, R, V>(rawRow, hashKeySerde, rangeKeySerde,
                         valueSerde);
@@ -175,9 +273,71 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
                 row.getRangeKey();
                 row.getValue();
             }
+
+            @Override
+            public void onRawAccessOpened(final IRangeTableRawAccess rawAccess) {
+                ADelegateRangeTable.this.rawAccess = rawAccess;
+            }
         });
     }
 
+    /**
+     * Throws an exception when a different version is stored, so that the table gets reset.
+     */
+    private boolean isFormatVersionValid() {
+        final Boolean formatVersionValidCopy = formatVersionValid;
+        if (formatVersionValidCopy != null) {
+            return formatVersionValidCopy;
+        }
+        //a mismatch throws and thus is not cached, the reset clears the cache anyway
+        final boolean valid = readFormatVersionValid();
+        formatVersionValid = valid;
+        return valid;
+    }
+
+    private boolean readFormatVersionValid() {
+        final String formatVersion = decorateFormatVersion(getFormatVersion());
+        if (formatVersion == null) {
+            return false;
+        }
+        if (!formatVersionFile.exists()) {
+            if (isFormatVersionRequired()) {
+                throw new IllegalStateException(getName() + ": format version [" + formatVersion + "] is missing");
+            }
+            return false;
+        }
+        final String existingFormatVersion;
+        try {
+            existingFormatVersion = FileUtils.readFileToString(formatVersionFile, StandardCharsets.UTF_8);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (!formatVersion.equals(existingFormatVersion)) {
+            throw new IllegalStateException(getName() + ": format version changed from [" + existingFormatVersion
+                    + "] to [" + formatVersion + "]");
+        }
+        return true;
+    }
+
+    private void writeFormatVersion() {
+        if (Boolean.TRUE.equals(formatVersionValid)) {
+            //already stored, nothing to do on a reopen
+            return;
+        }
+        final String formatVersion = decorateFormatVersion(getFormatVersion());
+        if (formatVersion == null) {
+            FileUtils.deleteQuietly(formatVersionFile);
+            formatVersionValid = false;
+        } else {
+            try {
+                FileUtils.writeStringToFile(formatVersionFile, formatVersion, StandardCharsets.UTF_8);
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+            formatVersionValid = true;
+        }
+    }
+
     private void initDirectory() {
         try {
             FileUtils.forceMkdir(directory);
@@ -231,6 +391,7 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
                         throw Err.process(e);
                     }
                 }
+                final Instant start = new Instant();
                 try {
                     tableFinalizer.table = db.getTable(name, hashKeySerde, rangeKeySerde, valueSerde, hashKeyComparator,
                             rangeKeyComparator);
@@ -252,12 +413,32 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
                         tableFinalizer.register(this);
                     }
                 }
+                //only written after the validation succeeded
+                writeFormatVersion();
+                openDuration = start.toDuration();
+                log.debug("Opened table [%s] in %s", getName(), openDuration);
             }
         } finally {
             tableLock.writeLock().unlock();
         }
     }
 
+    /**
+     * Opens the table without accessing it, e.g. to warm it up in the background during startup instead of paying the
+     * open latency during the first query.
+     */
+    public void open() {
+        getTableWithReadLock();
+        tableLock.readLock().unlock();
+    }
+
+    /**
+     * The time it took to open and validate the table the last time, null if it was not opened yet.
+     */
+    public Duration getOpenDuration() {
+        return openDuration;
+    }
+
     public void deleteTable() {
         tableLock.writeLock().lock();
         try {
@@ -268,6 +449,9 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
     }
 
     private void innerDeleteTable() {
+        //pending writes happened before the deletion
+        pendingWrites.clear();
+        closeSnapshots();
         if (tableFinalizer.table != null) {
             RangeTableCloseManager.unregister(this);
             tableFinalizer.table.close();
@@ -275,6 +459,8 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
         }
         db.deleteTable(name);
         FileUtils.deleteQuietly(timestampFile);
+        FileUtils.deleteQuietly(formatVersionFile);
+        formatVersionValid = null;
         final File tableDirectory = new File(directory, getName());
         final String[] list = tableDirectory.list();
         if (list == null || list.length == 0) {
@@ -290,9 +476,20 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
         return false;
     }
 
+    /**
+     * Called before a value gets put for the hash key, e.g. to register the key in a HashKeyDictionary. Reads and
+     * deletes do not call this, thus they never cause a write of their own.
+     */
+    protected void onPutHashKey(final H hashKey) {}
+
     @Override
     public void put(final H hashKey, final V value) {
         assertAllowedWriteWithoutBatch();
+        onPutHashKey(hashKey);
+        if (isWriteCoalescingEnabled()) {
+            putPending(hashKey, null, value);
+            return;
+        }
         final RangeTable<H, R, V> table = getTableWithReadLock();
         try {
             table.put(hashKey, value);
@@ -303,6 +500,10 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
 
     @Override
     public V get(final H hashKey) {
+        final Object pendingValue = getPending(hashKey, null);
+        if (pendingValue != null) {
+            return unwrapPendingValue(pendingValue);
+        }
         final RangeTable<H, R, V> table = getTableWithReadLock();
         try {
             return table.get(hashKey);
@@ -313,6 +514,7 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
 
     @Override
     public TableRow<H, R, V> getLatest(final H hashKey) {
+        maybeFlushPendingWrites();
         final RangeTable<H, R, V> table = getTableWithReadLock();
         try {
             return table.getLatest(hashKey);
@@ -323,6 +525,7 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
 
     @Override
     public TableRow<H, R, V> getLatest(final H hashKey, final R rangeKey) {
+        maybeFlushPendingWrites();
         final RangeTable<H, R, V> table = getTableWithReadLock();
         try {
             return table.getLatest(hashKey, rangeKey);
@@ -331,6 +534,122 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
         }
     }
 
+    /**
+     * Looks up many rows with a single acquisition of the table lock. The keys are visited in table order so that
+     * neighbouring rows are read from the same blocks, the values are returned in the order of the given keys. A null
+     * range key looks up the row that was put without a range key, missing rows are returned as null.
+     *
+     * The keys are serialized for sorting and for detecting duplicates, the lookups themselves go through ezdb which
+     * serializes the keys again. Thus the gain comes from the single lock acquisition and the table order, not from
+     * saving serialization.
+     */
+    public List<V> multiGet(final List<Pair<H, R>> keys) {
+        final Object[] values = new Object[keys.size()];
+        final List<MultiGetKey> sortedKeys = sortMultiGetKeys(keys);
+        final RangeTable<H, R, V> table = getTableWithReadLock();
+        try {
+            MultiGetKey prevKey = null;
+            V prevValue = null;
+            for (int i = 0; i < sortedKeys.size(); i++) {
+                final MultiGetKey key = sortedKeys.get(i);
+                final V value;
+                if (prevKey != null && prevKey.isSameKey(key)) {
+                    //duplicate keys are only looked up once
+                    value = prevValue;
+                } else {
+                    final Pair<H, R> pair = keys.get(key.index);
+                    final Object pendingValue = getPending(pair.getFirst(), pair.getSecond());
+                    if (pendingValue != null) {
+                        value = unwrapPendingValue(pendingValue);
+                    } else if (pair.getSecond() == null) {
+                        value = table.get(pair.getFirst());
+                    } else {
+                        value = table.get(pair.getFirst(), pair.getSecond());
+                    }
+                }
+                values[key.index] = value;
+                prevKey = key;
+                prevValue = value;
+            }
+        } finally {
+            tableLock.readLock().unlock();
+        }
+        return asList(values);
+    }
+
+    /**
+     * Batch variant of getLatest(hashKey, rangeKey) with the same ordering and locking as multiGet.
+     */
+    public List<TableRow<H, R, V>> multiGetLatest(final List<Pair<H, R>> keys) {
+        final Object[] rows = new Object[keys.size()];
+        final List<MultiGetKey> sortedKeys = sortMultiGetKeys(keys);
+        maybeFlushPendingWrites();
+        final RangeTable<H, R, V> table = getTableWithReadLock();
+        try {
+            MultiGetKey prevKey = null;
+            TableRow<H, R, V> prevRow = null;
+            for (int i = 0; i < sortedKeys.size(); i++) {
+                final MultiGetKey key = sortedKeys.get(i);
+                final TableRow<H, R, V> row;
+                if (prevKey != null && prevKey.isSameKey(key)) {
+                    row = prevRow;
+                } else {
+                    final Pair<H, R> pair = keys.get(key.index);
+                    if (pair.getSecond() == null) {
+                        row = table.getLatest(pair.getFirst());
+                    } else {
+                        row = table.getLatest(pair.getFirst(), pair.getSecond());
+                    }
+                }
+                rows[key.index] = row;
+                prevKey = key;
+                prevRow = row;
+            }
+        } finally {
+            tableLock.readLock().unlock();
+        }
+        return asList(rows);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> asList(final Object[] array) {
+        return (List<T>) Collections.unmodifiableList(Arrays.asList(array));
+    }
+
+    private List<MultiGetKey> sortMultiGetKeys(final List<Pair<H, R>> keys) {
+        final List<MultiGetKey> sortedKeys = new ArrayList<MultiGetKey>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            final Pair<H, R> key = keys.get(i);
+            final byte[] hashKeyBytes = hashKeySerde.toBytes(key.getFirst());
+            final byte[] rangeKeyBytes;
+            if (key.getSecond() == null) {
+                rangeKeyBytes = null;
+            } else {
+                rangeKeyBytes = rangeKeySerde.toBytes(key.getSecond());
+            }
+            sortedKeys.add(new MultiGetKey(i, hashKeyBytes, rangeKeyBytes));
+        }
+        Collections.sort(sortedKeys, new Comparator<MultiGetKey>() {
+            @Override
+            public int compare(final MultiGetKey o1, final MultiGetKey o2) {
+                final int hashKeyCompare = hashKeyComparator.compare(o1.hashKey, o2.hashKey);
+                if (hashKeyCompare != 0) {
+                    return hashKeyCompare;
+                }
+                if (o1.rangeKey == null && o2.rangeKey == null) {
+                    return 0;
+                } else if (o1.rangeKey == null) {
+                    return -1;
+                } else if (o2.rangeKey == null) {
+                    return 1;
+                } else {
+                    return rangeKeyComparator.compare(o1.rangeKey, o2.rangeKey);
+                }
+            }
+        });
+        return sortedKeys;
+    }
+
     public V getLatestValue(final H hashKey, final R rangeKey) {
         return getValue(getLatest(hashKey, rangeKey));
     }
@@ -345,6 +664,7 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
 
     @Override
     public TableRow<H, R, V> getNext(final H hashKey, final R rangeKey) {
+        maybeFlushPendingWrites();
         final RangeTable<H, R, V> table = getTableWithReadLock();
         try {
             return table.getNext(hashKey, rangeKey);
@@ -371,6 +691,7 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
 
     @Override
     public TableRow<H, R, V> getPrev(final H hashKey, final R rangeKey) {
+        maybeFlushPendingWrites();
         final RangeTable<H, R, V> table = getTableWithReadLock();
         try {
             return table.getPrev(hashKey, rangeKey);
@@ -380,18 +701,17 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
     }
 
     public V getOrLoad(final H hashKey, final Function<H, V> loadable) {
-        RangeTable<H, R, V> table = getTableWithReadLock();
-        final V cachedValue;
-        try {
-            cachedValue = table.get(hashKey);
-        } finally {
-            tableLock.readLock().unlock();
-        }
+        final V cachedValue = get(hashKey);
         if (cachedValue == null) {
             //don't hold read lock while loading value
             final V loadedValue = loadable.apply(hashKey);
+            onPutHashKey(hashKey);
+            if (isWriteCoalescingEnabled()) {
+                putPending(hashKey, null, loadedValue);
+                return loadedValue;
+            }
             //write lock is only for the actual table variable, not the table values, thus read lock is fine here
-            table = getTableWithReadLock();
+            final RangeTable<H, R, V> table = getTableWithReadLock();
             try {
                 table.put(hashKey, loadedValue);
             } finally {
@@ -404,18 +724,17 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
     }
 
     public V getOrLoad(final H hashKey, final R rangeKey, final Function<Pair<H, R>, V> loadable) {
-        RangeTable<H, R, V> table = getTableWithReadLock();
-        final V cachedValue;
-        try {
-            cachedValue = table.get(hashKey, rangeKey);
-        } finally {
-            tableLock.readLock().unlock();
-        }
+        final V cachedValue = get(hashKey, rangeKey);
         if (cachedValue == null) {
             //don't hold read lock while loading value
             final V loadedValue = loadable.apply(Pair.of(hashKey, rangeKey));
+            onPutHashKey(hashKey);
+            if (isWriteCoalescingEnabled()) {
+                putPending(hashKey, rangeKey, loadedValue);
+                return loadedValue;
+            }
             //write lock is only for the actual table variable, not the table values, thus read lock is fine here
-            table = getTableWithReadLock();
+            final RangeTable<H, R, V> table = getTableWithReadLock();
             try {
                 table.put(hashKey, rangeKey, loadedValue);
             } finally {
@@ -430,6 +749,7 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
     @Override
     public void delete(final H hashKey) {
         assertAllowedWriteWithoutBatch();
+        maybeFlushPendingWrites();
         final RangeTable<H, R, V> table = getTableWithReadLock();
         try {
             table.delete(hashKey);
@@ -441,6 +761,7 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
     @Override
     public void delete(final H hashKey, final R rangeKey) {
         assertAllowedWriteWithoutBatch();
+        maybeFlushPendingWrites();
         final RangeTable<H, R, V> table = getTableWithReadLock();
         try {
             table.delete(hashKey, rangeKey);
@@ -451,6 +772,7 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
 
     @Override
     public void deleteRange(final H hashKey) {
+        maybeFlushPendingWrites();
         final RangeTable<H, R, V> table = getTableWithReadLock();
         try {
             table.deleteRange(hashKey);
@@ -461,6 +783,7 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
 
     @Override
     public void deleteRange(final H hashKey, final R fromRangeKey) {
+        maybeFlushPendingWrites();
         final RangeTable<H, R, V> table = getTableWithReadLock();
         try {
             table.deleteRange(hashKey, fromRangeKey);
@@ -471,6 +794,7 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
 
     @Override
     public void deleteRange(final H hashKey, final R fromRangeKey, final R toRangeKey) {
+        maybeFlushPendingWrites();
         final RangeTable<H, R, V> table = getTableWithReadLock();
         try {
             table.deleteRange(hashKey, fromRangeKey, toRangeKey);
@@ -481,8 +805,10 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
 
     @Override
     public void close() {
+        maybeFlushPendingWrites();
         tableLock.writeLock().lock();
         try {
+            closeSnapshots();
             if (tableFinalizer.table != null) {
                 RangeTableCloseManager.unregister(this);
                 tableFinalizer.table.close();
@@ -505,6 +831,11 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
     @Override
     public void put(final H hashKey, final R rangeKey, final V value) {
         assertAllowedWriteWithoutBatch();
+        onPutHashKey(hashKey);
+        if (isWriteCoalescingEnabled()) {
+            putPending(hashKey, rangeKey, value);
+            return;
+        }
         final RangeTable<H, R, V> table = getTableWithReadLock();
         try {
             table.put(hashKey, rangeKey, value);
@@ -513,6 +844,112 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
         }
     }
 
+    /**
+     * Returns null when nothing is pending, otherwise the pending value that needs to be unwrapped.
+     */
+    private Object getPending(final H hashKey, final R rangeKey) {
+        if (pendingWrites.isEmpty()) {
+            return null;
+        }
+        return pendingWrites.get(Pair.of(hashKey, rangeKey));
+    }
+
+    @SuppressWarnings("unchecked")
+    private V unwrapPendingValue(final Object pendingValue) {
+        if (pendingValue == NULL_PENDING_VALUE) {
+            return null;
+        } else {
+            return (V) pendingValue;
+        }
+    }
+
+    private void putPending(final H hashKey, final R rangeKey, final V value) {
+        final Object pendingValue;
+        if (value == null) {
+            pendingValue = NULL_PENDING_VALUE;
+        } else {
+            pendingValue = value;
+        }
+        pendingWrites.put(Pair.of(hashKey, rangeKey), pendingValue);
+        if (pendingWrites.size() >= getWriteCoalescingMaxPendingWrites()) {
+            //this thread commits the whole group
+            flushPendingWrites();
+        } else {
+            maybeScheduleFlushPendingWrites();
+        }
+    }
+
+    private void maybeScheduleFlushPendingWrites() {
+        if (!pendingWritesFlushScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        //the delay is handled by the scheduler, so that waiting windows do not occupy the flush threads
+        PENDING_WRITES_FLUSH_EXECUTOR.schedule(new Runnable() {
+            @Override
+            public void run() {
+                //puts during the flush schedule the next window
+                pendingWritesFlushScheduled.set(false);
+                try {
+                    flushPendingWrites();
+                } catch (final Throwable t) {
+                    //the puts stay pending, thus retry them in the next window
+                    Err.process(new RuntimeException(
+                            "Background flush of pending writes failed for table [" + getName() + "], will retry",
+                            t));
+                    if (!pendingWrites.isEmpty()) {
+                        maybeScheduleFlushPendingWrites();
+                    }
+                }
+            }
+        }, getWriteCoalescingWindowMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    boolean hasPendingWrites() {
+        return !pendingWrites.isEmpty();
+    }
+
+    private void maybeFlushPendingWrites() {
+        if (!pendingWrites.isEmpty()) {
+            flushPendingWrites();
+        }
+    }
+
+    /**
+     * Writes all pending puts in one batch.
+     */
+    public void flushPendingWrites() {
+        synchronized (pendingWritesFlushLock) {
+            if (pendingWrites.isEmpty()) {
+                return;
+            }
+            final List<Entry<Pair<H, R>, Object>> flushedWrites = new ArrayList<Entry<Pair<H, R>, Object>>(
+                    pendingWrites.entrySet());
+            final RangeTable<H, R, V> table = getTableWithReadLock();
+            try (RangeBatch<H, R, V> batch = table.newRangeBatch()) {
+                for (int i = 0; i < flushedWrites.size(); i++) {
+                    final Entry<Pair<H, R>, Object> write = flushedWrites.get(i);
+                    final Pair<H, R> key = write.getKey();
+                    final V value = unwrapPendingValue(write.getValue());
+                    if (key.getSecond() == null) {
+                        batch.put(key.getFirst(), value);
+                    } else {
+                        batch.put(key.getFirst(), key.getSecond(), value);
+                    }
+                }
+                batch.flush();
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                tableLock.readLock().unlock();
+            }
+            for (int i = 0; i < flushedWrites.size(); i++) {
+                final Entry<Pair<H, R>, Object> write = flushedWrites.get(i);
+                //keep the entry when it was overwritten in the meantime, the next flush will write the newer value
+                pendingWrites.remove(write.getKey(), write.getValue());
+            }
+        }
+    }
+
     private void assertAllowedWriteWithoutBatch() {
         if (!allowPutWithoutBatch()) {
             throw new UnsupportedOperationException(
@@ -522,6 +959,10 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
 
     @Override
     public V get(final H hashKey, final R rangeKey) {
+        final Object pendingValue = getPending(hashKey, rangeKey);
+        if (pendingValue != null) {
+            return unwrapPendingValue(pendingValue);
+        }
         final RangeTable<H, R, V> table = getTableWithReadLock();
         try {
             return table.get(hashKey, rangeKey);
@@ -532,8 +973,10 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
 
     @Override
     public DelegateTableIterator<H, R, V> range(final H hashKey) {
+        maybeFlushPendingWrites();
         final RangeTable<H, R, V> table = getTableWithReadLock();
-        return new DelegateTableIterator<H, R, V>(table.range(hashKey), tableLock, allowHasNext());
+        final TableIterator<H, R, V> range = decorateTableIterator(table.range(hashKey));
+        return new DelegateTableIterator<H, R, V>(range, tableLock, allowHasNext());
     }
 
     public ICloseableIterator<V> rangeValues(final H hashKey) {
@@ -542,8 +985,10 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
 
     @Override
     public DelegateTableIterator<H, R, V> range(final H hashKey, final R fromRangeKey) {
+        maybeFlushPendingWrites();
         final RangeTable<H, R, V> table = getTableWithReadLock();
-        return new DelegateTableIterator<H, R, V>(table.range(hashKey, fromRangeKey), tableLock, allowHasNext());
+        final TableIterator<H, R, V> range = decorateTableIterator(table.range(hashKey, fromRangeKey));
+        return new DelegateTableIterator<H, R, V>(range, tableLock, allowHasNext());
     }
 
     public ICloseableIterator<V> rangeValues(final H hashKey, final R fromRangeKey) {
@@ -552,9 +997,10 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
 
     @Override
     public DelegateTableIterator<H, R, V> range(final H hashKey, final R fromRangeKey, final R toRangeKey) {
+        maybeFlushPendingWrites();
         final RangeTable<H, R, V> table = getTableWithReadLock();
-        return new DelegateTableIterator<H, R, V>(table.range(hashKey, fromRangeKey, toRangeKey), tableLock,
-                allowHasNext());
+        final TableIterator<H, R, V> range = decorateTableIterator(table.range(hashKey, fromRangeKey, toRangeKey));
+        return new DelegateTableIterator<H, R, V>(range, tableLock, allowHasNext());
     }
 
     public ICloseableIterator<V> rangeValues(final H hashKey, final R fromRangeKey, final R toRangeKey) {
@@ -563,8 +1009,10 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
 
     @Override
     public DelegateTableIterator<H, R, V> rangeReverse(final H hashKey) {
+        maybeFlushPendingWrites();
         final RangeTable<H, R, V> table = getTableWithReadLock();
-        return new DelegateTableIterator<H, R, V>(table.rangeReverse(hashKey), tableLock, allowHasNext());
+        final TableIterator<H, R, V> range = decorateTableIterator(table.rangeReverse(hashKey));
+        return new DelegateTableIterator<H, R, V>(range, tableLock, allowHasNext());
     }
 
     public ICloseableIterator<V> rangeReverseValues(final H hashKey) {
@@ -573,8 +1021,10 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
 
     @Override
     public DelegateTableIterator<H, R, V> rangeReverse(final H hashKey, final R fromRangeKey) {
+        maybeFlushPendingWrites();
         final RangeTable<H, R, V> table = getTableWithReadLock();
-        return new DelegateTableIterator<H, R, V>(table.rangeReverse(hashKey, fromRangeKey), tableLock, allowHasNext());
+        final TableIterator<H, R, V> range = decorateTableIterator(table.rangeReverse(hashKey, fromRangeKey));
+        return new DelegateTableIterator<H, R, V>(range, tableLock, allowHasNext());
     }
 
     public ICloseableIterator<V> rangeReverseValues(final H hashKey, final R fromRangeKey) {
@@ -583,15 +1033,96 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
 
     @Override
     public DelegateTableIterator<H, R, V> rangeReverse(final H hashKey, final R fromRangeKey, final R toRangeKey) {
+        maybeFlushPendingWrites();
         final RangeTable<H, R, V> table = getTableWithReadLock();
-        return new DelegateTableIterator<H, R, V>(table.rangeReverse(hashKey, fromRangeKey, toRangeKey), tableLock,
-                allowHasNext());
+        final TableIterator<H, R, V> range = decorateTableIterator(
+                table.rangeReverse(hashKey, fromRangeKey, toRangeKey));
+        return new DelegateTableIterator<H, R, V>(range, tableLock, allowHasNext());
     }
 
     public ICloseableIterator<V> rangeReverseValues(final H hashKey, final R fromRangeKey, final R toRangeKey) {
         return new DelegateValueTableIterator<V>(rangeReverse(hashKey, fromRangeKey, toRangeKey));
     }
 
+    /**
+     * Iterates over a snapshot of the range. The table lock is only held while the snapshot is taken, thus long
+     * scans see a consistent view without blocking writers, purges, deleteTable or close. When the table gets closed or
+     * deleted during the scan, the iterator fails with an IllegalStateException instead of silently ending.
+     */
+    public ICloseableIterator<TableRow<H, R, V>> rangeSnapshot(final H hashKey, final R fromRangeKey,
+            final R toRangeKey) {
+        maybeFlushPendingWrites();
+        getTableWithReadLock();
+        try {
+            final IRangeTableRawAccess rawAccessCopy = rawAccess;
+            if (rawAccessCopy == null) {
+                throw new UnsupportedOperationException(
+                        "The engine of table [" + getName() + "] does not support snapshots");
+            }
+            return new SnapshotTableIterator(rawAccessCopy, hashKey, fromRangeKey, toRangeKey);
+        } finally {
+            tableLock.readLock().unlock();
+        }
+    }
+
+    public ICloseableIterator<V> rangeSnapshotValues(final H hashKey, final R fromRangeKey, final R toRangeKey) {
+        return new ATransformingCloseableIterator<TableRow<H, R, V>, V>(
+                rangeSnapshot(hashKey, fromRangeKey, toRangeKey)) {
+            @Override
+            protected V transform(final TableRow<H, R, V> value) {
+                return value.getValue();
+            }
+        };
+    }
+
+    /**
+     * Visits up to maxRows raw rows of all hash keys starting at fromRawKey (or the first row if null) and deletes the
+     * rows whose raw value matches. Returns the raw key to continue with or null when the end was reached. Does nothing
+     * when the table is not open or the engine does not provide raw access, so that a background task never reopens a
+     * closed table.
+     */
+    protected byte[] deleteRawRows(final byte[] fromRawKey, final int maxRows,
+            final Predicate<byte[]> shouldDeleteRawValue) {
+        tableLock.readLock().lock();
+        try {
+            final IRangeTableRawAccess rawAccessCopy = rawAccess;
+            if (tableFinalizer.table == null || rawAccessCopy == null) {
+                return null;
+            }
+            final List<byte[]> deleteRawKeys = new ArrayList<byte[]>();
+            byte[] nextRawKey = null;
+            try (IRawRowIterator iterator = rawAccessCopy.newIterator(fromRawKey)) {
+                int rows = 0;
+                while (iterator.hasNext()) {
+                    final Entry<byte[], byte[]> rawRow = iterator.next();
+                    if (rows >= maxRows) {
+                        nextRawKey = rawRow.getKey();
+                        break;
+                    }
+                    if (shouldDeleteRawValue.test(rawRow.getValue())) {
+                        deleteRawKeys.add(rawRow.getKey());
+                    }
+                    rows++;
+                }
+            }
+            rawAccessCopy.deleteRawKeys(deleteRawKeys);
+            return nextRawKey;
+        } finally {
+            tableLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Needs to be called with the write lock, so that no snapshot outlives the native database.
+     */
+    private void closeSnapshots() {
+        for (final SnapshotFinalizer snapshot : openSnapshots) {
+            snapshot.invalidated = true;
+            snapshot.close();
+        }
+        rawAccess = null;
+    }
+
     @Override
     public Batch<H, V> newBatch() {
         return newRangeBatch();
@@ -599,14 +1130,43 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
 
     @Override
     public RangeBatch<H, R, V> newRangeBatch() {
+        maybeFlushPendingWrites();
         final RangeTable<H, R, V> table = getTableWithReadLock();
-        return new DelegateRangeBatch<H, R, V>(table.newRangeBatch(), tableLock);
+        return new DelegateRangeBatch<H, R, V>(table.newRangeBatch(), tableLock) {
+            @Override
+            public void put(final H hashKey, final V value) {
+                onPutHashKey(hashKey);
+                super.put(hashKey, value);
+            }
+
+            @Override
+            public void put(final H hashKey, final R rangeKey, final V value) {
+                onPutHashKey(hashKey);
+                super.put(hashKey, rangeKey, value);
+            }
+        };
     }
 
     public Lock getTableReadLock() {
         return tableLock.readLock();
     }
 
+    private static final class MultiGetKey {
+        private final int index;
+        private final byte[] hashKey;
+        private final byte[] rangeKey;
+
+        private MultiGetKey(final int index, final byte[] hashKey, final byte[] rangeKey) {
+            this.index = index;
+            this.hashKey = hashKey;
+            this.rangeKey = rangeKey;
+        }
+
+        private boolean isSameKey(final MultiGetKey other) {
+            return Arrays.equals(hashKey, other.hashKey) && Arrays.equals(rangeKey, other.rangeKey);
+        }
+    }
+
     public static class DelegateRangeBatch<H_, R_, V_> implements RangeBatch<H_, R_, V_> {
 
         private final RangeBatchFinalizer<H_, R_, V_> finalizer;
@@ -775,6 +1335,122 @@ public abstract class ADelegateRangeTable<H, R, V> implements RangeTable<H, R, V
         }
     }
 
+    /**
+     * The bounds are checked on the raw keys, thus the hash key is only serialized once per iterator and the rows are
+     * only deserialized when they are accessed.
+     */
+    private final class SnapshotTableIterator extends ACloseableIterator<TableRow<H, R, V>> {
+
+        private final byte[] hashRawKey;
+        private final byte[] toRawKey;
+        private final SnapshotFinalizer finalizer;
+        private TableRow<H, R, V> nextRow;
+        private boolean end;
+
+        private SnapshotTableIterator(final IRangeTableRawAccess rawAccess, final H hashKey, final R fromRangeKey,
+                final R toRangeKey) {
+            final byte[] hashKeyBytes = hashKeySerde.toBytes(hashKey);
+            this.hashRawKey = Util.combine(hashKeyBytes, new byte[0]);
+            final byte[] fromRawKey;
+            if (fromRangeKey == null) {
+                fromRawKey = hashRawKey;
+            } else {
+                fromRawKey = Util.combine(hashKeyBytes, rangeKeySerde.toBytes(fromRangeKey));
+            }
+            if (toRangeKey == null) {
+                this.toRawKey = null;
+            } else {
+                this.toRawKey = Util.combine(hashKeyBytes, rangeKeySerde.toBytes(toRangeKey));
+            }
+            final IRawRowIterator iterator = rawAccess.newSnapshotIterator(fromRawKey);
+            this.finalizer = new SnapshotFinalizer(iterator, openSnapshots);
+            this.finalizer.register(this);
+            openSnapshots.add(finalizer);
+        }
+
+        @Override
+        protected boolean innerHasNext() {
+            return readNext() != null;
+        }
+
+        @Override
+        protected TableRow<H, R, V> innerNext() {
+            final TableRow<H, R, V> row = readNext();
+            if (row == null) {
+                throw new FastNoSuchElementException("SnapshotTableIterator end reached");
+            }
+            nextRow = null;
+            return row;
+        }
+
+        private TableRow<H, R, V> readNext() {
+            if (nextRow != null || end) {
+                return nextRow;
+            }
+            final Entry<byte[], byte[]> rawRow;
+            synchronized (finalizer) {
+                if (finalizer.invalidated) {
+                    throw new IllegalStateException(
+                            "Table [" + getName() + "] was closed or deleted during the snapshot iteration");
+                }
+                if (finalizer.isClosed() || !finalizer.iterator.hasNext()) {
+                    end = true;
+                    return null;
+                }
+                rawRow = finalizer.iterator.next();
+            }
+            final byte[] rawKey = rawRow.getKey();
+            if (Util.compareKeys(hashKeyComparator, null, rawKey, hashRawKey) != 0) {
+                end = true;
+                return null;
+            }
+            //the row without a range key sorts first, thus it is always before the bound
+            if (toRawKey != null && Util.compareKeys(hashKeyComparator, rangeKeyComparator, rawKey, toRawKey) > 0) {
+                end = true;
+                return null;
+            }
+            nextRow = new RawTableRow<H, R, V>(rawRow, hashKeySerde, rangeKeySerde, valueSerde);
+            return nextRow;
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            finalizer.close();
+        }
+
+    }
+
+    private static final class SnapshotFinalizer extends AFinalizer {
+        private final IRawRowIterator iterator;
+        private final Set<SnapshotFinalizer> openSnapshots;
+        private volatile boolean invalidated;
+        private volatile boolean closed;
+
+        private SnapshotFinalizer(final IRawRowIterator iterator, final Set<SnapshotFinalizer> openSnapshots) {
+            this.iterator = iterator;
+            this.openSnapshots = openSnapshots;
+        }
+
+        @Override
+        protected synchronized void clean() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                iterator.close();
+            } finally {
+                openSnapshots.remove(this);
+            }
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+    }
+
     private static final class TableFinalizer<_H, _R, _V> extends AFinalizer {
         private volatile RangeTable<_H, _R, _V> table;
 
@@ -1,24 +1,244 @@
 package de.invesdwin.context.persistence.timeseries.ezdb;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
 import javax.annotation.concurrent.ThreadSafe;
 
+import de.invesdwin.context.log.error.Err;
+import de.invesdwin.util.collections.iterable.ASkippingIterator;
+import de.invesdwin.util.collections.iterable.ICloseableIterator;
+import de.invesdwin.util.concurrent.Executors;
+import de.invesdwin.util.concurrent.WrappedExecutorService;
+import de.invesdwin.util.error.FastNoSuchElementException;
 import de.invesdwin.util.time.duration.Duration;
 import de.invesdwin.util.time.fdate.FDate;
+import ezdb.TableIterator;
+import ezdb.TableRow;
+import ezdb.serde.Serde;
 
+/**
+ * Each row carries the time it was written. Expired rows are treated as misses by get, getLatest and getOrLoad, are
+ * skipped by the range iterators and are removed incrementally by a background sweeper, thus the cache does not go
+ * cold for all keys at once like it did when the whole table was purged.
+ *
+ * The sweeper is scheduled by puts, at most once per sweep interval, since only written rows can expire. Since the
+ * sweeper does not take the write lock, a row that is rewritten exactly while its expired predecessor is swept might
+ * get lost, which only results in another cache miss.
+ *
+ * The write time is stored as an eight byte prefix of the value. Rows of the old format can not be detected by their
+ * bytes, thus the format is recorded as the format version and existing tables without it are reset on open.
+ */
 @ThreadSafe
 public abstract class AExpiringDelegateRangeTable<H, R, V> extends ADelegateRangeTable<H, R, V> {
 
+    private static final WrappedExecutorService SWEEP_EXECUTOR = Executors
+            .newFixedThreadPool(AExpiringDelegateRangeTable.class.getSimpleName() + "_sweep", 1);
+    private static final int SWEEP_CHUNK_SIZE = 10000;
+    private static final int WRITE_TIME_LENGTH = 8;
+    private static final String FORMAT_VERSION = "expiring1";
+
     private final Duration duration;
+    private final AtomicBoolean sweepScheduled = new AtomicBoolean(false);
+    private volatile long lastSweepMillis = 0;
 
     public AExpiringDelegateRangeTable(final String name, final Duration duration) {
         super(name);
         this.duration = duration;
     }
 
+    /**
+     * For subclasses that override isExpired with calendar based rules.
+     */
+    protected AExpiringDelegateRangeTable(final String name) {
+        this(name, null);
+    }
+
+    protected boolean isExpired(final FDate writeTime) {
+        return new Duration(writeTime).isGreaterThan(duration);
+    }
+
+    protected long getSweepIntervalMillis() {
+        return TimeUnit.HOURS.toMillis(1);
+    }
+
+    @Override
+    protected final String decorateFormatVersion(final String formatVersion) {
+        if (formatVersion == null) {
+            return FORMAT_VERSION;
+        } else {
+            return FORMAT_VERSION + "_" + formatVersion;
+        }
+    }
+
+    @Override
+    protected final boolean isFormatVersionRequired() {
+        return true;
+    }
+
+    @Override
+    protected final Serde<V> decorateValueSerde(final Serde<V> valueSerde) {
+        return new ExpiringValueSerde(valueSerde);
+    }
+
+    /**
+     * Subclasses that override this need to call super, otherwise expired rows are not swept anymore.
+     */
+    @Override
+    protected void onPutHashKey(final H hashKey) {
+        maybeScheduleSweep();
+    }
+
+    private void maybeScheduleSweep() {
+        if (System.currentTimeMillis() - lastSweepMillis > getSweepIntervalMillis()
+                && sweepScheduled.compareAndSet(false, true)) {
+            SWEEP_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    sweep();
+                }
+            });
+        }
+    }
+
+    /**
+     * The time the last sweep finished, null if there was none yet.
+     */
+    public FDate getLastSweepTime() {
+        final long lastSweepMillisCopy = lastSweepMillis;
+        if (lastSweepMillisCopy == 0) {
+            return null;
+        } else {
+            return FDate.valueOf(lastSweepMillisCopy);
+        }
+    }
+
     @Override
-    protected boolean shouldPurgeTable() {
-        final FDate tableCreationTime = getTableCreationTime();
-        return tableCreationTime != null && new Duration(tableCreationTime).isGreaterThan(duration);
+    protected TableIterator<H, R, V> decorateTableIterator(final TableIterator<H, R, V> iterator) {
+        return new SkipExpiredTableIterator(iterator);
+    }
+
+    @Override
+    public ICloseableIterator<TableRow<H, R, V>> rangeSnapshot(final H hashKey, final R fromRangeKey,
+            final R toRangeKey) {
+        return new ASkippingIterator<TableRow<H, R, V>>(super.rangeSnapshot(hashKey, fromRangeKey, toRangeKey)) {
+            @Override
+            protected boolean skip(final TableRow<H, R, V> element) {
+                return element.getValue() == null;
+            }
+        };
+    }
+
+    private void sweep() {
+        try {
+            final Predicate<byte[]> expired = new Predicate<byte[]>() {
+                @Override
+                public boolean test(final byte[] rawValue) {
+                    return isExpired(rawValue);
+                }
+            };
+            //the lock is released between the chunks so that the table can be closed or deleted in between
+            byte[] nextRawKey = deleteRawRows(null, SWEEP_CHUNK_SIZE, expired);
+            while (nextRawKey != null) {
+                nextRawKey = deleteRawRows(nextRawKey, SWEEP_CHUNK_SIZE, expired);
+            }
+        } catch (final Throwable t) {
+            Err.process(t);
+        } finally {
+            lastSweepMillis = System.currentTimeMillis();
+            sweepScheduled.set(false);
+        }
+    }
+
+    private boolean isExpired(final byte[] rawValue) {
+        if (rawValue.length < WRITE_TIME_LENGTH) {
+            return true;
+        }
+        final long writeTime = ByteBuffer.wrap(rawValue).getLong();
+        return isExpired(FDate.valueOf(writeTime));
+    }
+
+    /**
+     * Expired rows are deserialized with a null value, thus rows with a null value are skipped.
+     */
+    private final class SkipExpiredTableIterator implements TableIterator<H, R, V> {
+
+        private final TableIterator<H, R, V> delegate;
+        private TableRow<H, R, V> nextRow;
+
+        private SkipExpiredTableIterator(final TableIterator<H, R, V> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return readNext() != null;
+        }
+
+        @Override
+        public TableRow<H, R, V> next() {
+            final TableRow<H, R, V> row = readNext();
+            if (row == null) {
+                throw new FastNoSuchElementException("SkipExpiredTableIterator end reached");
+            }
+            nextRow = null;
+            return row;
+        }
+
+        private TableRow<H, R, V> readNext() {
+            while (nextRow == null && delegate.hasNext()) {
+                final TableRow<H, R, V> row = delegate.next();
+                if (row.getValue() != null) {
+                    nextRow = row;
+                }
+            }
+            return nextRow;
+        }
+
+        /**
+         * The delegate is already positioned after the next row, thus it would remove the wrong row.
+         */
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+
+    }
+
+    private final class ExpiringValueSerde implements Serde<V> {
+
+        private final Serde<V> delegate;
+
+        private ExpiringValueSerde(final Serde<V> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public V fromBytes(final byte[] bytes) {
+            if (isExpired(bytes)) {
+                //don't even deserialize the value
+                return null;
+            }
+            return delegate.fromBytes(Arrays.copyOfRange(bytes, WRITE_TIME_LENGTH, bytes.length));
+        }
+
+        @Override
+        public byte[] toBytes(final V obj) {
+            final byte[] valueBytes = delegate.toBytes(obj);
+            final ByteBuffer buffer = ByteBuffer.allocate(WRITE_TIME_LENGTH + valueBytes.length);
+            buffer.putLong(System.currentTimeMillis());
+            buffer.put(valueBytes);
+            return buffer.array();
+        }
+
     }
 
 }
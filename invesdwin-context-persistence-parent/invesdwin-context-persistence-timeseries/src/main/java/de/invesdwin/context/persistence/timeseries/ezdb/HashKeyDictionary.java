@@ -0,0 +1,144 @@
+package de.invesdwin.context.persistence.timeseries.ezdb;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.persistence.timeseries.ezdb.ADelegateRangeTable.DelegateTableIterator;
+import ezdb.TableRow;
+import ezdb.serde.IntegerSerde;
+import ezdb.serde.Serde;
+
+/**
+ * Maps long hash keys to compact integer ids that are stored in a small side table. Range tables that use the serde of
+ * this dictionary for their hash keys only store and compare a four byte prefix per row instead of the full string.
+ *
+ * The serde only looks up ids, unknown hash keys are serialized as ABSENT_ID which matches no row. Thus reads and
+ * deletes never write to the dictionary. Tables need to call getOrCreateId before putting a value for a hash key, see
+ * ADelegateRangeTable.onPutHashKey.
+ *
+ * Ids are never reused or removed, thus the dictionary must be deleted together with the tables that use it. Enabling
+ * the dictionary for tables that already contain data requires those tables to be rebuilt.
+ */
+@ThreadSafe
+public class HashKeyDictionary implements Closeable {
+
+    public static final int ABSENT_ID = -1;
+
+    private final ADelegateRangeTable<Void, String, Integer> table;
+    private final Map<String, Integer> hashKey_id = new ConcurrentHashMap<String, Integer>();
+    private final Map<Integer, String> id_hashKey = new ConcurrentHashMap<Integer, String>();
+    @GuardedBy("this")
+    private int nextId = 0;
+    private final Serde<String> serde = new Serde<String>() {
+        @Override
+        public String fromBytes(final byte[] bytes) {
+            return getHashKey(IntegerSerde.get.fromBytes(bytes));
+        }
+
+        @Override
+        public byte[] toBytes(final String obj) {
+            return IntegerSerde.get.toBytes(getId(obj));
+        }
+    };
+
+    public HashKeyDictionary(final File directory, final String name) {
+        this.table = newRangeTable(directory, name);
+        load();
+    }
+
+    protected ADelegateRangeTable<Void, String, Integer> newRangeTable(final File directory, final String name) {
+        return new ADelegateRangeTable<Void, String, Integer>(name) {
+            @Override
+            protected boolean allowPutWithoutBatch() {
+                return true;
+            }
+
+            @Override
+            protected boolean allowHasNext() {
+                return true;
+            }
+
+            @Override
+            protected File getDirectory() {
+                return directory;
+            }
+
+            @Override
+            protected void onDeleteTableFinished() {
+                HashKeyDictionary.this.onDeleteTableFinished();
+            }
+        };
+    }
+
+    /**
+     * All ids are lost when the dictionary gets reset, thus tables using it might want to be reset as well.
+     */
+    protected void onDeleteTableFinished() {}
+
+    private synchronized void load() {
+        try (DelegateTableIterator<Void, String, Integer> range = table.range(null)) {
+            while (range.hasNext()) {
+                final TableRow<Void, String, Integer> row = range.next();
+                final int id = row.getValue();
+                id_hashKey.put(id, row.getRangeKey());
+                hashKey_id.put(row.getRangeKey(), id);
+                nextId = Math.max(nextId, id + 1);
+            }
+        }
+    }
+
+    /**
+     * Returns ABSENT_ID when the hash key is not known yet.
+     */
+    public int getId(final String hashKey) {
+        final Integer id = hashKey_id.get(hashKey);
+        if (id != null) {
+            return id;
+        }
+        return ABSENT_ID;
+    }
+
+    public int getOrCreateId(final String hashKey) {
+        final Integer id = hashKey_id.get(hashKey);
+        if (id != null) {
+            return id;
+        }
+        return newId(hashKey);
+    }
+
+    private synchronized int newId(final String hashKey) {
+        final Integer existingId = hashKey_id.get(hashKey);
+        if (existingId != null) {
+            return existingId;
+        }
+        final int id = nextId++;
+        //persist first so that no row can reference an id that would be lost on a crash
+        table.put(null, hashKey, id);
+        id_hashKey.put(id, hashKey);
+        hashKey_id.put(hashKey, id);
+        return id;
+    }
+
+    public String getHashKey(final int id) {
+        final String hashKey = id_hashKey.get(id);
+        if (hashKey == null) {
+            throw new IllegalStateException(table.getName() + ": unknown id [" + id + "]");
+        }
+        return hashKey;
+    }
+
+    public Serde<String> getSerde() {
+        return serde;
+    }
+
+    @Override
+    public void close() {
+        table.close();
+    }
+
+}
@@ -0,0 +1,174 @@
+package de.invesdwin.context.persistence.timeseries.ezdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.annotation.concurrent.Immutable;
+
+import org.apache.commons.io.FileUtils;
+import org.iq80.leveldb.CompressionType;
+import org.iq80.leveldb.Options;
+
+import de.invesdwin.context.system.properties.SystemProperties;
+
+/**
+ * LevelDB tuning of a single ADelegateRangeTable. Null values keep the LevelDB defaults.
+ *
+ * Each option can be overridden per table via system properties in the form
+ * "de.invesdwin.context.persistence.timeseries.ezdb.RangeTableOptions.CACHE_SIZE@fileLookupTable".
+ */
+@Immutable
+public class RangeTableOptions {
+
+    public static final String TABLE_CONFIG_PREFIX = "@";
+
+    public static final RangeTableOptions DEFAULT = new RangeTableOptions(null, null, null, null, null);
+    /**
+     * For lookup tables that get filled incrementally with lots of small values, a larger write buffer reduces the
+     * number of compactions.
+     */
+    public static final RangeTableOptions WRITE_HEAVY = DEFAULT.withWriteBufferSize(16 * 1024 * 1024);
+    /**
+     * For tables that are written once and read often, a larger block cache and larger blocks reduce disk reads on
+     * range scans.
+     */
+    public static final RangeTableOptions READ_HEAVY = DEFAULT.withCacheSize(32L * 1024L * 1024L)
+            .withBlockSize(16 * 1024);
+
+    private static final String CACHE_SIZE = "CACHE_SIZE";
+    private static final String WRITE_BUFFER_SIZE = "WRITE_BUFFER_SIZE";
+    private static final String BLOCK_SIZE = "BLOCK_SIZE";
+    private static final String MAX_OPEN_FILES = "MAX_OPEN_FILES";
+    private static final String COMPRESSION = "COMPRESSION";
+
+    private final Long cacheSize;
+    private final Integer writeBufferSize;
+    private final Integer blockSize;
+    private final Integer maxOpenFiles;
+    private final Boolean compression;
+
+    public RangeTableOptions(final Long cacheSize, final Integer writeBufferSize, final Integer blockSize,
+            final Integer maxOpenFiles, final Boolean compression) {
+        this.cacheSize = cacheSize;
+        this.writeBufferSize = writeBufferSize;
+        this.blockSize = blockSize;
+        this.maxOpenFiles = maxOpenFiles;
+        this.compression = compression;
+    }
+
+    public Long getCacheSize() {
+        return cacheSize;
+    }
+
+    public RangeTableOptions withCacheSize(final Long cacheSize) {
+        return new RangeTableOptions(cacheSize, writeBufferSize, blockSize, maxOpenFiles, compression);
+    }
+
+    public Integer getWriteBufferSize() {
+        return writeBufferSize;
+    }
+
+    public RangeTableOptions withWriteBufferSize(final Integer writeBufferSize) {
+        return new RangeTableOptions(cacheSize, writeBufferSize, blockSize, maxOpenFiles, compression);
+    }
+
+    public Integer getBlockSize() {
+        return blockSize;
+    }
+
+    public RangeTableOptions withBlockSize(final Integer blockSize) {
+        return new RangeTableOptions(cacheSize, writeBufferSize, blockSize, maxOpenFiles, compression);
+    }
+
+    public Integer getMaxOpenFiles() {
+        return maxOpenFiles;
+    }
+
+    public RangeTableOptions withMaxOpenFiles(final Integer maxOpenFiles) {
+        return new RangeTableOptions(cacheSize, writeBufferSize, blockSize, maxOpenFiles, compression);
+    }
+
+    public Boolean getCompression() {
+        return compression;
+    }
+
+    public RangeTableOptions withCompression(final Boolean compression) {
+        return new RangeTableOptions(cacheSize, writeBufferSize, blockSize, maxOpenFiles, compression);
+    }
+
+    /**
+     * Applies the overrides from the system properties for the given table on top of these options.
+     */
+    public RangeTableOptions withSystemProperties(final String tableName) {
+        final SystemProperties systemProperties = new SystemProperties(RangeTableOptions.class);
+        RangeTableOptions options = this;
+        final String cacheSizeKey = CACHE_SIZE + TABLE_CONFIG_PREFIX + tableName;
+        if (systemProperties.containsKey(cacheSizeKey)) {
+            options = options.withCacheSize(systemProperties.getLong(cacheSizeKey));
+        }
+        final String writeBufferSizeKey = WRITE_BUFFER_SIZE + TABLE_CONFIG_PREFIX + tableName;
+        if (systemProperties.containsKey(writeBufferSizeKey)) {
+            options = options.withWriteBufferSize(systemProperties.getInteger(writeBufferSizeKey));
+        }
+        final String blockSizeKey = BLOCK_SIZE + TABLE_CONFIG_PREFIX + tableName;
+        if (systemProperties.containsKey(blockSizeKey)) {
+            options = options.withBlockSize(systemProperties.getInteger(blockSizeKey));
+        }
+        final String maxOpenFilesKey = MAX_OPEN_FILES + TABLE_CONFIG_PREFIX + tableName;
+        if (systemProperties.containsKey(maxOpenFilesKey)) {
+            options = options.withMaxOpenFiles(systemProperties.getInteger(maxOpenFilesKey));
+        }
+        final String compressionKey = COMPRESSION + TABLE_CONFIG_PREFIX + tableName;
+        if (systemProperties.containsKey(compressionKey)) {
+            options = options.withCompression(systemProperties.getBoolean(compressionKey));
+        }
+        return options;
+    }
+
+    public void apply(final Options options) {
+        if (cacheSize != null) {
+            options.cacheSize(cacheSize);
+        }
+        if (writeBufferSize != null) {
+            options.writeBufferSize(writeBufferSize);
+        }
+        if (blockSize != null) {
+            options.blockSize(blockSize);
+        }
+        if (maxOpenFiles != null) {
+            options.maxOpenFiles(maxOpenFiles);
+        }
+        if (compression != null) {
+            if (compression) {
+                options.compressionType(CompressionType.SNAPPY);
+            } else {
+                options.compressionType(CompressionType.NONE);
+            }
+        }
+    }
+
+    /**
+     * Records the effective options next to the table data so that the tuning of existing tables can be inspected.
+     */
+    public void write(final File file) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(CACHE_SIZE).append("=").append(cacheSize).append("\n");
+        sb.append(WRITE_BUFFER_SIZE).append("=").append(writeBufferSize).append("\n");
+        sb.append(BLOCK_SIZE).append("=").append(blockSize).append("\n");
+        sb.append(MAX_OPEN_FILES).append("=").append(maxOpenFiles).append("\n");
+        sb.append(COMPRESSION).append("=").append(compression).append("\n");
+        try {
+            FileUtils.writeStringToFile(file, sb.toString(), StandardCharsets.UTF_8);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[cacheSize=" + cacheSize + ", writeBufferSize=" + writeBufferSize
+                + ", blockSize=" + blockSize + ", maxOpenFiles=" + maxOpenFiles + ", compression=" + compression + "]";
+    }
+
+}
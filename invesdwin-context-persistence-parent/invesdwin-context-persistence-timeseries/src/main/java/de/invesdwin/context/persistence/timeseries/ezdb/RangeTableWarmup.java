@@ -0,0 +1,125 @@
+package de.invesdwin.context.persistence.timeseries.ezdb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.log.Log;
+import de.invesdwin.context.log.error.Err;
+import de.invesdwin.util.concurrent.Executors;
+import de.invesdwin.util.concurrent.WrappedExecutorService;
+import de.invesdwin.util.concurrent.future.Futures;
+import de.invesdwin.util.time.Instant;
+import de.invesdwin.util.time.duration.Duration;
+
+/**
+ * Opens a set of range tables in parallel in the background, so that a process that uses lots of tables does not pay
+ * the serialized open latency of each table during the first queries. Tables that are accessed before they were warmed
+ * up are simply opened by the accessing thread as usual.
+ *
+ * Failures are only logged, the table will try to open itself again on the next access.
+ */
+@ThreadSafe
+public class RangeTableWarmup {
+
+    private static final WrappedExecutorService EXECUTOR = Executors
+            .newFixedThreadPool(RangeTableWarmup.class.getSimpleName(), Executors.getCpuThreadPoolCount());
+
+    private final Log log = new Log(this);
+    private final List<ADelegateRangeTable<?, ?, ?>> tables;
+    private final AtomicInteger remaining;
+    @GuardedBy("this")
+    private final Map<String, Duration> table_openDuration = new LinkedHashMap<String, Duration>();
+    @GuardedBy("this")
+    private List<Future<?>> futures;
+    private volatile Instant start;
+    private volatile Duration duration;
+
+    public RangeTableWarmup(final Collection<? extends ADelegateRangeTable<?, ?, ?>> tables) {
+        this.tables = new ArrayList<ADelegateRangeTable<?, ?, ?>>(tables);
+        this.remaining = new AtomicInteger(this.tables.size());
+    }
+
+    /**
+     * Can only be called once.
+     */
+    public synchronized RangeTableWarmup start() {
+        if (futures != null) {
+            throw new IllegalStateException("already started");
+        }
+        start = new Instant();
+        futures = new ArrayList<Future<?>>(tables.size());
+        for (final ADelegateRangeTable<?, ?, ?> table : tables) {
+            futures.add(EXECUTOR.submit(new Runnable() {
+                @Override
+                public void run() {
+                    open(table);
+                }
+            }));
+        }
+        if (tables.isEmpty()) {
+            duration = start.toDuration();
+        }
+        return this;
+    }
+
+    private void open(final ADelegateRangeTable<?, ?, ?> table) {
+        try {
+            table.open();
+            synchronized (this) {
+                table_openDuration.put(table.getDirectory() + "/" + table.getName(), table.getOpenDuration());
+            }
+        } catch (final Throwable t) {
+            Err.process(new RuntimeException("Warmup of table [" + table.getName() + "] failed", t));
+        } finally {
+            if (remaining.decrementAndGet() == 0) {
+                duration = start.toDuration();
+                log.info("Warmed up %s range tables in %s", tables.size(), duration);
+            }
+        }
+    }
+
+    /**
+     * Blocks until all tables were opened.
+     */
+    public void awaitFinished() throws InterruptedException {
+        final List<Future<?>> futuresCopy;
+        synchronized (this) {
+            if (futures == null) {
+                throw new IllegalStateException("not started");
+            }
+            futuresCopy = futures;
+        }
+        for (final Future<?> future : futuresCopy) {
+            Futures.wait(future);
+        }
+    }
+
+    public boolean isFinished() {
+        return duration != null;
+    }
+
+    /**
+     * The total wall clock time of the warmup, null while it is still running.
+     */
+    public Duration getDuration() {
+        return duration;
+    }
+
+    /**
+     * The open durations of the tables that were opened by the warmup, tables that were already open before report
+     * the duration of their earlier open.
+     */
+    public synchronized Map<String, Duration> getOpenDurations() {
+        return Collections.unmodifiableMap(new LinkedHashMap<String, Duration>(table_openDuration));
+    }
+
+}
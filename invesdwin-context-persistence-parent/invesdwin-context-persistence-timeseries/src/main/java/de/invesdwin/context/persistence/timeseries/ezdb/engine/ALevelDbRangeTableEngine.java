@@ -0,0 +1,83 @@
+package de.invesdwin.context.persistence.timeseries.ezdb.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map.Entry;
+
+import javax.annotation.concurrent.Immutable;
+
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.DBFactory;
+import org.iq80.leveldb.DBIterator;
+import org.iq80.leveldb.Options;
+
+import de.invesdwin.context.log.Log;
+import de.invesdwin.context.persistence.timeseries.ezdb.RangeTableOptions;
+import de.invesdwin.util.error.Throwables;
+import ezdb.Db;
+import ezdb.leveldb.EzLevelDb;
+import ezdb.leveldb.EzLevelDbJniFactory;
+
+@Immutable
+public abstract class ALevelDbRangeTableEngine implements IRangeTableEngine {
+
+    private static final Log LOG = new Log(ALevelDbRangeTableEngine.class.getName());
+
+    protected abstract DBFactory getFactory();
+
+    @Override
+    public Db newDb(final File directory, final RangeTableOptions rangeTableOptions,
+            final IRangeTableEngineCallback callback) {
+        final DBFactory factory = getFactory();
+        return new EzLevelDb(directory, new EzLevelDbJniFactory() {
+            @Override
+            public DB open(final File path, final Options options) throws IOException {
+                options.verifyChecksums(false);
+                options.paranoidChecks(false);
+                rangeTableOptions.apply(options);
+                final DB open = factory.open(path, options);
+                try {
+                    //do some sanity checks just to be safe
+                    try (DBIterator iterator = open.iterator()) {
+                        iterator.seekToFirst();
+                        if (iterator.hasNext()) {
+                            final Entry<byte[], byte[]> next = iterator.next();
+                            callback.validateRow(next);
+                        }
+                        iterator.seekToLast();
+                        if (iterator.hasPrev()) {
+                            final Entry<byte[], byte[]> prev = iterator.prev();
+                            callback.validateRow(prev);
+                        }
+                    }
+                    callback.onRawAccessOpened(new LevelDbRangeTableRawAccess(open));
+                } catch (final Throwable t) {
+                    open.close();
+                    throw Throwables.propagate(t);
+                }
+                writeOptions(path, rangeTableOptions);
+                return open;
+            }
+
+            @Override
+            public void destroy(final File path, final Options options) throws IOException {
+                factory.destroy(path, options);
+            }
+        });
+    }
+
+    /**
+     * The options are only informational, thus they are written next to the table directory instead of inside the
+     * LevelDB directory and failing to write them does not affect the table.
+     */
+    private static void writeOptions(final File path, final RangeTableOptions rangeTableOptions) {
+        final File file = new File(path.getParentFile(),
+                path.getName() + "." + RangeTableOptions.class.getSimpleName());
+        try {
+            rangeTableOptions.write(file);
+        } catch (final Throwable t) {
+            LOG.warn("Unable to write [%s]: %s", file, t.toString());
+        }
+    }
+
+}
@@ -0,0 +1,19 @@
+package de.invesdwin.context.persistence.timeseries.ezdb.engine;
+
+import java.io.File;
+
+import de.invesdwin.context.persistence.timeseries.ezdb.RangeTableOptions;
+import ezdb.Db;
+
+/**
+ * Storage engine that backs an ADelegateRangeTable. Any ordered key value store can be plugged in as long as it is
+ * exposed as an ezdb Db, so that the RangeTable semantics, iterators and batches stay the same.
+ */
+public interface IRangeTableEngine {
+
+    /**
+     * Engines that are not based on LevelDB may ignore the options.
+     */
+    Db newDb(File directory, RangeTableOptions options, IRangeTableEngineCallback callback);
+
+}
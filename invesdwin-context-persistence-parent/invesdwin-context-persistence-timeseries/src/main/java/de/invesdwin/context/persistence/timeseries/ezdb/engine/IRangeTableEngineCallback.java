@@ -0,0 +1,19 @@
+package de.invesdwin.context.persistence.timeseries.ezdb.engine;
+
+import java.util.Map.Entry;
+
+public interface IRangeTableEngineCallback {
+
+    /**
+     * Should be called with the first and the last raw row of an existing table when it gets opened. Throws an
+     * exception when the data can not be deserialized anymore.
+     */
+    void validateRow(Entry<byte[], byte[]> rawRow);
+
+    /**
+     * Engines that support snapshots and raw iteration expose them here after the table got opened, so that the table
+     * can use features that are not available via ezdb. Other engines do not call this.
+     */
+    void onRawAccessOpened(IRangeTableRawAccess rawAccess);
+
+}
@@ -0,0 +1,28 @@
+package de.invesdwin.context.persistence.timeseries.ezdb.engine;
+
+import java.util.List;
+
+/**
+ * Gives access to features of an engine that are not available via ezdb. The keys are the raw combined hash and range
+ * keys as they are stored by ezdb.
+ */
+public interface IRangeTableRawAccess {
+
+    /**
+     * Iterates over a consistent snapshot of the table starting at fromRawKey (or the first row if null) without
+     * blocking concurrent writes. Long scans should not evict hot data from the caches of the engine.
+     */
+    IRawRowIterator newSnapshotIterator(byte[] fromRawKey);
+
+    /**
+     * Iterates over the current rows of the table starting at fromRawKey (or the first row if null) without filling the
+     * caches of the engine.
+     */
+    IRawRowIterator newIterator(byte[] fromRawKey);
+
+    /**
+     * Deletes the given raw keys atomically.
+     */
+    void deleteRawKeys(List<byte[]> rawKeys);
+
+}
@@ -0,0 +1,15 @@
+package de.invesdwin.context.persistence.timeseries.ezdb.engine;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+/**
+ * Iterates over the raw rows of a table in key order. Needs to be closed to release the resources of the engine.
+ */
+public interface IRawRowIterator extends Iterator<Entry<byte[], byte[]>>, Closeable {
+
+    @Override
+    void close();
+
+}
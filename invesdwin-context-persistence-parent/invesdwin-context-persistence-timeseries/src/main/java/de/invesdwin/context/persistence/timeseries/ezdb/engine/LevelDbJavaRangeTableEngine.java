@@ -0,0 +1,39 @@
+package de.invesdwin.context.persistence.timeseries.ezdb.engine;
+
+import javax.annotation.concurrent.Immutable;
+
+import org.iq80.leveldb.DBFactory;
+
+import de.invesdwin.util.lang.Reflections;
+
+/**
+ * Uses the pure java port of LevelDB for platforms where the native library is not available. The port
+ * (org.iq80.leveldb:leveldb) needs to be added to the classpath for this engine to work.
+ */
+@Immutable
+public final class LevelDbJavaRangeTableEngine extends ALevelDbRangeTableEngine {
+
+    public static final LevelDbJavaRangeTableEngine INSTANCE = new LevelDbJavaRangeTableEngine();
+
+    private static final String FACTORY_CLASS = "org.iq80.leveldb.impl.Iq80DBFactory";
+
+    private LevelDbJavaRangeTableEngine() {}
+
+    public static boolean isAvailable() {
+        return Reflections.classExists(FACTORY_CLASS);
+    }
+
+    @Override
+    protected DBFactory getFactory() {
+        if (!isAvailable()) {
+            throw new IllegalStateException(
+                    "Pure java LevelDB is not available, please add org.iq80.leveldb:leveldb to the classpath");
+        }
+        try {
+            return (DBFactory) Class.forName(FACTORY_CLASS).getField("factory").get(null);
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
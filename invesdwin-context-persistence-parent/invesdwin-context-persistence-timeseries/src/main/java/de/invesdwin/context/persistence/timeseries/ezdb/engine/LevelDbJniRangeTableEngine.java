@@ -0,0 +1,23 @@
+package de.invesdwin.context.persistence.timeseries.ezdb.engine;
+
+import javax.annotation.concurrent.Immutable;
+
+import org.fusesource.leveldbjni.JniDBFactory;
+import org.iq80.leveldb.DBFactory;
+
+/**
+ * Default engine that uses the native LevelDB library.
+ */
+@Immutable
+public final class LevelDbJniRangeTableEngine extends ALevelDbRangeTableEngine {
+
+    public static final LevelDbJniRangeTableEngine INSTANCE = new LevelDbJniRangeTableEngine();
+
+    private LevelDbJniRangeTableEngine() {}
+
+    @Override
+    protected DBFactory getFactory() {
+        return JniDBFactory.factory;
+    }
+
+}
@@ -0,0 +1,107 @@
+package de.invesdwin.context.persistence.timeseries.ezdb.engine;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map.Entry;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.DBIterator;
+import org.iq80.leveldb.ReadOptions;
+import org.iq80.leveldb.Snapshot;
+import org.iq80.leveldb.WriteBatch;
+
+@Immutable
+class LevelDbRangeTableRawAccess implements IRangeTableRawAccess {
+
+    private final DB db;
+
+    LevelDbRangeTableRawAccess(final DB db) {
+        this.db = db;
+    }
+
+    @Override
+    public IRawRowIterator newSnapshotIterator(final byte[] fromRawKey) {
+        final Snapshot snapshot = db.getSnapshot();
+        try {
+            //long scans should not evict the hot blocks from the cache
+            final DBIterator iterator = db.iterator(new ReadOptions().snapshot(snapshot).fillCache(false));
+            return new LevelDbRawRowIterator(iterator, snapshot, fromRawKey);
+        } catch (final Throwable t) {
+            closeQuietly(snapshot);
+            throw t;
+        }
+    }
+
+    @Override
+    public IRawRowIterator newIterator(final byte[] fromRawKey) {
+        final DBIterator iterator = db.iterator(new ReadOptions().fillCache(false));
+        return new LevelDbRawRowIterator(iterator, null, fromRawKey);
+    }
+
+    @Override
+    public void deleteRawKeys(final List<byte[]> rawKeys) {
+        if (rawKeys.isEmpty()) {
+            return;
+        }
+        try (WriteBatch batch = db.createWriteBatch()) {
+            for (int i = 0; i < rawKeys.size(); i++) {
+                batch.delete(rawKeys.get(i));
+            }
+            db.write(batch);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void closeQuietly(final Snapshot snapshot) {
+        try {
+            snapshot.close();
+        } catch (final IOException e) {
+            //ignore
+        }
+    }
+
+    @NotThreadSafe
+    private static final class LevelDbRawRowIterator implements IRawRowIterator {
+
+        private final DBIterator iterator;
+        private final Snapshot snapshot;
+
+        private LevelDbRawRowIterator(final DBIterator iterator, final Snapshot snapshot, final byte[] fromRawKey) {
+            this.iterator = iterator;
+            this.snapshot = snapshot;
+            if (fromRawKey == null) {
+                iterator.seekToFirst();
+            } else {
+                iterator.seek(fromRawKey);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public Entry<byte[], byte[]> next() {
+            return iterator.next();
+        }
+
+        @Override
+        public void close() {
+            try {
+                iterator.close();
+                if (snapshot != null) {
+                    snapshot.close();
+                }
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,142 @@
+package de.invesdwin.context.persistence.timeseries.ezdb.engine;
+
+import java.io.File;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.commons.io.FileUtils;
+import org.lmdbjava.ByteArrayProxy;
+import org.lmdbjava.Dbi;
+import org.lmdbjava.DbiFlags;
+import org.lmdbjava.Env;
+import org.lmdbjava.EnvFlags;
+
+import de.invesdwin.util.error.Throwables;
+import ezdb.Db;
+import ezdb.RangeTable;
+import ezdb.Table;
+import ezdb.comparator.LexicographicalComparator;
+import ezdb.serde.Serde;
+
+/**
+ * Opens one LMDB environment per table in a sub directory named like the table, the same layout as the LevelDB
+ * engines use.
+ */
+@ThreadSafe
+class LmdbDb implements Db {
+
+    private static final String DATA_FILE = "data.mdb";
+    private static final String LOCK_FILE = "lock.mdb";
+
+    private final File root;
+    private final long mapSize;
+    private final int maxReaders;
+    private final IRangeTableEngineCallback callback;
+    @GuardedBy("this")
+    private final Map<String, LmdbRangeTable<?, ?, ?>> tables = new HashMap<String, LmdbRangeTable<?, ?, ?>>();
+
+    LmdbDb(final File root, final long mapSize, final int maxReaders, final IRangeTableEngineCallback callback) {
+        this.root = root;
+        this.mapSize = mapSize;
+        this.maxReaders = maxReaders;
+        this.callback = callback;
+    }
+
+    @Override
+    public <H, V> Table<H, V> getTable(final String tableName, final Serde<H> hashKeySerde,
+            final Serde<V> valueSerde) {
+        return getTable(tableName, hashKeySerde, valueSerde, new LexicographicalComparator());
+    }
+
+    @Override
+    public <H, V> Table<H, V> getTable(final String tableName, final Serde<H> hashKeySerde,
+            final Serde<V> valueSerde, final Comparator<byte[]> hashKeyComparator) {
+        return getTable(tableName, hashKeySerde, null, valueSerde, hashKeyComparator, new LexicographicalComparator());
+    }
+
+    @Override
+    public <H, R, V> RangeTable<H, R, V> getTable(final String tableName, final Serde<H> hashKeySerde,
+            final Serde<R> rangeKeySerde, final Serde<V> valueSerde) {
+        return getTable(tableName, hashKeySerde, rangeKeySerde, valueSerde, new LexicographicalComparator(),
+                new LexicographicalComparator());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public synchronized <H, R, V> RangeTable<H, R, V> getTable(final String tableName, final Serde<H> hashKeySerde,
+            final Serde<R> rangeKeySerde, final Serde<V> valueSerde, final Comparator<byte[]> hashKeyComparator,
+            final Comparator<byte[]> rangeKeyComparator) {
+        LmdbRangeTable<?, ?, ?> table = tables.get(tableName);
+        if (table == null) {
+            final LmdbRangeTableRawAccess rawAccess = open(tableName,
+                    new LmdbKeyComparator(hashKeyComparator, rangeKeyComparator));
+            table = new LmdbRangeTable<H, R, V>(this, tableName, rawAccess, hashKeySerde, rangeKeySerde, valueSerde);
+            tables.put(tableName, table);
+        }
+        return (RangeTable<H, R, V>) table;
+    }
+
+    private LmdbRangeTableRawAccess open(final String tableName, final LmdbKeyComparator keyComparator) {
+        final File directory = new File(root, tableName);
+        try {
+            FileUtils.forceMkdir(directory);
+        } catch (final Throwable t) {
+            throw Throwables.propagate(t);
+        }
+        final Env<byte[]> env = Env.create(ByteArrayProxy.PROXY_BA)
+                .setMapSize(mapSize)
+                .setMaxDbs(1)
+                .setMaxReaders(maxReaders)
+                .open(directory, EnvFlags.MDB_NOTLS, EnvFlags.MDB_NOSYNC);
+        try {
+            final Dbi<byte[]> dbi = env.openDbi((String) null, keyComparator, DbiFlags.MDB_CREATE);
+            final LmdbRangeTableRawAccess rawAccess = new LmdbRangeTableRawAccess(env, dbi, keyComparator);
+            //do some sanity checks just to be safe
+            validateRow(rawAccess.newReadIterator(false).seek(null));
+            validateRow(rawAccess.newReadIterator(true).seek(null));
+            callback.onRawAccessOpened(rawAccess);
+            return rawAccess;
+        } catch (final Throwable t) {
+            env.close();
+            throw Throwables.propagate(t);
+        }
+    }
+
+    private void validateRow(final LmdbRawRowIterator rawRows) {
+        try {
+            if (rawRows.hasNext()) {
+                callback.validateRow(rawRows.next());
+            }
+        } finally {
+            rawRows.close();
+        }
+    }
+
+    /**
+     * Only deletes the LMDB files, other files next to them belong to the caller.
+     */
+    @Override
+    public void deleteTable(final String tableName) {
+        final LmdbRangeTable<?, ?, ?> table;
+        synchronized (this) {
+            table = tables.get(tableName);
+        }
+        if (table != null) {
+            table.close();
+        }
+        final File directory = new File(root, tableName);
+        FileUtils.deleteQuietly(new File(directory, DATA_FILE));
+        FileUtils.deleteQuietly(new File(directory, LOCK_FILE));
+    }
+
+    synchronized void onTableClosed(final String tableName, final LmdbRangeTable<?, ?, ?> table) {
+        if (tables.get(tableName) == table) {
+            tables.remove(tableName);
+        }
+    }
+
+}
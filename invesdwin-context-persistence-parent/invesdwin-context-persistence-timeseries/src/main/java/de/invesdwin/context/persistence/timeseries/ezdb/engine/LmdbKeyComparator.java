@@ -0,0 +1,33 @@
+package de.invesdwin.context.persistence.timeseries.ezdb.engine;
+
+import java.util.Comparator;
+
+import javax.annotation.concurrent.Immutable;
+
+import ezdb.util.Util;
+
+/**
+ * Orders the raw combined keys the same way as ezdb does for LevelDB, so that the tables behave the same on both
+ * engines.
+ */
+@Immutable
+final class LmdbKeyComparator implements Comparator<byte[]> {
+
+    private final Comparator<byte[]> hashKeyComparator;
+    private final Comparator<byte[]> rangeKeyComparator;
+
+    LmdbKeyComparator(final Comparator<byte[]> hashKeyComparator, final Comparator<byte[]> rangeKeyComparator) {
+        this.hashKeyComparator = hashKeyComparator;
+        this.rangeKeyComparator = rangeKeyComparator;
+    }
+
+    @Override
+    public int compare(final byte[] k1, final byte[] k2) {
+        return Util.compareKeys(hashKeyComparator, rangeKeyComparator, k1, k2);
+    }
+
+    public boolean isSameHashKey(final byte[] k1, final byte[] k2) {
+        return Util.compareKeys(hashKeyComparator, null, k1, k2) == 0;
+    }
+
+}
@@ -0,0 +1,378 @@
+package de.invesdwin.context.persistence.timeseries.ezdb.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.lmdbjava.Txn;
+
+import de.invesdwin.util.error.FastNoSuchElementException;
+import ezdb.RangeTable;
+import ezdb.RawTableRow;
+import ezdb.TableIterator;
+import ezdb.TableRow;
+import ezdb.batch.Batch;
+import ezdb.batch.RangeBatch;
+import ezdb.serde.Serde;
+import ezdb.util.Util;
+
+/**
+ * Implements the ezdb semantics on top of LMDB with the same raw key format as the LevelDB tables. Rows without a
+ * range key sort before the rows with a range key of the same hash key. Reverse ranges start at the last row at or
+ * before the from range key.
+ */
+@ThreadSafe
+class LmdbRangeTable<H, R, V> implements RangeTable<H, R, V> {
+
+    private static final byte[] EMPTY_BYTES = new byte[0];
+
+    private final LmdbDb db;
+    private final String tableName;
+    private final LmdbRangeTableRawAccess rawAccess;
+    private final LmdbKeyComparator keyComparator;
+    private final Serde<H> hashKeySerde;
+    private final Serde<R> rangeKeySerde;
+    private final Serde<V> valueSerde;
+    private volatile boolean closed;
+
+    LmdbRangeTable(final LmdbDb db, final String tableName, final LmdbRangeTableRawAccess rawAccess,
+            final Serde<H> hashKeySerde, final Serde<R> rangeKeySerde, final Serde<V> valueSerde) {
+        this.db = db;
+        this.tableName = tableName;
+        this.rawAccess = rawAccess;
+        this.keyComparator = rawAccess.getKeyComparator();
+        this.hashKeySerde = hashKeySerde;
+        this.rangeKeySerde = rangeKeySerde;
+        this.valueSerde = valueSerde;
+    }
+
+    @Override
+    public void put(final H hashKey, final V value) {
+        put(hashKey, null, value);
+    }
+
+    @Override
+    public void put(final H hashKey, final R rangeKey, final V value) {
+        rawAccess.write(Collections.singletonList(newRawKey(hashKey, rangeKey)),
+                Collections.singletonList(valueSerde.toBytes(value)));
+    }
+
+    @Override
+    public V get(final H hashKey) {
+        return get(hashKey, null);
+    }
+
+    @Override
+    public V get(final H hashKey, final R rangeKey) {
+        final byte[] rawValue = rawAccess.get(newRawKey(hashKey, rangeKey));
+        if (rawValue == null) {
+            return null;
+        }
+        return valueSerde.fromBytes(rawValue);
+    }
+
+    @Override
+    public TableRow<H, R, V> getLatest(final H hashKey) {
+        return getLatest(hashKey, null);
+    }
+
+    /**
+     * Returns the last row at or before the range key, or the first row after it if there is none before.
+     */
+    @Override
+    public TableRow<H, R, V> getLatest(final H hashKey, final R rangeKey) {
+        final TableRow<H, R, V> prev = getPrev(hashKey, rangeKey);
+        if (prev != null || rangeKey == null) {
+            return prev;
+        }
+        return getNext(hashKey, rangeKey);
+    }
+
+    @Override
+    public TableRow<H, R, V> getNext(final H hashKey, final R rangeKey) {
+        return first(range(hashKey, rangeKey));
+    }
+
+    @Override
+    public TableRow<H, R, V> getPrev(final H hashKey, final R rangeKey) {
+        return first(rangeReverse(hashKey, rangeKey));
+    }
+
+    private TableRow<H, R, V> first(final TableIterator<H, R, V> iterator) {
+        try {
+            if (iterator.hasNext()) {
+                return iterator.next();
+            } else {
+                return null;
+            }
+        } finally {
+            iterator.close();
+        }
+    }
+
+    @Override
+    public TableIterator<H, R, V> range(final H hashKey) {
+        return range(hashKey, null, null);
+    }
+
+    @Override
+    public TableIterator<H, R, V> range(final H hashKey, final R fromRangeKey) {
+        return range(hashKey, fromRangeKey, null);
+    }
+
+    @Override
+    public TableIterator<H, R, V> range(final H hashKey, final R fromRangeKey, final R toRangeKey) {
+        final byte[] hashKeyBytes = hashKeySerde.toBytes(hashKey);
+        final LmdbRawRowIterator rawRows = rawAccess.newReadIterator(false)
+                .seek(newRawKey(hashKeyBytes, fromRangeKey));
+        return new LmdbTableIterator(rawRows, hashKeyBytes, toRangeKey, false);
+    }
+
+    @Override
+    public TableIterator<H, R, V> rangeReverse(final H hashKey) {
+        return rangeReverse(hashKey, null, null);
+    }
+
+    @Override
+    public TableIterator<H, R, V> rangeReverse(final H hashKey, final R fromRangeKey) {
+        return rangeReverse(hashKey, fromRangeKey, null);
+    }
+
+    @Override
+    public TableIterator<H, R, V> rangeReverse(final H hashKey, final R fromRangeKey, final R toRangeKey) {
+        final byte[] hashKeyBytes = hashKeySerde.toBytes(hashKey);
+        final LmdbRawRowIterator rawRows = rawAccess.newReadIterator(true);
+        if (fromRangeKey == null) {
+            rawRows.seekToLastRowOfHashKey(newRawKey(hashKeyBytes, null));
+        } else {
+            rawRows.seek(newRawKey(hashKeyBytes, fromRangeKey));
+        }
+        return new LmdbTableIterator(rawRows, hashKeyBytes, toRangeKey, true);
+    }
+
+    @Override
+    public void delete(final H hashKey) {
+        delete(hashKey, null);
+    }
+
+    @Override
+    public void delete(final H hashKey, final R rangeKey) {
+        rawAccess.write(Collections.singletonList(newRawKey(hashKey, rangeKey)),
+                Collections.<byte[]> singletonList(null));
+    }
+
+    @Override
+    public void deleteRange(final H hashKey) {
+        deleteRange(hashKey, null, null);
+    }
+
+    @Override
+    public void deleteRange(final H hashKey, final R fromRangeKey) {
+        deleteRange(hashKey, fromRangeKey, null);
+    }
+
+    /**
+     * Deletes the rows of the forward range inside a single write transaction.
+     */
+    @Override
+    public void deleteRange(final H hashKey, final R fromRangeKey, final R toRangeKey) {
+        final byte[] hashKeyBytes = hashKeySerde.toBytes(hashKey);
+        final byte[] hashKeyRawKey = newRawKey(hashKeyBytes, null);
+        final byte[] toRawKey = newToRawKey(hashKeyBytes, toRangeKey);
+        try (Txn<byte[]> txn = rawAccess.newWriteTxn()) {
+            final List<byte[]> deleteRawKeys = new ArrayList<byte[]>();
+            try (LmdbRawRowIterator rawRows = rawAccess.newWriteIterator(txn)) {
+                rawRows.seek(newRawKey(hashKeyBytes, fromRangeKey));
+                while (rawRows.hasNext()) {
+                    final byte[] rawKey = rawRows.next().getKey();
+                    if (!isInRange(rawKey, hashKeyRawKey, toRawKey, false)) {
+                        break;
+                    }
+                    deleteRawKeys.add(rawKey);
+                }
+            }
+            rawAccess.write(txn, deleteRawKeys, Collections.<byte[]> nCopies(deleteRawKeys.size(), null));
+            txn.commit();
+        }
+    }
+
+    @Override
+    public Batch<H, V> newBatch() {
+        return newRangeBatch();
+    }
+
+    @Override
+    public RangeBatch<H, R, V> newRangeBatch() {
+        return new LmdbRangeBatch();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            rawAccess.close();
+        } finally {
+            db.onTableClosed(tableName, this);
+        }
+    }
+
+    private byte[] newRawKey(final H hashKey, final R rangeKey) {
+        return newRawKey(hashKeySerde.toBytes(hashKey), rangeKey);
+    }
+
+    /**
+     * A null range key gives the key of the row without a range key, which sorts before all other rows of the hash
+     * key.
+     */
+    private byte[] newRawKey(final byte[] hashKeyBytes, final R rangeKey) {
+        if (rangeKey == null) {
+            return Util.combine(hashKeyBytes, EMPTY_BYTES);
+        } else {
+            return Util.combine(hashKeyBytes, rangeKeySerde.toBytes(rangeKey));
+        }
+    }
+
+    private byte[] newToRawKey(final byte[] hashKeyBytes, final R toRangeKey) {
+        if (toRangeKey == null) {
+            return null;
+        } else {
+            return Util.combine(hashKeyBytes, rangeKeySerde.toBytes(toRangeKey));
+        }
+    }
+
+    private boolean isInRange(final byte[] rawKey, final byte[] hashKeyRawKey, final byte[] toRawKey,
+            final boolean reverse) {
+        if (!keyComparator.isSameHashKey(rawKey, hashKeyRawKey)) {
+            return false;
+        }
+        if (toRawKey == null) {
+            return true;
+        }
+        final int compare = keyComparator.compare(rawKey, toRawKey);
+        if (reverse) {
+            return compare >= 0;
+        } else {
+            return compare <= 0;
+        }
+    }
+
+    /**
+     * Closes the read transaction as soon as the end of the range is reached.
+     */
+    @NotThreadSafe
+    private final class LmdbTableIterator implements TableIterator<H, R, V> {
+
+        private final LmdbRawRowIterator rawRows;
+        private final byte[] hashKeyRawKey;
+        private final byte[] toRawKey;
+        private final boolean reverse;
+        private TableRow<H, R, V> nextRow;
+        private boolean end;
+
+        private LmdbTableIterator(final LmdbRawRowIterator rawRows, final byte[] hashKeyBytes, final R toRangeKey,
+                final boolean reverse) {
+            this.rawRows = rawRows;
+            this.hashKeyRawKey = newRawKey(hashKeyBytes, null);
+            this.toRawKey = newToRawKey(hashKeyBytes, toRangeKey);
+            this.reverse = reverse;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return readNext() != null;
+        }
+
+        @Override
+        public TableRow<H, R, V> next() {
+            final TableRow<H, R, V> row = readNext();
+            if (row == null) {
+                throw new FastNoSuchElementException("LmdbTableIterator end reached");
+            }
+            nextRow = null;
+            return row;
+        }
+
+        private TableRow<H, R, V> readNext() {
+            if (nextRow != null || end) {
+                return nextRow;
+            }
+            if (!rawRows.hasNext()) {
+                close();
+                return null;
+            }
+            final Entry<byte[], byte[]> rawRow = rawRows.next();
+            if (!isInRange(rawRow.getKey(), hashKeyRawKey, toRawKey, reverse)) {
+                close();
+                return null;
+            }
+            nextRow = new RawTableRow<H, R, V>(rawRow, hashKeySerde, rangeKeySerde, valueSerde);
+            return nextRow;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            end = true;
+            rawRows.close();
+        }
+
+    }
+
+    /**
+     * Collects the changes and writes them in a single transaction on flush, a null value marks a delete.
+     */
+    @NotThreadSafe
+    private final class LmdbRangeBatch implements RangeBatch<H, R, V> {
+
+        private final List<byte[]> rawKeys = new ArrayList<byte[]>();
+        private final List<byte[]> rawValues = new ArrayList<byte[]>();
+
+        @Override
+        public void put(final H hashKey, final V value) {
+            put(hashKey, null, value);
+        }
+
+        @Override
+        public void put(final H hashKey, final R rangeKey, final V value) {
+            rawKeys.add(newRawKey(hashKey, rangeKey));
+            rawValues.add(valueSerde.toBytes(value));
+        }
+
+        @Override
+        public void delete(final H hashKey) {
+            delete(hashKey, null);
+        }
+
+        @Override
+        public void delete(final H hashKey, final R rangeKey) {
+            rawKeys.add(newRawKey(hashKey, rangeKey));
+            rawValues.add(null);
+        }
+
+        @Override
+        public void flush() {
+            rawAccess.write(rawKeys, rawValues);
+            rawKeys.clear();
+            rawValues.clear();
+        }
+
+        @Override
+        public void close() {
+            rawKeys.clear();
+            rawValues.clear();
+        }
+
+    }
+
+}
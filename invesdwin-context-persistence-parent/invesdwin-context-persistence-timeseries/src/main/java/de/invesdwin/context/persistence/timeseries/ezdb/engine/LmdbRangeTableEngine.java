@@ -0,0 +1,60 @@
+package de.invesdwin.context.persistence.timeseries.ezdb.engine;
+
+import java.io.File;
+
+import javax.annotation.concurrent.Immutable;
+
+import de.invesdwin.context.persistence.timeseries.ezdb.RangeTableOptions;
+import de.invesdwin.util.lang.Reflections;
+import ezdb.Db;
+
+/**
+ * Uses LMDB, which memory maps the table and serves reads from the page cache without copying them through a block
+ * cache of its own. The library (org.lmdbjava:lmdbjava) needs to be added to the classpath for this engine to work.
+ *
+ * The map size limits how large a single table can grow. On Linux it only reserves address space, on Windows the file
+ * gets preallocated to that size. LMDB allows keys up to 511 bytes. The RangeTableOptions are LevelDB specific and
+ * are ignored. Like the LevelDB engines, writes are not synced to disk on each commit.
+ */
+@Immutable
+public final class LmdbRangeTableEngine implements IRangeTableEngine {
+
+    public static final long DEFAULT_MAP_SIZE = 8L * 1024L * 1024L * 1024L;
+    /**
+     * Each open iterator holds a reader slot until it is closed.
+     */
+    public static final int DEFAULT_MAX_READERS = 1024;
+    public static final LmdbRangeTableEngine INSTANCE = new LmdbRangeTableEngine(DEFAULT_MAP_SIZE,
+            DEFAULT_MAX_READERS);
+
+    private static final String ENV_CLASS = "org.lmdbjava.Env";
+
+    private final long mapSize;
+    private final int maxReaders;
+
+    public LmdbRangeTableEngine(final long mapSize, final int maxReaders) {
+        this.mapSize = mapSize;
+        this.maxReaders = maxReaders;
+    }
+
+    public static boolean isAvailable() {
+        return Reflections.classExists(ENV_CLASS);
+    }
+
+    public long getMapSize() {
+        return mapSize;
+    }
+
+    public int getMaxReaders() {
+        return maxReaders;
+    }
+
+    @Override
+    public Db newDb(final File directory, final RangeTableOptions options, final IRangeTableEngineCallback callback) {
+        if (!isAvailable()) {
+            throw new IllegalStateException("LMDB is not available, please add org.lmdbjava:lmdbjava to the classpath");
+        }
+        return new LmdbDb(directory, mapSize, maxReaders, callback);
+    }
+
+}
@@ -0,0 +1,112 @@
+package de.invesdwin.context.persistence.timeseries.ezdb.engine;
+
+import java.util.List;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.lmdbjava.Dbi;
+import org.lmdbjava.Env;
+import org.lmdbjava.Txn;
+
+/**
+ * Every read transaction of LMDB is a snapshot and LMDB has no cache that could be polluted by long scans, thus both
+ * kinds of iterators are the same. Also gives the LMDB table access to the transactions.
+ */
+@ThreadSafe
+class LmdbRangeTableRawAccess implements IRangeTableRawAccess {
+
+    private final Env<byte[]> env;
+    private final Dbi<byte[]> dbi;
+    private final LmdbKeyComparator keyComparator;
+
+    LmdbRangeTableRawAccess(final Env<byte[]> env, final Dbi<byte[]> dbi, final LmdbKeyComparator keyComparator) {
+        this.env = env;
+        this.dbi = dbi;
+        this.keyComparator = keyComparator;
+    }
+
+    public LmdbKeyComparator getKeyComparator() {
+        return keyComparator;
+    }
+
+    @Override
+    public IRawRowIterator newSnapshotIterator(final byte[] fromRawKey) {
+        return newIterator(fromRawKey);
+    }
+
+    @Override
+    public IRawRowIterator newIterator(final byte[] fromRawKey) {
+        return newReadIterator(false).seek(fromRawKey);
+    }
+
+    @Override
+    public void deleteRawKeys(final List<byte[]> rawKeys) {
+        if (rawKeys.isEmpty()) {
+            return;
+        }
+        try (Txn<byte[]> txn = env.txnWrite()) {
+            for (int i = 0; i < rawKeys.size(); i++) {
+                dbi.delete(txn, rawKeys.get(i));
+            }
+            txn.commit();
+        }
+    }
+
+    /**
+     * The returned iterator still needs to be positioned.
+     */
+    LmdbRawRowIterator newReadIterator(final boolean reverse) {
+        return new LmdbRawRowIterator(env.txnRead(), true, dbi, keyComparator, reverse);
+    }
+
+    /**
+     * Iterates inside the given write transaction, the iterator does not close the transaction.
+     */
+    LmdbRawRowIterator newWriteIterator(final Txn<byte[]> txn) {
+        return new LmdbRawRowIterator(txn, false, dbi, keyComparator, false);
+    }
+
+    Txn<byte[]> newWriteTxn() {
+        return env.txnWrite();
+    }
+
+    byte[] get(final byte[] rawKey) {
+        try (Txn<byte[]> txn = env.txnRead()) {
+            return dbi.get(txn, rawKey);
+        }
+    }
+
+    /**
+     * Writes the rows in a single transaction, a null value deletes the row.
+     */
+    void write(final List<byte[]> rawKeys, final List<byte[]> rawValues) {
+        if (rawKeys.isEmpty()) {
+            return;
+        }
+        try (Txn<byte[]> txn = env.txnWrite()) {
+            write(txn, rawKeys, rawValues);
+            txn.commit();
+        }
+    }
+
+    void write(final Txn<byte[]> txn, final List<byte[]> rawKeys, final List<byte[]> rawValues) {
+        for (int i = 0; i < rawKeys.size(); i++) {
+            final byte[] rawValue = rawValues.get(i);
+            if (rawValue == null) {
+                dbi.delete(txn, rawKeys.get(i));
+            } else {
+                dbi.put(txn, rawKeys.get(i), rawValue);
+            }
+        }
+    }
+
+    void close() {
+        try {
+            //writes are not synced on commit, thus persist them before the table is closed
+            env.sync(true);
+        } finally {
+            env.close();
+        }
+    }
+
+}
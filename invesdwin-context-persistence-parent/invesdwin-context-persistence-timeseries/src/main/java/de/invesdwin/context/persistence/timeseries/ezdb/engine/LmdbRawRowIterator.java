@@ -0,0 +1,128 @@
+package de.invesdwin.context.persistence.timeseries.ezdb.engine;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Map.Entry;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.lmdbjava.Cursor;
+import org.lmdbjava.Dbi;
+import org.lmdbjava.GetOp;
+import org.lmdbjava.Txn;
+
+import de.invesdwin.util.error.FastNoSuchElementException;
+import de.invesdwin.util.error.Throwables;
+
+/**
+ * Iterates with a cursor in one direction. Read transactions are snapshots in LMDB, thus the iterator sees a
+ * consistent view of the table until it is closed.
+ */
+@NotThreadSafe
+final class LmdbRawRowIterator implements IRawRowIterator {
+
+    private final Txn<byte[]> txn;
+    private final boolean ownsTxn;
+    private final Cursor<byte[]> cursor;
+    private final LmdbKeyComparator keyComparator;
+    private final boolean reverse;
+    private Entry<byte[], byte[]> nextRow;
+    private boolean closed;
+
+    /**
+     * The transaction is closed together with the iterator when ownsTxn is true. Call one of the seek methods before
+     * iterating.
+     */
+    LmdbRawRowIterator(final Txn<byte[]> txn, final boolean ownsTxn, final Dbi<byte[]> dbi,
+            final LmdbKeyComparator keyComparator, final boolean reverse) {
+        this.txn = txn;
+        this.ownsTxn = ownsTxn;
+        this.keyComparator = keyComparator;
+        this.reverse = reverse;
+        try {
+            this.cursor = dbi.openCursor(txn);
+        } catch (final Throwable t) {
+            if (ownsTxn) {
+                txn.close();
+            }
+            throw Throwables.propagate(t);
+        }
+    }
+
+    /**
+     * Positions at the first row at or after fromRawKey, or at or before it when iterating in reverse. Null positions
+     * at the first or the last row of the table.
+     */
+    LmdbRawRowIterator seek(final byte[] fromRawKey) {
+        final boolean found;
+        if (fromRawKey == null) {
+            found = reverse ? cursor.last() : cursor.first();
+        } else if (cursor.get(fromRawKey, GetOp.MDB_SET_RANGE)) {
+            if (reverse && keyComparator.compare(cursor.key(), fromRawKey) > 0) {
+                found = cursor.prev();
+            } else {
+                found = true;
+            }
+        } else {
+            //all rows are before fromRawKey
+            found = reverse && cursor.last();
+        }
+        nextRow = found ? currentRow() : null;
+        return this;
+    }
+
+    /**
+     * Positions at the last row of the hash key. No raw key sorts after all range keys of a hash key, thus the rows of
+     * the hash key are skipped in key order like ezdb does for LevelDB. Positions at a row of a different hash key when
+     * the hash key has no rows.
+     */
+    LmdbRawRowIterator seekToLastRowOfHashKey(final byte[] hashKeyRawKey) {
+        boolean found = cursor.get(hashKeyRawKey, GetOp.MDB_SET_RANGE);
+        while (found && keyComparator.isSameHashKey(cursor.key(), hashKeyRawKey)) {
+            found = cursor.next();
+        }
+        if (found) {
+            found = cursor.prev();
+        } else {
+            found = cursor.last();
+        }
+        nextRow = found ? currentRow() : null;
+        return this;
+    }
+
+    private Entry<byte[], byte[]> currentRow() {
+        return new SimpleImmutableEntry<byte[], byte[]>(cursor.key(), cursor.val());
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextRow != null;
+    }
+
+    @Override
+    public Entry<byte[], byte[]> next() {
+        final Entry<byte[], byte[]> row = nextRow;
+        if (row == null) {
+            throw new FastNoSuchElementException("LmdbRawRowIterator end reached");
+        }
+        final boolean found = reverse ? cursor.prev() : cursor.next();
+        nextRow = found ? currentRow() : null;
+        return row;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        nextRow = null;
+        try {
+            cursor.close();
+        } finally {
+            if (ownsTxn) {
+                txn.close();
+            }
+        }
+    }
+
+}
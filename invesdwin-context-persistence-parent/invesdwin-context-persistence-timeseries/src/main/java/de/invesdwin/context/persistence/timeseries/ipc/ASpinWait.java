@@ -4,19 +4,56 @@ import java.io.IOException;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.locks.LockSupport;
 
-import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
 
+import de.invesdwin.util.error.UnknownArgumentException;
 import de.invesdwin.util.lang.Reflections;
 import de.invesdwin.util.time.Instant;
 import de.invesdwin.util.time.duration.Duration;
 import de.invesdwin.util.time.fdate.FTimeUnit;
 
-@Immutable
+/**
+ * When adaptive, the untimed spin budget and the park interval follow the recent fulfillment latencies: spinning is
+ * doubled each time it paid off and halved each time we had to park anyway, while the park interval grows towards
+ * maxAdaptiveParkInterval on idle channels and shrinks again when messages arrive more often. A wait that is fulfilled
+ * by the timed spins without parking keeps the spin budget as it is. A timeout says nothing about how long a message
+ * takes, thus it does not enter the average latency and only doubles the park interval.
+ *
+ * An instance should only be used by one waiting thread. The adaptive state and the counters are plain fields of that
+ * thread, they are published with lazySet after each wait that had to spin or park so that other threads can read the
+ * statistics for monitoring. A condition that is already fulfilled on the first check only publishes every
+ * FAST_PATH_PUBLISH_INTERVAL times, since publishing would cost more than the wait itself.
+ */
+@NotThreadSafe
 public abstract class ASpinWait {
 
     protected static final MethodHandle ON_SPIN_WAIT = determineOnSpinWait();
+    /**
+     * The weight of a new latency in the moving average is 1/8.
+     */
+    private static final int AVERAGE_SHIFT = 3;
+    /**
+     * Parking for 1/16 of the average latency keeps the added wake up latency small in relation.
+     */
+    private static final int PARK_INTERVAL_SHIFT = 4;
+    /**
+     * Needs to be a power of two.
+     */
+    private static final int FAST_PATH_PUBLISH_INTERVAL = 1024;
+
+    private static final int UNTIMED_SPIN_BUDGET_INDEX = 0;
+    private static final int PARK_INTERVAL_INDEX = 1;
+    private static final int AVERAGE_FULFILL_INDEX = 2;
+    private static final int FULFILLED_COUNT_INDEX = 3;
+    private static final int TIMEOUT_COUNT_INDEX = 4;
+    private static final int SPIN_COUNT_INDEX = 5;
+    private static final int PARK_COUNT_INDEX = 6;
+    private static final int WAKE_UP_COUNT_INDEX = 7;
+    private static final int WAKE_UP_LATENCY_INDEX = 8;
+    private static final int STATISTICS_LENGTH = 9;
 
     protected final boolean spinAllowed = determineSpinAllowed();
     /**
@@ -47,6 +84,38 @@ public abstract class ASpinWait {
      */
     protected final long maxTimedSpinDuration = determineMaxTimedSpinDuration().longValue(FTimeUnit.NANOSECONDS);
 
+    protected final boolean adaptive = determineAdaptive();
+    /**
+     * The adaptive untimed spin budget does not go below this, so that spinning can pay off again when messages
+     * arrive quickly after an idle period.
+     */
+    protected final int minUntimedSpins = Math.min(maxUntimedSpins, determineMinUntimedSpins());
+    /**
+     * The upper bound for the adaptive park interval, this is the latency an idle channel adds to the next message.
+     */
+    protected final long maxAdaptiveParkIntervalNanos = Math.max(maxParkIntervalNanos,
+            determineMaxAdaptiveParkInterval().longValue(FTimeUnit.NANOSECONDS));
+
+    //only accessed by the waiting thread
+    private int untimedSpinBudget = maxUntimedSpins;
+    private long parkIntervalNanos = maxParkIntervalNanos;
+    private long averageFulfillNanos;
+    private long fulfilledCount;
+    private long timeoutCount;
+    private long spinCount;
+    private long parkCount;
+    private long wakeUpCount;
+    private long wakeUpLatencyNanos;
+    /**
+     * the values above as they were after the last wait, for the monitoring threads
+     */
+    private final AtomicLongArray statistics = new AtomicLongArray(STATISTICS_LENGTH);
+    private volatile boolean resetStatisticsRequested;
+
+    {
+        publishStatistics();
+    }
+
     protected Duration determineSkipSpinAfterWaitingSince() {
         //when we have been waiting a long time for a request/response we should keep the CPU usage to a minimum and thus don't even try to spin
         return new Duration(1, FTimeUnit.SECONDS);
@@ -99,6 +168,22 @@ public abstract class ASpinWait {
         return new Duration(10, FTimeUnit.MICROSECONDS);
     }
 
+    protected boolean determineAdaptive() {
+        return true;
+    }
+
+    protected int determineMinUntimedSpins() {
+        return maxUntimedSpins / 256;
+    }
+
+    /**
+     * with 100 microseconds sleep an idle channel barely uses any CPU while the first message after a pause is still
+     * picked up quickly
+     */
+    protected Duration determineMaxAdaptiveParkInterval() {
+        return new Duration(100, FTimeUnit.MICROSECONDS);
+    }
+
     protected abstract boolean isConditionFulfilled() throws IOException;
 
     protected boolean isSpinAllowed(final Instant waitingSince) {
@@ -113,45 +198,190 @@ public abstract class ASpinWait {
 
     public boolean awaitFulfill(final Instant waitingSince, final Duration maxWait) throws IOException {
         if (isConditionFulfilled()) {
+            fulfilledCount++;
+            adapt(0L, WaitOutcome.SPIN_FULFILLED);
+            if ((fulfilledCount & (FAST_PATH_PUBLISH_INTERVAL - 1)) == 0L) {
+                publishStatistics();
+            }
             return true;
         }
+        final long waitStart = System.nanoTime();
         final boolean spinAllowedNow = spinAllowed && isSpinAllowed(waitingSince);
-        if (spinAllowedNow) {
-            for (int untimedSpins = 0; untimedSpins < maxUntimedSpins; untimedSpins++) {
-                if (isConditionFulfilled()) {
-                    return true;
-                }
-                onSpinWait();
+        final int untimedSpinsNow = spinAllowedNow ? untimedSpinBudget : 0;
+        for (int untimedSpins = 0; untimedSpins < untimedSpinsNow; untimedSpins++) {
+            if (isConditionFulfilled()) {
+                spinCount += untimedSpins;
+                onFulfilled(waitStart, 0L, WaitOutcome.SPIN_FULFILLED);
+                publishStatistics();
+                return true;
             }
+            onSpinWait();
         }
         long nanosRemaining = maxWait.longValue(FTimeUnit.NANOSECONDS);
         final long waitDeadline = System.nanoTime() + nanosRemaining;
+        final long parkNanos = parkIntervalNanos;
         final Thread w = Thread.currentThread();
         int timedSpins = 0;
-        while (true) {
-            if (isConditionFulfilled()) {
-                return true;
-            }
-            nanosRemaining = waitDeadline - System.nanoTime();
-            if (nanosRemaining <= 0L) {
-                //we have exceeded maxWait
-                return false;
-            }
-            final boolean shouldSpin = spinAllowedNow && nanosRemaining < maxTimedSpinDuration
-                    && timedSpins < maxTimedSpins;
-            if (shouldSpin) {
-                timedSpins++;
-                onSpinWait();
-            } else {
-                //only check interrupted when we are on the slow lane anyway
-                if (w.isInterrupted()) {
+        int parks = 0;
+        long lastParkStart = 0L;
+        try {
+            while (true) {
+                if (isConditionFulfilled()) {
+                    onFulfilled(waitStart, lastParkStart,
+                            parks == 0 ? WaitOutcome.TIMED_SPIN_FULFILLED : WaitOutcome.PARKED);
+                    return true;
+                }
+                nanosRemaining = waitDeadline - System.nanoTime();
+                if (nanosRemaining <= 0L) {
+                    //we have exceeded maxWait
+                    onTimeout();
                     return false;
                 }
-                LockSupport.parkNanos(this, maxParkIntervalNanos);
+                final boolean shouldSpin = spinAllowedNow && nanosRemaining < maxTimedSpinDuration
+                        && timedSpins < maxTimedSpins;
+                if (shouldSpin) {
+                    timedSpins++;
+                    onSpinWait();
+                } else {
+                    //only check interrupted when we are on the slow lane anyway
+                    if (w.isInterrupted()) {
+                        onTimeout();
+                        return false;
+                    }
+                    parks++;
+                    lastParkStart = System.nanoTime();
+                    LockSupport.parkNanos(this, parkNanos);
+                }
             }
+        } finally {
+            spinCount += untimedSpinsNow + timedSpins;
+            parkCount += parks;
+            publishStatistics();
         }
     }
 
+    private void onFulfilled(final long waitStart, final long lastParkStart, final WaitOutcome outcome) {
+        final long now = System.nanoTime();
+        fulfilledCount++;
+        if (lastParkStart != 0L) {
+            wakeUpCount++;
+            wakeUpLatencyNanos += now - lastParkStart;
+        }
+        adapt(now - waitStart, outcome);
+    }
+
+    private void onTimeout() {
+        timeoutCount++;
+        if (!adaptive) {
+            return;
+        }
+        untimedSpinBudget = Math.max(minUntimedSpins, untimedSpinBudget / 2);
+        parkIntervalNanos = Math.min(maxAdaptiveParkIntervalNanos, parkIntervalNanos * 2);
+    }
+
+    private void adapt(final long latencyNanos, final WaitOutcome outcome) {
+        final long average = averageFulfillNanos + ((latencyNanos - averageFulfillNanos) >> AVERAGE_SHIFT);
+        averageFulfillNanos = average;
+        if (!adaptive) {
+            return;
+        }
+        switch (outcome) {
+        case SPIN_FULFILLED:
+            untimedSpinBudget = Math.min(maxUntimedSpins, Math.max(minUntimedSpins, untimedSpinBudget * 2));
+            break;
+        case TIMED_SPIN_FULFILLED:
+            //spinning still paid off, only a bit later
+            break;
+        case PARKED:
+            untimedSpinBudget = Math.max(minUntimedSpins, untimedSpinBudget / 2);
+            break;
+        default:
+            throw UnknownArgumentException.newInstance(WaitOutcome.class, outcome);
+        }
+        parkIntervalNanos = Math.min(maxAdaptiveParkIntervalNanos,
+                Math.max(maxParkIntervalNanos, average >> PARK_INTERVAL_SHIFT));
+    }
+
+    private void publishStatistics() {
+        if (resetStatisticsRequested) {
+            resetStatisticsRequested = false;
+            fulfilledCount = 0L;
+            timeoutCount = 0L;
+            spinCount = 0L;
+            parkCount = 0L;
+            wakeUpCount = 0L;
+            wakeUpLatencyNanos = 0L;
+        }
+        statistics.lazySet(UNTIMED_SPIN_BUDGET_INDEX, untimedSpinBudget);
+        statistics.lazySet(PARK_INTERVAL_INDEX, parkIntervalNanos);
+        statistics.lazySet(AVERAGE_FULFILL_INDEX, averageFulfillNanos);
+        statistics.lazySet(FULFILLED_COUNT_INDEX, fulfilledCount);
+        statistics.lazySet(TIMEOUT_COUNT_INDEX, timeoutCount);
+        statistics.lazySet(SPIN_COUNT_INDEX, spinCount);
+        statistics.lazySet(PARK_COUNT_INDEX, parkCount);
+        statistics.lazySet(WAKE_UP_COUNT_INDEX, wakeUpCount);
+        statistics.lazySet(WAKE_UP_LATENCY_INDEX, wakeUpLatencyNanos);
+    }
+
+    public int getUntimedSpinBudget() {
+        return (int) statistics.get(UNTIMED_SPIN_BUDGET_INDEX);
+    }
+
+    public Duration getParkInterval() {
+        return new Duration(statistics.get(PARK_INTERVAL_INDEX), FTimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * The moving average of how long it took until the condition was fulfilled, timeouts are excluded.
+     */
+    public Duration getAverageFulfillLatency() {
+        return new Duration(statistics.get(AVERAGE_FULFILL_INDEX), FTimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * The average time from the start of the last park until the condition was noticed to be fulfilled.
+     */
+    public Duration getAverageWakeUpLatency() {
+        final long count = statistics.get(WAKE_UP_COUNT_INDEX);
+        if (count == 0L) {
+            return new Duration(0, FTimeUnit.NANOSECONDS);
+        }
+        return new Duration(statistics.get(WAKE_UP_LATENCY_INDEX) / count, FTimeUnit.NANOSECONDS);
+    }
+
+    public long getFulfilledCount() {
+        return statistics.get(FULFILLED_COUNT_INDEX);
+    }
+
+    public long getTimeoutCount() {
+        return statistics.get(TIMEOUT_COUNT_INDEX);
+    }
+
+    public long getSpinCount() {
+        return statistics.get(SPIN_COUNT_INDEX);
+    }
+
+    public long getParkCount() {
+        return statistics.get(PARK_COUNT_INDEX);
+    }
+
+    /**
+     * Resets the counters, the adapted spin budget and park interval are kept. Can be called from any thread, the
+     * waiting thread restarts its counters when it publishes its statistics the next time.
+     */
+    public void resetStatistics() {
+        resetStatisticsRequested = true;
+        for (int i = FULFILLED_COUNT_INDEX; i < STATISTICS_LENGTH; i++) {
+            statistics.set(i, 0L);
+        }
+    }
+
+    private enum WaitOutcome {
+        SPIN_FULFILLED,
+        TIMED_SPIN_FULFILLED,
+        PARKED;
+    }
+
     private void onSpinWait() {
         try {
             ON_SPIN_WAIT.invokeExact();
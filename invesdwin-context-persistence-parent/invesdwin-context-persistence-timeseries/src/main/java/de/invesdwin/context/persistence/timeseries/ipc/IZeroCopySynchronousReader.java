@@ -0,0 +1,15 @@
+package de.invesdwin.context.persistence.timeseries.ipc;
+
+import java.io.IOException;
+
+/**
+ * Readers that can expose the current message without copying it. The byte[] based readMessage is a copy of the view.
+ */
+public interface IZeroCopySynchronousReader extends ISynchronousReader {
+
+    /**
+     * The returned view is reused and only valid until the next read.
+     */
+    SynchronousMessageView readMessageView() throws IOException;
+
+}
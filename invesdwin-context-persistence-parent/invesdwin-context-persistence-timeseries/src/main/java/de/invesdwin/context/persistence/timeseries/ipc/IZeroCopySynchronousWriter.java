@@ -0,0 +1,16 @@
+package de.invesdwin.context.persistence.timeseries.ipc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writers that can write a slice of a buffer without requiring it to be copied into a byte[] first.
+ */
+public interface IZeroCopySynchronousWriter extends ISynchronousWriter {
+
+    /**
+     * Writes the bytes between the position and the limit of the buffer, the position of the buffer is not changed.
+     */
+    void write(int type, ByteBuffer message) throws IOException;
+
+}
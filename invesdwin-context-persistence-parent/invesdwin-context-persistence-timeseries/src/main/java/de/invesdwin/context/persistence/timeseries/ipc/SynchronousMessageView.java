@@ -0,0 +1,65 @@
+package de.invesdwin.context.persistence.timeseries.ipc;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import de.invesdwin.util.bean.tuple.Pair;
+
+/**
+ * A reusable view on the current message of a reader. The buffer might be the memory mapped region of the channel or a
+ * read buffer that is reused for each message, thus the view is only valid until the next read and the buffer should
+ * only be accessed with absolute get methods between offset and offset + length.
+ */
+@NotThreadSafe
+public class SynchronousMessageView {
+
+    private int type;
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+
+    public SynchronousMessageView set(final int type, final ByteBuffer buffer, final int offset, final int length) {
+        this.type = type;
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Copies the message so that it stays valid after the next read.
+     */
+    public byte[] toBytes() {
+        final byte[] bytes = new byte[length];
+        if (buffer.hasArray()) {
+            System.arraycopy(buffer.array(), buffer.arrayOffset() + offset, bytes, 0, length);
+        } else {
+            final ByteBuffer duplicate = buffer.duplicate();
+            duplicate.position(offset);
+            duplicate.get(bytes);
+        }
+        return bytes;
+    }
+
+    public Pair<Integer, byte[]> toPair() {
+        return Pair.of(type, toBytes());
+    }
+
+}
@@ -0,0 +1,156 @@
+package de.invesdwin.context.persistence.timeseries.ipc.fragment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import de.invesdwin.context.persistence.timeseries.ipc.ISynchronousReader;
+import de.invesdwin.context.persistence.timeseries.ipc.IZeroCopySynchronousReader;
+import de.invesdwin.context.persistence.timeseries.ipc.SynchronousMessageView;
+import de.invesdwin.util.bean.tuple.Pair;
+
+/**
+ * Reassembles the fragments of a FragmentSynchronousWriter. The messages are reassembled into a buffer that is reused
+ * for each message and only grows when a larger message arrives. After an oversized message the buffer is shrunk back
+ * to getMaxPooledBufferSize with the next message, so that a rare large message does not keep its memory allocated.
+ *
+ * hasNext already reads the available fragments, thus a message view is only valid until the next call to hasNext or
+ * a read method.
+ */
+@NotThreadSafe
+public class FragmentSynchronousReader implements IZeroCopySynchronousReader {
+
+    private final ISynchronousReader delegate;
+    private final SynchronousMessageView view = new SynchronousMessageView();
+    private ByteBuffer buffer;
+    private int messageType;
+    private int messageSize = -1;
+    private int received;
+    private boolean messageReady;
+
+    public FragmentSynchronousReader(final ISynchronousReader delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Buffers up to this size are reused for the next message, larger ones are replaced when the next message fits.
+     */
+    protected int getMaxPooledBufferSize() {
+        return 1024 * 1024;
+    }
+
+    @Override
+    public void open() throws IOException {
+        messageSize = -1;
+        received = 0;
+        messageReady = false;
+        delegate.open();
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+        messageReady = false;
+        delegate.close();
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        while (!messageReady && delegate.hasNext()) {
+            if (!readFragment()) {
+                break;
+            }
+        }
+        return messageReady;
+    }
+
+    @Override
+    public SynchronousMessageView readMessageView() throws IOException {
+        if (!hasNext()) {
+            return null;
+        }
+        messageReady = false;
+        messageSize = -1;
+        return view.set(messageType, buffer, 0, received);
+    }
+
+    @Override
+    public Pair<Integer, byte[]> readMessage() throws IOException {
+        final SynchronousMessageView message = readMessageView();
+        if (message == null) {
+            return null;
+        }
+        return message.toPair();
+    }
+
+    /**
+     * Returns false when no fragment was available.
+     */
+    private boolean readFragment() throws IOException {
+        if (delegate instanceof IZeroCopySynchronousReader) {
+            final SynchronousMessageView fragment = ((IZeroCopySynchronousReader) delegate).readMessageView();
+            if (fragment == null) {
+                return false;
+            }
+            onFragment(fragment.getType(), fragment.getBuffer(), fragment.getOffset(), fragment.getLength());
+        } else {
+            final Pair<Integer, byte[]> fragment = delegate.readMessage();
+            if (fragment == null) {
+                return false;
+            }
+            onFragment(fragment.getFirst(), ByteBuffer.wrap(fragment.getSecond()), 0, fragment.getSecond().length);
+        }
+        return true;
+    }
+
+    private void onFragment(final int type, final ByteBuffer fragment, final int offset, final int length) {
+        if (length < Fragments.PAYLOAD_POS) {
+            throw new IllegalStateException("Invalid fragment size [" + length + "]");
+        }
+        final int size = fragment.getInt(offset + Fragments.MESSAGE_SIZE_POS);
+        final int fragmentOffset = fragment.getInt(offset + Fragments.FRAGMENT_OFFSET_POS);
+        final int payloadSize = length - Fragments.PAYLOAD_POS;
+        if (fragmentOffset == 0) {
+            if (size < 0) {
+                throw new IllegalStateException("Invalid message size [" + size + "]");
+            }
+            messageType = type;
+            messageSize = size;
+            received = 0;
+            ensureCapacity(size);
+        } else if (messageSize < 0 || fragmentOffset != received || type != messageType || size != messageSize) {
+            throw new IllegalStateException("Unexpected fragment with type [" + type + "], messageSize [" + size
+                    + "] and offset [" + fragmentOffset + "] for message with type [" + messageType
+                    + "], messageSize [" + messageSize + "] and received [" + received
+                    + "], the underlying channel needs to be reliable and ordered");
+        }
+        if (received + payloadSize > messageSize) {
+            throw new IllegalStateException("Fragment payload [" + payloadSize + "] exceeds messageSize ["
+                    + messageSize + "] with already received [" + received + "]");
+        }
+        final ByteBuffer payload = fragment.duplicate();
+        payload.limit(offset + length);
+        payload.position(offset + Fragments.PAYLOAD_POS);
+        buffer.position(received);
+        buffer.put(payload);
+        received += payloadSize;
+        messageReady = received == messageSize;
+    }
+
+    private void ensureCapacity(final int size) {
+        final int maxPooledBufferSize = getMaxPooledBufferSize();
+        if (buffer == null || buffer.capacity() > maxPooledBufferSize && size <= maxPooledBufferSize) {
+            buffer = ByteBuffer.allocate(Math.min(maxPooledBufferSize, Math.max(size, Fragments.PAYLOAD_POS * 2)));
+        }
+        if (buffer.capacity() < size) {
+            final long grown = Math.max(size, (long) buffer.capacity() * 2);
+            buffer = ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE - 8, grown));
+            if (buffer.capacity() < size) {
+                throw new IllegalStateException("messageSize [" + size + "] is too large");
+            }
+        }
+        buffer.clear();
+    }
+
+}
@@ -0,0 +1,82 @@
+package de.invesdwin.context.persistence.timeseries.ipc.fragment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import de.invesdwin.context.persistence.timeseries.ipc.ISynchronousWriter;
+import de.invesdwin.context.persistence.timeseries.ipc.IZeroCopySynchronousWriter;
+
+/**
+ * Splits messages that are larger than the maximum message size of the underlying channel into fragments, thus the
+ * channel can be sized for the common message while still allowing the occasional large one. The fragments of a
+ * message are written one after another, so the underlying channel needs to be reliable and ordered.
+ */
+@NotThreadSafe
+public class FragmentSynchronousWriter implements IZeroCopySynchronousWriter {
+
+    private final ISynchronousWriter delegate;
+    private final int maxPayloadSize;
+    private final ByteBuffer fragment;
+
+    /**
+     * The maxMessageSize is the one of the underlying channel, a fragment needs at least one byte of payload.
+     */
+    public FragmentSynchronousWriter(final ISynchronousWriter delegate, final int maxMessageSize) {
+        this.delegate = delegate;
+        this.maxPayloadSize = Fragments.getMaxPayloadSize(maxMessageSize);
+        if (maxPayloadSize <= 0) {
+            throw new IllegalArgumentException("maxMessageSize [" + maxMessageSize + "] needs to be larger than ["
+                    + Fragments.PAYLOAD_POS + "]");
+        }
+        this.fragment = ByteBuffer.allocate(maxMessageSize);
+    }
+
+    @Override
+    public void open() throws IOException {
+        delegate.open();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    @Override
+    public void write(final int type, final byte[] message) throws IOException {
+        write(type, ByteBuffer.wrap(message));
+    }
+
+    @Override
+    public void write(final int type, final ByteBuffer message) throws IOException {
+        final int messageSize = message.remaining();
+        int offset = 0;
+        do {
+            final int payloadSize = Math.min(maxPayloadSize, messageSize - offset);
+            fragment.putInt(Fragments.MESSAGE_SIZE_POS, messageSize);
+            fragment.putInt(Fragments.FRAGMENT_OFFSET_POS, offset);
+            final ByteBuffer payload = message.duplicate();
+            payload.position(message.position() + offset);
+            payload.limit(payload.position() + payloadSize);
+            fragment.position(Fragments.PAYLOAD_POS);
+            fragment.put(payload);
+            writeFragment(type, Fragments.PAYLOAD_POS + payloadSize);
+            offset += payloadSize;
+        } while (offset < messageSize);
+    }
+
+    private void writeFragment(final int type, final int length) throws IOException {
+        if (delegate instanceof IZeroCopySynchronousWriter) {
+            final ByteBuffer frame = fragment.duplicate();
+            frame.position(0);
+            frame.limit(length);
+            ((IZeroCopySynchronousWriter) delegate).write(type, frame);
+        } else {
+            //the delegate might keep the array, thus it needs to be a copy
+            delegate.write(type, Arrays.copyOf(fragment.array(), length));
+        }
+    }
+
+}
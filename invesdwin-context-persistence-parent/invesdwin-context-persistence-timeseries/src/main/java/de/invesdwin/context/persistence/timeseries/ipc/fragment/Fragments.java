@@ -0,0 +1,30 @@
+package de.invesdwin.context.persistence.timeseries.ipc.fragment;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Each message is split into one or more fragments that fit into a message of the underlying channel. A fragment keeps
+ * the type of the message and consists of the size of the whole message, the offset of the fragment in the message and
+ * the payload.
+ */
+@Immutable
+public final class Fragments {
+
+    public static final int MESSAGE_SIZE_POS = 0;
+    public static final int MESSAGE_SIZE_OFFSET = 4;
+
+    public static final int FRAGMENT_OFFSET_POS = MESSAGE_SIZE_POS + MESSAGE_SIZE_OFFSET;
+    public static final int FRAGMENT_OFFSET_OFFSET = 4;
+
+    public static final int PAYLOAD_POS = FRAGMENT_OFFSET_POS + FRAGMENT_OFFSET_OFFSET;
+
+    private Fragments() {}
+
+    /**
+     * The largest payload that fits into a fragment of the given channel.
+     */
+    public static int getMaxPayloadSize(final int maxMessageSize) {
+        return maxMessageSize - PAYLOAD_POS;
+    }
+
+}
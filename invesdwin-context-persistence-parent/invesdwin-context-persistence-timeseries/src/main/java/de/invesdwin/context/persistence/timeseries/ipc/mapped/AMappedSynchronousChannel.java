@@ -2,6 +2,7 @@ package de.invesdwin.context.persistence.timeseries.ipc.mapped;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
@@ -78,7 +79,7 @@ public abstract class AMappedSynchronousChannel implements ISynchronousChannel {
         return mem.getInt(TYPE_POS);
     }
 
-    private void setSize(final int val) {
+    protected void setSize(final int val) {
         if (val > maxMessageSize) {
             throw new IllegalStateException(
                     "messageSize [" + val + "] exceeds maxMessageSize [" + maxMessageSize + "]");
@@ -86,7 +87,7 @@ public abstract class AMappedSynchronousChannel implements ISynchronousChannel {
         mem.putInt(SIZE_POS, val);
     }
 
-    private int getSize() {
+    protected int getSize() {
         return mem.getInt(SIZE_POS);
     }
 
@@ -103,6 +104,12 @@ public abstract class AMappedSynchronousChannel implements ISynchronousChannel {
         mem.setBytes(MESSAGE_POS, data, 0, size);
     }
 
+    protected void setMessage(final ByteBuffer data) {
+        final int size = data.remaining();
+        setSize(size);
+        mem.setBytes(MESSAGE_POS, data, data.position(), size);
+    }
+
     @Override
     public void close() throws IOException {
         if (mem != null) {
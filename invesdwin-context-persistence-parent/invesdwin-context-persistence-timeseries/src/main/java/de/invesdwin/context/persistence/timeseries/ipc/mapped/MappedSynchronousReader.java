@@ -6,7 +6,8 @@ import java.io.IOException;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
-import de.invesdwin.context.persistence.timeseries.ipc.ISynchronousReader;
+import de.invesdwin.context.persistence.timeseries.ipc.IZeroCopySynchronousReader;
+import de.invesdwin.context.persistence.timeseries.ipc.SynchronousMessageView;
 import de.invesdwin.util.bean.tuple.Pair;
 
 /**
@@ -17,11 +18,15 @@ import de.invesdwin.util.bean.tuple.Pair;
  * queues, spinning can dramatically improve throughput. And on less busy ones, the amount of spinning is small enough
  * not to be noticeable.
  * 
+ * The message view points directly into the mapped file, thus it is only valid until the writer writes the next
+ * message.
+ *
  * @author subes
  *
  */
 @NotThreadSafe
-public class MappedSynchronousReader extends AMappedSynchronousChannel implements ISynchronousReader {
+public class MappedSynchronousReader extends AMappedSynchronousChannel implements IZeroCopySynchronousReader {
+    private final SynchronousMessageView messageView = new SynchronousMessageView();
     private int lastTransaction;
 
     public MappedSynchronousReader(final File file, final int maxMessageSize) {
@@ -60,4 +65,10 @@ public class MappedSynchronousReader extends AMappedSynchronousChannel implement
         return Pair.of(getType(), getMessage());
     }
 
+    @Override
+    public SynchronousMessageView readMessageView() throws IOException {
+        lastTransaction = getTransaction();
+        return messageView.set(getType(), mem.asByteBuffer(), (int) MESSAGE_POS, getSize());
+    }
+
 }
\ No newline at end of file
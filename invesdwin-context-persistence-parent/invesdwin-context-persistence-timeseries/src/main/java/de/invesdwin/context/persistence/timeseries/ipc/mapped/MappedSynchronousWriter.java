@@ -3,17 +3,18 @@ package de.invesdwin.context.persistence.timeseries.ipc.mapped;
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
-import de.invesdwin.context.persistence.timeseries.ipc.ISynchronousWriter;
+import de.invesdwin.context.persistence.timeseries.ipc.IZeroCopySynchronousWriter;
 
 /**
  * There should only be one writer per file, or else the threads might destroy each others data.
  *
  */
 @NotThreadSafe
-public class MappedSynchronousWriter extends AMappedSynchronousChannel implements ISynchronousWriter {
+public class MappedSynchronousWriter extends AMappedSynchronousChannel implements IZeroCopySynchronousWriter {
 
     public MappedSynchronousWriter(final File file, final int maxMessageSize) {
         super(file, maxMessageSize);
@@ -48,6 +49,20 @@ public class MappedSynchronousWriter extends AMappedSynchronousChannel implement
         setTransaction(nextTransaction);
     }
 
+    @Override
+    public void write(final int type, final ByteBuffer message) {
+        final byte nextTransaction = getNextTransaction();
+        //open transaction
+        setTransaction(TRANSACTION_WRITING_VALUE);
+
+        setType(type);
+
+        setMessage(message);
+
+        //commit
+        setTransaction(nextTransaction);
+    }
+
     @Override
     public void close() throws IOException {
         setTransaction(TRANSACTION_CLOSED_VALUE);
@@ -1,8 +1,12 @@
 package de.invesdwin.context.persistence.timeseries.ipc.mapped;
 
+import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
@@ -24,10 +28,12 @@ public class MemoryMappedFile {
     private static final Method MMAP;
     private static final Method UNMMAP;
     private static final int BYTE_ARRAY_OFFSET;
+    private static final long BUFFER_ADDRESS_OFFSET;
 
     private long addr;
     private final long size;
     private final String loc;
+    private ByteBuffer buffer;
 
     static {
         try {
@@ -35,6 +41,7 @@ public class MemoryMappedFile {
             MMAP = getMethod(fileChannelImplClass, "map0", int.class, long.class, long.class);
             UNMMAP = getMethod(fileChannelImplClass, "unmap0", long.class, long.class);
             BYTE_ARRAY_OFFSET = UNSAFE.arrayBaseOffset(byte[].class);
+            BUFFER_ADDRESS_OFFSET = UNSAFE.objectFieldOffset(Buffer.class.getDeclaredField("address"));
         } catch (final Exception e) {
             throw new RuntimeException(e);
         }
@@ -75,8 +82,65 @@ public class MemoryMappedFile {
         backingFile.close();
     }
 
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Releases the mapping of the file and the one of the ByteBuffer, the second one is released even when the first
+     * one fails. Calling this more than once does nothing.
+     */
     public void unmap() throws Exception {
-        UNMMAP.invoke(null, addr, this.size);
+        try {
+            if (addr != 0) {
+                UNMMAP.invoke(null, addr, this.size);
+                addr = 0;
+            }
+        } finally {
+            if (buffer != null) {
+                final ByteBuffer mappedBuffer = buffer;
+                buffer = null;
+                unmapBuffer(mappedBuffer);
+            }
+        }
+    }
+
+    public boolean isMapped() {
+        return addr != 0;
+    }
+
+    /**
+     * Releases the mapping of the buffer right away instead of waiting for the garbage collector.
+     */
+    private static void unmapBuffer(final ByteBuffer buffer) throws Exception {
+        final Method invokeCleaner = Reflections.findMethod(UNSAFE.getClass(), "invokeCleaner", ByteBuffer.class);
+        if (invokeCleaner != null) {
+            //java 9 and newer
+            invokeCleaner.invoke(UNSAFE, buffer);
+        } else {
+            final Method cleanerMethod = getMethod(buffer.getClass(), "cleaner");
+            final Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                getMethod(cleaner.getClass(), "clean").invoke(cleaner);
+            }
+        }
+    }
+
+    /**
+     * Maps the file a second time as a ByteBuffer so that readers can expose messages without copying them. The second
+     * mapping shares the same memory and is released together with the first one in unmap, thus the buffer must not be
+     * used after that.
+     */
+    public ByteBuffer asByteBuffer() throws IOException {
+        if (buffer == null) {
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalStateException("size [" + size + "] is too large for a ByteBuffer");
+            }
+            try (RandomAccessFile backingFile = new RandomAccessFile(this.loc, "rw")) {
+                buffer = backingFile.getChannel().map(MapMode.READ_WRITE, 0, size);
+            }
+        }
+        return buffer;
     }
 
     /**
@@ -249,6 +313,32 @@ public class MemoryMappedFile {
         UNSAFE.copyMemory(data, BYTE_ARRAY_OFFSET + offset, null, pos + addr, length);
     }
 
+    /**
+     * Writes a slice of a heap or direct buffer without copying it into a byte[] first.
+     *
+     * @param pos
+     *            the position in the memory mapped file
+     * @param data
+     *            the output buffer
+     * @param offset
+     *            the absolute index in the buffer of the first byte to write
+     * @param length
+     *            the length of the data
+     */
+    public void setBytes(final long pos, final ByteBuffer data, final int offset, final int length) {
+        if (data.hasArray()) {
+            setBytes(pos, data.array(), data.arrayOffset() + offset, length);
+        } else if (data.isDirect()) {
+            final long dataAddr = UNSAFE.getLong(data, BUFFER_ADDRESS_OFFSET);
+            UNSAFE.copyMemory(null, dataAddr + offset, null, pos + addr, length);
+        } else {
+            //read only heap buffer
+            for (int i = 0; i < length; i++) {
+                putByte(pos + i, data.get(offset + i));
+            }
+        }
+    }
+
     public boolean compareAndSwapInt(final long pos, final int expected, final int value) {
         return UNSAFE.compareAndSwapInt(null, pos + addr, expected, value);
     }
@@ -0,0 +1,180 @@
+package de.invesdwin.context.persistence.timeseries.ipc.mapped.ring;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import de.invesdwin.context.persistence.timeseries.ipc.ISynchronousChannel;
+import de.invesdwin.context.persistence.timeseries.ipc.mapped.MemoryMappedFile;
+
+/**
+ * Memory mapped ring buffer where one writer publishes messages that are received by every registered reader. Each
+ * reader claims a slot in the header and tracks its own read sequence there, so that a gating writer can wait for the
+ * slowest reader. An overwriting writer ignores the readers instead and readers that fell behind detect the loss and
+ * skip to the latest message.
+ *
+ * Readers write a heartbeat into their slot while they poll. When a reader stops polling for longer than the reader
+ * timeout, e.g. because its process died without closing the channel, its slot is reclaimed by the writer or by a
+ * newly registering reader, thus it neither gates the writer nor blocks its slot forever.
+ *
+ * The message layout is the same as in the ARingBufferSynchronousChannel.
+ */
+@NotThreadSafe
+public abstract class ABroadcastRingBufferSynchronousChannel implements ISynchronousChannel {
+
+    public static final int DEFAULT_MAX_READERS = 16;
+
+    public static final long WRITE_SEQUENCE_POS = 0;
+    public static final long CLOSED_POS = WRITE_SEQUENCE_POS + ARingBufferSynchronousChannel.CACHE_LINE_PADDING;
+    public static final long CAPACITY_POS = CLOSED_POS + Integer.BYTES;
+    public static final long MAX_READERS_POS = CAPACITY_POS + Integer.BYTES;
+    /**
+     * Written by the writer on open, so that readers know whether messages might be overwritten.
+     */
+    public static final long GATING_POS = MAX_READERS_POS + Integer.BYTES;
+    public static final long READER_SLOTS_POS = CLOSED_POS + ARingBufferSynchronousChannel.CACHE_LINE_PADDING;
+    /**
+     * Each reader slot is written only by its reader and lies on its own cache line.
+     */
+    public static final int READER_SLOT_LENGTH = ARingBufferSynchronousChannel.CACHE_LINE_PADDING;
+    public static final int READER_SEQUENCE_OFFSET = 0;
+    public static final int READER_STATE_OFFSET = READER_SEQUENCE_OFFSET + Long.BYTES;
+    public static final int READER_HEARTBEAT_OFFSET = READER_STATE_OFFSET + Long.BYTES;
+    /**
+     * A random token of the reader that owns the slot, so that a reader detects when its slot was reclaimed and reused.
+     */
+    public static final int READER_OWNER_OFFSET = READER_HEARTBEAT_OFFSET + Long.BYTES;
+
+    public static final long READER_STATE_FREE = 0;
+    public static final long READER_STATE_REGISTERING = 1;
+    public static final long READER_STATE_ACTIVE = 2;
+
+    protected MemoryMappedFile mem;
+    protected final File file;
+    protected final int maxMessageSize;
+    protected final int capacity;
+    protected final long mask;
+    protected final int maxReaders;
+    protected final long dataPos;
+    /**
+     * The writer publishes a message only after it was written, thus it might already be writing this many bytes
+     * beyond the published write sequence (a padding record and the message itself).
+     */
+    protected final long maxWriteAhead;
+
+    public ABroadcastRingBufferSynchronousChannel(final File file, final int maxMessageSize) {
+        this(file, maxMessageSize, ARingBufferSynchronousChannel.DEFAULT_CAPACITY, DEFAULT_MAX_READERS);
+    }
+
+    /**
+     * The capacity is rounded up to a power of two that can hold at least four messages of the maximum size, so that
+     * readers of an overwriting writer have some room before they lose messages. Capacities that would need to be
+     * rounded up beyond ARingBufferSynchronousChannel.MAX_CAPACITY are rejected.
+     */
+    public ABroadcastRingBufferSynchronousChannel(final File file, final int maxMessageSize, final int capacity,
+            final int maxReaders) {
+        this.file = file;
+        if (maxMessageSize < 0) {
+            throw new IllegalArgumentException("maxMessageSize should not be negative");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity needs to be positive");
+        }
+        if (maxReaders <= 0) {
+            throw new IllegalArgumentException("maxReaders needs to be positive");
+        }
+        if (maxMessageSize > ARingBufferSynchronousChannel.MAX_CAPACITY) {
+            throw new IllegalArgumentException("maxMessageSize [" + maxMessageSize + "] should not exceed ["
+                    + ARingBufferSynchronousChannel.MAX_CAPACITY + "]");
+        }
+        this.maxMessageSize = maxMessageSize;
+        final int recordLength = ARingBufferSynchronousChannel.getRecordLength(maxMessageSize);
+        this.capacity = ARingBufferSynchronousChannel.roundToPowerOfTwo(Math.max(capacity, 4L * recordLength));
+        this.mask = this.capacity - 1;
+        this.maxReaders = maxReaders;
+        this.dataPos = READER_SLOTS_POS + (long) maxReaders * READER_SLOT_LENGTH;
+        this.maxWriteAhead = 2L * recordLength;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getMaxReaders() {
+        return maxReaders;
+    }
+
+    /**
+     * Readers that did not send a heartbeat for this long are considered dead. Readers need to poll more often than
+     * this, both endpoints should use the same value.
+     */
+    protected long getReaderTimeoutMillis() {
+        return 10000;
+    }
+
+    /**
+     * Frees the slot when its reader stopped sending heartbeats. Returns true when the slot was reclaimed.
+     */
+    protected boolean reclaimStaleReaderSlot(final long slotPos, final long nowMillis) {
+        final long state = mem.getLongVolatile(slotPos + READER_STATE_OFFSET);
+        if (state == READER_STATE_FREE) {
+            return false;
+        }
+        final long heartbeatMillis = mem.getLongVolatile(slotPos + READER_HEARTBEAT_OFFSET);
+        if (nowMillis - heartbeatMillis <= getReaderTimeoutMillis()) {
+            return false;
+        }
+        return mem.compareAndSwapLong(slotPos + READER_STATE_OFFSET, state, READER_STATE_FREE);
+    }
+
+    @Override
+    public void open() throws IOException {
+        final long fileSize = dataPos + capacity;
+        try {
+            this.mem = new MemoryMappedFile(file.getAbsolutePath(), fileSize);
+        } catch (final Exception e) {
+            throw new IOException("Unable to open file: " + file, e);
+        }
+        try {
+            ARingBufferSynchronousChannel.initOrValidateHeader(mem, CAPACITY_POS, capacity, "capacity", file);
+            ARingBufferSynchronousChannel.initOrValidateHeader(mem, MAX_READERS_POS, maxReaders, "maxReaders", file);
+        } catch (final IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    protected int getIndex(final long sequence) {
+        return (int) (sequence & mask);
+    }
+
+    protected long getReaderSlotPos(final int slot) {
+        return READER_SLOTS_POS + (long) slot * READER_SLOT_LENGTH;
+    }
+
+    protected long getWriteSequence() {
+        return mem.getLongVolatile(WRITE_SEQUENCE_POS);
+    }
+
+    protected boolean isWriterGating() {
+        return mem.getIntVolatile(GATING_POS) == 1;
+    }
+
+    protected boolean isWriterClosed() {
+        return mem.getIntVolatile(CLOSED_POS) == ARingBufferSynchronousChannel.CLOSED_VALUE;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mem != null) {
+            try {
+                mem.unmap();
+                mem = null;
+            } catch (final Exception e) {
+                throw new IOException("Unable to close the file: " + file, e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,186 @@
+package de.invesdwin.context.persistence.timeseries.ipc.mapped.ring;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import de.invesdwin.context.persistence.timeseries.ipc.ISynchronousChannel;
+import de.invesdwin.context.persistence.timeseries.ipc.mapped.MemoryMappedFile;
+
+/**
+ * Memory mapped ring buffer with variable length messages. In contrast to the single message slot of the
+ * AMappedSynchronousChannel, the writer can run ahead of the reader until the buffer is full.
+ *
+ * The sequences are byte positions that only ever increase, the position in the buffer is derived by masking them with
+ * the capacity. Each sequence lies on its own cache line so that the writer and reader do not invalidate each others
+ * cache lines when they update their position. Messages are aligned to 8 bytes and consist of the size, the type and
+ * the payload. When a message does not fit before the end of the buffer, the rest of the buffer is skipped with a
+ * padding record and the message starts at the beginning again.
+ */
+@NotThreadSafe
+public abstract class ARingBufferSynchronousChannel implements ISynchronousChannel {
+
+    public static final int CACHE_LINE_PADDING = 128;
+    public static final int DEFAULT_CAPACITY = 1024 * 1024;
+    /**
+     * The largest power of two that fits into an int.
+     */
+    public static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * The position after the last message that was written, thus the end of the readable messages.
+     */
+    public static final long WRITE_SEQUENCE_POS = 0;
+    /**
+     * The position of the next message that should be read.
+     */
+    public static final long READ_SEQUENCE_POS = WRITE_SEQUENCE_POS + CACHE_LINE_PADDING;
+    public static final long CLOSED_POS = READ_SEQUENCE_POS + CACHE_LINE_PADDING;
+    public static final long CAPACITY_POS = CLOSED_POS + Integer.BYTES;
+    public static final long DATA_POS = CLOSED_POS + CACHE_LINE_PADDING;
+
+    /**
+     * Set on the read sequence while a reader holds a message view, so that competing readers do not read the same
+     * message and the writer does not overwrite it. Sequences never get large enough to use this bit.
+     */
+    public static final long VIEW_HELD_FLAG = Long.MIN_VALUE;
+
+    public static final int CLOSED_VALUE = 1;
+    public static final int OPEN_VALUE = 0;
+
+    public static final int SIZE_OFFSET = 0;
+    public static final int TYPE_OFFSET = SIZE_OFFSET + Integer.BYTES;
+    public static final int MESSAGE_OFFSET = TYPE_OFFSET + Integer.BYTES;
+    public static final int PADDING_SIZE = -1;
+    public static final int ALIGNMENT = Long.BYTES;
+
+    protected MemoryMappedFile mem;
+    protected final File file;
+    protected final int maxMessageSize;
+    protected final int capacity;
+    protected final long mask;
+
+    public ARingBufferSynchronousChannel(final File file, final int maxMessageSize) {
+        this(file, maxMessageSize, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * The capacity is rounded up to a power of two that can hold at least two messages of the maximum size, since a
+     * message might have to be preceded by a padding record of nearly the same size. Capacities that would need to be
+     * rounded up beyond MAX_CAPACITY are rejected.
+     */
+    public ARingBufferSynchronousChannel(final File file, final int maxMessageSize, final int capacity) {
+        this.file = file;
+        if (maxMessageSize < 0) {
+            throw new IllegalArgumentException("maxMessageSize should not be negative");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity needs to be positive");
+        }
+        if (maxMessageSize > MAX_CAPACITY) {
+            throw new IllegalArgumentException(
+                    "maxMessageSize [" + maxMessageSize + "] should not exceed [" + MAX_CAPACITY + "]");
+        }
+        this.maxMessageSize = maxMessageSize;
+        this.capacity = roundToPowerOfTwo(Math.max(capacity, 2L * getRecordLength(maxMessageSize)));
+        this.mask = this.capacity - 1;
+    }
+
+    /**
+     * Computes in long, since shifting the highest bit of larger values would overflow into a negative capacity.
+     */
+    protected static int roundToPowerOfTwo(final long value) {
+        final long highestOneBit = Long.highestOneBit(value);
+        final long powerOfTwo;
+        if (highestOneBit == value) {
+            powerOfTwo = value;
+        } else {
+            powerOfTwo = highestOneBit << 1;
+        }
+        if (powerOfTwo > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Required capacity [" + value + "] exceeds [" + MAX_CAPACITY + "]");
+        }
+        return (int) powerOfTwo;
+    }
+
+    /**
+     * The first endpoint initializes the header value, all others validate it. An endpoint that loses the race to
+     * initialize it validates the value of the winner instead.
+     */
+    protected static void initOrValidateHeader(final MemoryMappedFile mem, final long pos, final int value,
+            final String name, final File file) throws IOException {
+        int existingValue = mem.getIntVolatile(pos);
+        if (existingValue == 0) {
+            if (mem.compareAndSwapInt(pos, 0, value)) {
+                return;
+            }
+            existingValue = mem.getIntVolatile(pos);
+        }
+        if (existingValue != value) {
+            throw new IOException(name + " [" + value + "] does not match the existing " + name + " ["
+                    + existingValue + "] of file: " + file);
+        }
+    }
+
+    protected static int getRecordLength(final int messageSize) {
+        final int length = MESSAGE_OFFSET + messageSize;
+        return (length + ALIGNMENT - 1) & ~(ALIGNMENT - 1);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public void open() throws IOException {
+        final long fileSize = DATA_POS + capacity;
+        try {
+            this.mem = new MemoryMappedFile(file.getAbsolutePath(), fileSize);
+        } catch (final Exception e) {
+            throw new IOException("Unable to open file: " + file, e);
+        }
+        try {
+            initOrValidateHeader(mem, CAPACITY_POS, capacity, "capacity", file);
+        } catch (final IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    protected int getIndex(final long sequence) {
+        return (int) (sequence & mask);
+    }
+
+    protected long getWriteSequence() {
+        return mem.getLongVolatile(WRITE_SEQUENCE_POS);
+    }
+
+    protected long getReadSequence() {
+        return getRawReadSequence() & ~VIEW_HELD_FLAG;
+    }
+
+    /**
+     * Might contain the VIEW_HELD_FLAG.
+     */
+    protected long getRawReadSequence() {
+        return mem.getLongVolatile(READ_SEQUENCE_POS);
+    }
+
+    protected boolean isWriterClosed() {
+        return mem.getIntVolatile(CLOSED_POS) == CLOSED_VALUE;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mem != null) {
+            try {
+                mem.unmap();
+                mem = null;
+            } catch (final Exception e) {
+                throw new IOException("Unable to close the file: " + file, e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,270 @@
+package de.invesdwin.context.persistence.timeseries.ipc.mapped.ring;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import de.invesdwin.context.persistence.timeseries.ipc.IZeroCopySynchronousReader;
+import de.invesdwin.context.persistence.timeseries.ipc.SynchronousMessageView;
+import de.invesdwin.util.bean.tuple.Pair;
+
+/**
+ * Every reader receives all messages that are written after it was opened. The reader claims a free slot in the header
+ * during open and releases it again on close. While polling, the reader writes a heartbeat into its slot every quarter
+ * of the reader timeout. A reader that did not poll for longer than the reader timeout might have lost its slot, its
+ * next call then throws an IOException.
+ *
+ * Messages of an overwriting writer are validated after they were copied. When the writer got too close to overwriting
+ * the message, the reader skips all messages up to the latest write sequence and notifies onMessagesLost.
+ *
+ * The message view points directly into the mapped file and the message is only released to a gating writer on the
+ * next read. An overwriting writer does not wait for that, thus it might overwrite the message while the view is still
+ * being read. With an overwriting writer, the view should thus be processed first (e.g. deserialized or copied) and
+ * isMessageViewValid needs to be checked afterwards, the result has to be discarded when the check fails.
+ */
+@NotThreadSafe
+public class BroadcastRingBufferSynchronousReader extends ABroadcastRingBufferSynchronousChannel
+        implements IZeroCopySynchronousReader {
+
+    private final SynchronousMessageView messageView = new SynchronousMessageView();
+    private int slot = -1;
+    private long slotPos;
+    private long owner;
+    private long lastHeartbeatMillis;
+    private long readSequence;
+    /**
+     * true when the read sequence was moved past the message of the view but was not yet published to the writer
+     */
+    private boolean readSequencePending;
+    /**
+     * the sequence of the message of the current view
+     */
+    private long messageViewSequence;
+    private long lostCount;
+
+    public BroadcastRingBufferSynchronousReader(final File file, final int maxMessageSize) {
+        super(file, maxMessageSize);
+    }
+
+    public BroadcastRingBufferSynchronousReader(final File file, final int maxMessageSize, final int capacity,
+            final int maxReaders) {
+        super(file, maxMessageSize, capacity, maxReaders);
+    }
+
+    @Override
+    public void open() throws IOException {
+        super.open();
+        final long nowMillis = System.currentTimeMillis();
+        for (int i = 0; i < maxReaders; i++) {
+            final long pos = getReaderSlotPos(i);
+            //slots of dead readers can be reused
+            reclaimStaleReaderSlot(pos, nowMillis);
+            if (mem.compareAndSwapLong(pos + READER_STATE_OFFSET, READER_STATE_FREE, READER_STATE_REGISTERING)) {
+                slot = i;
+                slotPos = pos;
+                break;
+            }
+        }
+        if (slot < 0) {
+            close();
+            throw new IOException("All [" + maxReaders + "] reader slots are in use: " + file);
+        }
+        owner = ThreadLocalRandom.current().nextLong();
+        mem.putLongVolatile(slotPos + READER_OWNER_OFFSET, owner);
+        lastHeartbeatMillis = nowMillis;
+        mem.putLongVolatile(slotPos + READER_HEARTBEAT_OFFSET, nowMillis);
+        mem.putLongVolatile(slotPos + READER_SEQUENCE_OFFSET, getWriteSequence());
+        mem.putLongVolatile(slotPos + READER_STATE_OFFSET, READER_STATE_ACTIVE);
+        /*
+         * the writer might have moved on while the slot was not yet active, thus only start at the write sequence that
+         * is visible after the writer is able to see the slot
+         */
+        readSequence = getWriteSequence();
+        mem.putLongVolatile(slotPos + READER_SEQUENCE_OFFSET, readSequence);
+    }
+
+    /**
+     * The number of times messages were lost because an overwriting writer was faster.
+     */
+    public long getLostCount() {
+        return lostCount;
+    }
+
+    /**
+     * Called when the messages between the given sequences were overwritten before they could be read.
+     */
+    protected void onMessagesLost(final long fromSequence, final long toSequence) {}
+
+    /**
+     * Only writes to the slot every quarter of the reader timeout, so that polling stays cheap.
+     */
+    private void heartbeat() throws IOException {
+        final long nowMillis = System.currentTimeMillis();
+        if (nowMillis - lastHeartbeatMillis < getReaderTimeoutMillis() / 4) {
+            return;
+        }
+        if (mem.getLongVolatile(slotPos + READER_STATE_OFFSET) != READER_STATE_ACTIVE
+                || mem.getLongVolatile(slotPos + READER_OWNER_OFFSET) != owner) {
+            throw new IOException("Reader slot [" + slot + "] was reclaimed because the reader did not poll within "
+                    + getReaderTimeoutMillis() + "ms: " + file);
+        }
+        lastHeartbeatMillis = nowMillis;
+        mem.putLongVolatile(slotPos + READER_HEARTBEAT_OFFSET, nowMillis);
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        if (mem == null) {
+            return false;
+        }
+        heartbeat();
+        if (readSequence < getWriteSequence()) {
+            return true;
+        }
+        //the writer publishes its last message before setting the closed flag
+        if (isWriterClosed() && readSequence >= getWriteSequence()) {
+            throw new EOFException("Channel was closed by the other endpoint");
+        }
+        return false;
+    }
+
+    @Override
+    public Pair<Integer, byte[]> readMessage() throws IOException {
+        heartbeat();
+        publishPendingReadSequence();
+        while (true) {
+            final long writeSequence = getWriteSequence();
+            if (readSequence >= writeSequence) {
+                return null;
+            }
+            if (isLost(writeSequence)) {
+                skipLost(writeSequence);
+                continue;
+            }
+            final int index = getIndex(readSequence);
+            final long pos = dataPos + index;
+            final int size = mem.getInt(pos + ARingBufferSynchronousChannel.SIZE_OFFSET);
+            if (size == ARingBufferSynchronousChannel.PADDING_SIZE) {
+                //skip to the beginning of the buffer
+                setReadSequence(readSequence + capacity - index);
+                continue;
+            }
+            if (size < 0 || size > maxMessageSize) {
+                final long writeSequenceAfter = getWriteSequence();
+                if (isLost(writeSequenceAfter)) {
+                    skipLost(writeSequenceAfter);
+                    continue;
+                }
+                throw new IllegalStateException("Invalid messageSize [" + size + "] at sequence [" + readSequence
+                        + "], maybe maxMessageSize differs from the writer: " + file);
+            }
+            final int type = mem.getInt(pos + ARingBufferSynchronousChannel.TYPE_OFFSET);
+            final byte[] message = new byte[size];
+            mem.getBytes(pos + ARingBufferSynchronousChannel.MESSAGE_OFFSET, message, 0, size);
+            //the message might have been overwritten while it was copied
+            final long writeSequenceAfter = getWriteSequence();
+            if (isLost(writeSequenceAfter)) {
+                skipLost(writeSequenceAfter);
+                continue;
+            }
+            setReadSequence(readSequence + ARingBufferSynchronousChannel.getRecordLength(size));
+            return Pair.of(type, message);
+        }
+    }
+
+    /**
+     * Returns null when there is no message available.
+     */
+    @Override
+    public SynchronousMessageView readMessageView() throws IOException {
+        heartbeat();
+        publishPendingReadSequence();
+        while (true) {
+            final long writeSequence = getWriteSequence();
+            if (readSequence >= writeSequence) {
+                return null;
+            }
+            if (isLost(writeSequence)) {
+                skipLost(writeSequence);
+                continue;
+            }
+            final int index = getIndex(readSequence);
+            final long pos = dataPos + index;
+            final int size = mem.getInt(pos + ARingBufferSynchronousChannel.SIZE_OFFSET);
+            if (size == ARingBufferSynchronousChannel.PADDING_SIZE) {
+                setReadSequence(readSequence + capacity - index);
+                continue;
+            }
+            final int type = mem.getInt(pos + ARingBufferSynchronousChannel.TYPE_OFFSET);
+            final long writeSequenceAfter = getWriteSequence();
+            if (isLost(writeSequenceAfter)) {
+                skipLost(writeSequenceAfter);
+                continue;
+            }
+            if (size < 0 || size > maxMessageSize) {
+                throw new IllegalStateException("Invalid messageSize [" + size + "] at sequence [" + readSequence
+                        + "], maybe maxMessageSize differs from the writer: " + file);
+            }
+            messageViewSequence = readSequence;
+            readSequence += ARingBufferSynchronousChannel.getRecordLength(size);
+            readSequencePending = true;
+            return messageView.set(type, mem.asByteBuffer(),
+                    (int) (pos + ARingBufferSynchronousChannel.MESSAGE_OFFSET), size);
+        }
+    }
+
+    /**
+     * Validate-after-read for the message view: returns false when an overwriting writer might have overwritten the
+     * message of the last view in the meantime, then anything that was read from the view is invalid. Always true for a
+     * gating writer, since it waits until the message is released by the next read.
+     */
+    public boolean isMessageViewValid() {
+        if (!readSequencePending) {
+            //the view was already released
+            return false;
+        }
+        if (isWriterGating()) {
+            return true;
+        }
+        return getWriteSequence() - messageViewSequence <= capacity - maxWriteAhead;
+    }
+
+    private void publishPendingReadSequence() {
+        if (readSequencePending) {
+            setReadSequence(readSequence);
+        }
+    }
+
+    private boolean isLost(final long writeSequence) {
+        return writeSequence - readSequence > capacity - maxWriteAhead;
+    }
+
+    private void skipLost(final long writeSequence) {
+        lostCount++;
+        final long fromSequence = readSequence;
+        setReadSequence(writeSequence);
+        onMessagesLost(fromSequence, writeSequence);
+    }
+
+    private void setReadSequence(final long readSequence) {
+        this.readSequence = readSequence;
+        this.readSequencePending = false;
+        mem.putLongVolatile(slotPos + READER_SEQUENCE_OFFSET, readSequence);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mem != null && slot >= 0) {
+            //do not free the slot of another reader when ours was reclaimed
+            if (mem.getLongVolatile(slotPos + READER_OWNER_OFFSET) == owner) {
+                mem.compareAndSwapLong(slotPos + READER_STATE_OFFSET, READER_STATE_ACTIVE, READER_STATE_FREE);
+            }
+            slot = -1;
+        }
+        super.close();
+    }
+
+}
@@ -0,0 +1,161 @@
+package de.invesdwin.context.persistence.timeseries.ipc.mapped.ring;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import de.invesdwin.context.persistence.timeseries.ipc.ASpinWait;
+import de.invesdwin.context.persistence.timeseries.ipc.IZeroCopySynchronousWriter;
+import de.invesdwin.util.time.Instant;
+import de.invesdwin.util.time.duration.Duration;
+import de.invesdwin.util.time.fdate.FTimeUnit;
+
+/**
+ * There should only be one writer per file, or else the threads might destroy each others data.
+ *
+ * A gating writer waits for the slowest registered reader when the buffer is full and throws an IOException when that
+ * takes longer than the back pressure timeout. Readers that stopped sending heartbeats, e.g. because their process died
+ * without closing the channel, are removed after the reader timeout and then no longer gate the writer. An overwriting
+ * writer never waits, readers that fall behind lose messages instead.
+ */
+@NotThreadSafe
+public class BroadcastRingBufferSynchronousWriter extends ABroadcastRingBufferSynchronousChannel
+        implements IZeroCopySynchronousWriter {
+
+    private final boolean gating;
+    private long writeSequence;
+    /**
+     * the reader slots are only scanned again when the cached minimum does not leave enough space
+     */
+    private long cachedMinReadSequence;
+    private long requiredReadSequence;
+    private final ASpinWait backPressureSpinWait = new ASpinWait() {
+        @Override
+        protected boolean isConditionFulfilled() throws IOException {
+            cachedMinReadSequence = getMinReadSequence();
+            return cachedMinReadSequence >= requiredReadSequence;
+        }
+    };
+
+    public BroadcastRingBufferSynchronousWriter(final File file, final int maxMessageSize, final boolean gating) {
+        super(file, maxMessageSize);
+        this.gating = gating;
+    }
+
+    public BroadcastRingBufferSynchronousWriter(final File file, final int maxMessageSize, final int capacity,
+            final int maxReaders, final boolean gating) {
+        super(file, maxMessageSize, capacity, maxReaders);
+        this.gating = gating;
+    }
+
+    public boolean isGating() {
+        return gating;
+    }
+
+    protected Duration getBackPressureTimeout() {
+        return new Duration(1, FTimeUnit.MINUTES);
+    }
+
+    @Override
+    public void open() throws IOException {
+        super.open();
+        //continue after the messages of a previous writer
+        writeSequence = getWriteSequence();
+        cachedMinReadSequence = getMinReadSequence();
+        mem.putIntVolatile(GATING_POS, gating ? 1 : 0);
+        //maybe remove closed flag that causes IOException on readers
+        mem.putIntVolatile(CLOSED_POS, ARingBufferSynchronousChannel.OPEN_VALUE);
+    }
+
+    /**
+     * Returns the write sequence when no reader is registered. Dead readers are removed on the way.
+     */
+    private long getMinReadSequence() {
+        long min = writeSequence;
+        final long nowMillis = System.currentTimeMillis();
+        for (int slot = 0; slot < maxReaders; slot++) {
+            final long slotPos = getReaderSlotPos(slot);
+            if (mem.getLongVolatile(slotPos + READER_STATE_OFFSET) == READER_STATE_ACTIVE) {
+                final long readSequence = mem.getLongVolatile(slotPos + READER_SEQUENCE_OFFSET);
+                if (readSequence < min && !reclaimStaleReaderSlot(slotPos, nowMillis)) {
+                    min = readSequence;
+                }
+            }
+        }
+        return min;
+    }
+
+    @Override
+    public void write(final int type, final byte[] message) throws IOException {
+        final long pos = reserve(type, message.length);
+        mem.setBytes(pos + ARingBufferSynchronousChannel.MESSAGE_OFFSET, message, 0, message.length);
+        commit(message.length);
+    }
+
+    @Override
+    public void write(final int type, final ByteBuffer message) throws IOException {
+        final int size = message.remaining();
+        final long pos = reserve(type, size);
+        mem.setBytes(pos + ARingBufferSynchronousChannel.MESSAGE_OFFSET, message, message.position(), size);
+        commit(size);
+    }
+
+    /**
+     * Waits for enough space, writes the header of the message and returns its position.
+     */
+    private long reserve(final int type, final int size) throws IOException {
+        if (size > maxMessageSize) {
+            throw new IllegalStateException(
+                    "messageSize [" + size + "] exceeds maxMessageSize [" + maxMessageSize + "]");
+        }
+        final int recordLength = ARingBufferSynchronousChannel.getRecordLength(size);
+        int index = getIndex(writeSequence);
+        final int remaining = capacity - index;
+        final boolean padding = recordLength > remaining;
+        if (gating) {
+            long required = recordLength;
+            if (padding) {
+                required += remaining;
+            }
+            awaitCapacity(writeSequence + required - capacity);
+        }
+
+        if (padding) {
+            mem.putInt(dataPos + index + ARingBufferSynchronousChannel.SIZE_OFFSET,
+                    ARingBufferSynchronousChannel.PADDING_SIZE);
+            writeSequence += remaining;
+            index = 0;
+        }
+        final long pos = dataPos + index;
+        mem.putInt(pos + ARingBufferSynchronousChannel.SIZE_OFFSET, size);
+        mem.putInt(pos + ARingBufferSynchronousChannel.TYPE_OFFSET, type);
+        return pos;
+    }
+
+    private void commit(final int size) {
+        writeSequence += ARingBufferSynchronousChannel.getRecordLength(size);
+        mem.putLongVolatile(WRITE_SEQUENCE_POS, writeSequence);
+    }
+
+    private void awaitCapacity(final long readSequence) throws IOException {
+        if (cachedMinReadSequence >= readSequence) {
+            return;
+        }
+        requiredReadSequence = readSequence;
+        if (!backPressureSpinWait.awaitFulfill(new Instant(), getBackPressureTimeout())) {
+            throw new IOException("Ring buffer is full and the slowest reader did not free up space within "
+                    + getBackPressureTimeout() + ": " + file);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mem != null) {
+            mem.putIntVolatile(CLOSED_POS, ARingBufferSynchronousChannel.CLOSED_VALUE);
+        }
+        super.close();
+    }
+
+}
@@ -0,0 +1,176 @@
+package de.invesdwin.context.persistence.timeseries.ipc.mapped.ring;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import de.invesdwin.context.persistence.timeseries.ipc.IZeroCopySynchronousReader;
+import de.invesdwin.context.persistence.timeseries.ipc.SynchronousMessageView;
+import de.invesdwin.util.bean.tuple.Pair;
+
+/**
+ * There can be multiple competing readers per file, each message is then only received by one of them. A reader copies
+ * the message first and only claims it afterwards by moving the read sequence with a compare and swap, thus the writer
+ * can not overwrite a message while it is being copied.
+ *
+ * The message view points directly into the mapped file. The reader claims the message exclusively by setting the
+ * VIEW_HELD_FLAG on the read sequence with a compare and swap, then neither the writer nor a competing reader touches
+ * it until the view is released on the next read. Competing readers return null while a view is held. A reader process
+ * that dies while holding a view blocks the file until it gets reset.
+ */
+@NotThreadSafe
+public class RingBufferSynchronousReader extends ARingBufferSynchronousChannel implements IZeroCopySynchronousReader {
+
+    private static final long NO_PENDING_READ_SEQUENCE = -1;
+
+    private final SynchronousMessageView messageView = new SynchronousMessageView();
+    /**
+     * the read sequence after the message of the view, it is published on the next read
+     */
+    private long pendingReadSequence = NO_PENDING_READ_SEQUENCE;
+    /**
+     * the read sequence of the message of the view, it is held until the view is released
+     */
+    private long heldReadSequence;
+
+    public RingBufferSynchronousReader(final File file, final int maxMessageSize) {
+        super(file, maxMessageSize);
+    }
+
+    public RingBufferSynchronousReader(final File file, final int maxMessageSize, final int capacity) {
+        super(file, maxMessageSize, capacity);
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        if (mem == null) {
+            return false;
+        }
+        if (getNextReadSequence() < getWriteSequence()) {
+            return true;
+        }
+        //the writer publishes its last message before setting the closed flag
+        if (isWriterClosed() && getNextReadSequence() >= getWriteSequence()) {
+            throw new EOFException("Channel was closed by the other endpoint");
+        }
+        return false;
+    }
+
+    private long getNextReadSequence() {
+        if (pendingReadSequence != NO_PENDING_READ_SEQUENCE) {
+            return pendingReadSequence;
+        }
+        return getReadSequence();
+    }
+
+    private void releasePendingReadSequence() {
+        if (pendingReadSequence != NO_PENDING_READ_SEQUENCE) {
+            final long releasedReadSequence = pendingReadSequence;
+            pendingReadSequence = NO_PENDING_READ_SEQUENCE;
+            if (!mem.compareAndSwapLong(READ_SEQUENCE_POS, heldReadSequence | VIEW_HELD_FLAG,
+                    releasedReadSequence)) {
+                throw new IllegalStateException("Held read sequence [" + heldReadSequence
+                        + "] was modified by another reader: " + file);
+            }
+        }
+    }
+
+    /**
+     * Returns null when there is no message available, e.g. because a competing reader was faster.
+     */
+    @Override
+    public Pair<Integer, byte[]> readMessage() {
+        releasePendingReadSequence();
+        while (true) {
+            final long readSequence = getRawReadSequence();
+            if ((readSequence & VIEW_HELD_FLAG) != 0) {
+                //a competing reader holds a view on the next message
+                return null;
+            }
+            if (readSequence >= getWriteSequence()) {
+                return null;
+            }
+            final int index = getIndex(readSequence);
+            final long pos = DATA_POS + index;
+            final int size = mem.getInt(pos + SIZE_OFFSET);
+            if (size == PADDING_SIZE) {
+                //skip to the beginning of the buffer
+                mem.compareAndSwapLong(READ_SEQUENCE_POS, readSequence, readSequence + capacity - index);
+                continue;
+            }
+            if (size < 0 || size > maxMessageSize) {
+                if (getRawReadSequence() != readSequence) {
+                    //a competing reader claimed the message and the writer already reused the space
+                    continue;
+                }
+                throw newInvalidMessageSizeException(readSequence, size);
+            }
+            final int type = mem.getInt(pos + TYPE_OFFSET);
+            final byte[] message = new byte[size];
+            mem.getBytes(pos + MESSAGE_OFFSET, message, 0, size);
+            if (mem.compareAndSwapLong(READ_SEQUENCE_POS, readSequence, readSequence + getRecordLength(size))) {
+                return Pair.of(type, message);
+            }
+        }
+    }
+
+    /**
+     * Returns null when there is no message available.
+     */
+    @Override
+    public SynchronousMessageView readMessageView() throws IOException {
+        releasePendingReadSequence();
+        while (true) {
+            final long readSequence = getRawReadSequence();
+            if ((readSequence & VIEW_HELD_FLAG) != 0) {
+                //a competing reader holds a view on the next message
+                return null;
+            }
+            if (readSequence >= getWriteSequence()) {
+                return null;
+            }
+            final int index = getIndex(readSequence);
+            final long pos = DATA_POS + index;
+            final int size = mem.getInt(pos + SIZE_OFFSET);
+            if (size == PADDING_SIZE) {
+                mem.compareAndSwapLong(READ_SEQUENCE_POS, readSequence, readSequence + capacity - index);
+                continue;
+            }
+            if (size < 0 || size > maxMessageSize) {
+                if (getRawReadSequence() != readSequence) {
+                    //a competing reader claimed the message and the writer already reused the space
+                    continue;
+                }
+                throw newInvalidMessageSizeException(readSequence, size);
+            }
+            /*
+             * hold the message so that it stays untouched while the view is in use, when the compare and swap succeeds
+             * nobody moved the read sequence and thus the writer did not touch the message since the size was read
+             */
+            if (!mem.compareAndSwapLong(READ_SEQUENCE_POS, readSequence, readSequence | VIEW_HELD_FLAG)) {
+                //a competing reader was faster
+                continue;
+            }
+            heldReadSequence = readSequence;
+            pendingReadSequence = readSequence + getRecordLength(size);
+            return messageView.set(mem.getInt(pos + TYPE_OFFSET), mem.asByteBuffer(), (int) (pos + MESSAGE_OFFSET),
+                    size);
+        }
+    }
+
+    private IllegalStateException newInvalidMessageSizeException(final long readSequence, final int size) {
+        return new IllegalStateException("Invalid messageSize [" + size + "] at sequence [" + readSequence
+                + "], maybe maxMessageSize differs from the writer: " + file);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mem != null) {
+            releasePendingReadSequence();
+        }
+        super.close();
+    }
+
+}
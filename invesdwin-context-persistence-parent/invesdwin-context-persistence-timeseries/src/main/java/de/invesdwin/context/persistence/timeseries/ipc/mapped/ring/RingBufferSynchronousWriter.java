@@ -0,0 +1,128 @@
+package de.invesdwin.context.persistence.timeseries.ipc.mapped.ring;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import de.invesdwin.context.persistence.timeseries.ipc.ASpinWait;
+import de.invesdwin.context.persistence.timeseries.ipc.IZeroCopySynchronousWriter;
+import de.invesdwin.util.time.Instant;
+import de.invesdwin.util.time.duration.Duration;
+import de.invesdwin.util.time.fdate.FTimeUnit;
+
+/**
+ * There should only be one writer per file, or else the threads might destroy each others data.
+ *
+ * When the buffer is full, the writer waits for the readers to free up space. An IOException is thrown when that takes
+ * longer than the back pressure timeout.
+ */
+@NotThreadSafe
+public class RingBufferSynchronousWriter extends ARingBufferSynchronousChannel implements IZeroCopySynchronousWriter {
+
+    private long writeSequence;
+    /**
+     * the read sequence is only read from the shared memory again when the cached one does not leave enough space
+     */
+    private long cachedReadSequence;
+    private long requiredReadSequence;
+    private final ASpinWait backPressureSpinWait = new ASpinWait() {
+        @Override
+        protected boolean isConditionFulfilled() throws IOException {
+            cachedReadSequence = getReadSequence();
+            return cachedReadSequence >= requiredReadSequence;
+        }
+    };
+
+    public RingBufferSynchronousWriter(final File file, final int maxMessageSize) {
+        super(file, maxMessageSize);
+    }
+
+    public RingBufferSynchronousWriter(final File file, final int maxMessageSize, final int capacity) {
+        super(file, maxMessageSize, capacity);
+    }
+
+    protected Duration getBackPressureTimeout() {
+        return new Duration(1, FTimeUnit.MINUTES);
+    }
+
+    @Override
+    public void open() throws IOException {
+        super.open();
+        //continue after the messages of a previous writer
+        writeSequence = getWriteSequence();
+        cachedReadSequence = getReadSequence();
+        //maybe remove closed flag that causes IOException on reader
+        mem.putIntVolatile(CLOSED_POS, OPEN_VALUE);
+    }
+
+    @Override
+    public void write(final int type, final byte[] message) throws IOException {
+        final long pos = reserve(type, message.length);
+        mem.setBytes(pos + MESSAGE_OFFSET, message, 0, message.length);
+        commit(message.length);
+    }
+
+    @Override
+    public void write(final int type, final ByteBuffer message) throws IOException {
+        final int size = message.remaining();
+        final long pos = reserve(type, size);
+        mem.setBytes(pos + MESSAGE_OFFSET, message, message.position(), size);
+        commit(size);
+    }
+
+    /**
+     * Waits for enough space, writes the header of the message and returns its position.
+     */
+    private long reserve(final int type, final int size) throws IOException {
+        if (size > maxMessageSize) {
+            throw new IllegalStateException(
+                    "messageSize [" + size + "] exceeds maxMessageSize [" + maxMessageSize + "]");
+        }
+        final int recordLength = getRecordLength(size);
+        int index = getIndex(writeSequence);
+        final int remaining = capacity - index;
+        final boolean padding = recordLength > remaining;
+        long required = recordLength;
+        if (padding) {
+            required += remaining;
+        }
+        awaitCapacity(writeSequence + required - capacity);
+
+        if (padding) {
+            mem.putInt(DATA_POS + index + SIZE_OFFSET, PADDING_SIZE);
+            writeSequence += remaining;
+            index = 0;
+        }
+        final long pos = DATA_POS + index;
+        mem.putInt(pos + SIZE_OFFSET, size);
+        mem.putInt(pos + TYPE_OFFSET, type);
+        return pos;
+    }
+
+    private void commit(final int size) {
+        writeSequence += getRecordLength(size);
+        mem.putLongVolatile(WRITE_SEQUENCE_POS, writeSequence);
+    }
+
+    private void awaitCapacity(final long readSequence) throws IOException {
+        if (cachedReadSequence >= readSequence) {
+            return;
+        }
+        requiredReadSequence = readSequence;
+        if (!backPressureSpinWait.awaitFulfill(new Instant(), getBackPressureTimeout())) {
+            throw new IOException("Ring buffer is full and the reader did not free up space within "
+                    + getBackPressureTimeout() + ": " + file);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mem != null) {
+            mem.putIntVolatile(CLOSED_POS, CLOSED_VALUE);
+        }
+        super.close();
+    }
+
+}
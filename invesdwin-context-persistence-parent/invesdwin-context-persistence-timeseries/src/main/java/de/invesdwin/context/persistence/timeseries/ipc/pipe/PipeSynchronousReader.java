@@ -5,24 +5,34 @@ import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
-import de.invesdwin.context.persistence.timeseries.ipc.ISynchronousReader;
+import de.invesdwin.context.persistence.timeseries.ipc.IZeroCopySynchronousReader;
+import de.invesdwin.context.persistence.timeseries.ipc.SynchronousMessageView;
 import de.invesdwin.util.assertions.Assertions;
 import de.invesdwin.util.bean.tuple.Pair;
 
 @NotThreadSafe
-public class PipeSynchronousReader extends APipeSynchronousChannel implements ISynchronousReader {
+public class PipeSynchronousReader extends APipeSynchronousChannel implements IZeroCopySynchronousReader {
 
     private static final int CLOSED_READ_COUNT = -1;
     private static final int TIMEOUT_READ_COUNT = 0;
     private final byte[] typeBuffer = new byte[TYPE_OFFSET];
     private final byte[] sizeBuffer = new byte[SIZE_OFFSET];
+    /**
+     * reused for each message so that reading a message view does not allocate
+     */
+    private final byte[] messageBuffer;
+    private final ByteBuffer messageByteBuffer;
+    private final SynchronousMessageView messageView = new SynchronousMessageView();
     private BufferedInputStream in;
 
     public PipeSynchronousReader(final File file, final int maxMessageSize) {
         super(file, maxMessageSize);
+        this.messageBuffer = new byte[maxMessageSize];
+        this.messageByteBuffer = ByteBuffer.wrap(messageBuffer);
     }
 
     @Override
@@ -46,21 +56,32 @@ public class PipeSynchronousReader extends APipeSynchronousChannel implements IS
 
     @Override
     public Pair<Integer, byte[]> readMessage() throws IOException {
-        Assertions.checkTrue(read(typeBuffer));
+        return readMessageView().toPair();
+    }
+
+    @Override
+    public SynchronousMessageView readMessageView() throws IOException {
+        Assertions.checkTrue(read(typeBuffer, typeBuffer.length));
         final int type = TYPE_SERDE.fromBytes(typeBuffer);
         if (type == TYPE_CLOSED_VALUE) {
             throw new EOFException("Channel was closed by the other endpoint");
         }
-        Assertions.checkTrue(read(sizeBuffer));
+        Assertions.checkTrue(read(sizeBuffer, sizeBuffer.length));
         final int size = SIZE_SERDE.fromBytes(sizeBuffer);
-        final byte[] message = new byte[size];
+        if (size < 0) {
+            throw new IllegalStateException("messageSize [" + size + "] is negative, the stream is corrupt");
+        }
+        if (size > maxMessageSize) {
+            throw new IllegalStateException(
+                    "messageSize [" + size + "] exceeds maxMessageSize [" + maxMessageSize + "]");
+        }
         if (size > 0) {
-            Assertions.checkTrue(read(message));
+            Assertions.checkTrue(read(messageBuffer, size));
         }
-        return Pair.of(type, message);
+        return messageView.set(type, messageByteBuffer, 0, size);
     }
 
-    private boolean read(final byte[] buffer) throws IOException {
+    private boolean read(final byte[] buffer, final int length) throws IOException {
         try {
             if (in.available() <= 0) {
                 return false;
@@ -68,15 +89,15 @@ public class PipeSynchronousReader extends APipeSynchronousChannel implements IS
         } catch (final IOException e) {
             throw newEofException(e);
         }
-        final int read = in.read(buffer);
+        final int read = in.read(buffer, 0, length);
         if (read == TIMEOUT_READ_COUNT) {
             return false;
         }
         if (read == CLOSED_READ_COUNT) {
             throw new EOFException("Pipe closed");
         }
-        if (read != buffer.length) {
-            throw new IllegalStateException("Read less bytes [" + read + "] than expected [" + buffer.length + "]");
+        if (read != length) {
+            throw new IllegalStateException("Read less bytes [" + read + "] than expected [" + length + "]");
         }
         return true;
     }
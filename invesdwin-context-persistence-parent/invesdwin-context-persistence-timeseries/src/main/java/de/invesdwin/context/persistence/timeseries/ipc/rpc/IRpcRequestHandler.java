@@ -0,0 +1,11 @@
+package de.invesdwin.context.persistence.timeseries.ipc.rpc;
+
+public interface IRpcRequestHandler {
+
+    /**
+     * The response is sent with the same type as the request. Exceptions are sent to the client as an error response
+     * and fail the future of the request.
+     */
+    byte[] handleRequest(int type, byte[] request) throws Exception;
+
+}
@@ -0,0 +1,297 @@
+package de.invesdwin.context.persistence.timeseries.ipc.rpc;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.log.error.Err;
+import de.invesdwin.context.persistence.timeseries.ipc.ASpinWait;
+import de.invesdwin.context.persistence.timeseries.ipc.ISynchronousReader;
+import de.invesdwin.context.persistence.timeseries.ipc.ISynchronousWriter;
+import de.invesdwin.util.concurrent.Executors;
+import de.invesdwin.util.concurrent.WrappedExecutorService;
+import de.invesdwin.util.time.Instant;
+import de.invesdwin.util.time.duration.Duration;
+import de.invesdwin.util.time.fdate.FTimeUnit;
+
+/**
+ * Sends requests without waiting for the responses of previous requests. Each request gets a correlation id which is
+ * used to complete its future when the response arrives, the responses are received on a separate thread.
+ *
+ * Requests are batched into frames like a group commit: the thread that writes a frame picks up all requests that
+ * were added by other threads in the meantime and writes them as one frame afterwards.
+ */
+@ThreadSafe
+public class RpcClient implements Closeable {
+
+    private final ISynchronousWriter requestWriter;
+    private final ISynchronousReader responseReader;
+    private final int maxRecordMessageSize;
+    private final AtomicLong correlationIdSequence = new AtomicLong();
+    private final Map<Long, PendingRequest> pendingRequests = new ConcurrentHashMap<>();
+    private final Object batchLock = new Object();
+    @GuardedBy("batchLock")
+    private RpcFrameWriter batch;
+    /**
+     * the frame that is currently being written, swapped with the batch
+     */
+    @GuardedBy("writeLock")
+    private RpcFrameWriter writingBatch;
+    private final Lock writeLock = new ReentrantLock();
+    @GuardedBy("this")
+    private WrappedExecutorService responseExecutor;
+    private volatile boolean closed = true;
+
+    public RpcClient(final ISynchronousWriter requestWriter, final ISynchronousReader responseReader,
+            final int maxMessageSize) {
+        this.requestWriter = requestWriter;
+        this.responseReader = responseReader;
+        this.maxRecordMessageSize = RpcFrames.getMaxRecordMessageSize(maxMessageSize);
+        this.batch = new RpcFrameWriter(maxMessageSize);
+        this.writingBatch = new RpcFrameWriter(maxMessageSize);
+    }
+
+    /**
+     * The maximum time call waits for a response.
+     */
+    protected Duration getRequestTimeout() {
+        return new Duration(1, FTimeUnit.MINUTES);
+    }
+
+    public synchronized void open() throws IOException {
+        if (!closed) {
+            throw new IllegalStateException("already open");
+        }
+        requestWriter.open();
+        responseReader.open();
+        closed = false;
+        responseExecutor = Executors.newFixedThreadPool(RpcClient.class.getSimpleName() + "_responses", 1);
+        responseExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                readResponses();
+            }
+        });
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * The number of requests that did not receive a response yet.
+     */
+    public int getPendingRequestCount() {
+        return pendingRequests.size();
+    }
+
+    /**
+     * Sends the request without waiting for the response. Cancelling the future discards the response.
+     */
+    public Future<byte[]> request(final int type, final byte[] request) throws IOException {
+        if (closed) {
+            throw new EOFException("closed");
+        }
+        if (type == RpcFrames.TYPE_ERROR) {
+            throw new IllegalArgumentException(
+                    "type [" + type + "] is reserved for error responses, please use a different type number");
+        }
+        if (request.length > maxRecordMessageSize) {
+            throw new IllegalStateException("requestSize [" + request.length + "] exceeds maxRecordMessageSize ["
+                    + maxRecordMessageSize + "]");
+        }
+        final long correlationId = correlationIdSequence.incrementAndGet();
+        final PendingRequest future = new PendingRequest(correlationId);
+        pendingRequests.put(correlationId, future);
+        try {
+            while (true) {
+                synchronized (batchLock) {
+                    if (batch.tryAppend(type, correlationId, request)) {
+                        break;
+                    }
+                }
+                //the batch is full, thus it needs to be written before this request fits
+                flush(true);
+            }
+            flush(false);
+        } catch (final IOException e) {
+            failPendingRequests(e);
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * Sends the request and waits for the response.
+     */
+    public byte[] call(final int type, final byte[] request) throws IOException {
+        return await(request(type, request));
+    }
+
+    /**
+     * Waits for the response of a request that was sent before. The request is cancelled on timeout or interrupt, so
+     * that a late response does not leak its pending entry.
+     */
+    public byte[] await(final Future<byte[]> future) throws IOException {
+        final Duration timeout = getRequestTimeout();
+        try {
+            return future.get(timeout.longValue(FTimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (final TimeoutException e) {
+            future.cancel(false);
+            throw new IOException("Did not receive a response within " + timeout, e);
+        } catch (final InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Without blocking a thread that is currently writing will pick up the batch instead.
+     */
+    private void flush(final boolean blocking) throws IOException {
+        boolean lock = blocking;
+        do {
+            if (lock) {
+                writeLock.lock();
+            } else if (!writeLock.tryLock()) {
+                return;
+            }
+            try {
+                while (true) {
+                    synchronized (batchLock) {
+                        if (batch.isEmpty()) {
+                            break;
+                        }
+                        final RpcFrameWriter swap = writingBatch;
+                        writingBatch = batch;
+                        batch = swap;
+                    }
+                    writingBatch.writeTo(requestWriter);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+            lock = false;
+            //a request might have been added after the last check but before the lock was released
+        } while (hasBatch());
+    }
+
+    private boolean hasBatch() {
+        synchronized (batchLock) {
+            return !batch.isEmpty();
+        }
+    }
+
+    private void readResponses() {
+        final ASpinWait spinWait = new ASpinWait() {
+            @Override
+            protected boolean isConditionFulfilled() throws IOException {
+                return closed || responseReader.hasNext();
+            }
+        };
+        final RpcFrameReader frameReader = new RpcFrameReader();
+        try {
+            while (!closed) {
+                if (!spinWait.awaitFulfill(new Instant(), getRequestTimeout()) || closed) {
+                    continue;
+                }
+                if (!frameReader.readFrom(responseReader)) {
+                    continue;
+                }
+                while (frameReader.next()) {
+                    final PendingRequest future = pendingRequests.remove(frameReader.getCorrelationId());
+                    if (future == null) {
+                        //cancelled or timed out
+                        continue;
+                    }
+                    if (frameReader.getType() == RpcFrames.TYPE_ERROR) {
+                        future.completeExceptionally(
+                                new IOException(new String(frameReader.getMessage(), StandardCharsets.UTF_8)));
+                    } else {
+                        future.complete(frameReader.getMessage());
+                    }
+                }
+            }
+        } catch (final EOFException e) {
+            failPendingRequests(e);
+        } catch (final Throwable t) {
+            if (!closed) {
+                Err.process(t);
+            }
+            failPendingRequests(t);
+        }
+    }
+
+    private void failPendingRequests(final Throwable cause) {
+        for (final Long correlationId : new ArrayList<>(pendingRequests.keySet())) {
+            final PendingRequest future = pendingRequests.remove(correlationId);
+            if (future != null) {
+                future.completeExceptionally(cause);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        responseExecutor.shutdownNow();
+        try {
+            responseExecutor.awaitTermination();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        responseExecutor = null;
+        failPendingRequests(new EOFException("closed"));
+        writeLock.lock();
+        try {
+            requestWriter.close();
+        } finally {
+            writeLock.unlock();
+            responseReader.close();
+        }
+    }
+
+    /**
+     * Removes itself from the pending requests when it gets cancelled.
+     */
+    private final class PendingRequest extends CompletableFuture<byte[]> {
+
+        private final long correlationId;
+
+        private PendingRequest(final long correlationId) {
+            this.correlationId = correlationId;
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            pendingRequests.remove(correlationId, this);
+            return super.cancel(mayInterruptIfRunning);
+        }
+
+    }
+
+}
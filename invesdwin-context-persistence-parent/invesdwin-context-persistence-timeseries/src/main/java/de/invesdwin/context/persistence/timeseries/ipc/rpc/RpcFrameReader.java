@@ -0,0 +1,103 @@
+package de.invesdwin.context.persistence.timeseries.ipc.rpc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import de.invesdwin.context.persistence.timeseries.ipc.ISynchronousReader;
+import de.invesdwin.context.persistence.timeseries.ipc.IZeroCopySynchronousReader;
+import de.invesdwin.context.persistence.timeseries.ipc.SynchronousMessageView;
+import de.invesdwin.util.bean.tuple.Pair;
+
+/**
+ * Iterates over the records of a frame. Zero copy readers are read via their message view, thus only the messages of
+ * the records are copied.
+ */
+@NotThreadSafe
+public class RpcFrameReader {
+
+    private ByteBuffer buffer;
+    private int pos;
+    private int end;
+    private int type;
+    private long correlationId;
+    private int messagePos;
+    private int size;
+
+    /**
+     * Returns false when no frame was available.
+     */
+    public boolean readFrom(final ISynchronousReader reader) throws IOException {
+        if (reader instanceof IZeroCopySynchronousReader) {
+            final SynchronousMessageView view = ((IZeroCopySynchronousReader) reader).readMessageView();
+            if (view == null) {
+                return false;
+            }
+            checkFrameType(view.getType());
+            reset(view.getBuffer(), view.getOffset(), view.getLength());
+        } else {
+            final Pair<Integer, byte[]> message = reader.readMessage();
+            if (message == null) {
+                return false;
+            }
+            checkFrameType(message.getFirst());
+            reset(ByteBuffer.wrap(message.getSecond()), 0, message.getSecond().length);
+        }
+        return true;
+    }
+
+    private void checkFrameType(final int frameType) {
+        if (frameType != RpcFrames.TYPE_FRAME) {
+            throw new IllegalStateException(
+                    "Unexpected frame type [" + frameType + "], expected [" + RpcFrames.TYPE_FRAME + "]");
+        }
+    }
+
+    public void reset(final ByteBuffer buffer, final int offset, final int length) {
+        this.buffer = buffer;
+        this.pos = offset;
+        this.end = offset + length;
+    }
+
+    /**
+     * Moves to the next record of the frame.
+     */
+    public boolean next() {
+        if (pos >= end) {
+            buffer = null;
+            return false;
+        }
+        type = buffer.getInt(pos + RpcFrames.TYPE_POS);
+        correlationId = buffer.getLong(pos + RpcFrames.CORRELATION_ID_POS);
+        size = buffer.getInt(pos + RpcFrames.SIZE_POS);
+        messagePos = pos + RpcFrames.MESSAGE_POS;
+        if (size < 0 || messagePos + size > end) {
+            throw new IllegalStateException("Invalid record size [" + size + "] for frame with [" + (end - pos)
+                    + "] remaining bytes");
+        }
+        pos = messagePos + size;
+        return true;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public long getCorrelationId() {
+        return correlationId;
+    }
+
+    public byte[] getMessage() {
+        final byte[] message = new byte[size];
+        if (buffer.hasArray()) {
+            System.arraycopy(buffer.array(), buffer.arrayOffset() + messagePos, message, 0, size);
+        } else {
+            final ByteBuffer duplicate = buffer.duplicate();
+            duplicate.position(messagePos);
+            duplicate.get(message);
+        }
+        return message;
+    }
+
+}
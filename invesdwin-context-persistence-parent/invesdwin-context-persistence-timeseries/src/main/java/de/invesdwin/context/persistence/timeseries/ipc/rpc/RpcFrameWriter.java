@@ -0,0 +1,72 @@
+package de.invesdwin.context.persistence.timeseries.ipc.rpc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import de.invesdwin.context.persistence.timeseries.ipc.ISynchronousWriter;
+import de.invesdwin.context.persistence.timeseries.ipc.IZeroCopySynchronousWriter;
+
+/**
+ * Collects records until the frame is full or it gets written.
+ */
+@NotThreadSafe
+public class RpcFrameWriter {
+
+    private final ByteBuffer buffer;
+    private int count;
+
+    public RpcFrameWriter(final int maxMessageSize) {
+        this.buffer = ByteBuffer.allocate(maxMessageSize);
+    }
+
+    /**
+     * Returns false when the record does not fit into the remaining space of the frame.
+     */
+    public boolean tryAppend(final int type, final long correlationId, final byte[] message) {
+        if (buffer.remaining() < RpcFrames.MESSAGE_POS + message.length) {
+            return false;
+        }
+        final int pos = buffer.position();
+        buffer.putInt(pos + RpcFrames.TYPE_POS, type);
+        buffer.putLong(pos + RpcFrames.CORRELATION_ID_POS, correlationId);
+        buffer.putInt(pos + RpcFrames.SIZE_POS, message.length);
+        buffer.position(pos + RpcFrames.MESSAGE_POS);
+        buffer.put(message);
+        count++;
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void clear() {
+        buffer.clear();
+        count = 0;
+    }
+
+    /**
+     * Writes the frame and clears it afterwards.
+     */
+    public void writeTo(final ISynchronousWriter writer) throws IOException {
+        try {
+            if (writer instanceof IZeroCopySynchronousWriter) {
+                final ByteBuffer frame = buffer.duplicate();
+                frame.flip();
+                ((IZeroCopySynchronousWriter) writer).write(RpcFrames.TYPE_FRAME, frame);
+            } else {
+                writer.write(RpcFrames.TYPE_FRAME, Arrays.copyOf(buffer.array(), buffer.position()));
+            }
+        } finally {
+            clear();
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+package de.invesdwin.context.persistence.timeseries.ipc.rpc;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A frame is one message of the underlying channel and contains one or more records, thus small requests and their
+ * responses can be batched. Each record consists of the type, the correlation id, the size and the message.
+ */
+@Immutable
+public final class RpcFrames {
+
+    public static final int TYPE_FRAME = 1;
+
+    public static final int TYPE_POS = 0;
+    public static final int TYPE_OFFSET = 4;
+
+    public static final int CORRELATION_ID_POS = TYPE_POS + TYPE_OFFSET;
+    public static final int CORRELATION_ID_OFFSET = 8;
+
+    public static final int SIZE_POS = CORRELATION_ID_POS + CORRELATION_ID_OFFSET;
+    public static final int SIZE_OFFSET = 4;
+
+    public static final int MESSAGE_POS = SIZE_POS + SIZE_OFFSET;
+
+    /**
+     * Response type for requests that failed on the server, the message contains the error as UTF-8.
+     */
+    public static final int TYPE_ERROR = Integer.MIN_VALUE;
+
+    private RpcFrames() {}
+
+    /**
+     * The largest request or response that fits into a frame of the given channel.
+     */
+    public static int getMaxRecordMessageSize(final int maxMessageSize) {
+        return maxMessageSize - MESSAGE_POS;
+    }
+
+}
@@ -0,0 +1,158 @@
+package de.invesdwin.context.persistence.timeseries.ipc.rpc;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.log.error.Err;
+import de.invesdwin.context.persistence.timeseries.ipc.ASpinWait;
+import de.invesdwin.context.persistence.timeseries.ipc.ISynchronousReader;
+import de.invesdwin.context.persistence.timeseries.ipc.ISynchronousWriter;
+import de.invesdwin.util.concurrent.Executors;
+import de.invesdwin.util.concurrent.WrappedExecutorService;
+import de.invesdwin.util.time.Instant;
+import de.invesdwin.util.time.duration.Duration;
+import de.invesdwin.util.time.fdate.FTimeUnit;
+
+/**
+ * Processes the requests of one client in order on a separate thread. The responses to the records of a frame are
+ * batched into as few response frames as possible, thus a batch of requests results in a batch of responses.
+ */
+@ThreadSafe
+public class RpcServer implements Closeable {
+
+    private final ISynchronousReader requestReader;
+    private final ISynchronousWriter responseWriter;
+    private final int maxRecordMessageSize;
+    private final IRpcRequestHandler handler;
+    private final RpcFrameReader frameReader = new RpcFrameReader();
+    private final RpcFrameWriter responses;
+    @GuardedBy("this")
+    private WrappedExecutorService executor;
+    private volatile boolean closed = true;
+
+    public RpcServer(final ISynchronousReader requestReader, final ISynchronousWriter responseWriter,
+            final int maxMessageSize, final IRpcRequestHandler handler) {
+        this.requestReader = requestReader;
+        this.responseWriter = responseWriter;
+        this.maxRecordMessageSize = RpcFrames.getMaxRecordMessageSize(maxMessageSize);
+        this.handler = handler;
+        this.responses = new RpcFrameWriter(maxMessageSize);
+    }
+
+    /**
+     * How long to wait for the next request before checking again whether the server was closed.
+     */
+    protected Duration getRequestTimeout() {
+        return new Duration(1, FTimeUnit.MINUTES);
+    }
+
+    public synchronized void open() throws IOException {
+        if (!closed) {
+            throw new IllegalStateException("already open");
+        }
+        requestReader.open();
+        responseWriter.open();
+        closed = false;
+        executor = Executors.newFixedThreadPool(RpcServer.class.getSimpleName() + "_requests", 1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                processRequests();
+            }
+        });
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void processRequests() {
+        final ASpinWait spinWait = new ASpinWait() {
+            @Override
+            protected boolean isConditionFulfilled() throws IOException {
+                return closed || requestReader.hasNext();
+            }
+        };
+        try {
+            while (!closed) {
+                if (!spinWait.awaitFulfill(new Instant(), getRequestTimeout()) || closed) {
+                    continue;
+                }
+                if (!frameReader.readFrom(requestReader)) {
+                    continue;
+                }
+                while (frameReader.next()) {
+                    final long correlationId = frameReader.getCorrelationId();
+                    final int type = frameReader.getType();
+                    byte[] response;
+                    try {
+                        response = handler.handleRequest(type, frameReader.getMessage());
+                        if (response == null) {
+                            throw new NullPointerException("handler returned a null response");
+                        }
+                        if (response.length > maxRecordMessageSize) {
+                            throw new IllegalStateException("responseSize [" + response.length
+                                    + "] exceeds maxRecordMessageSize [" + maxRecordMessageSize + "]");
+                        }
+                    } catch (final Throwable t) {
+                        appendResponse(RpcFrames.TYPE_ERROR, correlationId, newErrorMessage(t));
+                        continue;
+                    }
+                    appendResponse(type, correlationId, response);
+                }
+                if (!responses.isEmpty()) {
+                    responses.writeTo(responseWriter);
+                }
+            }
+        } catch (final EOFException e) {
+            //client closed the connection
+        } catch (final Throwable t) {
+            if (!closed) {
+                Err.process(t);
+            }
+        }
+    }
+
+    private void appendResponse(final int type, final long correlationId, final byte[] response)
+            throws IOException {
+        if (!responses.tryAppend(type, correlationId, response)) {
+            responses.writeTo(responseWriter);
+            responses.tryAppend(type, correlationId, response);
+        }
+    }
+
+    private byte[] newErrorMessage(final Throwable t) {
+        final byte[] error = t.toString().getBytes(StandardCharsets.UTF_8);
+        if (error.length > maxRecordMessageSize) {
+            return Arrays.copyOf(error, maxRecordMessageSize);
+        }
+        return error;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+        try {
+            responseWriter.close();
+        } finally {
+            requestReader.close();
+        }
+    }
+
+}
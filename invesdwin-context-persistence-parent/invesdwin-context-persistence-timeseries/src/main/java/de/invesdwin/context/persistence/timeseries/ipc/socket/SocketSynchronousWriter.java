@@ -2,17 +2,22 @@ package de.invesdwin.context.persistence.timeseries.ipc.socket;
 
 import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.net.SocketAddress;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
-import de.invesdwin.context.persistence.timeseries.ipc.ISynchronousWriter;
+import de.invesdwin.context.persistence.timeseries.ipc.IZeroCopySynchronousWriter;
 import de.invesdwin.util.math.Bytes;
 
 @NotThreadSafe
-public class SocketSynchronousWriter extends ASocketSynchronousChannel implements ISynchronousWriter {
+public class SocketSynchronousWriter extends ASocketSynchronousChannel implements IZeroCopySynchronousWriter {
 
     private BufferedOutputStream out;
+    /**
+     * used to copy direct buffers since the stream only accepts arrays
+     */
+    private byte[] directMessageBuffer;
 
     public SocketSynchronousWriter(final SocketAddress socketAddress, final boolean server, final int maxMessageSize) {
         super(socketAddress, server, maxMessageSize);
@@ -28,7 +33,7 @@ public class SocketSynchronousWriter extends ASocketSynchronousChannel implement
     public void close() throws IOException {
         if (out != null) {
             try {
-                writeWithoutTypeCheck(TYPE_CLOSED_VALUE, Bytes.EMPTY_ARRAY);
+                writeWithoutTypeCheck(TYPE_CLOSED_VALUE, Bytes.EMPTY_ARRAY, 0, 0);
             } catch (final Throwable t) {
                 //ignore
             }
@@ -59,17 +64,36 @@ public class SocketSynchronousWriter extends ASocketSynchronousChannel implement
     @Override
     public void write(final int type, final byte[] message) throws IOException {
         checkType(type);
-        writeWithoutTypeCheck(type, message);
+        writeWithoutTypeCheck(type, message, 0, message.length);
     }
 
-    private void writeWithoutTypeCheck(final int type, final byte[] message) throws IOException {
-        checkSize(message.length);
+    @Override
+    public void write(final int type, final ByteBuffer message) throws IOException {
+        checkType(type);
+        final int size = message.remaining();
+        if (message.hasArray()) {
+            writeWithoutTypeCheck(type, message.array(), message.arrayOffset() + message.position(), size);
+        } else {
+            checkSize(size);
+            if (directMessageBuffer == null) {
+                directMessageBuffer = new byte[maxMessageSize];
+            }
+            final int position = message.position();
+            message.get(directMessageBuffer, 0, size);
+            message.position(position);
+            writeWithoutTypeCheck(type, directMessageBuffer, 0, size);
+        }
+    }
+
+    private void writeWithoutTypeCheck(final int type, final byte[] message, final int offset, final int length)
+            throws IOException {
+        checkSize(length);
         final byte[] typeBuffer = TYPE_SERDE.toBytes(type);
         out.write(typeBuffer);
-        final byte[] sizeBuffer = SIZE_SERDE.toBytes(message.length);
+        final byte[] sizeBuffer = SIZE_SERDE.toBytes(length);
         out.write(sizeBuffer);
-        if (message.length > 0) {
-            out.write(message);
+        if (length > 0) {
+            out.write(message, offset, length);
         }
         try {
             out.flush();
@@ -0,0 +1,215 @@
+package de.invesdwin.context.persistence.timeseries.ipc.socket.nio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.NetworkChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import de.invesdwin.context.persistence.timeseries.ipc.ISynchronousChannel;
+import de.invesdwin.context.persistence.timeseries.ipc.socket.ASocketSynchronousChannel;
+import de.invesdwin.util.time.duration.Duration;
+
+/**
+ * Uses the same framing as the ASocketSynchronousChannel (big endian type and size followed by the message), thus the
+ * NIO and the stream based endpoints can talk to each other.
+ *
+ * A reader and a writer can also share the socket of an owning channel, which allows a client to send requests and
+ * receive responses over a single connection to a NioSocketSynchronousServer. The owner has to be opened first and is
+ * the only one that closes the socket.
+ *
+ * The ISocketChannelFactory decides which kind of socket is used, TCP by default.
+ */
+@NotThreadSafe
+public abstract class ANioSocketSynchronousChannel implements ISynchronousChannel {
+
+    public static final int TYPE_POS = ASocketSynchronousChannel.TYPE_POS;
+    public static final int TYPE_OFFSET = ASocketSynchronousChannel.TYPE_OFFSET;
+    public static final int TYPE_CLOSED_VALUE = ASocketSynchronousChannel.TYPE_CLOSED_VALUE;
+
+    public static final int SIZE_POS = ASocketSynchronousChannel.SIZE_POS;
+    public static final int SIZE_OFFSET = ASocketSynchronousChannel.SIZE_OFFSET;
+
+    public static final int MESSAGE_POS = ASocketSynchronousChannel.MESSAGE_POS;
+
+    protected final int maxMessageSize;
+    protected final int bufferSize;
+    protected SocketChannel socketChannel;
+    private final SocketAddress socketAddress;
+    private final boolean server;
+    private final ISocketChannelFactory socketChannelFactory;
+    private final ANioSocketSynchronousChannel owner;
+    private ServerSocketChannel serverSocketChannel;
+
+    public ANioSocketSynchronousChannel(final SocketAddress socketAddress, final boolean server,
+            final int maxMessageSize) {
+        this(socketAddress, server, maxMessageSize, TcpSocketChannelFactory.INSTANCE);
+    }
+
+    public ANioSocketSynchronousChannel(final SocketAddress socketAddress, final boolean server,
+            final int maxMessageSize, final ISocketChannelFactory socketChannelFactory) {
+        this.socketAddress = socketAddress;
+        this.server = server;
+        this.socketChannelFactory = socketChannelFactory;
+        this.maxMessageSize = maxMessageSize;
+        this.bufferSize = maxMessageSize + MESSAGE_POS;
+        this.owner = null;
+    }
+
+    public ANioSocketSynchronousChannel(final ANioSocketSynchronousChannel owner) {
+        this.socketAddress = owner.socketAddress;
+        this.server = owner.server;
+        this.socketChannelFactory = owner.socketChannelFactory;
+        this.maxMessageSize = owner.maxMessageSize;
+        this.bufferSize = owner.bufferSize;
+        this.owner = owner;
+    }
+
+    @Override
+    public void open() throws IOException {
+        if (owner != null) {
+            socketChannel = owner.getSocketChannel();
+            if (socketChannel == null) {
+                throw new IOException("The owner of the socket needs to be opened first");
+            }
+            return;
+        }
+        if (server) {
+            serverSocketChannel = newServerSocketChannel();
+            configureSocketBufferSize(serverSocketChannel);
+            serverSocketChannel.bind(socketAddress);
+            socketChannel = serverSocketChannel.accept();
+            configureSocketBufferSize(socketChannel);
+        } else {
+            for (int tries = 0;; tries++) {
+                try {
+                    socketChannel = newSocketChannel();
+                    configureSocketBufferSize(socketChannel);
+                    socketChannel.connect(socketAddress);
+                    break;
+                } catch (final IOException e) {
+                    //creating or configuring the socket might already have failed
+                    if (socketChannel != null) {
+                        socketChannel.close();
+                        socketChannel = null;
+                    }
+                    if (isConnectRetryable(e) && tries < getMaxConnectRetries()) {
+                        try {
+                            getConnectRetryDelay().sleep();
+                        } catch (final InterruptedException e1) {
+                            throw new RuntimeException(e1);
+                        }
+                    } else {
+                        throw e;
+                    }
+                }
+            }
+        }
+        configureSocketChannel(socketChannel);
+    }
+
+    protected ServerSocketChannel newServerSocketChannel() throws IOException {
+        return socketChannelFactory.newServerSocketChannel();
+    }
+
+    protected SocketChannel newSocketChannel() throws IOException {
+        return socketChannelFactory.newSocketChannel();
+    }
+
+    protected boolean isConnectRetryable(final IOException e) {
+        return socketChannelFactory.isConnectRetryable(e);
+    }
+
+    /**
+     * Called after the socket was connected or accepted.
+     */
+    protected void configureSocketChannel(final SocketChannel socketChannel) throws IOException {
+        if (socketChannelFactory.isTcpNoDelaySupported()) {
+            socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, isTcpNoDelay());
+        }
+    }
+
+    /**
+     * Called before bind and connect, since the TCP window scaling is negotiated during the handshake and a receive
+     * buffer that is changed afterwards might not take full effect. Accepted sockets inherit the receive buffer of the
+     * server socket and only get their send buffer configured after the accept.
+     */
+    protected void configureSocketBufferSize(final NetworkChannel channel) throws IOException {
+        final Integer socketBufferSize = getSocketBufferSize();
+        if (socketBufferSize == null) {
+            return;
+        }
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, socketBufferSize);
+        if (!(channel instanceof ServerSocketChannel)) {
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, socketBufferSize);
+        }
+    }
+
+    public boolean isServer() {
+        return server;
+    }
+
+    public ISocketChannelFactory getSocketChannelFactory() {
+        return socketChannelFactory;
+    }
+
+    public boolean isSharedSocketChannel() {
+        return owner != null;
+    }
+
+    /**
+     * Returns null when the channel is not open.
+     */
+    public SocketChannel getSocketChannel() {
+        return socketChannel;
+    }
+
+    /**
+     * Disables Nagle's algorithm by default since small request/response messages should not wait for more data.
+     */
+    protected boolean isTcpNoDelay() {
+        return true;
+    }
+
+    /**
+     * The size of the send and receive buffers of the operating system. Null keeps the defaults of the operating
+     * system, which are usually larger than a single message and get auto-tuned for throughput.
+     */
+    protected Integer getSocketBufferSize() {
+        return null;
+    }
+
+    protected Duration getConnectRetryDelay() {
+        return Duration.ONE_SECOND;
+    }
+
+    protected int getMaxConnectRetries() {
+        return 10;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (socketChannel != null) {
+            if (owner == null) {
+                socketChannel.close();
+            }
+            socketChannel = null;
+        }
+        if (serverSocketChannel != null) {
+            serverSocketChannel.close();
+            serverSocketChannel = null;
+            socketChannelFactory.onServerSocketClosed();
+        }
+    }
+
+    protected EOFException newEofException(final IOException e) throws EOFException {
+        final EOFException eof = new EOFException(e.getMessage());
+        eof.initCause(e);
+        return eof;
+    }
+
+}
@@ -0,0 +1,29 @@
+package de.invesdwin.context.persistence.timeseries.ipc.socket.nio;
+
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Creates the sockets of the NIO channels, which allows the same readers and writers to be used for TCP and for other
+ * socket families like unix domain sockets.
+ */
+public interface ISocketChannelFactory {
+
+    ServerSocketChannel newServerSocketChannel() throws IOException;
+
+    SocketChannel newSocketChannel() throws IOException;
+
+    /**
+     * The server might not be listening yet.
+     */
+    boolean isConnectRetryable(IOException e);
+
+    boolean isTcpNoDelaySupported();
+
+    /**
+     * Called after the server socket was closed, e.g. to remove the socket file.
+     */
+    void onServerSocketClosed();
+
+}
@@ -0,0 +1,216 @@
+package de.invesdwin.context.persistence.timeseries.ipc.socket.nio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import de.invesdwin.context.persistence.timeseries.ipc.ASpinWait;
+import de.invesdwin.context.persistence.timeseries.ipc.IZeroCopySynchronousReader;
+import de.invesdwin.context.persistence.timeseries.ipc.SynchronousMessageView;
+import de.invesdwin.util.bean.tuple.Pair;
+import de.invesdwin.util.time.Instant;
+import de.invesdwin.util.time.duration.Duration;
+import de.invesdwin.util.time.fdate.FTimeUnit;
+
+/**
+ * The socket is used in non-blocking mode. hasNext reads whatever is available into a direct buffer that can hold
+ * multiple messages. The rest of a partially received message is awaited with an ASpinWait by default, which gives the
+ * lowest latency at the cost of a busy core. With isSpinRead returning false it is awaited with a Selector instead,
+ * which sleeps in the kernel until data arrives. The message view points into that buffer and is only valid until the
+ * next read.
+ */
+@NotThreadSafe
+public class NioSocketSynchronousReader extends ANioSocketSynchronousChannel implements IZeroCopySynchronousReader {
+
+    private static final int CLOSED_READ_COUNT = -1;
+
+    private final ByteBuffer buffer;
+    private final SynchronousMessageView messageView = new SynchronousMessageView();
+    /**
+     * index of the first byte that was not yet consumed, the position of the buffer marks the end of the received bytes
+     */
+    private int readIndex;
+    private int requiredAvailable;
+    private final ASpinWait spinWait = new ASpinWait() {
+        @Override
+        protected boolean isConditionFulfilled() throws IOException {
+            return readAvailable() >= requiredAvailable;
+        }
+    };
+    private Selector selector;
+
+    public NioSocketSynchronousReader(final SocketAddress socketAddress, final boolean server,
+            final int maxMessageSize) {
+        this(socketAddress, server, maxMessageSize, TcpSocketChannelFactory.INSTANCE);
+    }
+
+    public NioSocketSynchronousReader(final SocketAddress socketAddress, final boolean server,
+            final int maxMessageSize, final ISocketChannelFactory socketChannelFactory) {
+        super(socketAddress, server, maxMessageSize, socketChannelFactory);
+        this.buffer = ByteBuffer.allocateDirect(Math.max(bufferSize, getReadBufferSize()));
+    }
+
+    /**
+     * Switches the shared socket to non-blocking mode, thus a writer on the same socket will retry its writes.
+     */
+    public NioSocketSynchronousReader(final ANioSocketSynchronousChannel owner) {
+        super(owner);
+        this.buffer = ByteBuffer.allocateDirect(Math.max(bufferSize, getReadBufferSize()));
+    }
+
+    /**
+     * A larger buffer allows to receive multiple small messages with one read.
+     */
+    protected int getReadBufferSize() {
+        return 64 * 1024;
+    }
+
+    protected Duration getReadTimeout() {
+        return new Duration(1, FTimeUnit.MINUTES);
+    }
+
+    /**
+     * Spinning reacts fastest to the rest of a partially received message, a Selector should be preferred when cores
+     * are scarce or the sender is slow.
+     */
+    protected boolean isSpinRead() {
+        return true;
+    }
+
+    @Override
+    public void open() throws IOException {
+        super.open();
+        socketChannel.configureBlocking(false);
+        buffer.clear();
+        readIndex = 0;
+        if (!isSpinRead()) {
+            selector = Selector.open();
+            socketChannel.register(selector, SelectionKey.OP_READ);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (selector != null) {
+            selector.close();
+            selector = null;
+        }
+        super.close();
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        if (socketChannel == null) {
+            return false;
+        }
+        if (getAvailable() >= MESSAGE_POS) {
+            return true;
+        }
+        return readAvailable() >= MESSAGE_POS;
+    }
+
+    private int getAvailable() {
+        return buffer.position() - readIndex;
+    }
+
+    /**
+     * Does not compact the buffer since hasNext might be called while the current message view is still in use.
+     */
+    private int readAvailable() throws IOException {
+        if (!buffer.hasRemaining()) {
+            return getAvailable();
+        }
+        final int read;
+        try {
+            read = socketChannel.read(buffer);
+        } catch (final IOException e) {
+            throw newEofException(e);
+        }
+        if (read == CLOSED_READ_COUNT) {
+            throw new EOFException("Socket closed");
+        }
+        return getAvailable();
+    }
+
+    /**
+     * Moves the bytes that were not yet consumed to the beginning of the buffer.
+     */
+    private void compact() {
+        if (readIndex > 0) {
+            buffer.limit(buffer.position());
+            buffer.position(readIndex);
+            buffer.compact();
+            readIndex = 0;
+        }
+    }
+
+    private void await(final int available) throws IOException {
+        if (getAvailable() >= available) {
+            return;
+        }
+        if (buffer.capacity() - readIndex < available || !buffer.hasRemaining()) {
+            compact();
+        }
+        final boolean fulfilled;
+        if (selector != null) {
+            fulfilled = awaitSelect(available);
+        } else {
+            requiredAvailable = available;
+            fulfilled = spinWait.awaitFulfill(new Instant(), getReadTimeout());
+        }
+        if (!fulfilled) {
+            throw new IOException("Did not receive [" + available + "] bytes within " + getReadTimeout());
+        }
+    }
+
+    private boolean awaitSelect(final int available) throws IOException {
+        final long timeoutMillis = getReadTimeout().longValue(FTimeUnit.MILLISECONDS);
+        final Instant start = new Instant();
+        while (readAvailable() < available) {
+            final long remainingMillis = timeoutMillis - start.toDuration().longValue(FTimeUnit.MILLISECONDS);
+            if (remainingMillis <= 0) {
+                return false;
+            }
+            selector.select(remainingMillis);
+            selector.selectedKeys().clear();
+        }
+        return true;
+    }
+
+    @Override
+    public Pair<Integer, byte[]> readMessage() throws IOException {
+        return readMessageView().toPair();
+    }
+
+    @Override
+    public SynchronousMessageView readMessageView() throws IOException {
+        if (readIndex > 0 && getAvailable() == 0) {
+            //the previous message view is not used anymore
+            buffer.clear();
+            readIndex = 0;
+        }
+        await(MESSAGE_POS);
+        final int type = buffer.getInt(readIndex + TYPE_POS);
+        if (type == TYPE_CLOSED_VALUE) {
+            throw new EOFException("Channel was closed by the other endpoint");
+        }
+        final int size = buffer.getInt(readIndex + SIZE_POS);
+        if (size < 0) {
+            throw new IllegalStateException("messageSize [" + size + "] is negative, the stream is corrupt");
+        }
+        if (size > maxMessageSize) {
+            throw new IllegalStateException(
+                    "messageSize [" + size + "] exceeds maxMessageSize [" + maxMessageSize + "]");
+        }
+        await(MESSAGE_POS + size);
+        final int messageIndex = readIndex + MESSAGE_POS;
+        readIndex = messageIndex + size;
+        return messageView.set(type, buffer, messageIndex, size);
+    }
+
+}
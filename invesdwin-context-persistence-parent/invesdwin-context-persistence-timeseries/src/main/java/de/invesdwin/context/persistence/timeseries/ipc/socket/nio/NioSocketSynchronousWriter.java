@@ -0,0 +1,147 @@
+package de.invesdwin.context.persistence.timeseries.ipc.socket.nio;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import de.invesdwin.context.persistence.timeseries.ipc.ASpinWait;
+import de.invesdwin.context.persistence.timeseries.ipc.IZeroCopySynchronousWriter;
+import de.invesdwin.util.time.Instant;
+import de.invesdwin.util.time.duration.Duration;
+import de.invesdwin.util.time.fdate.FTimeUnit;
+
+/**
+ * Writes the header and the message with a single gathering write from direct buffers, so that a message results in
+ * one system call and, with TCP_NODELAY, in one packet. When a shared socket is in non-blocking mode and its send
+ * buffer is full, the rest of the message is written with an ASpinWait, which parks between the retries instead of
+ * burning a core while the peer is slow.
+ */
+@NotThreadSafe
+public class NioSocketSynchronousWriter extends ANioSocketSynchronousChannel implements IZeroCopySynchronousWriter {
+
+    private final ByteBuffer headerBuffer = ByteBuffer.allocateDirect(MESSAGE_POS);
+    private final ByteBuffer messageBuffer;
+    private final ByteBuffer[] buffers = new ByteBuffer[2];
+    private final ASpinWait spinWait = new ASpinWait() {
+        @Override
+        protected boolean isConditionFulfilled() throws IOException {
+            return writeAvailable();
+        }
+    };
+
+    public NioSocketSynchronousWriter(final SocketAddress socketAddress, final boolean server,
+            final int maxMessageSize) {
+        this(socketAddress, server, maxMessageSize, TcpSocketChannelFactory.INSTANCE);
+    }
+
+    public NioSocketSynchronousWriter(final SocketAddress socketAddress, final boolean server,
+            final int maxMessageSize, final ISocketChannelFactory socketChannelFactory) {
+        super(socketAddress, server, maxMessageSize, socketChannelFactory);
+        this.messageBuffer = ByteBuffer.allocateDirect(maxMessageSize);
+    }
+
+    /**
+     * Keeps the blocking mode of the shared socket, in non-blocking mode the write is retried until everything was
+     * written.
+     */
+    public NioSocketSynchronousWriter(final ANioSocketSynchronousChannel owner) {
+        super(owner);
+        this.messageBuffer = ByteBuffer.allocateDirect(maxMessageSize);
+    }
+
+    protected Duration getWriteTimeout() {
+        return new Duration(1, FTimeUnit.MINUTES);
+    }
+
+    @Override
+    public void open() throws IOException {
+        super.open();
+        if (!isSharedSocketChannel()) {
+            socketChannel.configureBlocking(true);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (socketChannel != null) {
+            try {
+                messageBuffer.clear();
+                messageBuffer.limit(0);
+                writeWithoutTypeCheck(TYPE_CLOSED_VALUE, messageBuffer);
+            } catch (final Throwable t) {
+                //ignore
+            }
+        }
+        super.close();
+    }
+
+    private void checkType(final int type) {
+        if (type == TYPE_CLOSED_VALUE) {
+            throw new IllegalArgumentException(
+                    "type [" + type + "] is reserved for close notification, please use a different type number");
+        }
+    }
+
+    private void checkSize(final int size) {
+        if (size > maxMessageSize) {
+            throw new IllegalStateException(
+                    "messageSize [" + size + "] exceeds maxMessageSize [" + maxMessageSize + "]");
+        }
+    }
+
+    @Override
+    public void write(final int type, final byte[] message) throws IOException {
+        checkType(type);
+        checkSize(message.length);
+        messageBuffer.clear();
+        messageBuffer.put(message);
+        messageBuffer.flip();
+        writeWithoutTypeCheck(type, messageBuffer);
+    }
+
+    @Override
+    public void write(final int type, final ByteBuffer message) throws IOException {
+        checkType(type);
+        final int position = message.position();
+        try {
+            writeWithoutTypeCheck(type, message);
+        } finally {
+            message.position(position);
+        }
+    }
+
+    private void writeWithoutTypeCheck(final int type, final ByteBuffer message) throws IOException {
+        checkSize(message.remaining());
+        headerBuffer.clear();
+        headerBuffer.putInt(TYPE_POS, type);
+        headerBuffer.putInt(SIZE_POS, message.remaining());
+        buffers[0] = headerBuffer;
+        buffers[1] = message;
+        try {
+            if (!writeAvailable() && !spinWait.awaitFulfill(new Instant(), getWriteTimeout())) {
+                throw new IOException("Could not write the message within " + getWriteTimeout());
+            }
+        } finally {
+            buffers[1] = null;
+        }
+    }
+
+    /**
+     * Writes until everything was written or the send buffer of a non-blocking socket is full.
+     */
+    private boolean writeAvailable() throws IOException {
+        try {
+            while (buffers[1].hasRemaining() || headerBuffer.hasRemaining()) {
+                if (socketChannel.write(buffers) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (final IOException e) {
+            throw newEofException(e);
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+package de.invesdwin.context.persistence.timeseries.ipc.socket.nio;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Default factory for TCP sockets.
+ */
+@Immutable
+public final class TcpSocketChannelFactory implements ISocketChannelFactory {
+
+    public static final TcpSocketChannelFactory INSTANCE = new TcpSocketChannelFactory();
+
+    private TcpSocketChannelFactory() {}
+
+    @Override
+    public ServerSocketChannel newServerSocketChannel() throws IOException {
+        return ServerSocketChannel.open();
+    }
+
+    @Override
+    public SocketChannel newSocketChannel() throws IOException {
+        return SocketChannel.open();
+    }
+
+    @Override
+    public boolean isConnectRetryable(final IOException e) {
+        return e instanceof ConnectException;
+    }
+
+    @Override
+    public boolean isTcpNoDelaySupported() {
+        return true;
+    }
+
+    @Override
+    public void onServerSocketClosed() {}
+
+}
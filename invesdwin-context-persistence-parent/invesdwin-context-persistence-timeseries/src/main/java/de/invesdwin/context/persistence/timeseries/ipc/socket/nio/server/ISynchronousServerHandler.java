@@ -0,0 +1,25 @@
+package de.invesdwin.context.persistence.timeseries.ipc.socket.nio.server;
+
+import java.io.IOException;
+
+import de.invesdwin.context.persistence.timeseries.ipc.SynchronousMessageView;
+
+/**
+ * All callbacks happen on the selector thread of the connection, thus they should not block. Slow work should be
+ * handed off to a different thread which can then write its response via the connection.
+ */
+public interface ISynchronousServerHandler {
+
+    void onOpen(NioSocketServerConnection connection) throws IOException;
+
+    /**
+     * The message view points into the read buffer of the connection and is only valid during this call.
+     */
+    void onMessage(NioSocketServerConnection connection, SynchronousMessageView message) throws IOException;
+
+    /**
+     * Called once when the client disconnected, the connection was closed or the server was closed.
+     */
+    void onClose(NioSocketServerConnection connection);
+
+}
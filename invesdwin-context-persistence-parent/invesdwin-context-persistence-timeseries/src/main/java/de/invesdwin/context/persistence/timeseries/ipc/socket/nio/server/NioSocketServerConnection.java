@@ -0,0 +1,308 @@
+package de.invesdwin.context.persistence.timeseries.ipc.socket.nio.server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.persistence.timeseries.ipc.IZeroCopySynchronousWriter;
+import de.invesdwin.context.persistence.timeseries.ipc.SynchronousMessageView;
+import de.invesdwin.context.persistence.timeseries.ipc.socket.nio.ANioSocketSynchronousChannel;
+
+/**
+ * A client that was accepted by the NioSocketSynchronousServer. Incoming messages are parsed on the selector thread and
+ * passed to the handler, responses can be written from any thread.
+ *
+ * The socket is in non-blocking mode. A message that does not fit into the socket buffer is copied into a queue and
+ * finished by the selector thread once the socket becomes writable again, thus a slow client never blocks the writing
+ * thread. A client that does not read its responses gets disconnected when its queued bytes exceed the limit of the
+ * server.
+ */
+@ThreadSafe
+public class NioSocketServerConnection implements IZeroCopySynchronousWriter {
+
+    private static final int CLOSED_READ_COUNT = -1;
+
+    private final NioSocketSynchronousServer server;
+    private final long id;
+    private final SocketChannel socketChannel;
+    private final int maxMessageSize;
+    private final int maxPendingWriteSize;
+    /**
+     * only accessed by the selector thread
+     */
+    private final ByteBuffer readBuffer;
+    private final SynchronousMessageView messageView = new SynchronousMessageView();
+    private int readIndex;
+    @GuardedBy("this")
+    private final ByteBuffer headerBuffer = ByteBuffer.allocateDirect(ANioSocketSynchronousChannel.MESSAGE_POS);
+    @GuardedBy("this")
+    private final ByteBuffer[] buffers = new ByteBuffer[2];
+    @GuardedBy("this")
+    private ByteBuffer messageBuffer;
+    @GuardedBy("this")
+    private final ArrayDeque<ByteBuffer> pendingWrites = new ArrayDeque<>();
+    @GuardedBy("this")
+    private int pendingWriteSize;
+    private volatile SelectionKey selectionKey;
+    private volatile boolean closed;
+    private volatile Object attachment;
+
+    NioSocketServerConnection(final NioSocketSynchronousServer server, final long id,
+            final SocketChannel socketChannel, final int maxMessageSize, final int readBufferSize,
+            final int maxPendingWriteSize) {
+        this.server = server;
+        this.id = id;
+        this.socketChannel = socketChannel;
+        this.maxMessageSize = maxMessageSize;
+        this.maxPendingWriteSize = maxPendingWriteSize;
+        this.readBuffer = ByteBuffer
+                .allocateDirect(Math.max(maxMessageSize + ANioSocketSynchronousChannel.MESSAGE_POS, readBufferSize));
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public SocketAddress getRemoteAddress() throws IOException {
+        return socketChannel.getRemoteAddress();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Allows the handler to store state per connection.
+     */
+    public Object getAttachment() {
+        return attachment;
+    }
+
+    public void setAttachment(final Object attachment) {
+        this.attachment = attachment;
+    }
+
+    void register(final Selector selector) throws IOException {
+        selectionKey = socketChannel.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    /**
+     * The number of bytes that are queued because the client did not read them yet.
+     */
+    public synchronized int getPendingWriteSize() {
+        return pendingWriteSize;
+    }
+
+    /**
+     * The connection is already open when it is handed to the handler.
+     */
+    @Override
+    public void open() throws IOException {}
+
+    /**
+     * Reads what is available and passes all complete messages to the handler. Returns false when the client closed
+     * the connection.
+     */
+    boolean read(final ISynchronousServerHandler handler) throws IOException {
+        final int read = socketChannel.read(readBuffer);
+        if (read == CLOSED_READ_COUNT) {
+            return false;
+        }
+        while (!closed) {
+            final int available = readBuffer.position() - readIndex;
+            if (available < ANioSocketSynchronousChannel.MESSAGE_POS) {
+                break;
+            }
+            final int type = readBuffer.getInt(readIndex + ANioSocketSynchronousChannel.TYPE_POS);
+            if (type == ANioSocketSynchronousChannel.TYPE_CLOSED_VALUE) {
+                return false;
+            }
+            final int size = readBuffer.getInt(readIndex + ANioSocketSynchronousChannel.SIZE_POS);
+            if (size < 0) {
+                throw new IllegalStateException("messageSize [" + size + "] is negative, the stream is corrupt");
+            }
+            if (size > maxMessageSize) {
+                throw new IllegalStateException(
+                        "messageSize [" + size + "] exceeds maxMessageSize [" + maxMessageSize + "]");
+            }
+            if (available < ANioSocketSynchronousChannel.MESSAGE_POS + size) {
+                break;
+            }
+            final int messageIndex = readIndex + ANioSocketSynchronousChannel.MESSAGE_POS;
+            readIndex = messageIndex + size;
+            handler.onMessage(this, messageView.set(type, readBuffer, messageIndex, size));
+        }
+        //move the incomplete message to the beginning of the buffer
+        readBuffer.limit(readBuffer.position());
+        readBuffer.position(readIndex);
+        readBuffer.compact();
+        readIndex = 0;
+        return true;
+    }
+
+    private void checkType(final int type) {
+        if (type == ANioSocketSynchronousChannel.TYPE_CLOSED_VALUE) {
+            throw new IllegalArgumentException(
+                    "type [" + type + "] is reserved for close notification, please use a different type number");
+        }
+    }
+
+    private void checkSize(final int size) {
+        if (size > maxMessageSize) {
+            throw new IllegalStateException(
+                    "messageSize [" + size + "] exceeds maxMessageSize [" + maxMessageSize + "]");
+        }
+    }
+
+    @Override
+    public synchronized void write(final int type, final byte[] message) throws IOException {
+        checkType(type);
+        checkSize(message.length);
+        if (messageBuffer == null) {
+            messageBuffer = ByteBuffer.allocateDirect(maxMessageSize);
+        }
+        messageBuffer.clear();
+        messageBuffer.put(message);
+        messageBuffer.flip();
+        writeWithoutTypeCheck(type, messageBuffer);
+    }
+
+    @Override
+    public synchronized void write(final int type, final ByteBuffer message) throws IOException {
+        checkType(type);
+        final int position = message.position();
+        try {
+            writeWithoutTypeCheck(type, message);
+        } finally {
+            message.position(position);
+        }
+    }
+
+    @GuardedBy("this")
+    private void writeWithoutTypeCheck(final int type, final ByteBuffer message) throws IOException {
+        if (closed) {
+            throw new EOFException("Connection [" + id + "] is closed");
+        }
+        checkSize(message.remaining());
+        headerBuffer.clear();
+        headerBuffer.putInt(ANioSocketSynchronousChannel.TYPE_POS, type);
+        headerBuffer.putInt(ANioSocketSynchronousChannel.SIZE_POS, message.remaining());
+        if (pendingWrites.isEmpty()) {
+            buffers[0] = headerBuffer;
+            buffers[1] = message;
+            try {
+                socketChannel.write(buffers);
+            } catch (final IOException e) {
+                throw newEofException(e);
+            } finally {
+                buffers[1] = null;
+            }
+            if (!headerBuffer.hasRemaining() && !message.hasRemaining()) {
+                return;
+            }
+        }
+        enqueuePendingWrite(message);
+    }
+
+    /**
+     * Copies the rest of the message, since the caller might reuse its buffer after the write returns. A single message
+     * is always accepted, since it is already limited by the maxMessageSize.
+     */
+    @GuardedBy("this")
+    private void enqueuePendingWrite(final ByteBuffer message) throws IOException {
+        final int size = headerBuffer.remaining() + message.remaining();
+        if (!pendingWrites.isEmpty() && pendingWriteSize + size > maxPendingWriteSize) {
+            final int pendingWriteSizeCopy = pendingWriteSize;
+            close();
+            throw new EOFException("Connection [" + id + "] was closed because the client did not read ["
+                    + pendingWriteSizeCopy + "] bytes of previous messages");
+        }
+        final ByteBuffer pendingWrite = ByteBuffer.allocate(size);
+        pendingWrite.put(headerBuffer);
+        pendingWrite.put(message);
+        pendingWrite.flip();
+        pendingWrites.add(pendingWrite);
+        pendingWriteSize += size;
+        if (pendingWrites.size() == 1) {
+            final SelectionKey selectionKeyCopy = selectionKey;
+            selectionKeyCopy.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            selectionKeyCopy.selector().wakeup();
+        }
+    }
+
+    /**
+     * Called by the selector thread when the socket became writable again.
+     */
+    synchronized void writePending() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            while (!pendingWrites.isEmpty()) {
+                final ByteBuffer pendingWrite = pendingWrites.peek();
+                pendingWriteSize -= socketChannel.write(pendingWrite);
+                if (pendingWrite.hasRemaining()) {
+                    return;
+                }
+                pendingWrites.poll();
+            }
+        } catch (final IOException e) {
+            throw newEofException(e);
+        }
+        selectionKey.interestOps(SelectionKey.OP_READ);
+    }
+
+    private EOFException newEofException(final IOException e) {
+        final EOFException eof = new EOFException(e.getMessage());
+        eof.initCause(e);
+        return eof;
+    }
+
+    /**
+     * Notifies the client and disconnects it, responses that are still queued are discarded.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            //the notification would corrupt a partially written message
+            if (pendingWrites.isEmpty()) {
+                try {
+                    headerBuffer.clear();
+                    headerBuffer.putInt(ANioSocketSynchronousChannel.TYPE_POS,
+                            ANioSocketSynchronousChannel.TYPE_CLOSED_VALUE);
+                    headerBuffer.putInt(ANioSocketSynchronousChannel.SIZE_POS, 0);
+                    //only one attempt since a client that does not read anymore should not block the close
+                    socketChannel.write(headerBuffer);
+                } catch (final Throwable t) {
+                    //ignore
+                }
+            }
+            pendingWrites.clear();
+            pendingWriteSize = 0;
+            closed = true;
+            try {
+                socketChannel.close();
+            } catch (final IOException e) {
+                //ignore
+            }
+        }
+        server.onConnectionClosed(this);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + id + "]";
+    }
+
+}
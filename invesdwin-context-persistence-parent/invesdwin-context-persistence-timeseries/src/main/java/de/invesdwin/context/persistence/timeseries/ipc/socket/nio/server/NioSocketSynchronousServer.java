@@ -0,0 +1,326 @@
+package de.invesdwin.context.persistence.timeseries.ipc.socket.nio.server;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.log.Log;
+import de.invesdwin.context.log.error.Err;
+import de.invesdwin.context.persistence.timeseries.ipc.socket.nio.ISocketChannelFactory;
+import de.invesdwin.context.persistence.timeseries.ipc.socket.nio.TcpSocketChannelFactory;
+import de.invesdwin.util.concurrent.Executors;
+import de.invesdwin.util.concurrent.WrappedExecutorService;
+
+/**
+ * Accepts any number of clients on one port and multiplexes them over a few selector threads instead of using a
+ * thread per connection. The first selector thread also accepts new clients and distributes them round robin over all
+ * selector threads.
+ *
+ * The framing is the same as for the ANioSocketSynchronousChannel, thus clients can use a NioSocketSynchronousWriter
+ * with a NioSocketSynchronousReader that shares its socket, or a SocketSynchronousWriter/Reader pair.
+ *
+ * The ISocketChannelFactory decides which kind of socket is used, TCP by default. Clients have to use the same kind.
+ */
+@ThreadSafe
+public class NioSocketSynchronousServer implements Closeable {
+
+    private final Log log = new Log(this);
+    private final SocketAddress socketAddress;
+    private final int maxMessageSize;
+    private final ISynchronousServerHandler handler;
+    private final ISocketChannelFactory socketChannelFactory;
+    private final AtomicLong connectionIdSequence = new AtomicLong();
+    private final Set<NioSocketServerConnection> connections = Collections
+            .newSetFromMap(new ConcurrentHashMap<NioSocketServerConnection, Boolean>());
+    @GuardedBy("this")
+    private ServerSocketChannel serverSocketChannel;
+    @GuardedBy("this")
+    private SelectorWorker[] workers;
+    @GuardedBy("this")
+    private WrappedExecutorService executor;
+    private volatile boolean closed = true;
+
+    public NioSocketSynchronousServer(final SocketAddress socketAddress, final int maxMessageSize,
+            final ISynchronousServerHandler handler) {
+        this(socketAddress, maxMessageSize, handler, TcpSocketChannelFactory.INSTANCE);
+    }
+
+    public NioSocketSynchronousServer(final SocketAddress socketAddress, final int maxMessageSize,
+            final ISynchronousServerHandler handler, final ISocketChannelFactory socketChannelFactory) {
+        this.socketAddress = socketAddress;
+        this.maxMessageSize = maxMessageSize;
+        this.handler = handler;
+        this.socketChannelFactory = socketChannelFactory;
+    }
+
+    public ISocketChannelFactory getSocketChannelFactory() {
+        return socketChannelFactory;
+    }
+
+    /**
+     * One selector thread can serve many clients as long as the handler does not block.
+     */
+    protected int getSelectorThreadCount() {
+        return 1;
+    }
+
+    /**
+     * A larger buffer allows to receive multiple small messages with one read.
+     */
+    protected int getReadBufferSize() {
+        return 64 * 1024;
+    }
+
+    /**
+     * Responses that the client does not read in time are queued up to this limit, then the client is disconnected.
+     */
+    protected int getMaxPendingWriteSize() {
+        return 64 * 1024 * 1024;
+    }
+
+    /**
+     * The size of the send and receive buffers of the operating system. Null keeps the defaults of the operating
+     * system, which are usually larger than a single message and get auto-tuned for throughput.
+     */
+    protected Integer getSocketBufferSize() {
+        return null;
+    }
+
+    /**
+     * The receive buffer is configured before bind, since the TCP window scaling is negotiated during the handshake.
+     * Accepted sockets inherit it.
+     */
+    protected void configureServerSocketChannel(final ServerSocketChannel serverSocketChannel) throws IOException {
+        final Integer socketBufferSize = getSocketBufferSize();
+        if (socketBufferSize != null) {
+            serverSocketChannel.setOption(StandardSocketOptions.SO_RCVBUF, socketBufferSize);
+        }
+    }
+
+    /**
+     * Disables Nagle's algorithm by default since small request/response messages should not wait for more data.
+     */
+    protected boolean isTcpNoDelay() {
+        return true;
+    }
+
+    protected void configureSocketChannel(final SocketChannel socketChannel) throws IOException {
+        if (socketChannelFactory.isTcpNoDelaySupported()) {
+            socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, isTcpNoDelay());
+        }
+        final Integer socketBufferSize = getSocketBufferSize();
+        if (socketBufferSize != null) {
+            socketChannel.setOption(StandardSocketOptions.SO_SNDBUF, socketBufferSize);
+        }
+    }
+
+    public synchronized void open() throws IOException {
+        if (!closed) {
+            throw new IllegalStateException("already open");
+        }
+        closed = false;
+        final int selectorThreadCount = getSelectorThreadCount();
+        serverSocketChannel = socketChannelFactory.newServerSocketChannel();
+        serverSocketChannel.configureBlocking(false);
+        configureServerSocketChannel(serverSocketChannel);
+        serverSocketChannel.bind(socketAddress);
+        workers = new SelectorWorker[selectorThreadCount];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new SelectorWorker(Selector.open());
+        }
+        serverSocketChannel.register(workers[0].selector, SelectionKey.OP_ACCEPT);
+        executor = Executors.newFixedThreadPool(
+                NioSocketSynchronousServer.class.getSimpleName() + "_" + socketAddress, selectorThreadCount);
+        for (int i = 0; i < workers.length; i++) {
+            executor.execute(workers[i]);
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public Collection<NioSocketServerConnection> getConnections() {
+        return Collections.unmodifiableSet(connections);
+    }
+
+    void onConnectionClosed(final NioSocketServerConnection connection) {
+        if (connections.remove(connection)) {
+            try {
+                handler.onClose(connection);
+            } catch (final Throwable t) {
+                Err.process(t);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (final NioSocketServerConnection connection : new ArrayList<>(connections)) {
+            connection.close();
+        }
+        for (int i = 0; i < workers.length; i++) {
+            workers[i].selector.close();
+        }
+        workers = null;
+        executor.shutdownNow();
+        executor = null;
+        serverSocketChannel.close();
+        serverSocketChannel = null;
+        socketChannelFactory.onServerSocketClosed();
+    }
+
+    private final class SelectorWorker implements Runnable {
+
+        private final Selector selector;
+        private final Queue<SocketChannel> pendingRegistrations = new ConcurrentLinkedQueue<>();
+        /**
+         * only used by the first worker which accepts the clients
+         */
+        private int nextWorker;
+
+        private SelectorWorker(final Selector selector) {
+            this.selector = selector;
+        }
+
+        private void register(final SocketChannel socketChannel) {
+            pendingRegistrations.add(socketChannel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    selector.select();
+                    registerPending();
+                    final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        final SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept((ServerSocketChannel) key.channel());
+                            continue;
+                        }
+                        final NioSocketServerConnection connection = (NioSocketServerConnection) key.attachment();
+                        if (key.isReadable()) {
+                            read(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            writePending(connection);
+                        }
+                    }
+                }
+            } catch (final ClosedSelectorException e) {
+                //server closed
+            } catch (final IOException e) {
+                if (!closed) {
+                    Err.process(e);
+                }
+            }
+        }
+
+        private void accept(final ServerSocketChannel serverSocketChannel) throws IOException {
+            final SocketChannel socketChannel = serverSocketChannel.accept();
+            if (socketChannel == null) {
+                return;
+            }
+            try {
+                socketChannel.configureBlocking(false);
+                configureSocketChannel(socketChannel);
+            } catch (final IOException e) {
+                Err.process(e);
+                socketChannel.close();
+                return;
+            }
+            final SelectorWorker[] workersCopy = workers;
+            if (workersCopy == null) {
+                socketChannel.close();
+                return;
+            }
+            final SelectorWorker worker = workersCopy[nextWorker];
+            nextWorker = (nextWorker + 1) % workersCopy.length;
+            worker.register(socketChannel);
+        }
+
+        private void registerPending() {
+            SocketChannel socketChannel = pendingRegistrations.poll();
+            while (socketChannel != null) {
+                final NioSocketServerConnection connection = new NioSocketServerConnection(
+                        NioSocketSynchronousServer.this, connectionIdSequence.incrementAndGet(), socketChannel,
+                        maxMessageSize, getReadBufferSize(), getMaxPendingWriteSize());
+                connections.add(connection);
+                try {
+                    connection.register(selector);
+                    handler.onOpen(connection);
+                } catch (final Throwable t) {
+                    Err.process(t);
+                    connection.close();
+                }
+                if (closed) {
+                    //the server was closed while the connection was not yet known to it
+                    connection.close();
+                }
+                socketChannel = pendingRegistrations.poll();
+            }
+        }
+
+        private void read(final NioSocketServerConnection connection) {
+            try {
+                if (!connection.read(handler)) {
+                    connection.close();
+                }
+            } catch (final EOFException e) {
+                connection.close();
+            } catch (final Throwable t) {
+                closeAfterError(connection, t);
+            }
+        }
+
+        private void writePending(final NioSocketServerConnection connection) {
+            try {
+                connection.writePending();
+            } catch (final EOFException e) {
+                connection.close();
+            } catch (final Throwable t) {
+                closeAfterError(connection, t);
+            }
+        }
+
+        private void closeAfterError(final NioSocketServerConnection connection, final Throwable t) {
+            if (!connection.isClosed()) {
+                log.warn("Closing %s after: %s", connection, t.toString());
+                Err.process(t);
+            }
+            connection.close();
+        }
+
+    }
+
+}
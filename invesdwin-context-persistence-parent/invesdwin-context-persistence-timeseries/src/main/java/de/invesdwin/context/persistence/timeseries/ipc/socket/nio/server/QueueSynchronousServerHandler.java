@@ -0,0 +1,65 @@
+package de.invesdwin.context.persistence.timeseries.ipc.socket.nio.server;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.persistence.timeseries.ipc.ISynchronousReader;
+import de.invesdwin.context.persistence.timeseries.ipc.ISynchronousWriter;
+import de.invesdwin.context.persistence.timeseries.ipc.SynchronousMessageView;
+import de.invesdwin.context.persistence.timeseries.ipc.queue.QueueSynchronousReader;
+import de.invesdwin.context.persistence.timeseries.ipc.queue.QueueSynchronousWriter;
+import de.invesdwin.util.bean.tuple.Pair;
+
+/**
+ * Hands out each accepted connection as a reader/writer pair. The selector thread copies incoming messages into a
+ * queue per connection which is consumed by the reader, the writer writes directly to the connection. Thus the pairs
+ * can be processed by worker threads like channels that were opened individually.
+ */
+@ThreadSafe
+public class QueueSynchronousServerHandler implements ISynchronousServerHandler {
+
+    private final BlockingQueue<Pair<ISynchronousReader, ISynchronousWriter>> accepted = new LinkedBlockingQueue<>();
+
+    @Override
+    public void onOpen(final NioSocketServerConnection connection) throws IOException {
+        final Queue<Pair<Integer, byte[]>> queue = new ConcurrentLinkedQueue<>();
+        connection.setAttachment(queue);
+        accepted.add(Pair.<ISynchronousReader, ISynchronousWriter> of(new QueueSynchronousReader(queue), connection));
+    }
+
+    @Override
+    public void onMessage(final NioSocketServerConnection connection, final SynchronousMessageView message)
+            throws IOException {
+        getQueue(connection).add(message.toPair());
+    }
+
+    @Override
+    public void onClose(final NioSocketServerConnection connection) {
+        final Queue<Pair<Integer, byte[]>> queue = getQueue(connection);
+        if (queue != null) {
+            queue.add(QueueSynchronousWriter.CLOSED_MESSAGE);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Queue<Pair<Integer, byte[]>> getQueue(final NioSocketServerConnection connection) {
+        return (Queue<Pair<Integer, byte[]>>) connection.getAttachment();
+    }
+
+    /**
+     * Returns null when no new connection was accepted.
+     */
+    public Pair<ISynchronousReader, ISynchronousWriter> poll() {
+        return accepted.poll();
+    }
+
+    public Pair<ISynchronousReader, ISynchronousWriter> take() throws InterruptedException {
+        return accepted.take();
+    }
+
+}
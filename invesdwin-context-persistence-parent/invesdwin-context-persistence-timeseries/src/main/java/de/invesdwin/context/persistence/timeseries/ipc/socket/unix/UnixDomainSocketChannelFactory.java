@@ -0,0 +1,56 @@
+package de.invesdwin.context.persistence.timeseries.ipc.socket.unix;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import javax.annotation.concurrent.Immutable;
+
+import org.apache.commons.io.FileUtils;
+
+import de.invesdwin.context.persistence.timeseries.ipc.socket.nio.ISocketChannelFactory;
+
+/**
+ * The server creates the socket file and deletes it again on close, a stale file of a previous run is replaced.
+ */
+@Immutable
+public class UnixDomainSocketChannelFactory implements ISocketChannelFactory {
+
+    private final File socketFile;
+
+    public UnixDomainSocketChannelFactory(final File socketFile) {
+        this.socketFile = socketFile;
+    }
+
+    public File getSocketFile() {
+        return socketFile;
+    }
+
+    @Override
+    public ServerSocketChannel newServerSocketChannel() throws IOException {
+        FileUtils.deleteQuietly(socketFile);
+        return UnixDomainSockets.newServerSocketChannel();
+    }
+
+    @Override
+    public SocketChannel newSocketChannel() throws IOException {
+        return UnixDomainSockets.newSocketChannel();
+    }
+
+    @Override
+    public boolean isConnectRetryable(final IOException e) {
+        return UnixDomainSockets.isConnectRetryable(e);
+    }
+
+    @Override
+    public boolean isTcpNoDelaySupported() {
+        return false;
+    }
+
+    @Override
+    public void onServerSocketClosed() {
+        FileUtils.deleteQuietly(socketFile);
+    }
+
+}
@@ -0,0 +1,28 @@
+package de.invesdwin.context.persistence.timeseries.ipc.socket.unix;
+
+import java.io.File;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import de.invesdwin.context.persistence.timeseries.ipc.socket.nio.NioSocketSynchronousWriter;
+
+/**
+ * Sends messages over a unix domain socket with the same framing as the NioSocketSynchronousWriter.
+ * The server creates the socket file and deletes it again on close, a stale file of a previous run is replaced.
+ */
+@NotThreadSafe
+public class UnixDomainSocketSynchronousWriter extends NioSocketSynchronousWriter {
+
+    private final File socketFile;
+
+    public UnixDomainSocketSynchronousWriter(final File socketFile, final boolean server, final int maxMessageSize) {
+        super(UnixDomainSockets.newAddress(socketFile), server, maxMessageSize,
+                new UnixDomainSocketChannelFactory(socketFile));
+        this.socketFile = socketFile;
+    }
+
+    public File getSocketFile() {
+        return socketFile;
+    }
+
+}
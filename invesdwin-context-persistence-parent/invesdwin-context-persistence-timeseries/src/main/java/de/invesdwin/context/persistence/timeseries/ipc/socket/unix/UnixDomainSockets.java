@@ -0,0 +1,106 @@
+package de.invesdwin.context.persistence.timeseries.ipc.socket.unix;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Unix domain socket channels are available since Java 16. They are looked up via reflection so that this module can
+ * still be used with older JVMs, in which case isSupported returns false.
+ */
+@Immutable
+public final class UnixDomainSockets {
+
+    private static final ProtocolFamily UNIX = determineUnixProtocolFamily();
+    private static final MethodHandle NEW_ADDRESS = determineMethod("java.net.UnixDomainSocketAddress", "of",
+            Path.class);
+    private static final MethodHandle OPEN_SOCKET_CHANNEL = determineMethod(SocketChannel.class.getName(), "open",
+            ProtocolFamily.class);
+    private static final MethodHandle OPEN_SERVER_SOCKET_CHANNEL = determineMethod(
+            ServerSocketChannel.class.getName(), "open", ProtocolFamily.class);
+
+    private UnixDomainSockets() {}
+
+    private static ProtocolFamily determineUnixProtocolFamily() {
+        for (final StandardProtocolFamily family : StandardProtocolFamily.values()) {
+            if ("UNIX".equals(family.name())) {
+                return family;
+            }
+        }
+        return null;
+    }
+
+    private static MethodHandle determineMethod(final String className, final String methodName,
+            final Class<?> parameterType) {
+        try {
+            final Method method = Class.forName(className).getMethod(methodName, parameterType);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (final ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    public static boolean isSupported() {
+        return UNIX != null && NEW_ADDRESS != null && OPEN_SOCKET_CHANNEL != null
+                && OPEN_SERVER_SOCKET_CHANNEL != null;
+    }
+
+    private static void assertSupported() {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException(
+                    "Unix domain sockets require Java 16 or newer, current version is: "
+                            + System.getProperty("java.version"));
+        }
+    }
+
+    public static SocketAddress newAddress(final File socketFile) {
+        assertSupported();
+        try {
+            return (SocketAddress) NEW_ADDRESS.invoke(socketFile.toPath());
+        } catch (final Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    public static SocketChannel newSocketChannel() throws IOException {
+        assertSupported();
+        try {
+            return (SocketChannel) OPEN_SOCKET_CHANNEL.invoke(UNIX);
+        } catch (final IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (final Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    public static ServerSocketChannel newServerSocketChannel() throws IOException {
+        assertSupported();
+        try {
+            return (ServerSocketChannel) OPEN_SERVER_SOCKET_CHANNEL.invoke(UNIX);
+        } catch (final IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (final Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * Connecting fails with a SocketException while the socket file does not exist yet and with a ConnectException
+     * while nobody is listening on it.
+     */
+    public static boolean isConnectRetryable(final IOException e) {
+        return e instanceof SocketException;
+    }
+
+}
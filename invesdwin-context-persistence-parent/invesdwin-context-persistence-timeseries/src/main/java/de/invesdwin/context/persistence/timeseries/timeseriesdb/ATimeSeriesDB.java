@@ -116,8 +116,16 @@ public abstract class ATimeSeriesDB<K, V> implements ITimeSeriesDB<K, V> {
         return getLookupTableCache(key).newDataDirectory();
     }
 
+    /**
+     * Stores the hash keys as integer ids in the lookup tables instead of the full strings. This can only be enabled
+     * for new storages, since existing tables can not be read with the other encoding.
+     */
+    protected boolean isHashKeyDictionaryEnabled() {
+        return false;
+    }
+
     protected TimeSeriesStorage newStorage(final File directory) {
-        return new TimeSeriesStorage(directory);
+        return new TimeSeriesStorage(directory, isHashKeyDictionaryEnabled());
     }
 
     protected File getBaseDirectory() {
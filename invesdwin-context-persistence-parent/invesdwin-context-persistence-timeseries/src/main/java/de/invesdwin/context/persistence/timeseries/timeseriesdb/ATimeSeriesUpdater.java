@@ -7,6 +7,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
@@ -75,8 +76,9 @@ public abstract class ATimeSeriesUpdater<K, V> {
     }
 
     public final boolean update() throws IncompleteUpdateFoundException {
+        final Lock updateLock = getUpdateLock();
         try {
-            if (!table.getTableLock(key).writeLock().tryLock(1, TimeUnit.MINUTES)) {
+            if (!updateLock.tryLock(1, TimeUnit.MINUTES)) {
                 throw new RetryLaterRuntimeException("Write lock could not be acquired for table [" + table.getName()
                         + "] and key [" + key + "]. Please ensure all iterators are closed!");
             }
@@ -100,10 +102,19 @@ public abstract class ATimeSeriesUpdater<K, V> {
             Assertions.assertThat(updateLockFile.delete()).isTrue();
             return true;
         } finally {
-            table.getTableLock(key).writeLock().unlock();
+            updateLock.unlock();
         }
     }
 
+    /**
+     * The update holds the write lock of the table by default. An update that only appends values after the existing
+     * ones (shouldRedoLastFile=false) can use the read lock instead, readers then see a growing prefix of complete
+     * files while deletions are still excluded. The caller has to ensure that only one such update runs at a time.
+     */
+    protected Lock getUpdateLock() {
+        return table.getTableLock(key).writeLock();
+    }
+
     private void doUpdate() {
         final Pair<FDate, List<V>> pair = lookupTable.prepareForUpdate(shouldRedoLastFile());
         final FDate updateFrom = pair.getFirst();
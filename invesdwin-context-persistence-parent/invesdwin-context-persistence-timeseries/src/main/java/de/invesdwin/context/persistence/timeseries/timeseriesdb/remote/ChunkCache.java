@@ -0,0 +1,43 @@
+package de.invesdwin.context.persistence.timeseries.timeseriesdb.remote;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Least recently used cache for immutable chunks, a maximum size of 0 disables the cache.
+ */
+@ThreadSafe
+class ChunkCache<K, V> {
+
+    private final int maximumSize;
+    @GuardedBy("this")
+    private final Map<K, V> map;
+
+    ChunkCache(final int maximumSize) {
+        this.maximumSize = maximumSize;
+        this.map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+                return size() > ChunkCache.this.maximumSize;
+            }
+        };
+    }
+
+    public synchronized V get(final K key) {
+        return map.get(key);
+    }
+
+    public synchronized void put(final K key, final V value) {
+        if (maximumSize > 0) {
+            map.put(key, value);
+        }
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+}
@@ -0,0 +1,290 @@
+package de.invesdwin.context.persistence.timeseries.timeseriesdb.remote;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.log.error.Err;
+import de.invesdwin.context.persistence.timeseries.ipc.rpc.RpcClient;
+import de.invesdwin.context.persistence.timeseries.ipc.rpc.RpcFrames;
+import de.invesdwin.context.persistence.timeseries.timeseriesdb.ITimeSeriesDB;
+import de.invesdwin.util.bean.tuple.Pair;
+import de.invesdwin.util.collections.iterable.ACloseableIterator;
+import de.invesdwin.util.collections.iterable.ICloseableIterable;
+import de.invesdwin.util.collections.iterable.ICloseableIterator;
+import de.invesdwin.util.concurrent.lock.Locks;
+import de.invesdwin.util.error.FastNoSuchElementException;
+import de.invesdwin.util.time.fdate.FDate;
+import ezdb.serde.Serde;
+
+/**
+ * Accesses an ITimeSeriesDB that is exposed by a RemoteTimeSeriesDBServer, thus many processes can share one storage
+ * instead of each one opening its own copy.
+ *
+ * rangeValues and rangeReverseValues are streamed in chunks, the next chunk is already requested while the current one
+ * is being iterated. Chunks whose values all lie before the latest value are immutable and thus cached. The first chunk
+ * of every iteration is always requested from the server, its version tells whether the cached chunks of the key are
+ * still valid or whether another client deleted the range in the meantime.
+ *
+ * The table lock is only local to this process and does not lock the remote storage.
+ */
+@ThreadSafe
+public class RemoteTimeSeriesDB<K, V> implements ITimeSeriesDB<K, V> {
+
+    private final String name;
+    private final RpcClient client;
+    private final int maxResponseSize;
+    private final Serde<K> keySerde;
+    private final Serde<V> valueSerde;
+    private final ReadWriteLock tableLock;
+    private final ChunkCache<Pair<Integer, ByteBuffer>, RemoteTimeSeriesDBChunk<V>> chunkCache;
+
+    public RemoteTimeSeriesDB(final String name, final RpcClient client, final int maxMessageSize,
+            final Serde<K> keySerde, final Serde<V> valueSerde) {
+        this.name = name;
+        this.client = client;
+        this.maxResponseSize = RpcFrames.getMaxRecordMessageSize(maxMessageSize);
+        this.keySerde = keySerde;
+        this.valueSerde = valueSerde;
+        this.tableLock = Locks
+                .newReentrantReadWriteLock(RemoteTimeSeriesDB.class.getSimpleName() + "_" + name + "_tableLock");
+        this.chunkCache = new ChunkCache<>(getChunkCacheSize());
+    }
+
+    /**
+     * The maximum number of values per chunk, larger values might be limited by the maximum message size.
+     */
+    protected int getChunkSize() {
+        return 1_000;
+    }
+
+    /**
+     * The number of decoded chunks that are cached, 0 disables the cache.
+     */
+    protected int getChunkCacheSize() {
+        return 100;
+    }
+
+    /**
+     * The data is stored on the server, thus there is no local directory.
+     */
+    @Override
+    public File getDirectory() {
+        return null;
+    }
+
+    @Override
+    public ReadWriteLock getTableLock(final K key) {
+        return tableLock;
+    }
+
+    @Override
+    public ICloseableIterable<V> rangeValues(final K key, final FDate from, final FDate to) {
+        return new ChunkedRange(RemoteTimeSeriesDBMethod.RANGE_VALUES, key, from, to);
+    }
+
+    @Override
+    public ICloseableIterable<V> rangeReverseValues(final K key, final FDate from, final FDate to) {
+        return new ChunkedRange(RemoteTimeSeriesDBMethod.RANGE_REVERSE_VALUES, key, from, to);
+    }
+
+    @Override
+    public V getLatestValue(final K key, final FDate date) {
+        return fromNullableValueBytes(call(RemoteTimeSeriesDBMethod.GET_LATEST_VALUE, key, date, 0));
+    }
+
+    @Override
+    public FDate getLatestValueKey(final K key, final FDate date) {
+        return RemoteTimeSeriesDBProtocol
+                .fromNullableFDateBytes(call(RemoteTimeSeriesDBMethod.GET_LATEST_VALUE_KEY, key, date, 0));
+    }
+
+    @Override
+    public V getPreviousValue(final K key, final FDate date, final int shiftBackUnits) {
+        return fromNullableValueBytes(call(RemoteTimeSeriesDBMethod.GET_PREVIOUS_VALUE, key, date, shiftBackUnits));
+    }
+
+    @Override
+    public FDate getPreviousValueKey(final K key, final FDate date, final int shiftBackUnits) {
+        return RemoteTimeSeriesDBProtocol.fromNullableFDateBytes(
+                call(RemoteTimeSeriesDBMethod.GET_PREVIOUS_VALUE_KEY, key, date, shiftBackUnits));
+    }
+
+    @Override
+    public boolean isEmptyOrInconsistent(final K key) {
+        return RemoteTimeSeriesDBProtocol
+                .fromBooleanBytes(call(RemoteTimeSeriesDBMethod.IS_EMPTY_OR_INCONSISTENT, key, null, 0));
+    }
+
+    @Override
+    public V getNextValue(final K key, final FDate date, final int shiftForwardUnits) {
+        return fromNullableValueBytes(call(RemoteTimeSeriesDBMethod.GET_NEXT_VALUE, key, date, shiftForwardUnits));
+    }
+
+    @Override
+    public FDate getNextValueKey(final K key, final FDate date, final int shiftForwardUnits) {
+        return RemoteTimeSeriesDBProtocol.fromNullableFDateBytes(
+                call(RemoteTimeSeriesDBMethod.GET_NEXT_VALUE_KEY, key, date, shiftForwardUnits));
+    }
+
+    @Override
+    public void deleteRange(final K key) {
+        call(RemoteTimeSeriesDBMethod.DELETE_RANGE, key, null, 0);
+        chunkCache.clear();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Only clears the cache, the RpcClient is owned by the caller.
+     */
+    @Override
+    public void close() {
+        chunkCache.clear();
+    }
+
+    private byte[] call(final RemoteTimeSeriesDBMethod method, final K key, final FDate date, final int units) {
+        final byte[] request = new RemoteTimeSeriesDBRequest(keySerde.toBytes(key), date, null, units,
+                maxResponseSize).toBytes();
+        try {
+            return client.call(method.getType(), request);
+        } catch (final IOException e) {
+            throw Err.process(e);
+        }
+    }
+
+    private V fromNullableValueBytes(final byte[] bytes) {
+        final byte[] valueBytes = RemoteTimeSeriesDBProtocol.fromNullableBytes(bytes);
+        if (valueBytes == null) {
+            return null;
+        }
+        return valueSerde.fromBytes(valueBytes);
+    }
+
+    /**
+     * A null version skips the cache, otherwise a cached chunk is only used when it has the same version.
+     */
+    private PendingChunk requestChunk(final RemoteTimeSeriesDBMethod method, final byte[] key, final FDate from,
+            final FDate to, final Long version) {
+        final byte[] request = new RemoteTimeSeriesDBRequest(key, from, to, getChunkSize(), maxResponseSize)
+                .toBytes();
+        final Pair<Integer, ByteBuffer> cacheKey = Pair.of(method.getType(), ByteBuffer.wrap(request));
+        if (version != null) {
+            final RemoteTimeSeriesDBChunk<V> cached = chunkCache.get(cacheKey);
+            if (cached != null && cached.getVersion() == version.longValue()) {
+                return new PendingChunk(cacheKey, null, cached);
+            }
+        }
+        try {
+            return new PendingChunk(cacheKey, client.request(method.getType(), request), null);
+        } catch (final IOException e) {
+            throw Err.process(e);
+        }
+    }
+
+    private RemoteTimeSeriesDBChunk<V> awaitChunk(final PendingChunk pending) {
+        if (pending.chunk != null) {
+            return pending.chunk;
+        }
+        final byte[] response;
+        try {
+            response = client.await(pending.response);
+        } catch (final IOException e) {
+            throw Err.process(e);
+        }
+        final RemoteTimeSeriesDBChunk<V> chunk = RemoteTimeSeriesDBChunk.fromBytes(response, valueSerde);
+        if (chunk.isImmutable()) {
+            chunkCache.put(pending.cacheKey, chunk);
+        }
+        return chunk;
+    }
+
+    private final class PendingChunk {
+        private final Pair<Integer, ByteBuffer> cacheKey;
+        private final Future<byte[]> response;
+        private final RemoteTimeSeriesDBChunk<V> chunk;
+
+        private PendingChunk(final Pair<Integer, ByteBuffer> cacheKey, final Future<byte[]> response,
+                final RemoteTimeSeriesDBChunk<V> chunk) {
+            this.cacheKey = cacheKey;
+            this.response = response;
+            this.chunk = chunk;
+        }
+    }
+
+    private final class ChunkedRange implements ICloseableIterable<V> {
+        private final RemoteTimeSeriesDBMethod method;
+        private final K key;
+        private final FDate from;
+        private final FDate to;
+
+        private ChunkedRange(final RemoteTimeSeriesDBMethod method, final K key, final FDate from, final FDate to) {
+            this.method = method;
+            this.key = key;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public ICloseableIterator<V> iterator() {
+            return new ACloseableIterator<V>() {
+
+                private final byte[] keyBytes = keySerde.toBytes(key);
+                private PendingChunk pending = requestChunk(method, keyBytes, from, to, null);
+                private Long version;
+                private Iterator<V> values;
+
+                @Override
+                protected boolean innerHasNext() {
+                    while (values == null || !values.hasNext()) {
+                        if (pending == null) {
+                            return false;
+                        }
+                        final RemoteTimeSeriesDBChunk<V> chunk = awaitChunk(pending);
+                        if (version == null) {
+                            version = chunk.getVersion();
+                        } else if (version.longValue() != chunk.getVersion()) {
+                            throw new IllegalStateException("The range of key [" + key + "] was deleted on the server"
+                                    + " while it was being iterated");
+                        }
+                        if (chunk.getNextFrom() != null) {
+                            //request the next chunk while this one is being iterated
+                            pending = requestChunk(method, keyBytes, chunk.getNextFrom(), to, version);
+                        } else {
+                            pending = null;
+                        }
+                        values = chunk.getValues().iterator();
+                    }
+                    return true;
+                }
+
+                @Override
+                protected V innerNext() {
+                    if (!innerHasNext()) {
+                        throw new FastNoSuchElementException("rangeValues reached end");
+                    }
+                    return values.next();
+                }
+
+                @Override
+                public void close() {
+                    super.close();
+                    if (pending != null && pending.response != null) {
+                        pending.response.cancel(false);
+                    }
+                    pending = null;
+                    values = null;
+                }
+            };
+        }
+    }
+
+}
@@ -0,0 +1,72 @@
+package de.invesdwin.context.persistence.timeseries.timeseriesdb.remote;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.concurrent.Immutable;
+
+import de.invesdwin.util.time.fdate.FDate;
+import ezdb.serde.Serde;
+
+/**
+ * A part of the result of rangeValues or rangeReverseValues. The next chunk is requested from nextFrom, which is null
+ * for the last chunk.
+ *
+ * The version is the version of the key on the server when the chunk was created, it changes when the range of the key
+ * gets deleted.
+ */
+@Immutable
+public class RemoteTimeSeriesDBChunk<V> {
+
+    private final List<V> values;
+    private final long version;
+    private final boolean immutable;
+    private final FDate nextFrom;
+
+    public RemoteTimeSeriesDBChunk(final List<V> values, final long version, final boolean immutable,
+            final FDate nextFrom) {
+        this.values = values;
+        this.version = version;
+        this.immutable = immutable;
+        this.nextFrom = nextFrom;
+    }
+
+    public List<V> getValues() {
+        return values;
+    }
+
+    public FDate getNextFrom() {
+        return nextFrom;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * A chunk whose values all lie before the latest value of the key does not change when new values are appended,
+     * thus it stays valid as long as the version of the key does not change.
+     */
+    public boolean isImmutable() {
+        return immutable;
+    }
+
+    public static <V> RemoteTimeSeriesDBChunk<V> fromBytes(final byte[] bytes, final Serde<V> valueSerde) {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        final int count = buffer.getInt(RemoteTimeSeriesDBProtocol.CHUNK_COUNT_POS);
+        final long version = buffer.getLong(RemoteTimeSeriesDBProtocol.CHUNK_VERSION_POS);
+        final boolean immutable = buffer
+                .get(RemoteTimeSeriesDBProtocol.CHUNK_IMMUTABLE_POS) == RemoteTimeSeriesDBProtocol.NOT_NULL;
+        buffer.position(RemoteTimeSeriesDBProtocol.CHUNK_NEXT_FROM_POS);
+        final FDate nextFrom = RemoteTimeSeriesDBProtocol.getNullableFDate(buffer);
+        final List<V> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final byte[] value = new byte[buffer.getInt()];
+            buffer.get(value);
+            values.add(valueSerde.fromBytes(value));
+        }
+        return new RemoteTimeSeriesDBChunk<V>(values, version, immutable, nextFrom);
+    }
+
+}
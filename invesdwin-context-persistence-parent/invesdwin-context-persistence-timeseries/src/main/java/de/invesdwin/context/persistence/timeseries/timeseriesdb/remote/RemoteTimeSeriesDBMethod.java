@@ -0,0 +1,32 @@
+package de.invesdwin.context.persistence.timeseries.timeseriesdb.remote;
+
+/**
+ * The methods of ITimeSeriesDB that can be called remotely, the type is used as the request type of the rpc.
+ */
+public enum RemoteTimeSeriesDBMethod {
+    RANGE_VALUES,
+    RANGE_REVERSE_VALUES,
+    GET_LATEST_VALUE,
+    GET_LATEST_VALUE_KEY,
+    GET_PREVIOUS_VALUE,
+    GET_PREVIOUS_VALUE_KEY,
+    IS_EMPTY_OR_INCONSISTENT,
+    GET_NEXT_VALUE,
+    GET_NEXT_VALUE_KEY,
+    DELETE_RANGE;
+
+    private static final RemoteTimeSeriesDBMethod[] VALUES = values();
+
+    public int getType() {
+        return ordinal() + 1;
+    }
+
+    public static RemoteTimeSeriesDBMethod valueOfType(final int type) {
+        final int ordinal = type - 1;
+        if (ordinal < 0 || ordinal >= VALUES.length) {
+            throw new IllegalArgumentException("Unknown type: " + type);
+        }
+        return VALUES[ordinal];
+    }
+
+}
@@ -0,0 +1,90 @@
+package de.invesdwin.context.persistence.timeseries.timeseriesdb.remote;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.concurrent.Immutable;
+
+import de.invesdwin.util.time.fdate.FDate;
+import de.invesdwin.util.time.fdate.FDates;
+
+/**
+ * Encoding of the responses. A chunk of rangeValues starts with the number of values, the version of the key, whether
+ * the chunk is immutable and the nullable time from which the next chunk should be requested, followed by the size
+ * prefixed values.
+ */
+@Immutable
+public final class RemoteTimeSeriesDBProtocol {
+
+    public static final byte NULL = 0;
+    public static final byte NOT_NULL = 1;
+    public static final int NULLABLE_FDATE_LENGTH = 1 + 8;
+
+    public static final int CHUNK_COUNT_POS = 0;
+    public static final int CHUNK_COUNT_OFFSET = 4;
+    public static final int CHUNK_VERSION_POS = CHUNK_COUNT_POS + CHUNK_COUNT_OFFSET;
+    public static final int CHUNK_VERSION_OFFSET = 8;
+    public static final int CHUNK_IMMUTABLE_POS = CHUNK_VERSION_POS + CHUNK_VERSION_OFFSET;
+    public static final int CHUNK_IMMUTABLE_OFFSET = 1;
+    public static final int CHUNK_NEXT_FROM_POS = CHUNK_IMMUTABLE_POS + CHUNK_IMMUTABLE_OFFSET;
+    public static final int CHUNK_VALUES_POS = CHUNK_NEXT_FROM_POS + NULLABLE_FDATE_LENGTH;
+    public static final int CHUNK_VALUE_SIZE_OFFSET = 4;
+
+    private RemoteTimeSeriesDBProtocol() {}
+
+    public static void putNullableFDate(final ByteBuffer buffer, final FDate date) {
+        if (date == null) {
+            buffer.put(NULL);
+            buffer.putLong(0L);
+        } else {
+            buffer.put(NOT_NULL);
+            FDates.putFDate(buffer, date);
+        }
+    }
+
+    public static FDate getNullableFDate(final ByteBuffer buffer) {
+        if (buffer.get() == NULL) {
+            buffer.getLong();
+            return null;
+        } else {
+            return FDates.extractFDate(buffer);
+        }
+    }
+
+    public static byte[] toNullableFDateBytes(final FDate date) {
+        final ByteBuffer buffer = ByteBuffer.allocate(NULLABLE_FDATE_LENGTH);
+        putNullableFDate(buffer, date);
+        return buffer.array();
+    }
+
+    public static FDate fromNullableFDateBytes(final byte[] bytes) {
+        return getNullableFDate(ByteBuffer.wrap(bytes));
+    }
+
+    public static byte[] toNullableBytes(final byte[] bytes) {
+        if (bytes == null) {
+            return new byte[] { NULL };
+        }
+        final byte[] nullable = new byte[bytes.length + 1];
+        nullable[0] = NOT_NULL;
+        System.arraycopy(bytes, 0, nullable, 1, bytes.length);
+        return nullable;
+    }
+
+    public static byte[] fromNullableBytes(final byte[] nullable) {
+        if (nullable[0] == NULL) {
+            return null;
+        }
+        final byte[] bytes = new byte[nullable.length - 1];
+        System.arraycopy(nullable, 1, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    public static byte[] toBooleanBytes(final boolean value) {
+        return new byte[] { value ? NOT_NULL : NULL };
+    }
+
+    public static boolean fromBooleanBytes(final byte[] bytes) {
+        return bytes[0] == NOT_NULL;
+    }
+
+}
@@ -0,0 +1,79 @@
+package de.invesdwin.context.persistence.timeseries.timeseriesdb.remote;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.concurrent.Immutable;
+
+import de.invesdwin.util.time.fdate.FDate;
+
+/**
+ * All methods share one request layout: the serialized key, two nullable dates and two int parameters. The dates are
+ * the date or from/to of the method, the first int parameter is the number of shift units or the chunk size, the
+ * second one is the maximum size of a chunk response in bytes.
+ */
+@Immutable
+public class RemoteTimeSeriesDBRequest {
+
+    private static final int KEY_SIZE_OFFSET = 4;
+    private static final int UNITS_OFFSET = 4;
+    private static final int MAX_RESPONSE_SIZE_OFFSET = 4;
+
+    private final byte[] key;
+    private final FDate from;
+    private final FDate to;
+    private final int units;
+    private final int maxResponseSize;
+
+    public RemoteTimeSeriesDBRequest(final byte[] key, final FDate from, final FDate to, final int units,
+            final int maxResponseSize) {
+        this.key = key;
+        this.from = from;
+        this.to = to;
+        this.units = units;
+        this.maxResponseSize = maxResponseSize;
+    }
+
+    public byte[] getKey() {
+        return key;
+    }
+
+    public FDate getFrom() {
+        return from;
+    }
+
+    public FDate getTo() {
+        return to;
+    }
+
+    public int getUnits() {
+        return units;
+    }
+
+    public int getMaxResponseSize() {
+        return maxResponseSize;
+    }
+
+    public byte[] toBytes() {
+        final ByteBuffer buffer = ByteBuffer.allocate(KEY_SIZE_OFFSET + key.length
+                + 2 * RemoteTimeSeriesDBProtocol.NULLABLE_FDATE_LENGTH + UNITS_OFFSET + MAX_RESPONSE_SIZE_OFFSET);
+        buffer.putInt(key.length);
+        buffer.put(key);
+        RemoteTimeSeriesDBProtocol.putNullableFDate(buffer, from);
+        RemoteTimeSeriesDBProtocol.putNullableFDate(buffer, to);
+        buffer.putInt(units);
+        buffer.putInt(maxResponseSize);
+        return buffer.array();
+    }
+
+    public static RemoteTimeSeriesDBRequest fromBytes(final byte[] bytes) {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        final byte[] key = new byte[buffer.getInt()];
+        buffer.get(key);
+        final FDate from = RemoteTimeSeriesDBProtocol.getNullableFDate(buffer);
+        final FDate to = RemoteTimeSeriesDBProtocol.getNullableFDate(buffer);
+        final int units = buffer.getInt();
+        final int maxResponseSize = buffer.getInt();
+        return new RemoteTimeSeriesDBRequest(key, from, to, units, maxResponseSize);
+    }
+
+}
@@ -0,0 +1,186 @@
+package de.invesdwin.context.persistence.timeseries.timeseriesdb.remote;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Function;
+
+import de.invesdwin.context.persistence.timeseries.ipc.ISynchronousReader;
+import de.invesdwin.context.persistence.timeseries.ipc.ISynchronousWriter;
+import de.invesdwin.context.persistence.timeseries.ipc.rpc.IRpcRequestHandler;
+import de.invesdwin.context.persistence.timeseries.ipc.rpc.RpcServer;
+import de.invesdwin.context.persistence.timeseries.timeseriesdb.ITimeSeriesDB;
+import de.invesdwin.util.bean.tuple.Pair;
+import de.invesdwin.util.collections.iterable.ICloseableIterable;
+import de.invesdwin.util.collections.iterable.ICloseableIterator;
+import de.invesdwin.util.error.UnknownArgumentException;
+import de.invesdwin.util.math.Bytes;
+import de.invesdwin.util.time.fdate.FDate;
+import ezdb.serde.Serde;
+
+/**
+ * Exposes a local ITimeSeriesDB to RemoteTimeSeriesDB clients. One instance can serve any number of clients, each
+ * client connection gets its own RpcServer via newRpcServer.
+ *
+ * Chunks whose values all lie before the latest value of the key are cached, since the time series only gets appended
+ * to they only change when the range is deleted. Each key has a version that is bumped on deleteRange and sent with
+ * every chunk, thus clients can tell whether their cached chunks are still valid. A process that deletes a range of
+ * the underlying db directly instead of through a client needs to call onRangeDeleted afterwards.
+ */
+@ThreadSafe
+public class RemoteTimeSeriesDBServer<K, V> implements IRpcRequestHandler {
+
+    private final ITimeSeriesDB<K, V> db;
+    private final Serde<K> keySerde;
+    private final Serde<V> valueSerde;
+    private final Function<V, FDate> extractTime;
+    private final ChunkCache<Pair<Integer, ByteBuffer>, byte[]> chunkCache;
+    private final Map<ByteBuffer, Long> key_version = new ConcurrentHashMap<ByteBuffer, Long>();
+    /**
+     * seeded with the start time, so that a restarted server does not reuse the versions of its previous run
+     */
+    private final long initialVersion = System.currentTimeMillis() * 1000;
+    private final AtomicLong versionSequence = new AtomicLong(initialVersion);
+
+    public RemoteTimeSeriesDBServer(final ITimeSeriesDB<K, V> db, final Serde<K> keySerde,
+            final Serde<V> valueSerde, final Function<V, FDate> extractTime) {
+        this.db = db;
+        this.keySerde = keySerde;
+        this.valueSerde = valueSerde;
+        this.extractTime = extractTime;
+        this.chunkCache = new ChunkCache<>(getChunkCacheSize());
+    }
+
+    /**
+     * The number of encoded chunks that are cached for all clients.
+     */
+    protected int getChunkCacheSize() {
+        return 100;
+    }
+
+    public RpcServer newRpcServer(final ISynchronousReader requestReader, final ISynchronousWriter responseWriter,
+            final int maxMessageSize) {
+        return new RpcServer(requestReader, responseWriter, maxMessageSize, this);
+    }
+
+    /**
+     * Invalidates the chunks that clients cached for this key.
+     */
+    public void onRangeDeleted(final K key) {
+        key_version.put(ByteBuffer.wrap(keySerde.toBytes(key)), versionSequence.incrementAndGet());
+        chunkCache.clear();
+    }
+
+    private long getVersion(final byte[] key) {
+        final Long version = key_version.get(ByteBuffer.wrap(key));
+        if (version == null) {
+            return initialVersion;
+        }
+        return version;
+    }
+
+    @Override
+    public byte[] handleRequest(final int type, final byte[] request) {
+        final RemoteTimeSeriesDBMethod method = RemoteTimeSeriesDBMethod.valueOfType(type);
+        final RemoteTimeSeriesDBRequest r = RemoteTimeSeriesDBRequest.fromBytes(request);
+        final K key = keySerde.fromBytes(r.getKey());
+        switch (method) {
+        case RANGE_VALUES:
+            return getChunk(type, request, r, key, db.rangeValues(key, r.getFrom(), r.getTo()));
+        case RANGE_REVERSE_VALUES:
+            return getChunk(type, request, r, key, db.rangeReverseValues(key, r.getFrom(), r.getTo()));
+        case GET_LATEST_VALUE:
+            return toNullableValueBytes(db.getLatestValue(key, r.getFrom()));
+        case GET_LATEST_VALUE_KEY:
+            return RemoteTimeSeriesDBProtocol.toNullableFDateBytes(db.getLatestValueKey(key, r.getFrom()));
+        case GET_PREVIOUS_VALUE:
+            return toNullableValueBytes(db.getPreviousValue(key, r.getFrom(), r.getUnits()));
+        case GET_PREVIOUS_VALUE_KEY:
+            return RemoteTimeSeriesDBProtocol
+                    .toNullableFDateBytes(db.getPreviousValueKey(key, r.getFrom(), r.getUnits()));
+        case IS_EMPTY_OR_INCONSISTENT:
+            return RemoteTimeSeriesDBProtocol.toBooleanBytes(db.isEmptyOrInconsistent(key));
+        case GET_NEXT_VALUE:
+            return toNullableValueBytes(db.getNextValue(key, r.getFrom(), r.getUnits()));
+        case GET_NEXT_VALUE_KEY:
+            return RemoteTimeSeriesDBProtocol.toNullableFDateBytes(db.getNextValueKey(key, r.getFrom(), r.getUnits()));
+        case DELETE_RANGE:
+            db.deleteRange(key);
+            onRangeDeleted(key);
+            return Bytes.EMPTY_ARRAY;
+        default:
+            throw UnknownArgumentException.newInstance(RemoteTimeSeriesDBMethod.class, method);
+        }
+    }
+
+    private byte[] toNullableValueBytes(final V value) {
+        if (value == null) {
+            return RemoteTimeSeriesDBProtocol.toNullableBytes(null);
+        }
+        return RemoteTimeSeriesDBProtocol.toNullableBytes(valueSerde.toBytes(value));
+    }
+
+    /**
+     * Adds values until the chunk size or the maximum response size is reached. The time of the first value that did
+     * not fit anymore is where the next chunk starts.
+     */
+    private byte[] getChunk(final int type, final byte[] request, final RemoteTimeSeriesDBRequest r, final K key,
+            final ICloseableIterable<V> range) {
+        final Pair<Integer, ByteBuffer> cacheKey = Pair.of(type, ByteBuffer.wrap(request));
+        final byte[] cached = chunkCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        //read the version before the values, so that a concurrent delete can only make the chunk look outdated
+        final long version = getVersion(r.getKey());
+        final FDate latestValueKey = db.getLatestValueKey(key, FDate.MAX_DATE);
+        final ByteBuffer buffer = ByteBuffer.allocate(r.getMaxResponseSize());
+        buffer.position(RemoteTimeSeriesDBProtocol.CHUNK_VALUES_POS);
+        int count = 0;
+        FDate maxValueKey = null;
+        FDate nextFrom = null;
+        try (ICloseableIterator<V> values = range.iterator()) {
+            while (values.hasNext()) {
+                final V value = values.next();
+                final byte[] valueBytes = valueSerde.toBytes(value);
+                if (count >= r.getUnits() || buffer.remaining() < RemoteTimeSeriesDBProtocol.CHUNK_VALUE_SIZE_OFFSET
+                        + valueBytes.length) {
+                    if (count == 0) {
+                        throw new IllegalStateException("valueSize [" + valueBytes.length
+                                + "] exceeds maxResponseSize [" + r.getMaxResponseSize() + "]");
+                    }
+                    nextFrom = extractTime.apply(value);
+                    break;
+                }
+                buffer.putInt(valueBytes.length);
+                buffer.put(valueBytes);
+                count++;
+                final FDate valueKey = extractTime.apply(value);
+                if (maxValueKey == null || valueKey.isAfter(maxValueKey)) {
+                    maxValueKey = valueKey;
+                }
+            }
+        }
+        //the chunk that contains the latest value changes when values are appended
+        final boolean immutable = maxValueKey != null && latestValueKey != null
+                && maxValueKey.isBefore(latestValueKey);
+        final int length = buffer.position();
+        buffer.putInt(RemoteTimeSeriesDBProtocol.CHUNK_COUNT_POS, count);
+        buffer.putLong(RemoteTimeSeriesDBProtocol.CHUNK_VERSION_POS, version);
+        buffer.put(RemoteTimeSeriesDBProtocol.CHUNK_IMMUTABLE_POS,
+                immutable ? RemoteTimeSeriesDBProtocol.NOT_NULL : RemoteTimeSeriesDBProtocol.NULL);
+        buffer.position(RemoteTimeSeriesDBProtocol.CHUNK_NEXT_FROM_POS);
+        RemoteTimeSeriesDBProtocol.putNullableFDate(buffer, nextFrom);
+        final byte[] chunk = Arrays.copyOf(buffer.array(), length);
+        if (immutable && version == getVersion(r.getKey())) {
+            chunkCache.put(cacheKey, chunk);
+        }
+        return chunk;
+    }
+
+}
@@ -0,0 +1,179 @@
+package de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.log.Log;
+import de.invesdwin.util.time.fdate.FDate;
+
+/**
+ * Keeps track of the disk usage of completed segments and evicts the least recently used ones when the configured
+ * budget is exceeded. Evicted segments get their status reset so that they are lazily initialized again on the next
+ * access via downloadSegmentElements.
+ *
+ * Completed segments from previous runs are seeded from the segment status table when the storage of their key is
+ * opened. They are regarded as least recently used, thus they are the first candidates for eviction.
+ */
+@ThreadSafe
+public abstract class ASegmentDiskQuota<K> {
+
+    private final Log log = new Log(this);
+    @GuardedBy("this")
+    private final LinkedHashMap<SegmentedKey<K>, SegmentUsage> segment_usage = new LinkedHashMap<SegmentedKey<K>, SegmentUsage>(
+            16, 0.75f, true);
+    @GuardedBy("this")
+    private long diskUsageBytes = 0;
+
+    /**
+     * Return null to disable the quota.
+     */
+    protected abstract Long getMaxDiskUsageBytes();
+
+    protected abstract boolean isPinned(K key);
+
+    /**
+     * Should return the number of bytes the segment occupies on disk.
+     */
+    protected abstract long measureSegmentSize(SegmentedKey<K> segmentedKey);
+
+    /**
+     * Should only evict the segment when this is possible without blocking, otherwise false should be returned so that
+     * the next candidate can be tried.
+     */
+    protected abstract boolean evictSegment(SegmentedKey<K> segmentedKey);
+
+    public boolean isEnabled() {
+        return getMaxDiskUsageBytes() != null;
+    }
+
+    public synchronized long getDiskUsageBytes() {
+        return diskUsageBytes;
+    }
+
+    public void onSegmentAccessed(final SegmentedKey<K> segmentedKey, final boolean initialized) {
+        final Long maxDiskUsageBytes = getMaxDiskUsageBytes();
+        if (maxDiskUsageBytes == null) {
+            return;
+        }
+        final boolean exceeded;
+        synchronized (this) {
+            final SegmentUsage existing = segment_usage.get(segmentedKey);
+            if (existing != null && !initialized) {
+                existing.lastAccess = System.currentTimeMillis();
+                return;
+            }
+        }
+        //measure outside of the lock since this accesses the file system
+        final long size = measureSegmentSize(segmentedKey);
+        synchronized (this) {
+            final SegmentUsage removed = segment_usage.remove(segmentedKey);
+            if (removed != null) {
+                diskUsageBytes -= removed.size;
+            }
+            if (size > 0) {
+                segment_usage.put(segmentedKey, new SegmentUsage(size));
+                diskUsageBytes += size;
+            }
+            exceeded = diskUsageBytes > maxDiskUsageBytes;
+        }
+        if (exceeded) {
+            evictLeastRecentlyUsed(segmentedKey, maxDiskUsageBytes);
+        }
+    }
+
+    /**
+     * Registers segments that already exist on disk as least recently used. No eviction happens here because this is
+     * called while the storage of the key is being opened, the next access will evict segments if required.
+     */
+    public void seed(final List<SegmentedKey<K>> existingSegments) {
+        if (!isEnabled() || existingSegments.isEmpty()) {
+            return;
+        }
+        //measure outside of the lock since this accesses the file system
+        final long[] sizes = new long[existingSegments.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = measureSegmentSize(existingSegments.get(i));
+        }
+        synchronized (this) {
+            //copy keeps the order from least recently used to most recently used
+            final LinkedHashMap<SegmentedKey<K>, SegmentUsage> accessed = new LinkedHashMap<>(segment_usage);
+            segment_usage.clear();
+            for (int i = 0; i < sizes.length; i++) {
+                final SegmentedKey<K> segmentedKey = existingSegments.get(i);
+                if (sizes[i] > 0 && !accessed.containsKey(segmentedKey)) {
+                    segment_usage.put(segmentedKey, new SegmentUsage(sizes[i]));
+                    diskUsageBytes += sizes[i];
+                }
+            }
+            //segments that were accessed by this process stay more recently used than the seeded ones
+            segment_usage.putAll(accessed);
+        }
+    }
+
+    private void evictLeastRecentlyUsed(final SegmentedKey<K> accessedSegment, final long maxDiskUsageBytes) {
+        final List<SegmentedKey<K>> candidates = new ArrayList<SegmentedKey<K>>();
+        synchronized (this) {
+            long expectedUsage = diskUsageBytes;
+            //iteration order is from least recently used to most recently used
+            final Iterator<Entry<SegmentedKey<K>, SegmentUsage>> it = segment_usage.entrySet().iterator();
+            while (expectedUsage > maxDiskUsageBytes && it.hasNext()) {
+                final Entry<SegmentedKey<K>, SegmentUsage> entry = it.next();
+                final SegmentedKey<K> segmentedKey = entry.getKey();
+                if (segmentedKey.equals(accessedSegment) || isPinned(segmentedKey.getKey())) {
+                    continue;
+                }
+                candidates.add(segmentedKey);
+                expectedUsage -= entry.getValue().size;
+            }
+        }
+        for (int i = 0; i < candidates.size(); i++) {
+            final SegmentedKey<K> candidate = candidates.get(i);
+            if (evictSegment(candidate)) {
+                final SegmentUsage removed;
+                synchronized (this) {
+                    removed = segment_usage.remove(candidate);
+                    if (removed != null) {
+                        diskUsageBytes -= removed.size;
+                    }
+                }
+                if (removed != null) {
+                    log.info("Evicted segment [%s] with [%s] bytes that was last accessed at [%s]", candidate,
+                            removed.size, FDate.valueOf(removed.lastAccess));
+                }
+            }
+        }
+    }
+
+    public synchronized void remove(final K key) {
+        final Iterator<Entry<SegmentedKey<K>, SegmentUsage>> it = segment_usage.entrySet().iterator();
+        while (it.hasNext()) {
+            final Entry<SegmentedKey<K>, SegmentUsage> entry = it.next();
+            if (entry.getKey().getKey().equals(key)) {
+                diskUsageBytes -= entry.getValue().size;
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        segment_usage.clear();
+        diskUsageBytes = 0;
+    }
+
+    private static final class SegmentUsage {
+        private final long size;
+        private long lastAccess;
+
+        private SegmentUsage(final long size) {
+            this.size = size;
+            this.lastAccess = System.currentTimeMillis();
+        }
+    }
+
+}
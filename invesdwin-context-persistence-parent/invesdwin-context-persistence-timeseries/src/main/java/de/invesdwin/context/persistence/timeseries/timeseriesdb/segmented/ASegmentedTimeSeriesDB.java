@@ -2,12 +2,16 @@ package de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented;
 
 import java.io.File;
 import java.io.OutputStream;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import javax.annotation.concurrent.ThreadSafe;
 
+import org.apache.commons.io.FileUtils;
+
 import de.invesdwin.context.integration.retry.RetryLaterRuntimeException;
 import de.invesdwin.context.persistence.timeseries.timeseriesdb.ATimeSeriesDB;
 import de.invesdwin.context.persistence.timeseries.timeseriesdb.ATimeSeriesUpdater;
@@ -43,6 +47,33 @@ public abstract class ASegmentedTimeSeriesDB<K, V> implements ITimeSeriesDB<K, V
         }
     };
     private final ALoadingCache<K, ASegmentedTimeSeriesStorageCache<K, V>> key_lookupTableCache;
+    private final Set<K> pinnedKeys = ConcurrentHashMap.newKeySet();
+    private final ASegmentDiskQuota<K> diskQuota = new ASegmentDiskQuota<K>() {
+        @Override
+        protected Long getMaxDiskUsageBytes() {
+            return ASegmentedTimeSeriesDB.this.getMaxDiskUsageBytes();
+        }
+
+        @Override
+        protected boolean isPinned(final K key) {
+            return ASegmentedTimeSeriesDB.this.isPinned(key);
+        }
+
+        @Override
+        protected long measureSegmentSize(final SegmentedKey<K> segmentedKey) {
+            final File dataDirectory = segmentedTable.getDataDirectory(segmentedKey);
+            if (dataDirectory.exists()) {
+                return FileUtils.sizeOfDirectory(dataDirectory);
+            } else {
+                return 0;
+            }
+        }
+
+        @Override
+        protected boolean evictSegment(final SegmentedKey<K> segmentedKey) {
+            return ASegmentedTimeSeriesDB.this.evictSegment(segmentedKey);
+        }
+    };
 
     public ASegmentedTimeSeriesDB(final String name) {
         this.segmentedTable = new SegmentedTable(name);
@@ -50,7 +81,8 @@ public abstract class ASegmentedTimeSeriesDB<K, V> implements ITimeSeriesDB<K, V
             @Override
             protected ASegmentedTimeSeriesStorageCache<K, V> loadValue(final K key) {
                 final String hashKey = hashKeyToString(key);
-                return new ASegmentedTimeSeriesStorageCache<K, V>(segmentedTable, getStorage(), key, hashKey) {
+                final ASegmentedTimeSeriesStorageCache<K, V> storageCache = new ASegmentedTimeSeriesStorageCache<K, V>(
+                        segmentedTable, getStorage(), key, hashKey) {
 
                     @Override
                     protected FDate getLastAvailableSegmentTo(final K key) {
@@ -89,7 +121,17 @@ public abstract class ASegmentedTimeSeriesDB<K, V> implements ITimeSeriesDB<K, V
                         ASegmentedTimeSeriesDB.this.onSegmentCompleted(segmentedKey, segmentValues);
                     }
 
+                    @Override
+                    protected void onSegmentAccessed(final SegmentedKey<K> segmentedKey, final boolean initialized) {
+                        diskQuota.onSegmentAccessed(segmentedKey, initialized);
+                    }
+
                 };
+                if (diskQuota.isEnabled()) {
+                    //segments from previous runs also count against the quota
+                    diskQuota.seed(storageCache.getCompletedSegments());
+                }
+                return storageCache;
             }
 
             @Override
@@ -102,6 +144,51 @@ public abstract class ASegmentedTimeSeriesDB<K, V> implements ITimeSeriesDB<K, V
 
     protected void onSegmentCompleted(final SegmentedKey<K> segmentedKey, final ICloseableIterable<V> segmentValues) {}
 
+    /**
+     * Override this to limit the disk space that is used by completed segments. The least recently used segments will
+     * be evicted when the limit is exceeded and will be downloaded again when they are accessed the next time. Return
+     * null to disable the limit.
+     */
+    protected Long getMaxDiskUsageBytes() {
+        return null;
+    }
+
+    public long getDiskUsageBytes() {
+        return diskQuota.getDiskUsageBytes();
+    }
+
+    /**
+     * Segments of pinned keys are never evicted by the disk quota.
+     */
+    public void pin(final K key) {
+        pinnedKeys.add(key);
+    }
+
+    public void unpin(final K key) {
+        pinnedKeys.remove(key);
+    }
+
+    public boolean isPinned(final K key) {
+        return pinnedKeys.contains(key);
+    }
+
+    private boolean evictSegment(final SegmentedKey<K> segmentedKey) {
+        final K key = segmentedKey.getKey();
+        if (isPinned(key)) {
+            return false;
+        }
+        //don't block, this key might be in use right now (also by the current thread) so we just try the next one
+        final Lock writeLock = getTableLock(key).writeLock();
+        if (!writeLock.tryLock()) {
+            return false;
+        }
+        try {
+            return getLookupTableCache(key).evictSegment(segmentedKey);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
     protected abstract String getElementsName();
 
     protected LZ4BlockOutputStream newCompressor(final OutputStream out) {
@@ -110,8 +197,15 @@ public abstract class ASegmentedTimeSeriesDB<K, V> implements ITimeSeriesDB<K, V
 
     protected abstract ICloseableIterable<? extends V> downloadSegmentElements(SegmentedKey<K> segmentedKey);
 
+    /**
+     * Same as ATimeSeriesDB.isHashKeyDictionaryEnabled(), also applies to the segment status table.
+     */
+    protected boolean isHashKeyDictionaryEnabled() {
+        return false;
+    }
+
     protected SegmentedTimeSeriesStorage newStorage(final File directory) {
-        return new SegmentedTimeSeriesStorage(directory);
+        return new SegmentedTimeSeriesStorage(directory, isHashKeyDictionaryEnabled());
     }
 
     protected SegmentedTable getSegmentedTable() {
@@ -153,6 +247,7 @@ public abstract class ASegmentedTimeSeriesDB<K, V> implements ITimeSeriesDB<K, V
         segmentedTable.close();
         key_lookupTableCache.clear();
         key_tableLock.clear();
+        diskQuota.clear();
     }
 
     @Override
@@ -189,6 +284,7 @@ public abstract class ASegmentedTimeSeriesDB<K, V> implements ITimeSeriesDB<K, V
         }
         try {
             getLookupTableCache(key).deleteAll();
+            diskQuota.remove(key);
         } finally {
             writeLock.unlock();
         }
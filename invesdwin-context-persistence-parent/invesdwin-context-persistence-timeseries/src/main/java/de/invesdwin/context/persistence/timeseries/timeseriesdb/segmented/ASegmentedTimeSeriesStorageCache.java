@@ -1,6 +1,8 @@
 package de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented;
 
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
@@ -306,6 +308,14 @@ public abstract class ASegmentedTimeSeriesStorageCache<K, V> {
         if (!assertValidSegment(segmentedKey)) {
             return false;
         }
+        final boolean initialized = innerMaybeInitSegment(segmentedKey, source);
+        //notify outside of the synchronized block so that eviction of other segments can not cause a deadlock
+        onSegmentAccessed(segmentedKey, initialized);
+        return initialized;
+    }
+
+    private boolean innerMaybeInitSegment(final SegmentedKey<K> segmentedKey,
+            final Function<SegmentedKey<K>, ICloseableIterable<? extends V>> source) {
         //1. check segment status in series storage
         final ReadWriteLock segmentTableLock = segmentedTable.getTableLock(segmentedKey);
         /*
@@ -351,6 +361,37 @@ public abstract class ASegmentedTimeSeriesStorageCache<K, V> {
         return false;
     }
 
+    /**
+     * Evicts a completed segment from disk so that it gets initialized again lazily on the next access. Returns false
+     * without blocking when the segment is currently in use.
+     */
+    public boolean evictSegment(final SegmentedKey<K> segmentedKey) {
+        final ReadWriteLock segmentTableLock = segmentedTable.getTableLock(segmentedKey);
+        synchronized (segmentTableLock) {
+            final Lock segmentWriteLock = segmentTableLock.writeLock();
+            if (!segmentWriteLock.tryLock()) {
+                return false;
+            }
+            try {
+                final SegmentStatus status = storage.getSegmentStatusTable().get(hashKey, segmentedKey.getSegment());
+                if (status != SegmentStatus.COMPLETE && status != SegmentStatus.COMPLETE_EMPTY) {
+                    return false;
+                }
+                //mark as initializing first so that a crash during deletion results in a fresh initialization
+                storage.getSegmentStatusTable().put(hashKey, segmentedKey.getSegment(), SegmentStatus.INITIALIZING);
+                segmentedTable.deleteRange(segmentedKey);
+                storage.getSegmentStatusTable().delete(hashKey, segmentedKey.getSegment());
+                //the evicted segment might have been the latest one
+                clearCaches();
+                return true;
+            } finally {
+                segmentWriteLock.unlock();
+            }
+        }
+    }
+
+    protected void onSegmentAccessed(final SegmentedKey<K> segmentedKey, final boolean initialized) {}
+
     private boolean assertValidSegment(final SegmentedKey<K> segmentedKey) {
         final FDate firstAvailableSegmentFrom = getFirstAvailableSegmentFrom(segmentedKey.getKey());
         if (firstAvailableSegmentFrom == null) {
@@ -556,6 +597,25 @@ public abstract class ASegmentedTimeSeriesStorageCache<K, V> {
         return filteredSegments;
     }
 
+    /**
+     * Returns the segments that have been completed and have values stored on disk, e.g. from a previous run.
+     */
+    public List<SegmentedKey<K>> getCompletedSegments() {
+        final List<SegmentedKey<K>> completedSegments = new ArrayList<SegmentedKey<K>>();
+        try (DelegateTableIterator<String, TimeRange, SegmentStatus> range = storage.getSegmentStatusTable()
+                .range(hashKey)) {
+            while (true) {
+                final TableRow<String, TimeRange, SegmentStatus> row = range.next();
+                if (row.getValue() == SegmentStatus.COMPLETE) {
+                    completedSegments.add(new SegmentedKey<K>(key, row.getRangeKey()));
+                }
+            }
+        } catch (final NoSuchElementException e) {
+            //end reached
+        }
+        return completedSegments;
+    }
+
     public synchronized void deleteAll() {
         final ADelegateRangeTable<String, TimeRange, SegmentStatus> segmentStatusTable = storage
                 .getSegmentStatusTable();
@@ -8,6 +8,7 @@ import de.invesdwin.context.persistence.timeseries.ezdb.ADelegateRangeTable;
 import de.invesdwin.context.persistence.timeseries.timeseriesdb.storage.CorruptedTimeSeriesStorageException;
 import de.invesdwin.context.persistence.timeseries.timeseriesdb.storage.TimeSeriesStorage;
 import de.invesdwin.util.time.range.TimeRange;
+import ezdb.serde.Serde;
 
 @ThreadSafe
 public class SegmentedTimeSeriesStorage extends TimeSeriesStorage {
@@ -15,7 +16,11 @@ public class SegmentedTimeSeriesStorage extends TimeSeriesStorage {
     private final ADelegateRangeTable<String, TimeRange, SegmentStatus> segmentStatusTable;
 
     public SegmentedTimeSeriesStorage(final File directory) {
-        super(directory);
+        this(directory, false);
+    }
+
+    public SegmentedTimeSeriesStorage(final File directory, final boolean hashKeyDictionaryEnabled) {
+        super(directory, hashKeyDictionaryEnabled);
         segmentStatusTable = new ADelegateRangeTable<String, TimeRange, SegmentStatus>("segmentStatusTable") {
             @Override
             protected boolean allowPutWithoutBatch() {
@@ -32,6 +37,16 @@ public class SegmentedTimeSeriesStorage extends TimeSeriesStorage {
                 return directory;
             }
 
+            @Override
+            protected Serde<String> newHashKeySerde() {
+                return SegmentedTimeSeriesStorage.this.newHashKeySerde();
+            }
+
+            @Override
+            protected void onPutHashKey(final String hashKey) {
+                SegmentedTimeSeriesStorage.this.onPutHashKey(hashKey);
+            }
+
             @Override
             protected void onDeleteTableFinished() {
                 throw new CorruptedTimeSeriesStorageException(getName());
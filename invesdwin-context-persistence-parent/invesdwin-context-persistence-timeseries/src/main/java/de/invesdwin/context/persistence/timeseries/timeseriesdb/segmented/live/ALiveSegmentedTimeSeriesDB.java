@@ -2,9 +2,16 @@ package de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live;
 
 import java.io.File;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.Function;
 
 import javax.annotation.concurrent.ThreadSafe;
 
@@ -16,12 +23,15 @@ import de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.ASegme
 import de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.ASegmentedTimeSeriesStorageCache;
 import de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.SegmentedKey;
 import de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.SegmentedTimeSeriesStorage;
+import de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live.internal.LiveSegmentJournal;
 import de.invesdwin.util.collections.iterable.ACloseableIterator;
 import de.invesdwin.util.collections.iterable.EmptyCloseableIterator;
 import de.invesdwin.util.collections.iterable.ICloseableIterable;
 import de.invesdwin.util.collections.iterable.ICloseableIterator;
 import de.invesdwin.util.collections.loadingcache.ALoadingCache;
 import de.invesdwin.util.collections.loadingcache.historical.AHistoricalCache;
+import de.invesdwin.util.concurrent.Executors;
+import de.invesdwin.util.concurrent.WrappedExecutorService;
 import de.invesdwin.util.concurrent.lock.Locks;
 import de.invesdwin.util.concurrent.lock.readwrite.IReadWriteLock;
 import de.invesdwin.util.lang.finalizer.AFinalizer;
@@ -33,6 +43,13 @@ import net.jpountz.lz4.LZ4BlockOutputStream;
 @ThreadSafe
 public abstract class ALiveSegmentedTimeSeriesDB<K, V> implements ITimeSeriesDB<K, V> {
 
+    public static final int DEFAULT_MAX_PENDING_LIVE_VALUES = 1_000_000;
+    private static final WrappedExecutorService LIVE_SEGMENT_FLUSH_EXECUTOR = Executors.newFixedThreadPool(
+            ALiveSegmentedTimeSeriesDB.class.getSimpleName() + "_flushLiveSegment", Executors.getCpuThreadPoolCount());
+    private static final WrappedExecutorService LIVE_VALUE_LISTENER_EXECUTOR = Executors.newFixedThreadPool(
+            ALiveSegmentedTimeSeriesDB.class.getSimpleName() + "_liveValueListener",
+            Executors.getCpuThreadPoolCount());
+
     private final HistoricalSegmentTable historicalSegmentTable;
     private final ALoadingCache<K, IReadWriteLock> key_tableLock = new ALoadingCache<K, IReadWriteLock>() {
         @Override
@@ -48,6 +65,19 @@ public abstract class ALiveSegmentedTimeSeriesDB<K, V> implements ITimeSeriesDB<
         }
     };
     private final ALoadingCache<K, LiveSegmentedTimeSeriesStorageCache<K, V>> key_lookupTableCache;
+    /*
+     * the writer iterates over immutable snapshots of the subscriptions without any allocation, modifications replace
+     * the snapshots while holding the subscriptionsLock
+     */
+    private final Object subscriptionsLock = new Object();
+    private final Map<K, List<LiveValueSubscription<K, V>>> key_subscriptions = new ConcurrentHashMap<>();
+    private volatile List<LiveValueSubscription<K, V>> allKeysSubscriptions = Collections.emptyList();
+    private final ILiveValueListener<K, V> notifySubscriptionsListener = new ILiveValueListener<K, V>() {
+        @Override
+        public void onNextLiveValue(final K key, final V value) {
+            notifySubscriptions(key, value);
+        }
+    };
 
     public ALiveSegmentedTimeSeriesDB(final String name) {
         this.historicalSegmentTable = new HistoricalSegmentTable(name);
@@ -55,7 +85,8 @@ public abstract class ALiveSegmentedTimeSeriesDB<K, V> implements ITimeSeriesDB<
             @Override
             protected LiveSegmentedTimeSeriesStorageCache<K, V> loadValue(final K key) {
                 return new LiveSegmentedTimeSeriesStorageCache<K, V>(historicalSegmentTable, key,
-                        getBatchFlushInterval());
+                        getBatchFlushInterval(), isConcurrentLiveSegment(), getLiveSegmentFlushExecutor(),
+                        getTableLock(key), newLiveSegmentJournal(key));
             }
 
             @Override
@@ -73,10 +104,72 @@ public abstract class ALiveSegmentedTimeSeriesDB<K, V> implements ITimeSeriesDB<
         return ATimeSeriesUpdater.BATCH_FLUSH_INTERVAL;
     }
 
+    /**
+     * Full memory segments are written to the persistent segment in the background with this executor so that the
+     * writer does not stall. Return null to flush on the writer thread.
+     */
+    protected WrappedExecutorService getLiveSegmentFlushExecutor() {
+        return LIVE_SEGMENT_FLUSH_EXECUTOR;
+    }
+
+    /**
+     * When enabled, live values are also recorded in a memory mapped journal per key until they are flushed to the
+     * persistent live segment. After a crash the journal gets replayed on startup, so that the current live segment
+     * does not need to be streamed again.
+     */
+    protected boolean isLiveSegmentJournalEnabled() {
+        return false;
+    }
+
+    private LiveSegmentJournal<V> newLiveSegmentJournal(final K key) {
+        if (!isLiveSegmentJournalEnabled()) {
+            return null;
+        }
+        final File journalDirectory = new File(getDirectory(),
+                LiveSegmentJournal.class.getSimpleName() + "/" + hashKeyToString(key));
+        return new LiveSegmentJournal<V>(journalDirectory, historicalSegmentTable.getSegmentedTable().getValueSerde(),
+                new Function<V, FDate>() {
+                    @Override
+                    public FDate apply(final V t) {
+                        return extractTime(t);
+                    }
+                });
+    }
+
+    /**
+     * When enabled, there must only be one writer thread per key. Values are then appended while readers continue to
+     * read concurrently, only switching to a new live segment requires exclusive access.
+     */
+    protected boolean isConcurrentLiveSegment() {
+        return false;
+    }
+
+    /**
+     * Listener subscriptions are notified on this executor, at most one task per subscription runs at a time.
+     */
+    protected Executor getLiveValueListenerExecutor() {
+        return LIVE_VALUE_LISTENER_EXECUTOR;
+    }
+
+    /**
+     * A subscription that falls behind by more than this number of live values gets closed instead of buffering
+     * without bounds, see LiveValueSubscription.isOverflowed().
+     */
+    protected int getMaxPendingLiveValues() {
+        return DEFAULT_MAX_PENDING_LIVE_VALUES;
+    }
+
     protected abstract ICloseableIterable<? extends V> downloadSegmentElements(SegmentedKey<K> segmentedKey);
 
+    /**
+     * Same as ATimeSeriesDB.isHashKeyDictionaryEnabled(), also applies to the segment status table.
+     */
+    protected boolean isHashKeyDictionaryEnabled() {
+        return false;
+    }
+
     protected SegmentedTimeSeriesStorage newStorage(final File directory) {
-        return new SegmentedTimeSeriesStorage(directory);
+        return new SegmentedTimeSeriesStorage(directory, isHashKeyDictionaryEnabled());
     }
 
     protected void deleteCorruptedStorage(final File directory) {
@@ -208,6 +301,11 @@ public abstract class ALiveSegmentedTimeSeriesDB<K, V> implements ITimeSeriesDB<
             return super.hashKeyToString(key);
         }
 
+        @Override
+        protected Long getMaxDiskUsageBytes() {
+            return ALiveSegmentedTimeSeriesDB.this.getMaxDiskUsageBytes();
+        }
+
     }
 
     protected LZ4BlockOutputStream newCompressor(final OutputStream out) {
@@ -218,8 +316,157 @@ public abstract class ALiveSegmentedTimeSeriesDB<K, V> implements ITimeSeriesDB<
 
     protected abstract String getElementsName();
 
+    /**
+     * Limits the disk space used by completed historical segments, the live segment is never evicted. Return null to
+     * disable the limit.
+     */
+    protected Long getMaxDiskUsageBytes() {
+        return null;
+    }
+
+    public long getDiskUsageBytes() {
+        return historicalSegmentTable.getDiskUsageBytes();
+    }
+
+    public void pin(final K key) {
+        historicalSegmentTable.pin(key);
+    }
+
+    public void unpin(final K key) {
+        historicalSegmentTable.unpin(key);
+    }
+
+    public boolean isPinned(final K key) {
+        return historicalSegmentTable.isPinned(key);
+    }
+
+    /**
+     * The returned subscription has to be polled for new live values of the key. When catchUpFrom is not null, the
+     * values starting from that date are returned first.
+     */
+    public LiveValueSubscription<K, V> subscribe(final K key, final FDate catchUpFrom) {
+        return subscribe(key, catchUpFrom, null);
+    }
+
+    /**
+     * The listener is notified about new live values of the key. When catchUpFrom is not null, the values starting
+     * from that date are delivered first.
+     */
+    public LiveValueSubscription<K, V> subscribe(final K key, final FDate catchUpFrom,
+            final ILiveValueListener<K, V> listener) {
+        //exclusive lock, so that no value gets lost or delivered twice between the catch-up and the live values
+        final Lock writeLock = getTableLock(key).writeLock();
+        try {
+            if (!writeLock.tryLock(1, TimeUnit.MINUTES)) {
+                throw new RetryLaterRuntimeException("Write lock could not be acquired for table [" + getName()
+                        + "] and key [" + key + "]. Please ensure all iterators are closed!");
+            }
+        } catch (final InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        final LiveValueSubscription<K, V> subscription;
+        try {
+            final V lastValue = getLookupTableCache(key).getLastValue();
+            final FDate catchUpTo;
+            if (catchUpFrom != null && lastValue != null) {
+                catchUpTo = extractTime(lastValue);
+            } else {
+                catchUpTo = null;
+            }
+            subscription = new LiveValueSubscription<K, V>(this, key, catchUpFrom, catchUpTo, listener,
+                    getLiveValueListenerExecutor(), getMaxPendingLiveValues());
+            synchronized (subscriptionsLock) {
+                key_subscriptions.put(key, added(key_subscriptions.get(key), subscription));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        subscription.start();
+        return subscription;
+    }
+
+    /**
+     * The returned subscription has to be polled for new live values of all keys.
+     */
+    public LiveValueSubscription<K, V> subscribeAll() {
+        return subscribeAll(null);
+    }
+
+    public LiveValueSubscription<K, V> subscribeAll(final ILiveValueListener<K, V> listener) {
+        final LiveValueSubscription<K, V> subscription = new LiveValueSubscription<K, V>(this, null, null, null,
+                listener, getLiveValueListenerExecutor(), getMaxPendingLiveValues());
+        synchronized (subscriptionsLock) {
+            allKeysSubscriptions = added(allKeysSubscriptions, subscription);
+        }
+        return subscription;
+    }
+
+    void unsubscribe(final LiveValueSubscription<K, V> subscription) {
+        synchronized (subscriptionsLock) {
+            final K key = subscription.getKey();
+            if (key == null) {
+                allKeysSubscriptions = removed(allKeysSubscriptions, subscription);
+            } else {
+                final List<LiveValueSubscription<K, V>> subscriptions = removed(key_subscriptions.get(key),
+                        subscription);
+                if (subscriptions.isEmpty()) {
+                    key_subscriptions.remove(key);
+                } else {
+                    key_subscriptions.put(key, subscriptions);
+                }
+            }
+        }
+    }
+
+    private static <T> List<T> added(final List<T> existing, final T element) {
+        final List<T> copy;
+        if (existing == null) {
+            copy = new ArrayList<T>(1);
+        } else {
+            copy = new ArrayList<T>(existing);
+        }
+        copy.add(element);
+        return Collections.unmodifiableList(copy);
+    }
+
+    private static <T> List<T> removed(final List<T> existing, final T element) {
+        if (existing == null) {
+            return Collections.emptyList();
+        }
+        final List<T> copy = new ArrayList<T>(existing);
+        copy.remove(element);
+        return Collections.unmodifiableList(copy);
+    }
+
+    private void notifySubscriptions(final K key, final V nextLiveValue) {
+        final List<LiveValueSubscription<K, V>> subscriptions = key_subscriptions.get(key);
+        if (subscriptions != null) {
+            for (int i = 0; i < subscriptions.size(); i++) {
+                subscriptions.get(i).onNextLiveValue(key, nextLiveValue);
+            }
+        }
+        final List<LiveValueSubscription<K, V>> allKeysSubscriptionsCopy = allKeysSubscriptions;
+        for (int i = 0; i < allKeysSubscriptionsCopy.size(); i++) {
+            allKeysSubscriptionsCopy.get(i).onNextLiveValue(key, nextLiveValue);
+        }
+    }
+
     @Override
     public synchronized void close() {
+        //closing unsubscribes, which replaces the snapshots that we are iterating over
+        for (final List<LiveValueSubscription<K, V>> subscriptions : key_subscriptions.values()) {
+            for (int i = 0; i < subscriptions.size(); i++) {
+                subscriptions.get(i).close();
+            }
+        }
+        final List<LiveValueSubscription<K, V>> allKeysSubscriptionsCopy = allKeysSubscriptions;
+        for (int i = 0; i < allKeysSubscriptionsCopy.size(); i++) {
+            allKeysSubscriptionsCopy.get(i).close();
+        }
+        synchronized (subscriptionsLock) {
+            key_subscriptions.clear();
+            allKeysSubscriptions = Collections.emptyList();
+        }
         historicalSegmentTable.close();
         for (final LiveSegmentedTimeSeriesStorageCache<K, V> cache : key_lookupTableCache.values()) {
             cache.close();
@@ -368,10 +615,42 @@ public abstract class ALiveSegmentedTimeSeriesDB<K, V> implements ITimeSeriesDB<
     }
 
     public void putNextLiveValue(final K key, final V nextLiveValue) {
+        final LiveSegmentedTimeSeriesStorageCache<K, V> lookupTableCache = getLookupTableCache(key);
+        if (isConcurrentLiveSegment()) {
+            //the single writer decides about the rollover, thus no race condition can happen between the locks
+            final Lock readLock = getTableLock(key).readLock();
+            readLock.lock();
+            try {
+                if (!lookupTableCache.isLiveSegmentRolloverRequired(nextLiveValue)) {
+                    lookupTableCache.putNextLiveValue(nextLiveValue);
+                    notifySubscriptions(key, nextLiveValue);
+                    return;
+                }
+            } finally {
+                readLock.unlock();
+            }
+        }
+        final Lock writeLock = getTableLock(key).writeLock();
+        writeLock.lock();
+        try {
+            lookupTableCache.putNextLiveValue(nextLiveValue);
+            notifySubscriptions(key, nextLiveValue);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Bulk variant of putNextLiveValue for values that are sorted in strictly ascending order, e.g. when replaying the
+     * values that were missed during a reconnect.
+     */
+    public void putNextLiveValues(final K key, final Iterable<? extends V> nextLiveValues) {
+        final LiveSegmentedTimeSeriesStorageCache<K, V> lookupTableCache = getLookupTableCache(key);
+        //a batch might cross segment boundaries, thus always require exclusive access
         final Lock writeLock = getTableLock(key).writeLock();
         writeLock.lock();
         try {
-            getLookupTableCache(key).putNextLiveValue(nextLiveValue);
+            lookupTableCache.putNextLiveValues(nextLiveValues, notifySubscriptionsListener);
         } finally {
             writeLock.unlock();
         }
@@ -0,0 +1,10 @@
+package de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live;
+
+public interface ILiveValueListener<K, V> {
+
+    /**
+     * Values are delivered in the order in which they were put, never concurrently for the same subscription.
+     */
+    void onNextLiveValue(K key, V value);
+
+}
@@ -2,19 +2,25 @@ package de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReadWriteLock;
 import java.util.function.Function;
 
 import javax.annotation.concurrent.ThreadSafe;
 
 import de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.SegmentedKey;
+import de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live.internal.ConcurrentLiveSegment;
 import de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live.internal.ILiveSegment;
+import de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live.internal.LiveSegmentJournal;
+import de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live.internal.LiveValueBatch;
 import de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live.internal.SwitchingLiveSegment;
 import de.invesdwin.util.collections.iterable.FlatteningIterable;
 import de.invesdwin.util.collections.iterable.ICloseableIterable;
 import de.invesdwin.util.collections.iterable.ICloseableIterator;
+import de.invesdwin.util.concurrent.WrappedExecutorService;
 import de.invesdwin.util.time.fdate.FDate;
 import de.invesdwin.util.time.range.TimeRange;
 
@@ -23,7 +29,7 @@ public class LiveSegmentedTimeSeriesStorageCache<K, V> implements Closeable {
 
     private final ALiveSegmentedTimeSeriesDB<K, V>.HistoricalSegmentTable historicalSegmentTable;
     private final K key;
-    private ILiveSegment<K, V> liveSegment;
+    private volatile ILiveSegment<K, V> liveSegment;
     private final Function<FDate, V> liveSegmentLatestValueProvider = new Function<FDate, V>() {
         @Override
         public V apply(final FDate t) {
@@ -39,13 +45,60 @@ public class LiveSegmentedTimeSeriesStorageCache<K, V> implements Closeable {
     private final List<Function<FDate, V>> latestValueProviders = Arrays.asList(liveSegmentLatestValueProvider,
             historicalSegmentLatestValueProvider);
     private final int batchFlushInterval;
+    private final boolean concurrentLiveSegment;
+    private final WrappedExecutorService flushExecutor;
+    private final ReadWriteLock tableLock;
+    private final LiveSegmentJournal<V> journal;
 
     public LiveSegmentedTimeSeriesStorageCache(
             final ALiveSegmentedTimeSeriesDB<K, V>.HistoricalSegmentTable historicalSegmentTable, final K key,
-            final int batchFlushInterval) {
+            final int batchFlushInterval, final boolean concurrentLiveSegment,
+            final WrappedExecutorService flushExecutor, final ReadWriteLock tableLock,
+            final LiveSegmentJournal<V> journal) {
         this.historicalSegmentTable = historicalSegmentTable;
         this.key = key;
         this.batchFlushInterval = batchFlushInterval;
+        this.concurrentLiveSegment = concurrentLiveSegment;
+        this.flushExecutor = flushExecutor;
+        this.tableLock = tableLock;
+        this.journal = journal;
+        if (journal != null) {
+            replayJournal();
+        }
+    }
+
+    /**
+     * Recovers the live values that were not flushed before a crash. The journal keeps the recovered values in its
+     * replay file until they are journaled again, so that they stay recoverable when flushes happen during the replay.
+     */
+    private void replayJournal() {
+        final List<V> values = journal.replay();
+        for (int i = 0; i < values.size(); i++) {
+            final V value = values.get(i);
+            final FDate nextLiveKey = historicalSegmentTable.extractTime(value);
+            if (isHistoricalSegment(nextLiveKey)) {
+                //the segment was completed from the historical data in the meantime, thus the values are outdated
+                continue;
+            }
+            prepareLiveSegment(nextLiveKey);
+            final FDate lastLiveKey = liveSegment.getLastValueKey();
+            if (lastLiveKey != null && !nextLiveKey.isAfter(lastLiveKey)) {
+                //already flushed to the persistent live segment before the journal could be truncated
+                continue;
+            }
+            journal.append(value);
+            liveSegment.putNextLiveValue(nextLiveKey, value);
+        }
+        journal.finishReplay();
+    }
+
+    private boolean isHistoricalSegment(final FDate nextLiveKey) {
+        final FDate lastAvailableHistoricalSegmentTo = historicalSegmentTable.getLastAvailableHistoricalSegmentTo(key);
+        if (lastAvailableHistoricalSegmentTo == null) {
+            return false;
+        }
+        final TimeRange segment = historicalSegmentTable.getSegmentFinder(key).query().getValue(nextLiveKey);
+        return lastAvailableHistoricalSegmentTo.isAfterOrEqualTo(segment.getFrom());
     }
 
     public boolean isEmptyOrInconsistent() {
@@ -64,6 +117,9 @@ public class LiveSegmentedTimeSeriesStorageCache<K, V> implements Closeable {
             }
         }
         liveSegment = null;
+        if (journal != null) {
+            journal.clear();
+        }
         historicalSegmentTable.deleteRange(key);
     }
 
@@ -200,8 +256,107 @@ public class LiveSegmentedTimeSeriesStorageCache<K, V> implements Closeable {
         }
     }
 
+    /**
+     * Returns true when the next value can not simply be appended to the current live segment because a new live
+     * segment needs to be created.
+     */
+    public boolean isLiveSegmentRolloverRequired(final V nextLiveValue) {
+        if (liveSegment == null) {
+            return true;
+        }
+        final FDate nextLiveKey = historicalSegmentTable.extractTime(nextLiveValue);
+        return nextLiveKey.isAfter(liveSegment.getSegmentedKey().getSegment().getTo());
+    }
+
     public void putNextLiveValue(final V nextLiveValue) {
         final FDate nextLiveKey = historicalSegmentTable.extractTime(nextLiveValue);
+        prepareLiveSegment(nextLiveKey);
+        if (journal != null) {
+            journal.append(nextLiveValue);
+        }
+        liveSegment.putNextLiveValue(nextLiveKey, nextLiveValue);
+    }
+
+    /**
+     * Appends values that are sorted in strictly ascending order. The whole batch is validated before anything is
+     * appended, so that an ordering violation or an invalid segment rollover rejects the batch without leaving a part
+     * of it in the live segment. The values are appended to the live segment in chunks instead of one by one. The
+     * listener is notified about each value after its chunk was appended, it may be null.
+     */
+    public void putNextLiveValues(final Iterable<? extends V> nextLiveValues,
+            final ILiveValueListener<K, V> listener) {
+        final List<V> values = new ArrayList<V>();
+        for (final V nextLiveValue : nextLiveValues) {
+            values.add(nextLiveValue);
+        }
+        final long[] keys = validateNextLiveValues(values);
+        final LiveValueBatch<V> batch = new LiveValueBatch<V>(batchFlushInterval);
+        long segmentTo = Long.MIN_VALUE;
+        for (int i = 0; i < values.size(); i++) {
+            final long nextLiveKeyMillis = keys[i];
+            if (liveSegment == null || nextLiveKeyMillis > segmentTo) {
+                appendLiveValues(batch, listener);
+                prepareLiveSegment(FDate.valueOf(nextLiveKeyMillis));
+                segmentTo = liveSegment.getSegmentedKey().getSegment().getTo().millisValue();
+            }
+            batch.add(nextLiveKeyMillis, values.get(i));
+            if (batch.isFull()) {
+                appendLiveValues(batch, listener);
+            }
+        }
+        appendLiveValues(batch, listener);
+    }
+
+    /**
+     * Checks the ordering against the last live value and the segment rollovers without modifying anything. Returns
+     * the extracted keys.
+     */
+    private long[] validateNextLiveValues(final List<V> values) {
+        final long[] keys = new long[values.size()];
+        TimeRange segment = null;
+        long prevLiveKey = Long.MIN_VALUE;
+        if (liveSegment != null) {
+            segment = liveSegment.getSegmentedKey().getSegment();
+            final FDate lastLiveKey = liveSegment.getLastValueKey();
+            if (lastLiveKey != null) {
+                prevLiveKey = lastLiveKey.millisValue();
+            }
+        }
+        for (int i = 0; i < values.size(); i++) {
+            final FDate nextLiveKey = historicalSegmentTable.extractTime(values.get(i));
+            final long nextLiveKeyMillis = nextLiveKey.millisValue();
+            if (nextLiveKeyMillis <= prevLiveKey) {
+                throw new IllegalStateException(key + ": nextLiveKey [" + nextLiveKey + "] at batch index [" + i
+                        + "] should be after previous key [" + FDate.valueOf(prevLiveKey) + "]");
+            }
+            prevLiveKey = nextLiveKeyMillis;
+            if (segment == null || nextLiveKey.isAfter(segment.getTo())) {
+                segment = validateLiveSegment(nextLiveKey, segment);
+            }
+            keys[i] = nextLiveKeyMillis;
+        }
+        return keys;
+    }
+
+    private void appendLiveValues(final LiveValueBatch<V> batch, final ILiveValueListener<K, V> listener) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        //the live segment journals the values chunk by chunk according to its flushes
+        liveSegment.putNextLiveValues(batch);
+        if (listener != null) {
+            for (int i = 0; i < batch.size(); i++) {
+                listener.onNextLiveValue(key, batch.getValue(i));
+            }
+        }
+        batch.clear();
+    }
+
+    /**
+     * Returns the segment of the next live key after verifying that it may be used as the live segment after the
+     * given current live segment, which may be null.
+     */
+    private TimeRange validateLiveSegment(final FDate nextLiveKey, final TimeRange currentLiveSegment) {
         final FDate lastAvailableHistoricalSegmentTo = historicalSegmentTable.getLastAvailableHistoricalSegmentTo(key);
         final TimeRange segment = historicalSegmentTable.getSegmentFinder(key).query().getValue(nextLiveKey);
         if (lastAvailableHistoricalSegmentTo.isAfterOrEqualTo(segment.getFrom())
@@ -213,12 +368,18 @@ public class LiveSegmentedTimeSeriesStorageCache<K, V> implements Closeable {
             throw new IllegalStateException("lastAvailableHistoricalSegmentTo [" + lastAvailableHistoricalSegmentTo
                     + "] should be before liveSegmentFrom [" + segment.getFrom() + "]");
         }
-        if (liveSegment != null && nextLiveKey.isAfter(liveSegment.getSegmentedKey().getSegment().getTo())) {
-            if (!lastAvailableHistoricalSegmentTo
-                    .isBeforeOrEqualTo(liveSegment.getSegmentedKey().getSegment().getTo())) {
-                throw new IllegalStateException("lastAvailableHistoricalSegmentTo [" + lastAvailableHistoricalSegmentTo
-                        + "] should be before or equal to liveSegmentTo [" + segment.getTo() + "]");
-            }
+        if (currentLiveSegment != null && nextLiveKey.isAfter(currentLiveSegment.getTo())
+                && !lastAvailableHistoricalSegmentTo.isBeforeOrEqualTo(currentLiveSegment.getTo())) {
+            throw new IllegalStateException("lastAvailableHistoricalSegmentTo [" + lastAvailableHistoricalSegmentTo
+                    + "] should be before or equal to liveSegmentTo [" + segment.getTo() + "]");
+        }
+        return segment;
+    }
+
+    private void prepareLiveSegment(final FDate nextLiveKey) {
+        final TimeRange currentLiveSegment = liveSegment == null ? null : liveSegment.getSegmentedKey().getSegment();
+        final TimeRange segment = validateLiveSegment(nextLiveKey, currentLiveSegment);
+        if (currentLiveSegment != null && nextLiveKey.isAfter(currentLiveSegment.getTo())) {
             liveSegment.convertLiveSegmentToHistorical();
             try {
                 liveSegment.close();
@@ -229,9 +390,18 @@ public class LiveSegmentedTimeSeriesStorageCache<K, V> implements Closeable {
         }
         if (liveSegment == null) {
             final SegmentedKey<K> segmentedKey = new SegmentedKey<K>(key, segment);
-            liveSegment = new SwitchingLiveSegment<K, V>(segmentedKey, historicalSegmentTable, batchFlushInterval);
+            liveSegment = newLiveSegment(segmentedKey);
+        }
+    }
+
+    private ILiveSegment<K, V> newLiveSegment(final SegmentedKey<K> segmentedKey) {
+        if (concurrentLiveSegment) {
+            return new ConcurrentLiveSegment<K, V>(segmentedKey, historicalSegmentTable, batchFlushInterval,
+                    journal);
+        } else {
+            return new SwitchingLiveSegment<K, V>(segmentedKey, historicalSegmentTable, batchFlushInterval,
+                    flushExecutor, tableLock.writeLock(), journal);
         }
-        liveSegment.putNextLiveValue(nextLiveKey, nextLiveValue);
     }
 
     @Override
@@ -243,6 +413,10 @@ public class LiveSegmentedTimeSeriesStorageCache<K, V> implements Closeable {
                 throw new RuntimeException(e);
             }
         }
+        if (journal != null) {
+            //keep the journal content so that the unflushed values get replayed on the next start
+            journal.close();
+        }
     }
 
 }
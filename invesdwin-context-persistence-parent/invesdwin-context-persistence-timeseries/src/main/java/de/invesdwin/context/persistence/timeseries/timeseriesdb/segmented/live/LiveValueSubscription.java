@@ -0,0 +1,233 @@
+package de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.log.Log;
+import de.invesdwin.context.log.error.Err;
+import de.invesdwin.util.bean.tuple.Pair;
+import de.invesdwin.util.collections.iterable.ICloseableIterator;
+import de.invesdwin.util.time.fdate.FDate;
+
+/**
+ * Receives the values that are put into an ALiveSegmentedTimeSeriesDB after the subscription was registered. The writer
+ * only appends to a lock-free queue, thus a slow subscriber never blocks the writer.
+ *
+ * Without a listener the values have to be polled by a single consumer thread. With a listener, the queue is drained on
+ * the given executor by at most one task at a time so that the order is preserved.
+ *
+ * When a catch-up date is given, the values between that date and the last value at the time of the subscription are
+ * read in chunks from the historical and live segments and are delivered before any new live values.
+ *
+ * The queue is bounded by maxPendingValues. Dropping single values would leave silent gaps in the time series, thus a
+ * subscriber that falls behind further gets closed instead and isOverflowed() returns true. It can subscribe again
+ * with a catch-up date after the last value it received to continue without gaps.
+ */
+@ThreadSafe
+public class LiveValueSubscription<K, V> implements Closeable {
+
+    private static final int CATCH_UP_CHUNK_SIZE = 1000;
+
+    private final Log log = new Log(this);
+    private final ALiveSegmentedTimeSeriesDB<K, V> parent;
+    private final K key;
+    private final ILiveValueListener<K, V> listener;
+    private final Executor executor;
+    private final Queue<Pair<K, V>> queue = new ConcurrentLinkedQueue<Pair<K, V>>();
+    //ConcurrentLinkedQueue.size() is not constant time, thus we count ourselves
+    private final AtomicInteger pendingValues = new AtomicInteger();
+    private final int maxPendingValues;
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+    private final FDate catchUpTo;
+    //only accessed by the consumer
+    private FDate catchUpFrom;
+    private List<V> catchUpChunk;
+    private int catchUpChunkIndex;
+    private volatile boolean closed;
+    private volatile boolean overflowed;
+
+    LiveValueSubscription(final ALiveSegmentedTimeSeriesDB<K, V> parent, final K key, final FDate catchUpFrom,
+            final FDate catchUpTo, final ILiveValueListener<K, V> listener, final Executor executor,
+            final int maxPendingValues) {
+        this.parent = parent;
+        this.key = key;
+        if (catchUpFrom != null && catchUpTo != null && catchUpFrom.isBeforeOrEqualTo(catchUpTo)) {
+            this.catchUpFrom = catchUpFrom;
+            this.catchUpTo = catchUpTo;
+        } else {
+            this.catchUpFrom = null;
+            this.catchUpTo = null;
+        }
+        this.listener = listener;
+        this.executor = executor;
+        this.maxPendingValues = maxPendingValues;
+    }
+
+    /**
+     * Null when all keys are subscribed.
+     */
+    public K getKey() {
+        return key;
+    }
+
+    public boolean isListener() {
+        return listener != null;
+    }
+
+    void start() {
+        if (listener != null && catchUpFrom != null) {
+            maybeScheduleDrain();
+        }
+    }
+
+    /**
+     * Called by the writer while it still holds the lock of the key, thus values arrive here in order.
+     */
+    void onNextLiveValue(final K valueKey, final V value) {
+        if (closed) {
+            return;
+        }
+        if (pendingValues.incrementAndGet() > maxPendingValues) {
+            overflow();
+            return;
+        }
+        queue.offer(Pair.of(valueKey, value));
+        if (listener != null) {
+            maybeScheduleDrain();
+        }
+    }
+
+    /**
+     * Returns the next value or null if none is available right now. Must only be called by one consumer thread and
+     * only when no listener was given.
+     */
+    public Pair<K, V> poll() {
+        if (listener != null) {
+            throw new IllegalStateException("Values are delivered to the listener, thus polling is not allowed");
+        }
+        return innerPoll();
+    }
+
+    private Pair<K, V> innerPoll() {
+        if (closed) {
+            return null;
+        }
+        final V catchUpValue = nextCatchUpValue();
+        if (catchUpValue != null) {
+            return Pair.of(key, catchUpValue);
+        }
+        final Pair<K, V> next = queue.poll();
+        if (next != null) {
+            pendingValues.decrementAndGet();
+        }
+        return next;
+    }
+
+    private V nextCatchUpValue() {
+        while (catchUpChunk != null || catchUpFrom != null) {
+            if (catchUpChunk != null && catchUpChunkIndex < catchUpChunk.size()) {
+                return catchUpChunk.get(catchUpChunkIndex++);
+            }
+            catchUpChunk = null;
+            if (catchUpFrom != null) {
+                catchUpChunk = readCatchUpChunk();
+                catchUpChunkIndex = 0;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the catch-up values in chunks so that the read lock of the key is not held while the values are consumed.
+     */
+    private List<V> readCatchUpChunk() {
+        final List<V> chunk = new ArrayList<V>();
+        try (ICloseableIterator<V> values = parent.rangeValues(key, catchUpFrom, catchUpTo).iterator()) {
+            while (chunk.size() < CATCH_UP_CHUNK_SIZE && values.hasNext()) {
+                chunk.add(values.next());
+            }
+        }
+        if (chunk.size() < CATCH_UP_CHUNK_SIZE) {
+            catchUpFrom = null;
+        } else {
+            final FDate lastTime = parent.extractTime(chunk.get(chunk.size() - 1));
+            catchUpFrom = lastTime.addMilliseconds(1);
+            if (catchUpFrom.isAfter(catchUpTo)) {
+                catchUpFrom = null;
+            }
+        }
+        return chunk;
+    }
+
+    private void maybeScheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(drainTask);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Pair<K, V> next = innerPoll();
+            while (next != null) {
+                try {
+                    listener.onNextLiveValue(next.getFirst(), next.getSecond());
+                } catch (final Throwable t) {
+                    Err.process(t);
+                }
+                next = innerPoll();
+            }
+            draining.set(false);
+            //a value might have been added after the last poll but before the flag was reset
+            if (closed || queue.isEmpty() || !draining.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    private void overflow() {
+        overflowed = true;
+        close();
+        log.warn("Closed subscription for key [%s] because more than [%s] live values were pending", key,
+                maxPendingValues);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * True when the subscription was closed because the subscriber fell behind by more than maxPendingValues.
+     */
+    public boolean isOverflowed() {
+        return overflowed;
+    }
+
+    public int getPendingValues() {
+        return pendingValues.get();
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            queue.clear();
+            pendingValues.set(0);
+            parent.unsubscribe(this);
+        }
+    }
+
+}
@@ -0,0 +1,461 @@
+package de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live.internal;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.SegmentedKey;
+import de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live.ALiveSegmentedTimeSeriesDB;
+import de.invesdwin.util.bean.tuple.Pair;
+import de.invesdwin.util.collections.iterable.EmptyCloseableIterable;
+import de.invesdwin.util.collections.iterable.FlatteningIterable;
+import de.invesdwin.util.collections.iterable.ICloseableIterable;
+import de.invesdwin.util.collections.iterable.ICloseableIterator;
+import de.invesdwin.util.error.FastNoSuchElementException;
+import de.invesdwin.util.time.fdate.FDate;
+
+/**
+ * Live segment for one writer thread and any number of concurrent reader threads. The writer appends to arrays and
+ * publishes the new size via a volatile write, readers work on the published prefix without taking any locks. When the
+ * memory gets flushed to the persistent segment, readers still see the old memory until the flush is finished. Then a
+ * fresh memory is swapped in, the old arrays are never modified again so that running iterators stay valid. The
+ * persistent segment is only appended to under the shared table lock, thus readers are not blocked by a flush.
+ *
+ * The first and last values are each published together with their keys as one immutable pair, so that readers never
+ * see a key that does not belong to the value.
+ */
+@ThreadSafe
+public class ConcurrentLiveSegment<K, V> implements ILiveSegment<K, V> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final SegmentedKey<K> segmentedKey;
+    private final PersistentLiveSegment<K, V> persistent;
+    private final int batchFlushInterval;
+    private final LiveSegmentJournal<V> journal;
+
+    private volatile Memory<V> memory = new Memory<V>(INITIAL_CAPACITY);
+    private volatile Pair<FDate, V> first;
+    private volatile Pair<FDate, V> last;
+
+    public ConcurrentLiveSegment(final SegmentedKey<K> segmentedKey,
+            final ALiveSegmentedTimeSeriesDB<K, V>.HistoricalSegmentTable historicalSegmentTable,
+            final int batchFlushInterval, final LiveSegmentJournal<V> journal) {
+        this.segmentedKey = segmentedKey;
+        this.persistent = new PersistentLiveSegment<>(segmentedKey, historicalSegmentTable, journal != null);
+        this.batchFlushInterval = batchFlushInterval;
+        this.journal = journal;
+        if (!persistent.isEmpty()) {
+            this.first = Pair.of(persistent.getFirstValueKey(), persistent.getFirstValue());
+            this.last = Pair.of(persistent.getLastValueKey(), persistent.getLastValue());
+        }
+    }
+
+    @Override
+    public FDate getFirstValueKey() {
+        final Pair<FDate, V> firstSnapshot = first;
+        if (firstSnapshot == null) {
+            return null;
+        }
+        return firstSnapshot.getFirst();
+    }
+
+    @Override
+    public V getFirstValue() {
+        final Pair<FDate, V> firstSnapshot = first;
+        if (firstSnapshot == null) {
+            return null;
+        }
+        return firstSnapshot.getSecond();
+    }
+
+    @Override
+    public FDate getLastValueKey() {
+        final Pair<FDate, V> lastSnapshot = last;
+        if (lastSnapshot == null) {
+            return null;
+        }
+        return lastSnapshot.getFirst();
+    }
+
+    @Override
+    public V getLastValue() {
+        final Pair<FDate, V> lastSnapshot = last;
+        if (lastSnapshot == null) {
+            return null;
+        }
+        return lastSnapshot.getSecond();
+    }
+
+    @Override
+    public SegmentedKey<K> getSegmentedKey() {
+        return segmentedKey;
+    }
+
+    @Override
+    public ICloseableIterable<V> rangeValues(final FDate from, final FDate to) {
+        final Memory<V> memorySnapshot = memory;
+        final int size = memorySnapshot.size;
+        if (size == 0) {
+            return persistent.rangeValues(from, to);
+        } else if (persistent.isEmpty()) {
+            return memorySnapshot.rangeValues(size, from, to);
+        } else {
+            final FDate memoryFrom = FDate.valueOf(memorySnapshot.getKeys()[0]);
+            if (to != null && memoryFrom.isAfter(to)) {
+                //memory is after requested range, go with persistent
+                return persistent.rangeValues(from, to);
+            } else if (from != null && memoryFrom.isBeforeOrEqualTo(from)) {
+                //persistent is before requested range, go with memory
+                return memorySnapshot.rangeValues(size, from, to);
+            } else {
+                //use both segments
+                final ICloseableIterable<V> persistentRangeValues = persistent.rangeValues(from,
+                        memoryFrom.addMilliseconds(-1));
+                final ICloseableIterable<V> memoryRangeValues = memorySnapshot.rangeValues(size, memoryFrom, to);
+                return new FlatteningIterable<V>(persistentRangeValues, memoryRangeValues);
+            }
+        }
+    }
+
+    @Override
+    public ICloseableIterable<V> rangeReverseValues(final FDate from, final FDate to) {
+        final Memory<V> memorySnapshot = memory;
+        final int size = memorySnapshot.size;
+        if (size == 0) {
+            return persistent.rangeReverseValues(from, to);
+        } else if (persistent.isEmpty()) {
+            return memorySnapshot.rangeReverseValues(size, from, to);
+        } else {
+            final FDate memoryFrom = FDate.valueOf(memorySnapshot.getKeys()[0]);
+            if (from != null && memoryFrom.isAfter(from)) {
+                //memory is after requested range, go with persistent
+                return persistent.rangeReverseValues(from, to);
+            } else if (to != null && memoryFrom.isBeforeOrEqualTo(to)) {
+                //persistent is before requested range, go with memory
+                return memorySnapshot.rangeReverseValues(size, from, to);
+            } else {
+                //use both segments
+                final ICloseableIterable<V> memoryRangeValues = memorySnapshot.rangeReverseValues(size, from,
+                        memoryFrom);
+                final ICloseableIterable<V> persistentRangeValues = persistent
+                        .rangeReverseValues(memoryFrom.addMilliseconds(-1), to);
+                return new FlatteningIterable<V>(memoryRangeValues, persistentRangeValues);
+            }
+        }
+    }
+
+    /**
+     * Must only be called by the single writer thread.
+     */
+    @Override
+    public void putNextLiveValue(final FDate nextLiveKey, final V nextLiveValue) {
+        final Pair<FDate, V> lastSnapshot = last;
+        if (lastSnapshot != null && lastSnapshot.getFirst().isAfterOrEqualTo(nextLiveKey)) {
+            throw new IllegalStateException(segmentedKey + ": nextLiveKey [" + nextLiveKey
+                    + "] should be after lastLiveKey [" + lastSnapshot.getFirst() + "]");
+        }
+        final Memory<V> memorySnapshot = memory;
+        memorySnapshot.append(nextLiveKey.millisValue(), nextLiveValue);
+        final Pair<FDate, V> next = Pair.of(nextLiveKey, nextLiveValue);
+        if (first == null) {
+            first = next;
+        }
+        last = next;
+        if (memorySnapshot.size >= batchFlushInterval) {
+            flushLiveSegment();
+        }
+    }
+
+    /**
+     * Must only be called by the single writer thread. Each chunk is published to the readers with a single volatile
+     * write.
+     */
+    @Override
+    public void putNextLiveValues(final LiveValueBatch<V> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        final FDate firstBatchKey = batch.getFirstKey();
+        final Pair<FDate, V> lastSnapshot = last;
+        if (lastSnapshot != null && lastSnapshot.getFirst().isAfterOrEqualTo(firstBatchKey)) {
+            throw new IllegalStateException(segmentedKey + ": nextLiveKey [" + firstBatchKey
+                    + "] should be after lastLiveKey [" + lastSnapshot.getFirst() + "]");
+        }
+        int offset = 0;
+        while (offset < batch.size()) {
+            final Memory<V> memorySnapshot = memory;
+            final int length = Math.min(batch.size() - offset, batchFlushInterval - memorySnapshot.size);
+            appendToJournal(batch, offset, length);
+            memorySnapshot.appendAll(batch, offset, length);
+            if (first == null) {
+                first = Pair.of(firstBatchKey, batch.getValue(0));
+            }
+            offset += length;
+            last = Pair.of(FDate.valueOf(batch.getKey(offset - 1)), batch.getValue(offset - 1));
+            if (memorySnapshot.size >= batchFlushInterval) {
+                flushLiveSegment();
+            }
+        }
+    }
+
+    /**
+     * Shift 1 is the ceiling value itself and 0 is treated like 1, same as for the memory segment. Shifting beyond the
+     * end returns the last value.
+     */
+    @Override
+    public V getNextValue(final FDate date, final int shiftForwardUnits) {
+        final int shift = Math.max(1, shiftForwardUnits);
+        V nextValue = null;
+        try (ICloseableIterator<V> rangeValues = rangeValues(date, null).iterator()) {
+            for (int i = 0; i < shift; i++) {
+                nextValue = rangeValues.next();
+            }
+        } catch (final NoSuchElementException e) {
+            //end reached, keep the last value that was found
+        }
+        if (nextValue != null) {
+            return nextValue;
+        } else {
+            return getLastValue();
+        }
+    }
+
+    @Override
+    public V getLatestValue(final FDate date) {
+        final Memory<V> memorySnapshot = memory;
+        final int size = memorySnapshot.size;
+        if (size > 0) {
+            final int index = memorySnapshot.floorIndex(size, date.millisValue());
+            if (index >= 0) {
+                return memorySnapshot.getValue(index);
+            }
+        }
+        if (!persistent.isEmpty()) {
+            final V persistentValue = persistent.getLatestValue(date);
+            if (persistentValue != null) {
+                return persistentValue;
+            }
+        }
+        return getFirstValue();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return first == null;
+    }
+
+    @Override
+    public void close() {
+        first = null;
+        last = null;
+        memory = new Memory<V>(INITIAL_CAPACITY);
+        persistent.close();
+    }
+
+    @Override
+    public void convertLiveSegmentToHistorical() {
+        if (memory.size > 0) {
+            flushLiveSegment();
+        }
+        persistent.finish();
+        if (journal != null) {
+            journal.clear();
+        }
+    }
+
+    /**
+     * Each chunk is journaled right before it is appended to the memory, thus values after a flush boundary end up in
+     * the journal file that is only truncated by the next flush.
+     */
+    private void appendToJournal(final LiveValueBatch<V> batch, final int offset, final int length) {
+        if (journal != null) {
+            for (int i = offset; i < offset + length; i++) {
+                journal.append(batch.getValue(i));
+            }
+        }
+    }
+
+    private void flushLiveSegment() {
+        final Memory<V> memorySnapshot = memory;
+        if (journal != null) {
+            journal.rotate();
+        }
+        //readers continue to use the old memory until the values are available in the persistent segment
+        persistent.putNextLiveValues(memorySnapshot.rangeValues(memorySnapshot.size, null, null));
+        if (journal != null) {
+            journal.truncateFlushed();
+        }
+        memory = new Memory<V>(Math.min(memorySnapshot.getKeys().length, batchFlushInterval));
+    }
+
+    /**
+     * Arrays are replaced before the size is increased, thus a reader that reads the size first will always see arrays
+     * that contain at least that many values.
+     */
+    private static final class Memory<V> {
+
+        private volatile long[] keys;
+        private volatile Object[] values;
+        private volatile int size;
+
+        private Memory(final int initialCapacity) {
+            this.keys = new long[Math.max(1, initialCapacity)];
+            this.values = new Object[keys.length];
+        }
+
+        private long[] getKeys() {
+            return keys;
+        }
+
+        private void append(final long key, final Object value) {
+            final int index = size;
+            if (index == keys.length) {
+                final int newCapacity = keys.length * 2;
+                values = Arrays.copyOf(values, newCapacity);
+                keys = Arrays.copyOf(keys, newCapacity);
+            }
+            keys[index] = key;
+            values[index] = value;
+            //release the new value to the readers
+            size = index + 1;
+        }
+
+        private void appendAll(final LiveValueBatch<V> batch, final int offset, final int length) {
+            final int index = size;
+            final int newSize = index + length;
+            if (newSize > keys.length) {
+                int newCapacity = keys.length * 2;
+                while (newCapacity < newSize) {
+                    newCapacity *= 2;
+                }
+                values = Arrays.copyOf(values, newCapacity);
+                keys = Arrays.copyOf(keys, newCapacity);
+            }
+            //readers do not look beyond the published size, thus we can fill the arrays before publishing
+            batch.copyKeys(offset, keys, index, length);
+            batch.copyValues(offset, values, index, length);
+            size = newSize;
+        }
+
+        @SuppressWarnings("unchecked")
+        private V getValue(final int index) {
+            return (V) values[index];
+        }
+
+        private int ceilingIndex(final int size, final long key) {
+            final int index = Arrays.binarySearch(keys, 0, size, key);
+            if (index >= 0) {
+                return index;
+            } else {
+                return -index - 1;
+            }
+        }
+
+        private int floorIndex(final int size, final long key) {
+            final int index = Arrays.binarySearch(keys, 0, size, key);
+            if (index >= 0) {
+                return index;
+            } else {
+                return -index - 2;
+            }
+        }
+
+        private ICloseableIterable<V> rangeValues(final int size, final FDate from, final FDate to) {
+            final int fromIndex;
+            if (from == null) {
+                fromIndex = 0;
+            } else {
+                fromIndex = ceilingIndex(size, from.millisValue());
+            }
+            final int toIndex;
+            if (to == null) {
+                toIndex = size - 1;
+            } else {
+                toIndex = floorIndex(size, to.millisValue());
+            }
+            if (fromIndex > toIndex) {
+                return EmptyCloseableIterable.getInstance();
+            }
+            final Object[] valuesSnapshot = values;
+            return new ICloseableIterable<V>() {
+                @Override
+                public ICloseableIterator<V> iterator() {
+                    return new ICloseableIterator<V>() {
+
+                        private int index = fromIndex;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index <= toIndex;
+                        }
+
+                        @SuppressWarnings("unchecked")
+                        @Override
+                        public V next() {
+                            if (index > toIndex) {
+                                throw new FastNoSuchElementException("ConcurrentLiveSegment rangeValues end reached");
+                            }
+                            return (V) valuesSnapshot[index++];
+                        }
+
+                        @Override
+                        public void close() {
+                            index = toIndex + 1;
+                        }
+                    };
+                }
+            };
+        }
+
+        private ICloseableIterable<V> rangeReverseValues(final int size, final FDate from, final FDate to) {
+            final int fromIndex;
+            if (from == null) {
+                fromIndex = size - 1;
+            } else {
+                fromIndex = floorIndex(size, from.millisValue());
+            }
+            final int toIndex;
+            if (to == null) {
+                toIndex = 0;
+            } else {
+                toIndex = ceilingIndex(size, to.millisValue());
+            }
+            if (fromIndex < toIndex) {
+                return EmptyCloseableIterable.getInstance();
+            }
+            final Object[] valuesSnapshot = values;
+            return new ICloseableIterable<V>() {
+                @Override
+                public ICloseableIterator<V> iterator() {
+                    return new ICloseableIterator<V>() {
+
+                        private int index = fromIndex;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index >= toIndex;
+                        }
+
+                        @SuppressWarnings("unchecked")
+                        @Override
+                        public V next() {
+                            if (index < toIndex) {
+                                throw new FastNoSuchElementException(
+                                        "ConcurrentLiveSegment rangeReverseValues end reached");
+                            }
+                            return (V) valuesSnapshot[index--];
+                        }
+
+                        @Override
+                        public void close() {
+                            index = toIndex - 1;
+                        }
+                    };
+                }
+            };
+        }
+    }
+
+}
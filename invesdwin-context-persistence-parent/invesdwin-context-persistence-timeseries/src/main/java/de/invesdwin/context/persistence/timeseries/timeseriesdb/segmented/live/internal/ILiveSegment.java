@@ -20,6 +20,13 @@ public interface ILiveSegment<K, V> extends Closeable {
 
     void putNextLiveValue(FDate nextLiveKey, V nextLiveValue);
 
+    /**
+     * The values of the batch are already validated to be in ascending order, only the first value needs to be
+     * checked against the last value of this segment. Segments with a journal append the values to it themselves,
+     * unlike for putNextLiveValue.
+     */
+    void putNextLiveValues(LiveValueBatch<V> batch);
+
     V getNextValue(FDate date, int shiftForwardUnits);
 
     V getLatestValue(FDate date);
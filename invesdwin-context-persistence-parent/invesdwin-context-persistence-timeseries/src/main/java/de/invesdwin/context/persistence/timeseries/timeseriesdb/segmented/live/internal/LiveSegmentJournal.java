@@ -0,0 +1,260 @@
+package de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live.internal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.commons.io.FileUtils;
+
+import de.invesdwin.context.persistence.timeseries.ipc.mapped.MemoryMappedFile;
+import de.invesdwin.util.time.fdate.FDate;
+import ezdb.serde.IntegerSerde;
+import ezdb.serde.Serde;
+
+/**
+ * Memory mapped append only journal of the live values of one key that have not been flushed to the persistent live
+ * segment yet. Since the mapped memory belongs to the page cache of the operating system, the journal survives a crash
+ * of the process (though not a crash of the operating system itself).
+ *
+ * There are two journal files that are used alternately: when the memory segment is being flushed, the writer switches
+ * to the other file and the flushed file is truncated once the flush has finished. Thus at most two files contain
+ * values at any time.
+ *
+ * During a replay the recovered values are kept in a separate replay file, since the replay itself rotates and
+ * truncates the journal files. It is only truncated after the replay has finished.
+ */
+@ThreadSafe
+public class LiveSegmentJournal<V> implements Closeable {
+
+    public static final int SIZE_OFFSET = IntegerSerde.get.toBytes(Integer.MAX_VALUE).length;
+    private static final long INITIAL_FILE_SIZE = 1024 * 1024;
+
+    private final Serde<V> valueSerde;
+    private final Function<V, FDate> extractTime;
+    private final JournalFile[] files;
+    private final JournalFile replayFile;
+    @GuardedBy("this")
+    private int activeIndex = 0;
+    @GuardedBy("this")
+    private boolean replaying;
+
+    public LiveSegmentJournal(final File directory, final Serde<V> valueSerde,
+            final Function<V, FDate> extractTime) {
+        this.valueSerde = valueSerde;
+        this.extractTime = extractTime;
+        try {
+            FileUtils.forceMkdir(directory);
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+        this.files = new JournalFile[] { new JournalFile(new File(directory, "0.journal")),
+                new JournalFile(new File(directory, "1.journal")) };
+        this.replayFile = new JournalFile(new File(directory, "replay.journal"));
+    }
+
+    public synchronized void append(final V value) {
+        files[activeIndex].append(valueSerde.toBytes(value));
+    }
+
+    /**
+     * Switches to the other file, should be called when the current memory gets frozen for the flush.
+     */
+    public synchronized void rotate() {
+        activeIndex = 1 - activeIndex;
+        //other file should already be empty since only one flush may be in progress, but be safe here
+        files[activeIndex].truncate();
+    }
+
+    /**
+     * Truncates the file that was used before the last rotation, should be called after the flush was successful.
+     */
+    public synchronized void truncateFlushed() {
+        files[1 - activeIndex].truncate();
+    }
+
+    /**
+     * The replay file is kept while a replay is in progress, since it might still contain values of a later segment.
+     */
+    public synchronized void clear() {
+        files[0].truncate();
+        files[1].truncate();
+        if (!replaying) {
+            replayFile.truncate();
+        }
+    }
+
+    /**
+     * Returns the values of all files ordered by time so that they can be replayed into the live segment. Before the
+     * journal files are truncated, the values are written to the replay file. Thus a crash during the replay does not
+     * lose them, they are simply replayed again on the next start. The replayed values should be appended again and
+     * finishReplay should be called afterwards.
+     */
+    public synchronized List<V> replay() {
+        final List<V> replayed = replayFile.read();
+        final List<V> values = merge(replayed, merge(files[0].read(), files[1].read()));
+        //the replay file is sorted, thus only newer values need to be added
+        final FDate lastReplayedTime = replayed.isEmpty() ? null
+                : extractTime.apply(replayed.get(replayed.size() - 1));
+        for (int i = 0; i < values.size(); i++) {
+            final V value = values.get(i);
+            if (lastReplayedTime == null || extractTime.apply(value).isAfter(lastReplayedTime)) {
+                replayFile.append(valueSerde.toBytes(value));
+            }
+        }
+        files[0].truncate();
+        files[1].truncate();
+        activeIndex = 0;
+        replaying = true;
+        return values;
+    }
+
+    /**
+     * Should be called when all replayed values are either flushed or appended to the journal again.
+     */
+    public synchronized void finishReplay() {
+        replaying = false;
+        replayFile.truncate();
+    }
+
+    /**
+     * Merges two lists that are sorted by time, values with the same time are only added once.
+     */
+    private List<V> merge(final List<V> first, final List<V> second) {
+        if (second.isEmpty()) {
+            return first;
+        } else if (first.isEmpty()) {
+            return second;
+        }
+        final List<V> values = new ArrayList<V>(first.size() + second.size());
+        int firstIndex = 0;
+        int secondIndex = 0;
+        while (firstIndex < first.size() || secondIndex < second.size()) {
+            if (secondIndex >= second.size()) {
+                values.add(first.get(firstIndex++));
+            } else if (firstIndex >= first.size()) {
+                values.add(second.get(secondIndex++));
+            } else {
+                final FDate firstTime = extractTime.apply(first.get(firstIndex));
+                final FDate secondTime = extractTime.apply(second.get(secondIndex));
+                if (firstTime.isBefore(secondTime)) {
+                    values.add(first.get(firstIndex++));
+                } else if (secondTime.isBefore(firstTime)) {
+                    values.add(second.get(secondIndex++));
+                } else {
+                    values.add(first.get(firstIndex++));
+                    secondIndex++;
+                }
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public synchronized void close() {
+        files[0].close();
+        files[1].close();
+        replayFile.close();
+    }
+
+    private final class JournalFile {
+
+        private final File file;
+        private MemoryMappedFile mem;
+        private long position;
+
+        private JournalFile(final File file) {
+            this.file = file;
+            final long fileSize;
+            if (file.exists()) {
+                fileSize = Math.max(INITIAL_FILE_SIZE, file.length());
+            } else {
+                fileSize = INITIAL_FILE_SIZE;
+            }
+            this.mem = map(fileSize);
+            this.position = findEnd();
+        }
+
+        private MemoryMappedFile map(final long fileSize) {
+            try {
+                return new MemoryMappedFile(file.getAbsolutePath(), fileSize);
+            } catch (final Exception e) {
+                throw new RuntimeException("Unable to map journal file: " + file, e);
+            }
+        }
+
+        private long findEnd() {
+            long pos = 0;
+            while (pos + SIZE_OFFSET <= mem.getSize()) {
+                final int size = mem.getIntVolatile(pos);
+                if (size <= 0 || pos + SIZE_OFFSET + size > mem.getSize()) {
+                    break;
+                }
+                pos += SIZE_OFFSET + size;
+            }
+            return pos;
+        }
+
+        private void append(final byte[] bytes) {
+            final long nextPosition = position + SIZE_OFFSET + bytes.length;
+            //always keep space for the terminator
+            if (nextPosition + SIZE_OFFSET > mem.getSize()) {
+                grow(nextPosition + SIZE_OFFSET);
+            }
+            mem.setBytes(position + SIZE_OFFSET, bytes, 0, bytes.length);
+            //terminate stale records from before a truncation
+            mem.putIntVolatile(nextPosition, 0);
+            //commit the record by writing its size last
+            mem.putIntVolatile(position, bytes.length);
+            position = nextPosition;
+        }
+
+        private void grow(final long minSize) {
+            long newSize = mem.getSize() * 2;
+            while (newSize < minSize) {
+                newSize *= 2;
+            }
+            unmap();
+            //the file only gets extended, thus the existing records stay untouched
+            mem = map(newSize);
+        }
+
+        private List<V> read() {
+            final List<V> values = new ArrayList<V>();
+            long pos = 0;
+            while (pos < position) {
+                final int size = mem.getIntVolatile(pos);
+                final byte[] bytes = new byte[size];
+                mem.getBytes(pos + SIZE_OFFSET, bytes, 0, size);
+                values.add(valueSerde.fromBytes(bytes));
+                pos += SIZE_OFFSET + size;
+            }
+            return values;
+        }
+
+        private void truncate() {
+            mem.putIntVolatile(0, 0);
+            position = 0;
+        }
+
+        private void unmap() {
+            try {
+                mem.unmap();
+            } catch (final Exception e) {
+                throw new RuntimeException("Unable to unmap journal file: " + file, e);
+            }
+        }
+
+        private void close() {
+            if (mem != null) {
+                unmap();
+                mem = null;
+            }
+        }
+    }
+
+}
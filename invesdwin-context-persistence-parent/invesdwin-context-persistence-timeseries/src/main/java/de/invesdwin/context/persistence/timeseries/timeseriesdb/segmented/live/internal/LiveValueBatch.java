@@ -0,0 +1,77 @@
+package de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live.internal;
+
+import java.util.Arrays;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import de.invesdwin.util.time.fdate.FDate;
+
+/**
+ * Reusable buffer of live values that are known to be in strictly ascending order and to belong to the same segment.
+ * Uses the same parallel array layout as the memory segments so that it can be appended with array copies.
+ */
+@NotThreadSafe
+public class LiveValueBatch<V> {
+
+    private final long[] keys;
+    private final Object[] values;
+    private int size = 0;
+
+    public LiveValueBatch(final int capacity) {
+        this.keys = new long[Math.max(1, capacity)];
+        this.values = new Object[keys.length];
+    }
+
+    /**
+     * The caller is responsible for the ordering.
+     */
+    public void add(final long key, final V value) {
+        keys[size] = key;
+        values[size] = value;
+        size++;
+    }
+
+    public boolean isFull() {
+        return size == keys.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getKey(final int index) {
+        return keys[index];
+    }
+
+    public FDate getFirstKey() {
+        return FDate.valueOf(keys[0]);
+    }
+
+    public FDate getLastKey() {
+        return FDate.valueOf(keys[size - 1]);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getValue(final int index) {
+        return (V) values[index];
+    }
+
+    public void copyKeys(final int srcIndex, final long[] dest, final int destIndex, final int length) {
+        System.arraycopy(keys, srcIndex, dest, destIndex, length);
+    }
+
+    public void copyValues(final int srcIndex, final Object[] dest, final int destIndex, final int length) {
+        System.arraycopy(values, srcIndex, dest, destIndex, length);
+    }
+
+    public void clear() {
+        //release the references so that the values can be collected
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+    }
+
+}
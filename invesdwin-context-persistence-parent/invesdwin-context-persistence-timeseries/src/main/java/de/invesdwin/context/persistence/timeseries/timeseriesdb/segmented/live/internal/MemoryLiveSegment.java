@@ -1,9 +1,6 @@
 package de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live.internal;
 
-import java.util.Map.Entry;
-import java.util.NavigableMap;
-import java.util.NoSuchElementException;
-import java.util.SortedMap;
+import java.util.Arrays;
 import java.util.function.Function;
 
 import javax.annotation.concurrent.NotThreadSafe;
@@ -11,25 +8,29 @@ import javax.annotation.concurrent.NotThreadSafe;
 import de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.ASegmentedTimeSeriesStorageCache;
 import de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.SegmentedKey;
 import de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live.ALiveSegmentedTimeSeriesDB;
-import de.invesdwin.util.collections.factory.ILockCollectionFactory;
-import de.invesdwin.util.collections.iterable.ASkippingIterable;
-import de.invesdwin.util.collections.iterable.ATransformingCloseableIterable;
+import de.invesdwin.util.collections.iterable.EmptyCloseableIterable;
 import de.invesdwin.util.collections.iterable.ICloseableIterable;
 import de.invesdwin.util.collections.iterable.ICloseableIterator;
-import de.invesdwin.util.collections.iterable.WrapperCloseableIterable;
 import de.invesdwin.util.error.FastNoSuchElementException;
 import de.invesdwin.util.time.fdate.FDate;
 
+/**
+ * Since live values are always appended in strictly ascending order, we can store them in parallel arrays of primitive
+ * timestamps and values. This does not allocate anything per value (apart from the occasional array growth) and
+ * lookups are done via binary search on the timestamps.
+ */
 @NotThreadSafe
 public class MemoryLiveSegment<K, V> implements ILiveSegment<K, V> {
 
-    private final NavigableMap<Long, V> values = ILockCollectionFactory.getInstance(false).newTreeMap();
+    private static final int INITIAL_CAPACITY = 16;
+
     private final SegmentedKey<K> segmentedKey;
     private final ALiveSegmentedTimeSeriesDB<K, V>.HistoricalSegmentTable historicalSegmentTable;
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int size = 0;
     private FDate firstValueKey;
-    private V firstValue;
     private FDate lastValueKey;
-    private V lastValue;
 
     public MemoryLiveSegment(final SegmentedKey<K> segmentedKey,
             final ALiveSegmentedTimeSeriesDB<K, V>.HistoricalSegmentTable historicalSegmentTable) {
@@ -39,12 +40,23 @@ public class MemoryLiveSegment<K, V> implements ILiveSegment<K, V> {
 
     @Override
     public V getFirstValue() {
-        return firstValue;
+        if (size == 0) {
+            return null;
+        }
+        return getValue(0);
     }
 
     @Override
     public V getLastValue() {
-        return lastValue;
+        if (size == 0) {
+            return null;
+        }
+        return getValue(size - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V getValue(final int index) {
+        return (V) values[index];
     }
 
     @Override
@@ -52,91 +64,174 @@ public class MemoryLiveSegment<K, V> implements ILiveSegment<K, V> {
         return segmentedKey;
     }
 
+    /**
+     * Returns the index of the first key that is greater than or equal to the given key, or size if there is none.
+     */
+    private int ceilingIndex(final long key) {
+        final int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index >= 0) {
+            return index;
+        } else {
+            return -index - 1;
+        }
+    }
+
+    /**
+     * Returns the index of the last key that is less than or equal to the given key, or -1 if there is none.
+     */
+    private int floorIndex(final long key) {
+        final int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index >= 0) {
+            return index;
+        } else {
+            return -index - 2;
+        }
+    }
+
     @Override
     public ICloseableIterable<V> rangeValues(final FDate from, final FDate to) {
-        final SortedMap<Long, V> tailMap;
+        final int fromIndex;
         if (from == null) {
-            tailMap = values;
+            fromIndex = 0;
         } else {
-            tailMap = values.tailMap(from.millisValue());
+            fromIndex = ceilingIndex(from.millisValue());
         }
-        final ICloseableIterable<Entry<Long, V>> tail = WrapperCloseableIterable.maybeWrap(tailMap.entrySet());
-        final ICloseableIterable<Entry<Long, V>> skipping;
+        final int toIndex;
         if (to == null) {
-            skipping = tail;
+            toIndex = size - 1;
         } else {
-            skipping = new ASkippingIterable<Entry<Long, V>>(tail) {
-                @Override
-                protected boolean skip(final Entry<Long, V> element) {
-                    if (element.getKey() > to.millisValue()) {
-                        throw new FastNoSuchElementException("LiveSegment rangeValues end reached");
-                    }
-                    return false;
-                }
-            };
+            toIndex = floorIndex(to.millisValue());
+        }
+        if (fromIndex > toIndex) {
+            return EmptyCloseableIterable.getInstance();
         }
-        return new ATransformingCloseableIterable<Entry<Long, V>, V>(skipping) {
+        return new ICloseableIterable<V>() {
             @Override
-            protected V transform(final Entry<Long, V> value) {
-                return value.getValue();
+            public ICloseableIterator<V> iterator() {
+                return new ICloseableIterator<V>() {
+
+                    private int index = fromIndex;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index <= toIndex;
+                    }
+
+                    @Override
+                    public V next() {
+                        if (index > toIndex) {
+                            throw new FastNoSuchElementException("MemoryLiveSegment rangeValues end reached");
+                        }
+                        return getValue(index++);
+                    }
+
+                    @Override
+                    public void close() {
+                        index = toIndex + 1;
+                    }
+                };
             }
         };
     }
 
     @Override
     public ICloseableIterable<V> rangeReverseValues(final FDate from, final FDate to) {
-        final SortedMap<Long, V> headMap;
+        final int fromIndex;
         if (from == null) {
-            headMap = values.descendingMap();
+            fromIndex = size - 1;
         } else {
-            headMap = values.descendingMap().tailMap(from.millisValue());
+            fromIndex = floorIndex(from.millisValue());
         }
-        final ICloseableIterable<Entry<Long, V>> tail = WrapperCloseableIterable.maybeWrap(headMap.entrySet());
-        final ICloseableIterable<Entry<Long, V>> skipping;
+        final int toIndex;
         if (to == null) {
-            skipping = tail;
+            toIndex = 0;
         } else {
-            skipping = new ASkippingIterable<Entry<Long, V>>(tail) {
-                @Override
-                protected boolean skip(final Entry<Long, V> element) {
-                    if (element.getKey() > to.millisValue()) {
-                        throw new FastNoSuchElementException("LiveSegment rangeReverseValues end reached");
-                    }
-                    return false;
-                }
-            };
+            toIndex = ceilingIndex(to.millisValue());
+        }
+        if (fromIndex < toIndex) {
+            return EmptyCloseableIterable.getInstance();
         }
-        return new ATransformingCloseableIterable<Entry<Long, V>, V>(skipping) {
+        return new ICloseableIterable<V>() {
             @Override
-            protected V transform(final Entry<Long, V> value) {
-                return value.getValue();
+            public ICloseableIterator<V> iterator() {
+                return new ICloseableIterator<V>() {
+
+                    private int index = fromIndex;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index >= toIndex;
+                    }
+
+                    @Override
+                    public V next() {
+                        if (index < toIndex) {
+                            throw new FastNoSuchElementException("MemoryLiveSegment rangeReverseValues end reached");
+                        }
+                        return getValue(index--);
+                    }
+
+                    @Override
+                    public void close() {
+                        index = toIndex - 1;
+                    }
+                };
             }
         };
     }
 
     @Override
     public void putNextLiveValue(final FDate nextLiveKey, final V nextLiveValue) {
-        values.put(nextLiveKey.millisValue(), nextLiveValue);
-        if (firstValue == null) {
-            firstValue = nextLiveValue;
+        if (size == keys.length) {
+            final int newCapacity = keys.length * 2;
+            keys = Arrays.copyOf(keys, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+        }
+        keys[size] = nextLiveKey.millisValue();
+        values[size] = nextLiveValue;
+        size++;
+        if (firstValueKey == null) {
             firstValueKey = nextLiveKey;
         }
-        lastValue = nextLiveValue;
         lastValueKey = nextLiveKey;
     }
 
     @Override
-    public V getNextValue(final FDate date, final int shiftForwardUnits) {
-        V nextValue = null;
-        try (ICloseableIterator<V> rangeValues = rangeValues(date, null).iterator()) {
-            for (int i = 0; i < shiftForwardUnits; i++) {
-                nextValue = rangeValues.next();
+    public void putNextLiveValues(final LiveValueBatch<V> batch) {
+        putNextLiveValues(batch, 0, batch.size());
+    }
+
+    public void putNextLiveValues(final LiveValueBatch<V> batch, final int offset, final int length) {
+        if (length == 0) {
+            return;
+        }
+        final int newSize = size + length;
+        if (newSize > keys.length) {
+            int newCapacity = keys.length * 2;
+            while (newCapacity < newSize) {
+                newCapacity *= 2;
             }
-        } catch (final NoSuchElementException e) {
-            //ignore
+            keys = Arrays.copyOf(keys, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+        }
+        batch.copyKeys(offset, keys, size, length);
+        batch.copyValues(offset, values, size, length);
+        if (firstValueKey == null) {
+            firstValueKey = FDate.valueOf(keys[0]);
+        }
+        size = newSize;
+        lastValueKey = FDate.valueOf(keys[size - 1]);
+    }
+
+    @Override
+    public V getNextValue(final FDate date, final int shiftForwardUnits) {
+        if (size == 0) {
+            return null;
         }
-        if (nextValue != null) {
-            return nextValue;
+        //shift 1 is the ceiling value itself, same as for the persistent segments; 0 is treated like 1
+        final int index = ceilingIndex(date.millisValue()) + Math.max(0, shiftForwardUnits - 1);
+        if (index < size) {
+            return getValue(index);
         } else {
             return getLastValue();
         }
@@ -144,9 +239,9 @@ public class MemoryLiveSegment<K, V> implements ILiveSegment<K, V> {
 
     @Override
     public V getLatestValue(final FDate date) {
-        final Entry<Long, V> floorEntry = values.floorEntry(date.millisValue());
-        if (floorEntry != null) {
-            return floorEntry.getValue();
+        final int index = floorIndex(date.millisValue());
+        if (index >= 0) {
+            return getValue(index);
         } else {
             return getFirstValue();
         }
@@ -154,15 +249,19 @@ public class MemoryLiveSegment<K, V> implements ILiveSegment<K, V> {
 
     @Override
     public boolean isEmpty() {
-        return values.isEmpty();
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
     }
 
     @Override
     public void close() {
-        values.clear();
-        firstValue = null;
+        //keep the arrays so that the next batch does not need to grow them again
+        Arrays.fill(values, 0, size, null);
+        size = 0;
         firstValueKey = null;
-        lastValue = null;
         lastValueKey = null;
     }
 
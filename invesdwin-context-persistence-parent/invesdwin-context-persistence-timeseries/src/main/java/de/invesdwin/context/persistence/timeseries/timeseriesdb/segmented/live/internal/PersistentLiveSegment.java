@@ -1,6 +1,7 @@
 package de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live.internal;
 
 import java.io.OutputStream;
+import java.util.concurrent.locks.Lock;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
@@ -25,11 +26,16 @@ public class PersistentLiveSegment<K, V> implements ILiveSegment<K, V> {
     private final SegmentedKey<K> segmentedKey;
     private final ALiveSegmentedTimeSeriesDB<K, V>.HistoricalSegmentTable historicalSegmentTable;
     private final ASegmentedTimeSeriesDB<K, V>.SegmentedTable table;
-    private boolean empty = true;
+    private volatile boolean empty = true;
     private final String hashKey;
 
+    /**
+     * An initializing segment from a previous run is normally deleted, with keepInitializing it is continued instead
+     * (e.g. when the remaining values get replayed from a journal) as long as it is consistent.
+     */
     public PersistentLiveSegment(final SegmentedKey<K> segmentedKey,
-            final ALiveSegmentedTimeSeriesDB<K, V>.HistoricalSegmentTable historicalSegmentTable) {
+            final ALiveSegmentedTimeSeriesDB<K, V>.HistoricalSegmentTable historicalSegmentTable,
+            final boolean keepInitializing) {
         this.segmentedKey = segmentedKey;
         this.historicalSegmentTable = historicalSegmentTable;
         this.table = historicalSegmentTable.getSegmentedTable();
@@ -40,8 +46,12 @@ public class PersistentLiveSegment<K, V> implements ILiveSegment<K, V> {
                 .getSegmentStatusTable();
         final SegmentStatus existingStatus = segmentStatusTable.get(hashKey, segmentedKey.getSegment());
         if (existingStatus == SegmentStatus.INITIALIZING) {
-            //cleanup initially
-            this.table.deleteRange(segmentedKey);
+            if (keepInitializing && !this.table.isEmptyOrInconsistent(segmentedKey)) {
+                this.empty = false;
+            } else {
+                //cleanup initially
+                this.table.deleteRange(segmentedKey);
+            }
         } else if (existingStatus != null) {
             throw UnknownArgumentException.newInstance(SegmentStatus.class, existingStatus);
         }
@@ -112,6 +122,12 @@ public class PersistentLiveSegment<K, V> implements ILiveSegment<K, V> {
         throw new UnsupportedOperationException();
     }
 
+    @Deprecated
+    @Override
+    public void putNextLiveValues(final LiveValueBatch<V> batch) {
+        throw new UnsupportedOperationException();
+    }
+
     public void putNextLiveValues(final ICloseableIterable<V> memoryValues) {
         final ADelegateRangeTable<String, TimeRange, SegmentStatus> segmentStatusTable = historicalSegmentTable
                 .getStorage()
@@ -154,6 +170,12 @@ public class PersistentLiveSegment<K, V> implements ILiveSegment<K, V> {
                 return false;
             }
 
+            @Override
+            protected Lock getUpdateLock() {
+                //values are only appended, thus readers of the existing values do not need to wait for the flush
+                return table.getTableLock(segmentedKey).readLock();
+            }
+
             @Override
             protected boolean shouldWriteInParallel() {
                 return false;
@@ -1,43 +1,68 @@
 package de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live.internal;
 
-import java.util.Arrays;
-import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
 
+import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.NotThreadSafe;
 
 import de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.SegmentedKey;
 import de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live.ALiveSegmentedTimeSeriesDB;
+import de.invesdwin.util.collections.iterable.EmptyCloseableIterable;
 import de.invesdwin.util.collections.iterable.FlatteningIterable;
 import de.invesdwin.util.collections.iterable.ICloseableIterable;
 import de.invesdwin.util.collections.iterable.ICloseableIterator;
+import de.invesdwin.util.concurrent.WrappedExecutorService;
+import de.invesdwin.util.error.Throwables;
 import de.invesdwin.util.time.fdate.FDate;
+import de.invesdwin.util.time.fdate.FDates;
 
 @NotThreadSafe
 public class SwitchingLiveSegment<K, V> implements ILiveSegment<K, V> {
 
     private final SegmentedKey<K> segmentedKey;
     private final ALiveSegmentedTimeSeriesDB<K, V>.HistoricalSegmentTable historicalSegmentTable;
-    private final MemoryLiveSegment<K, V> memory;
     private final PersistentLiveSegment<K, V> persistent;
-    private final List<ILiveSegment<K, V>> latestValueProviders;
+    private final WrappedExecutorService flushExecutor;
+    private final Lock flushLock;
+    private final LiveSegmentJournal<V> journal;
+    private MemoryLiveSegment<K, V> memory;
+    private volatile MemoryLiveSegment<K, V> flushingMemory;
+    private FlushTask submittedFlush;
 
     private FDate firstValueKey;
     private V firstValue;
     private FDate lastValueKey;
     private V lastValue;
-    private int memorySize = 0;
     private final int batchFlushInterval;
 
+    /**
+     * When the flushExecutor is null, the memory is flushed on the writer thread. Otherwise the flush in the background
+     * appends to the persistent segment without blocking the readers, they continue to use the frozen memory for those
+     * values. The flushLock (the write lock of the table) is only held to release the frozen memory afterwards. The
+     * journal is optional, it gets rotated and truncated according to the flushes.
+     */
     public SwitchingLiveSegment(final SegmentedKey<K> segmentedKey,
             final ALiveSegmentedTimeSeriesDB<K, V>.HistoricalSegmentTable historicalSegmentTable,
-            final int batchFlushInterval) {
+            final int batchFlushInterval, final WrappedExecutorService flushExecutor, final Lock flushLock,
+            final LiveSegmentJournal<V> journal) {
         this.segmentedKey = segmentedKey;
         this.historicalSegmentTable = historicalSegmentTable;
         this.memory = new MemoryLiveSegment<>(segmentedKey, historicalSegmentTable);
-        this.persistent = new PersistentLiveSegment<>(segmentedKey, historicalSegmentTable);
-        this.latestValueProviders = Arrays.asList(memory, persistent);
+        //with a journal the already flushed values are kept since the journal only contains the values after them
+        this.persistent = new PersistentLiveSegment<>(segmentedKey, historicalSegmentTable, journal != null);
         this.batchFlushInterval = batchFlushInterval;
+        this.flushExecutor = flushExecutor;
+        this.flushLock = flushLock;
+        this.journal = journal;
+        if (!persistent.isEmpty()) {
+            this.firstValue = persistent.getFirstValue();
+            this.firstValueKey = persistent.getFirstValueKey();
+            this.lastValue = persistent.getLastValue();
+            this.lastValueKey = persistent.getLastValueKey();
+        }
     }
 
     @Override
@@ -67,51 +92,60 @@ public class SwitchingLiveSegment<K, V> implements ILiveSegment<K, V> {
 
     @Override
     public ICloseableIterable<V> rangeValues(final FDate from, final FDate to) {
-        if (memory.isEmpty()) {
-            //no live segment, go with historical
-            return persistent.rangeValues(from, to);
-        } else if (persistent.isEmpty()) {
-            return memory.rangeValues(from, to);
-        } else {
-            final FDate memoryFrom = memory.getFirstValueKey();
-            if (memoryFrom.isAfter(to)) {
-                //live segment is after requested range, go with historical
-                return persistent.rangeValues(from, to);
-            } else if (memoryFrom.isBeforeOrEqualTo(from)) {
-                //historical segment is before requested range, go with live
-                return memory.rangeValues(from, to);
-            } else {
-                //use both segments
-                final ICloseableIterable<V> historicalRangeValues = persistent.rangeValues(from,
-                        memoryFrom.addMilliseconds(-1));
-                final ICloseableIterable<V> liveRangeValues = memory.rangeValues(memoryFrom, to);
-                return new FlatteningIterable<V>(historicalRangeValues, liveRangeValues);
-            }
+        //newer segments limit the range of older ones, this prevents duplicates while a flushed memory is not released
+        ICloseableIterable<V> rangeValues = null;
+        FDate curTo = to;
+        if (!memory.isEmpty()) {
+            rangeValues = memory.rangeValues(from, curTo);
+            curTo = FDates.min(curTo, memory.getFirstValueKey().addMilliseconds(-1));
         }
+        final MemoryLiveSegment<K, V> flushingMemoryCopy = flushingMemory;
+        if (flushingMemoryCopy != null && !isBefore(curTo, from)) {
+            rangeValues = concat(flushingMemoryCopy.rangeValues(from, curTo), rangeValues);
+            curTo = FDates.min(curTo, flushingMemoryCopy.getFirstValueKey().addMilliseconds(-1));
+        }
+        if (!persistent.isEmpty() && !isBefore(curTo, from)) {
+            rangeValues = concat(persistent.rangeValues(from, curTo), rangeValues);
+        }
+        if (rangeValues == null) {
+            return EmptyCloseableIterable.getInstance();
+        }
+        return rangeValues;
     }
 
     @Override
     public ICloseableIterable<V> rangeReverseValues(final FDate from, final FDate to) {
-        if (memory.isEmpty()) {
-            //no live segment, go with historical
-            return persistent.rangeReverseValues(from, to);
-        } else if (persistent.isEmpty()) {
-            return memory.rangeReverseValues(from, to);
+        ICloseableIterable<V> rangeValues = null;
+        FDate curFrom = from;
+        if (!memory.isEmpty()) {
+            rangeValues = memory.rangeReverseValues(curFrom, to);
+            curFrom = FDates.min(curFrom, memory.getFirstValueKey().addMilliseconds(-1));
+        }
+        final MemoryLiveSegment<K, V> flushingMemoryCopy = flushingMemory;
+        if (flushingMemoryCopy != null && !isBefore(curFrom, to)) {
+            rangeValues = concat(rangeValues, flushingMemoryCopy.rangeReverseValues(curFrom, to));
+            curFrom = FDates.min(curFrom, flushingMemoryCopy.getFirstValueKey().addMilliseconds(-1));
+        }
+        if (!persistent.isEmpty() && !isBefore(curFrom, to)) {
+            rangeValues = concat(rangeValues, persistent.rangeReverseValues(curFrom, to));
+        }
+        if (rangeValues == null) {
+            return EmptyCloseableIterable.getInstance();
+        }
+        return rangeValues;
+    }
+
+    private static boolean isBefore(final FDate upper, final FDate lower) {
+        return upper != null && lower != null && upper.isBefore(lower);
+    }
+
+    private ICloseableIterable<V> concat(final ICloseableIterable<V> first, final ICloseableIterable<V> second) {
+        if (first == null) {
+            return second;
+        } else if (second == null) {
+            return first;
         } else {
-            final FDate memoryFrom = memory.getFirstValueKey();
-            if (memoryFrom.isAfter(from)) {
-                //live segment is after requested range, go with historical
-                return persistent.rangeReverseValues(from, to);
-            } else if (memoryFrom.isBeforeOrEqualTo(to)) {
-                //historical segment is before requested range, go with live
-                return memory.rangeReverseValues(from, to);
-            } else {
-                //use both segments
-                final ICloseableIterable<V> liveRangeValues = memory.rangeReverseValues(from, memoryFrom);
-                final ICloseableIterable<V> historicalRangeValues = persistent
-                        .rangeReverseValues(memoryFrom.addMilliseconds(-1), to);
-                return new FlatteningIterable<V>(liveRangeValues, historicalRangeValues);
-            }
+            return new FlatteningIterable<V>(first, second);
         }
     }
 
@@ -128,60 +162,97 @@ public class SwitchingLiveSegment<K, V> implements ILiveSegment<K, V> {
         }
         lastValue = nextLiveValue;
         lastValueKey = nextLiveKey;
-        memorySize++;
-        if (memorySize >= batchFlushInterval) {
+        if (memory.size() >= batchFlushInterval) {
             flushLiveSegment();
         }
     }
 
+    @Override
+    public void putNextLiveValues(final LiveValueBatch<V> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        final FDate firstBatchKey = batch.getFirstKey();
+        if (lastValue != null && lastValueKey.isAfterOrEqualTo(firstBatchKey)) {
+            throw new IllegalStateException(segmentedKey + ": nextLiveKey [" + firstBatchKey
+                    + "] should be after lastLiveKey [" + lastValueKey + "]");
+        }
+        if (firstValue == null) {
+            firstValue = batch.getValue(0);
+            firstValueKey = firstBatchKey;
+        }
+        int offset = 0;
+        while (offset < batch.size()) {
+            //fill the memory up to the flush interval so that flushes happen at the same points as for single values
+            final int length = Math.min(batch.size() - offset, batchFlushInterval - memory.size());
+            appendToJournal(batch, offset, length);
+            memory.putNextLiveValues(batch, offset, length);
+            offset += length;
+            lastValue = batch.getValue(offset - 1);
+            lastValueKey = memory.getLastValueKey();
+            if (memory.size() >= batchFlushInterval) {
+                flushLiveSegment();
+            }
+        }
+    }
+
     @Override
     public V getNextValue(final FDate date, final int shiftForwardUnits) {
-        if (memory.isEmpty()) {
+        if (!memory.isEmpty() && memory.getFirstValueKey().isBefore(date)) {
+            //live segment is after requested range, go with live
+            return memory.getNextValue(date, shiftForwardUnits);
+        } else if (memory.isEmpty() && flushingMemory == null) {
             //no live segment, go with historical
             return persistent.getNextValue(date, shiftForwardUnits);
-        } else if (persistent.isEmpty() || memory.getFirstValueKey().isBefore(date)) {
-            //live segment is after requested range, go with live
-            final V nextValue = memory.getNextValue(date, shiftForwardUnits);
-            return nextValue;
         } else {
-            //use both segments
-            V nextValue = null;
-            try (ICloseableIterator<V> rangeValues = rangeValues(date, null).iterator()) {
-                for (int i = 0; i < shiftForwardUnits; i++) {
-                    nextValue = rangeValues.next();
-                }
-            } catch (final NoSuchElementException e) {
-                //ignore
+            //use all segments
+            return getNextValueFromRangeValues(date, shiftForwardUnits);
+        }
+    }
+
+    /**
+     * Shift 1 is the ceiling value itself and 0 is treated like 1, same as for the memory segment. Shifting beyond the
+     * end returns the last value of all segments.
+     */
+    private V getNextValueFromRangeValues(final FDate date, final int shiftForwardUnits) {
+        final int shift = Math.max(1, shiftForwardUnits);
+        V nextValue = null;
+        try (ICloseableIterator<V> rangeValues = rangeValues(date, null).iterator()) {
+            for (int i = 0; i < shift; i++) {
+                nextValue = rangeValues.next();
             }
+        } catch (final NoSuchElementException e) {
+            //end reached, keep the last value that was found
+        }
+        if (nextValue != null) {
             return nextValue;
+        } else {
+            //all values are before the date
+            return getLastValue();
         }
     }
 
     @Override
     public V getLatestValue(final FDate date) {
-        if (memory.isEmpty()) {
-            return persistent.getLatestValue(date);
-        } else if (persistent.isEmpty()) {
+        if (!memory.isEmpty() && memory.getFirstValueKey().isBeforeOrEqualTo(date)) {
             return memory.getLatestValue(date);
         }
-        V latestValue = null;
-        for (int i = 0; i < latestValueProviders.size(); i++) {
-            final ILiveSegment<K, V> latestValueProvider = latestValueProviders.get(i);
-            final V newValue = latestValueProvider.getLatestValue(date);
-            final FDate newValueTime = historicalSegmentTable.extractTime(newValue);
-            if (newValueTime.isBeforeOrEqualTo(date)) {
-                /*
-                 * even if we got the first value in this segment and it is after the desired key we just continue to
-                 * the beginning to search for an earlier value until we reach the overall firstValue
-                 */
-                latestValue = newValue;
-                break;
-            }
+        final MemoryLiveSegment<K, V> flushingMemoryCopy = flushingMemory;
+        if (flushingMemoryCopy != null && flushingMemoryCopy.getFirstValueKey().isBeforeOrEqualTo(date)) {
+            return flushingMemoryCopy.getLatestValue(date);
         }
-        if (latestValue == null) {
-            latestValue = getFirstValue();
+        if (!persistent.isEmpty()) {
+            final V persistentValue = persistent.getLatestValue(date);
+            if (persistentValue != null
+                    && historicalSegmentTable.extractTime(persistentValue).isBeforeOrEqualTo(date)) {
+                return persistentValue;
+            }
         }
-        return latestValue;
+        /*
+         * even if we got the first value in this segment and it is after the desired key we just continue to the
+         * beginning to search for an earlier value until we reach the overall firstValue
+         */
+        return getFirstValue();
     }
 
     @Override
@@ -191,6 +262,7 @@ public class SwitchingLiveSegment<K, V> implements ILiveSegment<K, V> {
 
     @Override
     public void close() {
+        waitForFlush();
         firstValue = null;
         lastValue = null;
         lastValueKey = null;
@@ -200,16 +272,154 @@ public class SwitchingLiveSegment<K, V> implements ILiveSegment<K, V> {
 
     @Override
     public void convertLiveSegmentToHistorical() {
+        waitForFlush();
         if (!memory.isEmpty()) {
-            flushLiveSegment();
+            persistent.putNextLiveValues(memory.rangeValues(memory.getFirstValueKey(), memory.getLastValueKey()));
+            memory.close();
         }
         persistent.finish();
+        if (journal != null) {
+            journal.clear();
+        }
     }
 
+    /**
+     * The full memory gets frozen and is still used by readers while it is being written to the persistent segment in
+     * the background. Since only one flush can be in progress, the writer is blocked when flushes fall behind. Only
+     * in that case it writes the frozen memory itself if the background task did not start yet.
+     */
     private void flushLiveSegment() {
-        persistent.putNextLiveValues(memory.rangeValues(memory.getFirstValueKey(), memory.getLastValueKey()));
-        memorySize = 0;
-        memory.close();
+        if (flushExecutor == null) {
+            rotateJournal();
+            persistent.putNextLiveValues(memory.rangeValues(memory.getFirstValueKey(), memory.getLastValueKey()));
+            truncateFlushedJournal();
+            memory.close();
+            return;
+        }
+        final MemoryLiveSegment<K, V> flushedMemory = waitForFlush();
+        rotateJournal();
+        final MemoryLiveSegment<K, V> frozenMemory = memory;
+        if (flushedMemory != null) {
+            //no reader can access the released memory anymore because we are holding the write lock, thus reuse it
+            flushedMemory.close();
+            memory = flushedMemory;
+        } else {
+            memory = new MemoryLiveSegment<>(segmentedKey, historicalSegmentTable);
+        }
+        flushingMemory = frozenMemory;
+        submittedFlush = new FlushTask(frozenMemory);
+        flushExecutor.execute(submittedFlush);
+    }
+
+    /**
+     * Each chunk is journaled right before it is appended to the memory, thus values after a flush boundary end up in
+     * the journal file that is only truncated by the next flush.
+     */
+    private void appendToJournal(final LiveValueBatch<V> batch, final int offset, final int length) {
+        if (journal != null) {
+            for (int i = offset; i < offset + length; i++) {
+                journal.append(batch.getValue(i));
+            }
+        }
+    }
+
+    private void rotateJournal() {
+        if (journal != null) {
+            journal.rotate();
+        }
+    }
+
+    private void truncateFlushedJournal() {
+        if (journal != null) {
+            journal.truncateFlushed();
+        }
+    }
+
+    /**
+     * Returns the memory of the last flush if there was one so that it can be reused. Must only be called by the writer
+     * while holding the flushLock.
+     */
+    private MemoryLiveSegment<K, V> waitForFlush() {
+        final FlushTask flush = submittedFlush;
+        if (flush == null) {
+            return null;
+        }
+        submittedFlush = null;
+        //the task can not release the memory while we hold the lock, thus only wait for the write and release it here
+        flush.awaitWritten();
+        flush.release();
+        return flush.frozenMemory;
+    }
+
+    private final class FlushTask implements Runnable {
+
+        private final MemoryLiveSegment<K, V> frozenMemory;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final CountDownLatch written = new CountDownLatch(1);
+        private volatile Throwable writeError;
+        @GuardedBy("flushLock")
+        private boolean released;
+
+        private FlushTask(final MemoryLiveSegment<K, V> frozenMemory) {
+            this.frozenMemory = frozenMemory;
+        }
+
+        @Override
+        public void run() {
+            if (!tryWrite()) {
+                return;
+            }
+            //the write lock is only needed to release the frozen memory, readers were not blocked during the write
+            flushLock.lock();
+            try {
+                release();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+
+        /**
+         * Returns false when the write was already done by someone else.
+         */
+        private boolean tryWrite() {
+            if (!claimed.compareAndSet(false, true)) {
+                return false;
+            }
+            try {
+                persistent.putNextLiveValues(
+                        frozenMemory.rangeValues(frozenMemory.getFirstValueKey(), frozenMemory.getLastValueKey()));
+                return true;
+            } catch (final Throwable t) {
+                writeError = t;
+                return false;
+            } finally {
+                written.countDown();
+            }
+        }
+
+        private void awaitWritten() {
+            //the task did not start yet, thus write inline instead of waiting for a busy executor
+            tryWrite();
+            try {
+                written.await();
+            } catch (final InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            final Throwable error = writeError;
+            if (error != null) {
+                throw Throwables.propagate(error);
+            }
+        }
+
+        private void release() {
+            if (released || writeError != null) {
+                return;
+            }
+            released = true;
+            truncateFlushedJournal();
+            //values are available in the persistent segment now, so readers can stop using the frozen memory
+            flushingMemory = null;
+        }
     }
 
 }
@@ -1,10 +1,15 @@
 package de.invesdwin.context.persistence.timeseries.timeseriesdb.storage;
 
 import java.io.File;
+import java.util.Arrays;
 
 import javax.annotation.concurrent.ThreadSafe;
 
 import de.invesdwin.context.persistence.timeseries.ezdb.ADelegateRangeTable;
+import de.invesdwin.context.persistence.timeseries.ezdb.HashKeyDictionary;
+import de.invesdwin.context.persistence.timeseries.ezdb.RangeTableOptions;
+import de.invesdwin.context.persistence.timeseries.ezdb.RangeTableWarmup;
+import de.invesdwin.context.persistence.timeseries.serde.ExtendedTypeDelegateSerde;
 import de.invesdwin.util.time.fdate.FDate;
 import ezdb.serde.Serde;
 
@@ -12,13 +17,34 @@ import ezdb.serde.Serde;
 public class TimeSeriesStorage {
 
     private final File directory;
+    private final HashKeyDictionary hashKeyDictionary;
     private final ADelegateRangeTable<String, FDate, ChunkValue> fileLookupTable;
     private final ADelegateRangeTable<String, FDate, SingleValue> latestValueLookupTable;
     private final ADelegateRangeTable<String, ShiftUnitsRangeKey, SingleValue> previousValueLookupTable;
     private final ADelegateRangeTable<String, ShiftUnitsRangeKey, SingleValue> nextValueLookupTable;
 
     public TimeSeriesStorage(final File directory) {
+        this(directory, false);
+    }
+
+    /**
+     * When hashKeyDictionaryEnabled is true, the hash keys are stored as integer ids in the tables instead of the full
+     * strings. This can only be chosen for new storages, since existing tables can not be read with the other
+     * encoding.
+     */
+    public TimeSeriesStorage(final File directory, final boolean hashKeyDictionaryEnabled) {
         this.directory = directory;
+        if (hashKeyDictionaryEnabled) {
+            final String hashKeyDictionaryName = "hashKeyDictionary";
+            this.hashKeyDictionary = new HashKeyDictionary(directory, hashKeyDictionaryName) {
+                @Override
+                protected void onDeleteTableFinished() {
+                    throw new CorruptedTimeSeriesStorageException(hashKeyDictionaryName);
+                }
+            };
+        } else {
+            this.hashKeyDictionary = null;
+        }
         this.fileLookupTable = new ADelegateRangeTable<String, FDate, ChunkValue>("fileLookupTable") {
             @Override
             protected boolean allowPutWithoutBatch() {
@@ -35,6 +61,21 @@ public class TimeSeriesStorage {
                 return directory;
             }
 
+            @Override
+            protected Serde<String> newHashKeySerde() {
+                return TimeSeriesStorage.this.newHashKeySerde();
+            }
+
+            @Override
+            protected void onPutHashKey(final String hashKey) {
+                TimeSeriesStorage.this.onPutHashKey(hashKey);
+            }
+
+            @Override
+            protected RangeTableOptions newOptions() {
+                return RangeTableOptions.READ_HEAVY;
+            }
+
             @Override
             protected void onDeleteTableFinished() {
                 throw new CorruptedTimeSeriesStorageException(getName());
@@ -48,6 +89,21 @@ public class TimeSeriesStorage {
                 return directory;
             }
 
+            @Override
+            protected Serde<String> newHashKeySerde() {
+                return TimeSeriesStorage.this.newHashKeySerde();
+            }
+
+            @Override
+            protected void onPutHashKey(final String hashKey) {
+                TimeSeriesStorage.this.onPutHashKey(hashKey);
+            }
+
+            @Override
+            protected RangeTableOptions newOptions() {
+                return RangeTableOptions.WRITE_HEAVY;
+            }
+
             @Override
             protected Serde<SingleValue> newValueSerde() {
                 return SingleValueSerde.GET;
@@ -67,6 +123,21 @@ public class TimeSeriesStorage {
                 return directory;
             }
 
+            @Override
+            protected Serde<String> newHashKeySerde() {
+                return TimeSeriesStorage.this.newHashKeySerde();
+            }
+
+            @Override
+            protected void onPutHashKey(final String hashKey) {
+                TimeSeriesStorage.this.onPutHashKey(hashKey);
+            }
+
+            @Override
+            protected RangeTableOptions newOptions() {
+                return RangeTableOptions.WRITE_HEAVY;
+            }
+
             @Override
             protected Serde<ShiftUnitsRangeKey> newRangeKeySerde() {
                 return ShiftUnitsRangeKeySerde.GET;
@@ -90,6 +161,21 @@ public class TimeSeriesStorage {
                 return directory;
             }
 
+            @Override
+            protected Serde<String> newHashKeySerde() {
+                return TimeSeriesStorage.this.newHashKeySerde();
+            }
+
+            @Override
+            protected void onPutHashKey(final String hashKey) {
+                TimeSeriesStorage.this.onPutHashKey(hashKey);
+            }
+
+            @Override
+            protected RangeTableOptions newOptions() {
+                return RangeTableOptions.WRITE_HEAVY;
+            }
+
             @Override
             protected Serde<ShiftUnitsRangeKey> newRangeKeySerde() {
                 return ShiftUnitsRangeKeySerde.GET;
@@ -108,6 +194,23 @@ public class TimeSeriesStorage {
         };
     }
 
+    /**
+     * Registers the hash key in the dictionary before the first value is written for it.
+     */
+    protected void onPutHashKey(final String hashKey) {
+        if (hashKeyDictionary != null) {
+            hashKeyDictionary.getOrCreateId(hashKey);
+        }
+    }
+
+    protected Serde<String> newHashKeySerde() {
+        if (hashKeyDictionary != null) {
+            return hashKeyDictionary.getSerde();
+        } else {
+            return new ExtendedTypeDelegateSerde<String>(String.class);
+        }
+    }
+
     public File getDirectory() {
         return directory;
     }
@@ -128,11 +231,22 @@ public class TimeSeriesStorage {
         return nextValueLookupTable;
     }
 
+    /**
+     * Opens the lookup tables in parallel in the background.
+     */
+    public RangeTableWarmup warmUp() {
+        return new RangeTableWarmup(Arrays.asList(fileLookupTable, latestValueLookupTable, previousValueLookupTable,
+                nextValueLookupTable)).start();
+    }
+
     public void close() {
         fileLookupTable.close();
         latestValueLookupTable.close();
         previousValueLookupTable.close();
         nextValueLookupTable.close();
+        if (hashKeyDictionary != null) {
+            hashKeyDictionary.close();
+        }
     }
 
     public File newDataDirectory(final String hashKey) {
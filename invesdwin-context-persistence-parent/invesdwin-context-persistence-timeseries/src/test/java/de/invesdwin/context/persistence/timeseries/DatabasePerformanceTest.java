@@ -11,6 +11,10 @@ import org.junit.Test;
 
 import de.invesdwin.context.ContextProperties;
 import de.invesdwin.context.persistence.timeseries.ezdb.ADelegateRangeTable;
+import de.invesdwin.context.persistence.timeseries.ezdb.engine.IRangeTableEngine;
+import de.invesdwin.context.persistence.timeseries.ezdb.engine.LevelDbJavaRangeTableEngine;
+import de.invesdwin.context.persistence.timeseries.ezdb.engine.LevelDbJniRangeTableEngine;
+import de.invesdwin.context.persistence.timeseries.ezdb.engine.LmdbRangeTableEngine;
 import de.invesdwin.context.persistence.timeseries.serde.FDateSerde;
 import de.invesdwin.context.persistence.timeseries.timeseriesdb.ATimeSeriesDB;
 import de.invesdwin.context.persistence.timeseries.timeseriesdb.ATimeSeriesUpdater;
@@ -41,13 +45,31 @@ public class DatabasePerformanceTest extends ATest {
 
     @Test
     public void testLevelDbPerformance() {
-        final ADelegateRangeTable<String, FDate, FDate> table = new ADelegateRangeTable<String, FDate, FDate>(
-                "testLevelDbPerformance") {
+        testRangeTablePerformance("testLevelDbPerformance", LevelDbJniRangeTableEngine.INSTANCE);
+    }
+
+    @Test
+    public void testLevelDbJavaPerformance() {
+        testRangeTablePerformance("testLevelDbJavaPerformance", LevelDbJavaRangeTableEngine.INSTANCE);
+    }
+
+    @Test
+    public void testLmdbPerformance() {
+        testRangeTablePerformance("testLmdbPerformance", LmdbRangeTableEngine.INSTANCE);
+    }
+
+    private void testRangeTablePerformance(final String name, final IRangeTableEngine engine) {
+        final ADelegateRangeTable<String, FDate, FDate> table = new ADelegateRangeTable<String, FDate, FDate>(name) {
             @Override
             protected File getDirectory() {
                 return new File(ContextProperties.getCacheDirectory(), ADelegateRangeTable.class.getSimpleName());
             }
 
+            @Override
+            protected IRangeTableEngine newEngine() {
+                return engine;
+            }
+
             @Override
             protected Serde<FDate> newValueSerde() {
                 return FDateSerde.GET;
@@ -0,0 +1,25 @@
+package de.invesdwin.context.persistence.timeseries;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.junit.Assume;
+
+import de.invesdwin.context.persistence.timeseries.ezdb.engine.IRangeTableEngine;
+import de.invesdwin.context.persistence.timeseries.ezdb.engine.LevelDbJavaRangeTableEngine;
+
+@NotThreadSafe
+public class TestEzLevelDbJava extends TestEzLevelDbJni {
+
+    @SuppressWarnings("JUnit4SetUpNotRun")
+    @Override
+    public void setUp() throws Exception {
+        Assume.assumeTrue(LevelDbJavaRangeTableEngine.isAvailable());
+        super.setUp();
+    }
+
+    @Override
+    protected IRangeTableEngine newEngine() {
+        return LevelDbJavaRangeTableEngine.INSTANCE;
+    }
+
+}
@@ -10,6 +10,8 @@ import org.junit.Test;
 
 import de.invesdwin.context.ContextProperties;
 import de.invesdwin.context.persistence.timeseries.ezdb.ADelegateRangeTable;
+import de.invesdwin.context.persistence.timeseries.ezdb.engine.IRangeTableEngine;
+import de.invesdwin.context.persistence.timeseries.ezdb.engine.LevelDbJniRangeTableEngine;
 import de.invesdwin.context.test.ATest;
 import de.invesdwin.util.assertions.Assertions;
 import de.invesdwin.util.time.fdate.FDate;
@@ -57,7 +59,12 @@ public class TestEzLevelDbJni extends ATest {
 
             @Override
             protected File getBaseDirectory() {
-                return ContextProperties.getCacheDirectory();
+                return TestEzLevelDbJni.this.getBaseDirectory();
+            }
+
+            @Override
+            protected IRangeTableEngine newEngine() {
+                return TestEzLevelDbJni.this.newEngine();
             }
 
         };
@@ -75,7 +82,12 @@ public class TestEzLevelDbJni extends ATest {
 
             @Override
             protected File getBaseDirectory() {
-                return ContextProperties.getCacheDirectory();
+                return TestEzLevelDbJni.this.getBaseDirectory();
+            }
+
+            @Override
+            protected IRangeTableEngine newEngine() {
+                return TestEzLevelDbJni.this.newEngine();
             }
 
         };
@@ -90,14 +102,32 @@ public class TestEzLevelDbJni extends ATest {
         reverseRangeTable.put("2", threeFDate, -30);
     }
 
+    /**
+     * Subclasses run the same tests against the other engines.
+     */
+    protected IRangeTableEngine newEngine() {
+        return LevelDbJniRangeTableEngine.INSTANCE;
+    }
+
+    /**
+     * Each engine gets its own directory since the table files are not compatible between the engines.
+     */
+    protected File getBaseDirectory() {
+        return new File(ContextProperties.getCacheDirectory(), getClass().getSimpleName());
+    }
+
     @Override
     public void tearDown() throws Exception {
         super.tearDown();
-        reverseRangeTable.close();
-        reverseRangeTable.deleteTable();
-
-        table.close();
-        table.deleteTable();
+        //null when a subclass skipped the test because its engine is not available
+        if (reverseRangeTable != null) {
+            reverseRangeTable.close();
+            reverseRangeTable.deleteTable();
+        }
+        if (table != null) {
+            table.close();
+            table.deleteTable();
+        }
     }
 
     @Test
@@ -977,6 +1007,16 @@ public class TestEzLevelDbJni extends ATest {
             protected boolean allowPutWithoutBatch() {
                 return true;
             }
+
+            @Override
+            protected File getBaseDirectory() {
+                return TestEzLevelDbJni.this.getBaseDirectory();
+            }
+
+            @Override
+            protected IRangeTableEngine newEngine() {
+                return TestEzLevelDbJni.this.newEngine();
+            }
         };
         table.put(1, 1);
         Assertions.checkEquals(new Integer(1), table.get(1));
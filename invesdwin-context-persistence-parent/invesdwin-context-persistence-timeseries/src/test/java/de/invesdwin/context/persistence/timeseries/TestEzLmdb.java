@@ -0,0 +1,25 @@
+package de.invesdwin.context.persistence.timeseries;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.junit.Assume;
+
+import de.invesdwin.context.persistence.timeseries.ezdb.engine.IRangeTableEngine;
+import de.invesdwin.context.persistence.timeseries.ezdb.engine.LmdbRangeTableEngine;
+
+@NotThreadSafe
+public class TestEzLmdb extends TestEzLevelDbJni {
+
+    @SuppressWarnings("JUnit4SetUpNotRun")
+    @Override
+    public void setUp() throws Exception {
+        Assume.assumeTrue(LmdbRangeTableEngine.isAvailable());
+        super.setUp();
+    }
+
+    @Override
+    protected IRangeTableEngine newEngine() {
+        return LmdbRangeTableEngine.INSTANCE;
+    }
+
+}
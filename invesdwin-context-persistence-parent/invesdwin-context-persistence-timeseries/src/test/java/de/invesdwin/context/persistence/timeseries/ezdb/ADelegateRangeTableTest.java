@@ -0,0 +1,314 @@
+package de.invesdwin.context.persistence.timeseries.ezdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.fusesource.leveldbjni.JniDBFactory;
+import org.iq80.leveldb.CompressionType;
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.DBFactory;
+import org.iq80.leveldb.Options;
+import org.junit.Test;
+
+import de.invesdwin.context.persistence.timeseries.ezdb.engine.ALevelDbRangeTableEngine;
+import de.invesdwin.context.persistence.timeseries.ezdb.engine.IRangeTableEngine;
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.bean.tuple.Pair;
+import de.invesdwin.util.collections.iterable.ICloseableIterator;
+import de.invesdwin.util.time.fdate.FDate;
+import ezdb.TableRow;
+import ezdb.serde.IntegerSerde;
+import ezdb.serde.Serde;
+
+// CHECKSTYLE:OFF
+@NotThreadSafe
+public class ADelegateRangeTableTest extends ATest {
+    //CHECKSTYLE:ON
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Test
+    public void testWriteCoalescing() throws InterruptedException {
+        final File directory = RangeTableTestFixtures.newDirectory("testWriteCoalescing");
+        final Serde<Integer> valueSerde = newValueSerde(new AtomicInteger());
+        final ADelegateRangeTable<String, FDate, Integer> table = RangeTableTestFixtures.newTable(directory,
+                valueSerde, true);
+        for (int i = 0; i < 10; i++) {
+            table.put("key", FDate.valueOf(i), i);
+        }
+        table.put("key", FDate.valueOf(10), null);
+        //pending puts are visible before they are flushed
+        Assertions.checkEquals(5, table.get("key", FDate.valueOf(5)));
+        Assertions.checkNull(table.get("key", FDate.valueOf(10)));
+        //the background flush writes them without any further call
+        awaitFlushed(table);
+        table.close();
+
+        final ADelegateRangeTable<String, FDate, Integer> reopened = RangeTableTestFixtures.newTable(directory,
+                valueSerde, true);
+        for (int i = 0; i < 10; i++) {
+            Assertions.checkEquals(i, reopened.get("key", FDate.valueOf(i)));
+        }
+        Assertions.checkNull(reopened.get("key", FDate.valueOf(10)));
+        reopened.close();
+    }
+
+    @Test
+    public void testWriteCoalescingRetriesFailedFlush() throws InterruptedException {
+        final File directory = RangeTableTestFixtures.newDirectory("testWriteCoalescingRetriesFailedFlush");
+        final AtomicInteger failures = new AtomicInteger(1);
+        final ADelegateRangeTable<String, FDate, Integer> table = RangeTableTestFixtures.newTable(directory,
+                newValueSerde(failures), true);
+        table.put("key", FDate.valueOf(1), 1);
+        awaitFlushed(table);
+        Assertions.checkTrue(failures.get() < 0);
+        Assertions.checkEquals(1, table.get("key", FDate.valueOf(1)));
+        table.close();
+    }
+
+    @Test
+    public void testMultiGet() {
+        final File directory = RangeTableTestFixtures.newDirectory("testMultiGet");
+        final ADelegateRangeTable<String, FDate, Integer> table = RangeTableTestFixtures.newTable(directory,
+                newValueSerde(new AtomicInteger()), false);
+        table.put("b", FDate.valueOf(2), 2);
+        table.put("a", FDate.valueOf(1), 1);
+        table.put("a", FDate.valueOf(3), 3);
+        table.put("c", 4);
+        final List<Pair<String, FDate>> keys = new ArrayList<Pair<String, FDate>>();
+        //unsorted, with duplicates, missing keys and a key without range key
+        keys.add(Pair.of("b", FDate.valueOf(2)));
+        keys.add(Pair.of("a", FDate.valueOf(3)));
+        keys.add(Pair.of("missing", FDate.valueOf(1)));
+        keys.add(Pair.of("a", FDate.valueOf(1)));
+        keys.add(Pair.of("a", FDate.valueOf(2)));
+        keys.add(Pair.of("b", FDate.valueOf(2)));
+        keys.add(Pair.of("c", (FDate) null));
+        final List<Integer> values = table.multiGet(keys);
+        Assertions.checkEquals(Arrays.asList(2, 3, null, 1, null, 2, 4), values);
+
+        final List<TableRow<String, FDate, Integer>> rows = table.multiGetLatest(keys);
+        Assertions.checkEquals(keys.size(), rows.size());
+        Assertions.checkEquals(2, rows.get(0).getValue());
+        Assertions.checkEquals(3, rows.get(1).getValue());
+        Assertions.checkNull(rows.get(2));
+        Assertions.checkEquals(1, rows.get(3).getValue());
+        //latest row before the missing range key
+        Assertions.checkEquals(1, rows.get(4).getValue());
+        Assertions.checkEquals(2, rows.get(5).getValue());
+        Assertions.checkEquals(4, rows.get(6).getValue());
+        table.close();
+    }
+
+    @Test
+    public void testRangeSnapshot() {
+        final File directory = RangeTableTestFixtures.newDirectory("testRangeSnapshot");
+        final ADelegateRangeTable<String, FDate, Integer> table = RangeTableTestFixtures.newTable(directory,
+                newValueSerde(new AtomicInteger()), false);
+        table.put("a", 0);
+        for (int i = 1; i <= 4; i++) {
+            table.put("a", FDate.valueOf(i), i);
+            table.put("b", FDate.valueOf(i), -i);
+        }
+        final ICloseableIterator<TableRow<String, FDate, Integer>> snapshot = table.rangeSnapshot("a", null,
+                FDate.valueOf(3));
+        //changes after the snapshot was taken are not visible to it
+        table.put("a", FDate.valueOf(2), 20);
+        table.delete("a", FDate.valueOf(3));
+        table.put("a", FDate.valueOf(2).addMilliseconds(1), 25);
+        final List<TableRow<String, FDate, Integer>> rows = RangeTableTestFixtures.toList(snapshot);
+        Assertions.checkEquals(4, rows.size());
+        //the rows are restored from the raw keys of the snapshot
+        Assertions.checkEquals("a", rows.get(0).getHashKey());
+        Assertions.checkNull(rows.get(0).getRangeKey());
+        Assertions.checkEquals(0, rows.get(0).getValue());
+        for (int i = 1; i < rows.size(); i++) {
+            Assertions.checkEquals("a", rows.get(i).getHashKey());
+            Assertions.checkEquals(FDate.valueOf(i), rows.get(i).getRangeKey());
+            Assertions.checkEquals(i, rows.get(i).getValue());
+        }
+
+        Assertions.checkEquals(Arrays.asList(1, 20, 25, 4),
+                RangeTableTestFixtures.toList(table.rangeSnapshotValues("a", FDate.valueOf(1), null)));
+        table.close();
+    }
+
+    @Test
+    public void testFormatVersionChangeResetsTable() {
+        final File directory = RangeTableTestFixtures.newDirectory("testFormatVersionChangeResetsTable");
+        final ADelegateRangeTable<String, FDate, Integer> table = RangeTableTestFixtures.newVersionedTable(directory,
+                "table", "1");
+        table.put("key", FDate.valueOf(1), 1);
+        table.close();
+        //same version is only compared, the table is kept
+        final ADelegateRangeTable<String, FDate, Integer> sameVersion = RangeTableTestFixtures.newVersionedTable(
+                directory, "table", "1");
+        Assertions.checkEquals(1, sameVersion.get("key", FDate.valueOf(1)));
+        //reopening the same instance uses the cached version check
+        sameVersion.close();
+        Assertions.checkEquals(1, sameVersion.get("key", FDate.valueOf(1)));
+        sameVersion.close();
+
+        final ADelegateRangeTable<String, FDate, Integer> changedVersion = RangeTableTestFixtures.newVersionedTable(
+                directory, "table", "2");
+        Assertions.checkNull(changedVersion.get("key", FDate.valueOf(1)));
+        changedVersion.put("key", FDate.valueOf(1), 2);
+        changedVersion.close();
+        final ADelegateRangeTable<String, FDate, Integer> reopened = RangeTableTestFixtures.newVersionedTable(
+                directory, "table", "2");
+        Assertions.checkEquals(2, reopened.get("key", FDate.valueOf(1)));
+        reopened.close();
+    }
+
+    @Test
+    public void testWarmup() throws InterruptedException {
+        final File directory = RangeTableTestFixtures.newDirectory("testWarmup");
+        final List<ADelegateRangeTable<String, FDate, Integer>> tables = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final ADelegateRangeTable<String, FDate, Integer> table = RangeTableTestFixtures.newVersionedTable(
+                    directory, "table" + i, "1");
+            table.put("key", FDate.valueOf(i), i);
+            table.close();
+            tables.add(table);
+        }
+        final RangeTableWarmup warmup = new RangeTableWarmup(tables).start();
+        warmup.awaitFinished();
+        Assertions.checkTrue(warmup.isFinished());
+        Assertions.checkNotNull(warmup.getDuration());
+        Assertions.checkEquals(tables.size(), warmup.getOpenDurations().size());
+        for (int i = 0; i < tables.size(); i++) {
+            final ADelegateRangeTable<String, FDate, Integer> table = tables.get(i);
+            Assertions.checkNotNull(table.getOpenDuration());
+            Assertions.checkEquals(i, table.get("key", FDate.valueOf(i)));
+            table.close();
+        }
+    }
+
+    @Test
+    public void testOptionsReachLevelDbOpen() {
+        final File directory = RangeTableTestFixtures.newDirectory("testOptionsReachLevelDbOpen");
+        final String maxOpenFilesProperty = RangeTableOptions.class.getName() + ".MAX_OPEN_FILES"
+                + RangeTableOptions.TABLE_CONFIG_PREFIX + "optionsTable";
+        System.setProperty(maxOpenFilesProperty, "123");
+        try {
+            final List<Pair<File, Options>> opened = new ArrayList<Pair<File, Options>>();
+            final RangeTableOptions rangeTableOptions = new RangeTableOptions(1024L * 1024L, 2 * 1024 * 1024,
+                    8 * 1024, 500, false);
+            final ADelegateRangeTable<String, FDate, Integer> table = new ADelegateRangeTable<String, FDate, Integer>(
+                    "optionsTable") {
+                @Override
+                protected boolean allowPutWithoutBatch() {
+                    return true;
+                }
+
+                @Override
+                protected File getDirectory() {
+                    return directory;
+                }
+
+                @Override
+                protected Serde<Integer> newValueSerde() {
+                    return IntegerSerde.get;
+                }
+
+                @Override
+                protected RangeTableOptions newOptions() {
+                    return rangeTableOptions;
+                }
+
+                @Override
+                protected IRangeTableEngine newEngine() {
+                    return newRecordingEngine(opened);
+                }
+            };
+            table.put("key", FDate.valueOf(1), 1);
+            Assertions.checkEquals(1, opened.size());
+            final Options options = opened.get(0).getSecond();
+            Assertions.checkEquals(1024L * 1024L, options.cacheSize());
+            Assertions.checkEquals(2 * 1024 * 1024, options.writeBufferSize());
+            Assertions.checkEquals(8 * 1024, options.blockSize());
+            //the system property overrides the option of the table
+            Assertions.checkEquals(123, options.maxOpenFiles());
+            Assertions.checkEquals(CompressionType.NONE, options.compressionType());
+            final File path = opened.get(0).getFirst();
+            final File optionsFile = new File(path.getParentFile(),
+                    path.getName() + "." + RangeTableOptions.class.getSimpleName());
+            Assertions.checkTrue(optionsFile.exists());
+            table.close();
+        } finally {
+            System.clearProperty(maxOpenFilesProperty);
+        }
+    }
+
+    /**
+     * Opens the tables with the native LevelDB and records the options that were used.
+     */
+    private IRangeTableEngine newRecordingEngine(final List<Pair<File, Options>> opened) {
+        return new ALevelDbRangeTableEngine() {
+            @Override
+            protected DBFactory getFactory() {
+                return new DBFactory() {
+                    @Override
+                    public DB open(final File path, final Options options) throws IOException {
+                        opened.add(Pair.of(path, options));
+                        return JniDBFactory.factory.open(path, options);
+                    }
+
+                    @Override
+                    public void destroy(final File path, final Options options) throws IOException {
+                        JniDBFactory.factory.destroy(path, options);
+                    }
+
+                    @Override
+                    public void repair(final File path, final Options options) throws IOException {
+                        JniDBFactory.factory.repair(path, options);
+                    }
+                };
+            }
+        };
+    }
+
+    private void awaitFlushed(final ADelegateRangeTable<?, ?, ?> table) throws InterruptedException {
+        final long start = System.currentTimeMillis();
+        while (table.hasPendingWrites()) {
+            if (System.currentTimeMillis() - start > TIMEOUT_MILLIS) {
+                Assertions.fail("pending writes were not flushed in the background");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Supports null values and fails the given number of writes.
+     */
+    private Serde<Integer> newValueSerde(final AtomicInteger failures) {
+        return new Serde<Integer>() {
+            @Override
+            public Integer fromBytes(final byte[] bytes) {
+                if (bytes.length == 0) {
+                    return null;
+                }
+                return IntegerSerde.get.fromBytes(bytes);
+            }
+
+            @Override
+            public byte[] toBytes(final Integer obj) {
+                if (failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("simulated flush failure");
+                }
+                if (obj == null) {
+                    return new byte[0];
+                }
+                return IntegerSerde.get.toBytes(obj);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,163 @@
+package de.invesdwin.context.persistence.timeseries.ezdb;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.junit.Test;
+
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.bean.tuple.Pair;
+import de.invesdwin.util.time.fdate.FDate;
+import ezdb.serde.IntegerSerde;
+import ezdb.serde.Serde;
+
+// CHECKSTYLE:OFF
+@NotThreadSafe
+public class AExpiringDelegateRangeTableTest extends ATest {
+    //CHECKSTYLE:ON
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        final File directory = RangeTableTestFixtures.newDirectory("testExpiry");
+        final AtomicLong expiredBeforeMillis = new AtomicLong(Long.MIN_VALUE);
+        final AExpiringDelegateRangeTable<String, FDate, Integer> table = newTable(directory, expiredBeforeMillis,
+                new AtomicLong(Long.MAX_VALUE));
+        table.put("key", FDate.valueOf(1), 1);
+        Assertions.checkEquals(1, table.get("key", FDate.valueOf(1)));
+
+        expireAllWrittenRows(expiredBeforeMillis);
+        Assertions.checkNull(table.get("key", FDate.valueOf(1)));
+        final Integer loaded = table.getOrLoad("key", FDate.valueOf(1),
+                new Function<Pair<String, FDate>, Integer>() {
+                    @Override
+                    public Integer apply(final Pair<String, FDate> t) {
+                        return 2;
+                    }
+                });
+        Assertions.checkEquals(2, loaded);
+        //the reloaded row was written after the expiry
+        Assertions.checkEquals(2, table.get("key", FDate.valueOf(1)));
+        table.close();
+    }
+
+    @Test
+    public void testRangeIterationBeforeSweep() throws InterruptedException {
+        final File directory = RangeTableTestFixtures.newDirectory("testRangeIterationBeforeSweep");
+        final AtomicLong expiredBeforeMillis = new AtomicLong(Long.MIN_VALUE);
+        final AExpiringDelegateRangeTable<String, FDate, Integer> table = newTable(directory, expiredBeforeMillis,
+                new AtomicLong(Long.MAX_VALUE));
+        table.put("key", FDate.valueOf(1), 1);
+        expireAllWrittenRows(expiredBeforeMillis);
+        table.put("key", FDate.valueOf(2), 2);
+        //expired rows that were not swept yet are skipped
+        Assertions.checkEquals(Arrays.asList(2), RangeTableTestFixtures.toList(table.rangeValues("key")));
+        Assertions.checkEquals(Arrays.asList(2), RangeTableTestFixtures.toList(table.rangeReverseValues("key")));
+        Assertions.checkEquals(Arrays.asList(2),
+                RangeTableTestFixtures.toList(table.rangeSnapshotValues("key", null, null)));
+        table.close();
+    }
+
+    @Test
+    public void testSweep() throws InterruptedException {
+        final File directory = RangeTableTestFixtures.newDirectory("testSweep");
+        final AtomicLong expiredBeforeMillis = new AtomicLong(Long.MIN_VALUE);
+        final AtomicLong sweepIntervalMillis = new AtomicLong(Long.MAX_VALUE);
+        final AExpiringDelegateRangeTable<String, FDate, Integer> table = newTable(directory, expiredBeforeMillis,
+                sweepIntervalMillis);
+        for (int i = 0; i < 100; i++) {
+            table.put("key", FDate.valueOf(i), i);
+        }
+        expireAllWrittenRows(expiredBeforeMillis);
+        //reads do not schedule the sweeper
+        sweepIntervalMillis.set(0);
+        Assertions.checkEquals(Arrays.asList(), RangeTableTestFixtures.toList(table.rangeValues("key")));
+        Assertions.checkNull(table.getLastSweepTime());
+
+        //the next put schedules the sweeper
+        table.put("key", FDate.valueOf(100), 100);
+        final long start = System.currentTimeMillis();
+        while (table.getLastSweepTime() == null) {
+            if (System.currentTimeMillis() - start > TIMEOUT_MILLIS) {
+                Assertions.fail("expired rows were not swept");
+            }
+            Thread.sleep(10);
+        }
+        //rows that were not swept would be visible again now
+        expiredBeforeMillis.set(Long.MIN_VALUE);
+        Assertions.checkEquals(Arrays.asList(100), RangeTableTestFixtures.toList(table.rangeValues("key")));
+        table.close();
+    }
+
+    @Test
+    public void testResetOfTableWithoutFormatVersion() {
+        final File directory = RangeTableTestFixtures.newDirectory("testResetOfTableWithoutFormatVersion");
+        final ADelegateRangeTable<String, FDate, Integer> plainTable = RangeTableTestFixtures.newTable(directory,
+                "table", IntegerSerde.get, false, null);
+        plainTable.put("key", FDate.valueOf(1), 1);
+        plainTable.close();
+
+        final AExpiringDelegateRangeTable<String, FDate, Integer> table = newTable(directory,
+                new AtomicLong(Long.MIN_VALUE), new AtomicLong(Long.MAX_VALUE));
+        //the old row is gone instead of being returned with an invalid write time
+        Assertions.checkTrue(RangeTableTestFixtures.toList(table.rangeValues("key")).isEmpty());
+        table.put("key", FDate.valueOf(1), 1);
+        table.close();
+
+        final AExpiringDelegateRangeTable<String, FDate, Integer> reopened = newTable(directory,
+                new AtomicLong(Long.MIN_VALUE), new AtomicLong(Long.MAX_VALUE));
+        Assertions.checkEquals(1, reopened.get("key", FDate.valueOf(1)));
+        reopened.close();
+    }
+
+    /**
+     * Rows written after this call are not expired.
+     */
+    private void expireAllWrittenRows(final AtomicLong expiredBeforeMillis) throws InterruptedException {
+        Thread.sleep(2);
+        expiredBeforeMillis.set(System.currentTimeMillis());
+        Thread.sleep(2);
+    }
+
+    private AExpiringDelegateRangeTable<String, FDate, Integer> newTable(final File directory,
+            final AtomicLong expiredBeforeMillis, final AtomicLong sweepIntervalMillis) {
+        return new AExpiringDelegateRangeTable<String, FDate, Integer>("table") {
+            @Override
+            protected boolean allowPutWithoutBatch() {
+                return true;
+            }
+
+            @Override
+            protected boolean allowHasNext() {
+                return true;
+            }
+
+            @Override
+            protected File getDirectory() {
+                return directory;
+            }
+
+            @Override
+            protected Serde<Integer> newValueSerde() {
+                return IntegerSerde.get;
+            }
+
+            @Override
+            protected boolean isExpired(final FDate writeTime) {
+                return writeTime.millisValue() < expiredBeforeMillis.get();
+            }
+
+            @Override
+            protected long getSweepIntervalMillis() {
+                return sweepIntervalMillis.get();
+            }
+        };
+    }
+
+}
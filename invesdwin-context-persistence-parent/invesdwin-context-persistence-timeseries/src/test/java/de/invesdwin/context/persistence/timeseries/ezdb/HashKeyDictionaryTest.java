@@ -0,0 +1,69 @@
+package de.invesdwin.context.persistence.timeseries.ezdb;
+
+import java.io.File;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.junit.Test;
+
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.time.fdate.FDate;
+import ezdb.serde.Serde;
+
+@NotThreadSafe
+public class HashKeyDictionaryTest extends ATest {
+
+    @Test
+    public void testReadsDoNotAllocateIds() {
+        final File directory = RangeTableTestFixtures.newDirectory("testReadsDoNotAllocateIds");
+        final HashKeyDictionary dictionary = new HashKeyDictionary(directory, "dictionary");
+        final ADelegateRangeTable<String, FDate, Integer> table = newTable(directory, dictionary);
+
+        Assertions.checkNull(table.get("unknown", FDate.valueOf(1)));
+        Assertions.checkNull(table.getLatest("unknown", FDate.valueOf(1)));
+        table.delete("unknown", FDate.valueOf(1));
+        table.deleteRange("unknown");
+        Assertions.checkEquals(HashKeyDictionary.ABSENT_ID, dictionary.getId("unknown"));
+
+        table.put("known", FDate.valueOf(1), 1);
+        final int id = dictionary.getId("known");
+        Assertions.checkTrue(id >= 0);
+        Assertions.checkEquals(1, table.get("known", FDate.valueOf(1)));
+        Assertions.checkNull(table.get("unknown", FDate.valueOf(1)));
+        table.close();
+        dictionary.close();
+
+        final HashKeyDictionary reopened = new HashKeyDictionary(directory, "dictionary");
+        Assertions.checkEquals(id, reopened.getId("known"));
+        Assertions.checkEquals(HashKeyDictionary.ABSENT_ID, reopened.getId("unknown"));
+        Assertions.checkEquals("known", reopened.getHashKey(id));
+        reopened.close();
+    }
+
+    private ADelegateRangeTable<String, FDate, Integer> newTable(final File directory,
+            final HashKeyDictionary dictionary) {
+        return new ADelegateRangeTable<String, FDate, Integer>("table") {
+            @Override
+            protected boolean allowPutWithoutBatch() {
+                return true;
+            }
+
+            @Override
+            protected File getDirectory() {
+                return directory;
+            }
+
+            @Override
+            protected Serde<String> newHashKeySerde() {
+                return dictionary.getSerde();
+            }
+
+            @Override
+            protected void onPutHashKey(final String hashKey) {
+                dictionary.getOrCreateId(hashKey);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,97 @@
+package de.invesdwin.context.persistence.timeseries.ezdb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.concurrent.Immutable;
+
+import org.apache.commons.io.FileUtils;
+
+import de.invesdwin.context.ContextProperties;
+import de.invesdwin.util.collections.iterable.ICloseableIterator;
+import de.invesdwin.util.time.fdate.FDate;
+import ezdb.serde.IntegerSerde;
+import ezdb.serde.Serde;
+
+/**
+ * Shared setup of the range table tests.
+ */
+@Immutable
+final class RangeTableTestFixtures {
+
+    private RangeTableTestFixtures() {}
+
+    /**
+     * Returns an empty directory, data of a previous run gets deleted.
+     */
+    static File newDirectory(final String name) {
+        final File directory = new File(ContextProperties.TEMP_DIRECTORY, name);
+        FileUtils.deleteQuietly(directory);
+        return directory;
+    }
+
+    /**
+     * Drains and closes the iterator.
+     */
+    static <T> List<T> toList(final ICloseableIterator<T> iterator) {
+        final List<T> list = new ArrayList<T>();
+        try {
+            while (iterator.hasNext()) {
+                list.add(iterator.next());
+            }
+        } finally {
+            iterator.close();
+        }
+        return list;
+    }
+
+    static ADelegateRangeTable<String, FDate, Integer> newTable(final File directory,
+            final Serde<Integer> valueSerde, final boolean writeCoalescing) {
+        return newTable(directory, "table", valueSerde, writeCoalescing, null);
+    }
+
+    static ADelegateRangeTable<String, FDate, Integer> newVersionedTable(final File directory, final String name,
+            final String formatVersion) {
+        return newTable(directory, name, IntegerSerde.get, false, formatVersion);
+    }
+
+    /**
+     * The table allows puts without a batch and hasNext on its iterators.
+     */
+    static ADelegateRangeTable<String, FDate, Integer> newTable(final File directory, final String name,
+            final Serde<Integer> valueSerde, final boolean writeCoalescing, final String formatVersion) {
+        return new ADelegateRangeTable<String, FDate, Integer>(name) {
+            @Override
+            protected boolean allowPutWithoutBatch() {
+                return true;
+            }
+
+            @Override
+            protected boolean allowHasNext() {
+                return true;
+            }
+
+            @Override
+            protected boolean isWriteCoalescingEnabled() {
+                return writeCoalescing;
+            }
+
+            @Override
+            protected File getDirectory() {
+                return directory;
+            }
+
+            @Override
+            protected Serde<Integer> newValueSerde() {
+                return valueSerde;
+            }
+
+            @Override
+            protected String getFormatVersion() {
+                return formatVersion;
+            }
+        };
+    }
+
+}
@@ -1,15 +1,18 @@
 package de.invesdwin.context.persistence.timeseries.ipc;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
+import org.junit.Assume;
 import org.junit.Test;
 
 import de.invesdwin.context.test.ATest;
 import de.invesdwin.util.assertions.Assertions;
 import de.invesdwin.util.time.Instant;
 import de.invesdwin.util.time.duration.Duration;
+import de.invesdwin.util.time.fdate.FTimeUnit;
 
 // CHECKSTYLE:OFF
 @NotThreadSafe
@@ -46,4 +49,110 @@ public class ASpinWaitTest extends ATest {
         Assertions.assertThat(waitingSince.toDuration()).isLessThan(maxWait);
     }
 
+    @Test
+    public void testAdaptive() throws IOException {
+        final ASpinWait idleSpinWait = new ASpinWait() {
+
+            @Override
+            protected boolean isConditionFulfilled() {
+                return false;
+            }
+        };
+        Assertions.checkEquals(idleSpinWait.maxUntimedSpins, idleSpinWait.getUntimedSpinBudget());
+        final Duration maxWait = new Duration(10, FTimeUnit.MILLISECONDS);
+        for (int i = 0; i < 20; i++) {
+            Assertions.checkFalse(idleSpinWait.awaitFulfill(new Instant(), maxWait));
+        }
+        Assertions.checkEquals(idleSpinWait.minUntimedSpins, idleSpinWait.getUntimedSpinBudget());
+        Assertions.assertThat(idleSpinWait.getParkInterval())
+                .isGreaterThan(new Duration(idleSpinWait.maxParkIntervalNanos, FTimeUnit.NANOSECONDS));
+        Assertions.checkEquals(20L, idleSpinWait.getTimeoutCount());
+        Assertions.checkEquals(0L, idleSpinWait.getFulfilledCount());
+        Assertions.assertThat(idleSpinWait.getParkCount()).isGreaterThan(0L);
+
+        final AtomicInteger checks = new AtomicInteger();
+        final ASpinWait busySpinWait = new ASpinWait() {
+
+            @Override
+            protected boolean isConditionFulfilled() {
+                //fulfilled by the first untimed spin, immediate fulfills are only published every now and then
+                return checks.incrementAndGet() % 2 == 0;
+            }
+        };
+        for (int i = 0; i < 20; i++) {
+            Assertions.checkTrue(busySpinWait.awaitFulfill(new Instant(), maxWait));
+        }
+        Assertions.checkEquals(busySpinWait.maxUntimedSpins, busySpinWait.getUntimedSpinBudget());
+        Assertions.checkEquals(20L, busySpinWait.getFulfilledCount());
+        Assertions.checkEquals(0L, busySpinWait.getParkCount());
+        busySpinWait.resetStatistics();
+        Assertions.checkEquals(0L, busySpinWait.getFulfilledCount());
+        Assertions.checkTrue(busySpinWait.awaitFulfill(new Instant(), maxWait));
+        Assertions.checkEquals(1L, busySpinWait.getFulfilledCount());
+    }
+
+    @Test
+    public void testImmediateFulfillsArePublishedLazily() throws IOException {
+        final AtomicInteger checks = new AtomicInteger();
+        final AtomicInteger fulfillAfterChecks = new AtomicInteger();
+        final ASpinWait spinWait = new ASpinWait() {
+
+            @Override
+            protected boolean isConditionFulfilled() {
+                return checks.incrementAndGet() > fulfillAfterChecks.get();
+            }
+        };
+        final Duration maxWait = new Duration(10, FTimeUnit.MILLISECONDS);
+        for (int i = 0; i < 20; i++) {
+            Assertions.checkTrue(spinWait.awaitFulfill(new Instant(), maxWait));
+        }
+        Assertions.checkEquals(0L, spinWait.getFulfilledCount());
+        //the next wait that has to spin publishes the immediate fulfills too
+        fulfillAfterChecks.set(checks.get() + 1);
+        Assertions.checkTrue(spinWait.awaitFulfill(new Instant(), maxWait));
+        Assertions.checkEquals(21L, spinWait.getFulfilledCount());
+    }
+
+    @Test
+    public void testTimeoutsAreExcludedFromAverage() throws IOException {
+        final ASpinWait spinWait = new ASpinWait() {
+
+            @Override
+            protected boolean isConditionFulfilled() {
+                return false;
+            }
+        };
+        for (int i = 0; i < 10; i++) {
+            Assertions.checkFalse(spinWait.awaitFulfill(new Instant(), new Duration(10, FTimeUnit.MILLISECONDS)));
+        }
+        Assertions.checkEquals(10L, spinWait.getTimeoutCount());
+        Assertions.checkEquals(0L, spinWait.getAverageFulfillLatency().longValue(FTimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testTimedSpinKeepsSpinBudget() throws IOException {
+        final AtomicInteger checks = new AtomicInteger();
+        final AtomicInteger fulfillAfterChecks = new AtomicInteger();
+        final ASpinWait spinWait = new ASpinWait() {
+
+            @Override
+            protected boolean isConditionFulfilled() {
+                return checks.incrementAndGet() > fulfillAfterChecks.get();
+            }
+
+            @Override
+            public Duration determineMaxTimedSpinDuration() {
+                //spin for the whole wait after the untimed spins
+                return Duration.ONE_SECOND;
+            }
+        };
+        Assume.assumeTrue(spinWait.spinAllowed);
+        final int spinBudget = spinWait.getUntimedSpinBudget();
+        //the first check, the untimed spins and two timed spins fail
+        fulfillAfterChecks.set(1 + spinBudget + 2);
+        Assertions.checkTrue(spinWait.awaitFulfill(new Instant(), new Duration(100, FTimeUnit.MILLISECONDS)));
+        Assertions.checkEquals(0L, spinWait.getParkCount());
+        Assertions.checkEquals(spinBudget, spinWait.getUntimedSpinBudget());
+    }
+
 }
@@ -8,28 +8,43 @@ import java.net.SocketAddress;
 import java.util.ArrayDeque;
 import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.SynchronousQueue;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
 import org.apache.commons.io.FileUtils;
+import org.junit.Assume;
 import org.junit.Ignore;
 import org.junit.Test;
 
 import de.invesdwin.context.ContextProperties;
 import de.invesdwin.context.persistence.timeseries.ipc.mapped.MappedSynchronousReader;
 import de.invesdwin.context.persistence.timeseries.ipc.mapped.MappedSynchronousWriter;
+import de.invesdwin.context.persistence.timeseries.ipc.mapped.ring.RingBufferSynchronousReader;
+import de.invesdwin.context.persistence.timeseries.ipc.mapped.ring.RingBufferSynchronousWriter;
 import de.invesdwin.context.persistence.timeseries.ipc.pipe.PipeSynchronousReader;
 import de.invesdwin.context.persistence.timeseries.ipc.pipe.PipeSynchronousWriter;
 import de.invesdwin.context.persistence.timeseries.ipc.queue.QueueSynchronousReader;
 import de.invesdwin.context.persistence.timeseries.ipc.queue.QueueSynchronousWriter;
 import de.invesdwin.context.persistence.timeseries.ipc.queue.blocking.BlockingQueueSynchronousReader;
 import de.invesdwin.context.persistence.timeseries.ipc.queue.blocking.BlockingQueueSynchronousWriter;
+import de.invesdwin.context.persistence.timeseries.ipc.rpc.IRpcRequestHandler;
+import de.invesdwin.context.persistence.timeseries.ipc.rpc.RpcClient;
+import de.invesdwin.context.persistence.timeseries.ipc.rpc.RpcServer;
 import de.invesdwin.context.persistence.timeseries.ipc.socket.SocketSynchronousReader;
 import de.invesdwin.context.persistence.timeseries.ipc.socket.SocketSynchronousWriter;
+import de.invesdwin.context.persistence.timeseries.ipc.socket.nio.NioSocketSynchronousReader;
+import de.invesdwin.context.persistence.timeseries.ipc.socket.nio.NioSocketSynchronousWriter;
+import de.invesdwin.context.persistence.timeseries.ipc.socket.nio.server.NioSocketSynchronousServer;
+import de.invesdwin.context.persistence.timeseries.ipc.socket.nio.server.QueueSynchronousServerHandler;
 import de.invesdwin.context.persistence.timeseries.ipc.socket.udp.DatagramSocketSynchronousReader;
 import de.invesdwin.context.persistence.timeseries.ipc.socket.udp.DatagramSocketSynchronousWriter;
+import de.invesdwin.context.persistence.timeseries.ipc.socket.unix.UnixDomainSocketSynchronousReader;
+import de.invesdwin.context.persistence.timeseries.ipc.socket.unix.UnixDomainSocketSynchronousWriter;
+import de.invesdwin.context.persistence.timeseries.ipc.socket.unix.UnixDomainSockets;
 import de.invesdwin.context.persistence.timeseries.serde.FDateSerde;
 import de.invesdwin.context.test.ATest;
 import de.invesdwin.util.assertions.Assertions;
@@ -59,11 +74,14 @@ public class ChannelPerformanceTest extends ATest {
     private static final int MESSAGE_TYPE = 1;
     private static final int VALUES = DEBUG ? 10 : 1_000_000;
     private static final int FLUSH_INTERVAL = Math.max(10, VALUES / 10);
+    private static final int RPC_MESSAGE_SIZE = 64 * 1024;
+    private static final int RPC_PIPELINE_DEPTH = 1000;
     private static final Duration MAX_WAIT_DURATION = new Duration(10, DEBUG ? FTimeUnit.DAYS : FTimeUnit.SECONDS);
 
     private enum FileChannelType {
         PIPE,
-        MAPPED;
+        MAPPED,
+        RING_BUFFER;
     }
 
     private File newFile(final String name, final boolean tmpfs, final FileChannelType pipes) {
@@ -78,7 +96,7 @@ public class ChannelPerformanceTest extends ATest {
         Assertions.checkFalse(file.exists(), "%s", file);
         if (pipes == FileChannelType.PIPE) {
             Assertions.checkTrue(SynchronousChannels.createNamedPipe(file));
-        } else if (pipes == FileChannelType.MAPPED) {
+        } else if (pipes == FileChannelType.MAPPED || pipes == FileChannelType.RING_BUFFER) {
             try {
                 FileUtils.touch(file);
             } catch (final IOException e) {
@@ -127,6 +145,24 @@ public class ChannelPerformanceTest extends ATest {
         runPerformanceTest(pipes, requestFile, responseFile, null, null);
     }
 
+    @Test
+    public void testRingBufferPerformance() throws InterruptedException {
+        final boolean tmpfs = false;
+        final FileChannelType pipes = FileChannelType.RING_BUFFER;
+        final File requestFile = newFile("testRingBufferPerformance_request.pipe", tmpfs, pipes);
+        final File responseFile = newFile("testRingBufferPerformance_response.pipe", tmpfs, pipes);
+        runPerformanceTest(pipes, requestFile, responseFile, null, null);
+    }
+
+    @Test
+    public void testRingBufferPerformanceWithTmpfs() throws InterruptedException {
+        final boolean tmpfs = true;
+        final FileChannelType pipes = FileChannelType.RING_BUFFER;
+        final File requestFile = newFile("testRingBufferPerformanceWithTmpfs_request.pipe", tmpfs, pipes);
+        final File responseFile = newFile("testRingBufferPerformanceWithTmpfs_response.pipe", tmpfs, pipes);
+        runPerformanceTest(pipes, requestFile, responseFile, null, null);
+    }
+
     @Test
     public void testArrayDequePerformance() throws InterruptedException {
         //ArrayDeque is not threadsafe, thus requires manual synchronization
@@ -220,6 +256,136 @@ public class ChannelPerformanceTest extends ATest {
         executor.awaitTermination();
     }
 
+    @Test
+    public void testNioSocketPerformance() throws InterruptedException {
+        final SocketAddress responseAddress = new InetSocketAddress("localhost", 7878);
+        final SocketAddress requestAddress = new InetSocketAddress("localhost", 7879);
+        runNioSocketPerformanceTest(responseAddress, requestAddress);
+    }
+
+    private void runNioSocketPerformanceTest(final SocketAddress responseAddress, final SocketAddress requestAddress)
+            throws InterruptedException {
+        final ISynchronousWriter responseWriter = new NioSocketSynchronousWriter(responseAddress, true, MESSAGE_SIZE);
+        final ISynchronousReader requestReader = new NioSocketSynchronousReader(requestAddress, true, MESSAGE_SIZE);
+        final WrappedExecutorService executor = Executors.newFixedThreadPool("testNioSocketPerformance", 1);
+        executor.execute(new WriterTask(requestReader, responseWriter));
+        final ISynchronousWriter requestWriter = new NioSocketSynchronousWriter(requestAddress, false, MESSAGE_SIZE);
+        final ISynchronousReader responseReader = new NioSocketSynchronousReader(responseAddress, false,
+                MESSAGE_SIZE);
+        read(requestWriter, responseReader);
+        executor.shutdown();
+        executor.awaitTermination();
+    }
+
+    @Test
+    public void testRpcPerformance() throws InterruptedException, IOException {
+        final File requestFile = newFile("testRpcPerformance_request.pipe", true, FileChannelType.RING_BUFFER);
+        final File responseFile = newFile("testRpcPerformance_response.pipe", true, FileChannelType.RING_BUFFER);
+        try {
+            final RpcServer server = new RpcServer(new RingBufferSynchronousReader(requestFile, RPC_MESSAGE_SIZE),
+                    new RingBufferSynchronousWriter(responseFile, RPC_MESSAGE_SIZE), RPC_MESSAGE_SIZE,
+                    new IRpcRequestHandler() {
+                        @Override
+                        public byte[] handleRequest(final int type, final byte[] request) {
+                            Assertions.checkEquals(type, MESSAGE_TYPE);
+                            return request;
+                        }
+                    });
+            server.open();
+            final RpcClient client = new RpcClient(new RingBufferSynchronousWriter(requestFile, RPC_MESSAGE_SIZE),
+                    new RingBufferSynchronousReader(responseFile, RPC_MESSAGE_SIZE), RPC_MESSAGE_SIZE);
+            client.open();
+            final Instant readsStart = new Instant();
+            //many requests are outstanding at the same time instead of waiting for each response
+            final Queue<Future<byte[]>> outstanding = new ArrayDeque<>();
+            FDate prevValue = null;
+            int count = 0;
+            for (final FDate date : newValues()) {
+                outstanding.add(client.request(MESSAGE_TYPE, FDateSerde.GET.toBytes(date)));
+                if (outstanding.size() >= RPC_PIPELINE_DEPTH) {
+                    prevValue = checkRpcResponse(prevValue, outstanding.remove());
+                    count++;
+                }
+            }
+            while (!outstanding.isEmpty()) {
+                prevValue = checkRpcResponse(prevValue, outstanding.remove());
+                count++;
+            }
+            Assertions.checkEquals(count, VALUES);
+            printProgress("RpcFinished", readsStart, VALUES, VALUES);
+            client.close();
+            server.close();
+        } finally {
+            FileUtils.deleteQuietly(requestFile);
+            FileUtils.deleteQuietly(responseFile);
+        }
+    }
+
+    private FDate checkRpcResponse(final FDate prevValue, final Future<byte[]> response)
+            throws InterruptedException {
+        final byte[] responseBytes;
+        try {
+            responseBytes = response.get();
+        } catch (final ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+        Assertions.checkEquals(responseBytes.length, MESSAGE_SIZE);
+        final FDate value = FDateSerde.GET.fromBytes(responseBytes);
+        if (prevValue != null) {
+            Assertions.checkTrue(prevValue.isBefore(value));
+        }
+        return value;
+    }
+
+    @Test
+    public void testNioSocketServerPerformance() throws InterruptedException, IOException {
+        final SocketAddress address = new InetSocketAddress("localhost", 7878);
+        final QueueSynchronousServerHandler handler = new QueueSynchronousServerHandler();
+        final NioSocketSynchronousServer server = new NioSocketSynchronousServer(address, MESSAGE_SIZE, handler);
+        server.open();
+        final WrappedExecutorService executor = Executors.newFixedThreadPool("testNioSocketServerPerformance", 1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Pair<ISynchronousReader, ISynchronousWriter> accepted;
+                try {
+                    accepted = handler.take();
+                } catch (final InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                new WriterTask(accepted.getFirst(), accepted.getSecond()).run();
+            }
+        });
+        //requests and responses share one connection
+        final NioSocketSynchronousWriter requestWriter = new NioSocketSynchronousWriter(address, false, MESSAGE_SIZE);
+        final ISynchronousReader responseReader = new NioSocketSynchronousReader(requestWriter);
+        read(requestWriter, responseReader);
+        executor.shutdown();
+        executor.awaitTermination();
+        server.close();
+    }
+
+    @Test
+    public void testUnixDomainSocketPerformance() throws InterruptedException {
+        Assume.assumeTrue(UnixDomainSockets.isSupported());
+        //the path of a unix domain socket is limited to around 100 characters
+        final File responseFile = new File(ContextProperties.TEMP_DIRECTORY, "response.sock");
+        final File requestFile = new File(ContextProperties.TEMP_DIRECTORY, "request.sock");
+        final ISynchronousWriter responseWriter = new UnixDomainSocketSynchronousWriter(responseFile, true,
+                MESSAGE_SIZE);
+        final ISynchronousReader requestReader = new UnixDomainSocketSynchronousReader(requestFile, true,
+                MESSAGE_SIZE);
+        final WrappedExecutorService executor = Executors.newFixedThreadPool("testUnixDomainSocketPerformance", 1);
+        executor.execute(new WriterTask(requestReader, responseWriter));
+        final ISynchronousWriter requestWriter = new UnixDomainSocketSynchronousWriter(requestFile, false,
+                MESSAGE_SIZE);
+        final ISynchronousReader responseReader = new UnixDomainSocketSynchronousReader(responseFile, false,
+                MESSAGE_SIZE);
+        read(requestWriter, responseReader);
+        executor.shutdown();
+        executor.awaitTermination();
+    }
+
     @Test
     public void testDatagramSocketPerformance() throws InterruptedException {
         final SocketAddress responseAddress = new InetSocketAddress("localhost", 7878);
@@ -283,6 +449,8 @@ public class ChannelPerformanceTest extends ATest {
             return new PipeSynchronousReader(file, MESSAGE_SIZE);
         } else if (pipes == FileChannelType.MAPPED) {
             return new MappedSynchronousReader(file, MESSAGE_SIZE);
+        } else if (pipes == FileChannelType.RING_BUFFER) {
+            return new RingBufferSynchronousReader(file, MESSAGE_SIZE);
         } else {
             throw UnknownArgumentException.newInstance(FileChannelType.class, pipes);
         }
@@ -293,6 +461,8 @@ public class ChannelPerformanceTest extends ATest {
             return new PipeSynchronousWriter(file, MESSAGE_SIZE);
         } else if (pipes == FileChannelType.MAPPED) {
             return new MappedSynchronousWriter(file, MESSAGE_SIZE);
+        } else if (pipes == FileChannelType.RING_BUFFER) {
+            return new RingBufferSynchronousWriter(file, MESSAGE_SIZE);
         } else {
             throw UnknownArgumentException.newInstance(FileChannelType.class, pipes);
         }
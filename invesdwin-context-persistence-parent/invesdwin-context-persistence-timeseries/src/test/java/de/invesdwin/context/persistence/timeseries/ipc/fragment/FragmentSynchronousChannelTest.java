@@ -0,0 +1,86 @@
+package de.invesdwin.context.persistence.timeseries.ipc.fragment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.junit.Test;
+
+import de.invesdwin.context.persistence.timeseries.ipc.SynchronousMessageView;
+import de.invesdwin.context.persistence.timeseries.ipc.queue.QueueSynchronousReader;
+import de.invesdwin.context.persistence.timeseries.ipc.queue.QueueSynchronousWriter;
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.bean.tuple.Pair;
+
+@NotThreadSafe
+public class FragmentSynchronousChannelTest extends ATest {
+
+    private static final int MAX_MESSAGE_SIZE = 64;
+    private static final int MAX_POOLED_BUFFER_SIZE = 256;
+
+    @Test
+    public void testFragmentation() throws IOException {
+        final Queue<Pair<Integer, byte[]>> queue = new ConcurrentLinkedQueue<>();
+        final FragmentSynchronousWriter writer = new FragmentSynchronousWriter(new QueueSynchronousWriter(queue),
+                MAX_MESSAGE_SIZE);
+        final FragmentSynchronousReader reader = new FragmentSynchronousReader(new QueueSynchronousReader(queue)) {
+            @Override
+            protected int getMaxPooledBufferSize() {
+                return MAX_POOLED_BUFFER_SIZE;
+            }
+        };
+        writer.open();
+        reader.open();
+        Assertions.checkFalse(reader.hasNext());
+        Assertions.checkNull(reader.readMessage());
+
+        final int maxPayloadSize = Fragments.getMaxPayloadSize(MAX_MESSAGE_SIZE);
+        final int[] sizes = { 0, 1, maxPayloadSize, maxPayloadSize + 1, 10 * maxPayloadSize + 3, 100_000, 10 };
+        for (int i = 0; i < sizes.length; i++) {
+            final byte[] message = newMessage(sizes[i]);
+            writer.write(i, message);
+            for (final Pair<Integer, byte[]> fragment : queue) {
+                Assertions.assertThat(fragment.getSecond().length).isLessThanOrEqualTo(MAX_MESSAGE_SIZE);
+            }
+            Assertions.checkTrue(reader.hasNext());
+            final Pair<Integer, byte[]> read = reader.readMessage();
+            Assertions.checkEquals(i, read.getFirst().intValue());
+            Assertions.checkTrue(Arrays.equals(message, read.getSecond()));
+            Assertions.checkFalse(reader.hasNext());
+            Assertions.checkTrue(queue.isEmpty());
+        }
+
+        //messages are reassembled into a reused buffer
+        writer.write(1, newMessage(MAX_POOLED_BUFFER_SIZE));
+        final SynchronousMessageView first = reader.readMessageView();
+        Assertions.checkEquals(MAX_POOLED_BUFFER_SIZE, first.getLength());
+        final ByteBuffer firstBuffer = first.getBuffer();
+        writer.write(2, newMessage(MAX_POOLED_BUFFER_SIZE / 2));
+        final SynchronousMessageView second = reader.readMessageView();
+        Assertions.checkEquals(2, second.getType());
+        Assertions.checkTrue(Arrays.equals(newMessage(MAX_POOLED_BUFFER_SIZE / 2), second.toBytes()));
+        Assertions.checkTrue(firstBuffer == second.getBuffer());
+
+        writer.close();
+        try {
+            reader.hasNext();
+            Assertions.fail("exception expected");
+        } catch (final IOException e) {
+            //closed by other side
+        }
+    }
+
+    private byte[] newMessage(final int size) {
+        final byte[] message = new byte[size];
+        for (int i = 0; i < size; i++) {
+            message[i] = (byte) i;
+        }
+        return message;
+    }
+
+}
@@ -0,0 +1,54 @@
+package de.invesdwin.context.persistence.timeseries.ipc.mapped;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assume;
+import org.junit.Test;
+
+import de.invesdwin.context.ContextProperties;
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.util.assertions.Assertions;
+
+@NotThreadSafe
+public class MemoryMappedFileTest extends ATest {
+
+    private static final File PROC_SELF_MAPS = new File("/proc/self/maps");
+
+    @Test
+    public void testUnmapReleasesBothMappings() throws Exception {
+        //the mappings of the process are only visible on linux
+        Assume.assumeTrue(PROC_SELF_MAPS.exists());
+        final File file = new File(ContextProperties.TEMP_DIRECTORY, "testUnmapReleasesBothMappings");
+        FileUtils.deleteQuietly(file);
+        final MemoryMappedFile mem = new MemoryMappedFile(file.getAbsolutePath(), 4096);
+        Assertions.checkTrue(mem.isMapped());
+        mem.asByteBuffer().putInt(0, 1);
+        //both mappings share the same memory
+        Assertions.checkEquals(1, mem.getInt(0));
+        Assertions.checkEquals(2, countMappings(file));
+
+        mem.unmap();
+        Assertions.checkFalse(mem.isMapped());
+        Assertions.checkEquals(0, countMappings(file));
+        //a second unmap must not release the memory again
+        mem.unmap();
+        FileUtils.deleteQuietly(file);
+    }
+
+    private int countMappings(final File file) throws IOException {
+        final String path = file.getCanonicalPath();
+        int count = 0;
+        for (final String line : FileUtils.readLines(PROC_SELF_MAPS, StandardCharsets.UTF_8)) {
+            if (line.endsWith(" " + path)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
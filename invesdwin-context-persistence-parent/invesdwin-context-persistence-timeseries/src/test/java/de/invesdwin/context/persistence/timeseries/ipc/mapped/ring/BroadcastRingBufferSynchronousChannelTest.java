@@ -0,0 +1,275 @@
+package de.invesdwin.context.persistence.timeseries.ipc.mapped.ring;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.junit.Test;
+
+import de.invesdwin.context.persistence.timeseries.ipc.SynchronousMessageView;
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.bean.tuple.Pair;
+import de.invesdwin.util.time.duration.Duration;
+import de.invesdwin.util.time.fdate.FTimeUnit;
+
+@NotThreadSafe
+public class BroadcastRingBufferSynchronousChannelTest extends ATest {
+
+    private static final int MAX_MESSAGE_SIZE = 64;
+    private static final int CAPACITY = 256;
+    private static final int MAX_READERS = 2;
+
+    @Test
+    public void testMultipleReadersWithWrapAround() throws IOException {
+        final File file = RingBufferTestFixtures.newFile("testMultipleReadersWithWrapAround");
+        final BroadcastRingBufferSynchronousWriter writer = new BroadcastRingBufferSynchronousWriter(file,
+                MAX_MESSAGE_SIZE, CAPACITY, MAX_READERS, true);
+        writer.open();
+        final BroadcastRingBufferSynchronousReader reader1 = new BroadcastRingBufferSynchronousReader(file,
+                MAX_MESSAGE_SIZE, CAPACITY, MAX_READERS);
+        reader1.open();
+        final BroadcastRingBufferSynchronousReader reader2 = new BroadcastRingBufferSynchronousReader(file,
+                MAX_MESSAGE_SIZE, CAPACITY, MAX_READERS);
+        reader2.open();
+        Assertions.checkFalse(reader1.hasNext());
+        Assertions.checkNull(reader1.readMessage());
+
+        //the buffer wraps around many times with messages of different sizes, thus also with padding records
+        final int count = 100 * writer.getCapacity() / MAX_MESSAGE_SIZE;
+        for (int i = 0; i < count; i++) {
+            final byte[] message = RingBufferTestFixtures.newMessage(i, i % (MAX_MESSAGE_SIZE + 1));
+            writer.write(i, message);
+            assertNextMessage(reader1, i, message);
+            assertNextMessage(reader2, i, message);
+        }
+        Assertions.checkFalse(reader1.hasNext());
+        Assertions.checkFalse(reader2.hasNext());
+        Assertions.checkEquals(0L, reader1.getLostCount());
+        Assertions.checkEquals(0L, reader2.getLostCount());
+
+        //every reader receives all messages, even when they read at different times
+        for (int i = 0; i < 3; i++) {
+            writer.write(i, RingBufferTestFixtures.newMessage(i, MAX_MESSAGE_SIZE));
+        }
+        for (int i = 0; i < 3; i++) {
+            assertNextMessage(reader1, i, RingBufferTestFixtures.newMessage(i, MAX_MESSAGE_SIZE));
+        }
+        for (int i = 0; i < 3; i++) {
+            assertNextMessage(reader2, i, RingBufferTestFixtures.newMessage(i, MAX_MESSAGE_SIZE));
+        }
+
+        writer.close();
+        try {
+            reader1.hasNext();
+            Assertions.fail("exception expected");
+        } catch (final IOException e) {
+            //closed by other side
+        }
+        reader1.close();
+        reader2.close();
+    }
+
+    @Test
+    public void testGatingWriterWaitsForSlowestReader() throws IOException {
+        final File file = RingBufferTestFixtures.newFile("testGatingWriterWaitsForSlowestReader");
+        final BroadcastRingBufferSynchronousWriter writer = new BroadcastRingBufferSynchronousWriter(file,
+                MAX_MESSAGE_SIZE, CAPACITY, MAX_READERS, true) {
+            @Override
+            protected Duration getBackPressureTimeout() {
+                return new Duration(100, FTimeUnit.MILLISECONDS);
+            }
+        };
+        writer.open();
+        final BroadcastRingBufferSynchronousReader fastReader = new BroadcastRingBufferSynchronousReader(file,
+                MAX_MESSAGE_SIZE, CAPACITY, MAX_READERS);
+        fastReader.open();
+        final BroadcastRingBufferSynchronousReader slowReader = new BroadcastRingBufferSynchronousReader(file,
+                MAX_MESSAGE_SIZE, CAPACITY, MAX_READERS);
+        slowReader.open();
+
+        int written = 0;
+        try {
+            while (written < writer.getCapacity()) {
+                writer.write(written, RingBufferTestFixtures.newMessage(written, MAX_MESSAGE_SIZE));
+                assertNextMessage(fastReader, written, RingBufferTestFixtures.newMessage(written, MAX_MESSAGE_SIZE));
+                written++;
+            }
+            Assertions.fail("buffer full expected");
+        } catch (final IOException e) {
+            //the slow reader did not free up space
+        }
+        Assertions.checkTrue(written > 0);
+        //nothing was lost for the slow reader
+        for (int i = 0; i < written; i++) {
+            assertNextMessage(slowReader, i, RingBufferTestFixtures.newMessage(i, MAX_MESSAGE_SIZE));
+        }
+        Assertions.checkFalse(slowReader.hasNext());
+        writer.write(written, RingBufferTestFixtures.newMessage(written, MAX_MESSAGE_SIZE));
+        assertNextMessage(fastReader, written, RingBufferTestFixtures.newMessage(written, MAX_MESSAGE_SIZE));
+        assertNextMessage(slowReader, written, RingBufferTestFixtures.newMessage(written, MAX_MESSAGE_SIZE));
+
+        fastReader.close();
+        slowReader.close();
+        writer.close();
+    }
+
+    @Test
+    public void testDeadReaderSlotIsReclaimed() throws IOException, InterruptedException {
+        final File file = RingBufferTestFixtures.newFile("testDeadReaderSlotIsReclaimed");
+        final long readerTimeoutMillis = 200;
+        final BroadcastRingBufferSynchronousWriter writer = new BroadcastRingBufferSynchronousWriter(file,
+                MAX_MESSAGE_SIZE, CAPACITY, 1, true) {
+            @Override
+            protected long getReaderTimeoutMillis() {
+                return readerTimeoutMillis;
+            }
+        };
+        writer.open();
+        //simulates a crashed reader process that never polls and never closes its slot
+        final BroadcastRingBufferSynchronousReader deadReader = newReader(file, readerTimeoutMillis);
+        deadReader.open();
+        final BroadcastRingBufferSynchronousReader tooEarlyReader = newReader(file, readerTimeoutMillis);
+        try {
+            tooEarlyReader.open();
+            Assertions.fail("exception expected");
+        } catch (final IOException e) {
+            //the only slot is still in use
+        }
+
+        //the gating writer does not wait for the dead reader forever
+        for (int i = 0; i < writer.getCapacity() / MAX_MESSAGE_SIZE * 2; i++) {
+            writer.write(i, RingBufferTestFixtures.newMessage(i, MAX_MESSAGE_SIZE));
+        }
+
+        Thread.sleep(readerTimeoutMillis * 2);
+        final BroadcastRingBufferSynchronousReader newReader = newReader(file, readerTimeoutMillis);
+        newReader.open();
+        try {
+            deadReader.hasNext();
+            Assertions.fail("exception expected");
+        } catch (final IOException e) {
+            //the slot of the dead reader was reclaimed
+        }
+        //closing the dead reader does not free the slot of the new reader
+        deadReader.close();
+        writer.write(1, RingBufferTestFixtures.newMessage(1, 1));
+        assertNextMessage(newReader, 1, RingBufferTestFixtures.newMessage(1, 1));
+
+        newReader.close();
+        writer.close();
+    }
+
+    @Test
+    public void testOverwritingWriterSkipsLostMessages() throws IOException {
+        final File file = RingBufferTestFixtures.newFile("testOverwritingWriterSkipsLostMessages");
+        final BroadcastRingBufferSynchronousWriter writer = new BroadcastRingBufferSynchronousWriter(file,
+                MAX_MESSAGE_SIZE, CAPACITY, MAX_READERS, false);
+        writer.open();
+        final BroadcastRingBufferSynchronousReader reader = new BroadcastRingBufferSynchronousReader(file,
+                MAX_MESSAGE_SIZE, CAPACITY, MAX_READERS);
+        reader.open();
+        for (int i = 0; i < writer.getCapacity(); i++) {
+            writer.write(i, RingBufferTestFixtures.newMessage(i, MAX_MESSAGE_SIZE));
+        }
+        Assertions.checkTrue(reader.hasNext());
+        Assertions.checkNull(reader.readMessage());
+        Assertions.checkEquals(1L, reader.getLostCount());
+        writer.write(1, RingBufferTestFixtures.newMessage(1, 1));
+        assertNextMessage(reader, 1, RingBufferTestFixtures.newMessage(1, 1));
+        reader.close();
+        writer.close();
+    }
+
+    @Test
+    public void testMessageViewValidation() throws IOException {
+        final File file = RingBufferTestFixtures.newFile("testMessageViewValidation");
+        final BroadcastRingBufferSynchronousWriter writer = new BroadcastRingBufferSynchronousWriter(file,
+                MAX_MESSAGE_SIZE, CAPACITY, MAX_READERS, false);
+        writer.open();
+        final BroadcastRingBufferSynchronousReader reader = new BroadcastRingBufferSynchronousReader(file,
+                MAX_MESSAGE_SIZE, CAPACITY, MAX_READERS);
+        reader.open();
+        Assertions.checkNull(reader.readMessageView());
+        Assertions.checkFalse(reader.isMessageViewValid());
+
+        writer.write(1, RingBufferTestFixtures.newMessage(1, MAX_MESSAGE_SIZE));
+        final SynchronousMessageView view = reader.readMessageView();
+        Assertions.checkEquals(1, view.getType());
+        final byte[] copy = view.toBytes();
+        //validate after read
+        Assertions.checkTrue(reader.isMessageViewValid());
+        Assertions.checkTrue(Arrays.equals(RingBufferTestFixtures.newMessage(1, MAX_MESSAGE_SIZE), copy));
+
+        //the overwriting writer does not wait for the view
+        for (int i = 0; i < writer.getCapacity() / MAX_MESSAGE_SIZE; i++) {
+            writer.write(i, RingBufferTestFixtures.newMessage(i, MAX_MESSAGE_SIZE));
+        }
+        Assertions.checkFalse(reader.isMessageViewValid());
+        reader.close();
+        writer.close();
+    }
+
+    @Test
+    public void testMessageViewOfGatingWriterStaysValid() throws IOException {
+        final File file = RingBufferTestFixtures.newFile("testMessageViewOfGatingWriterStaysValid");
+        final BroadcastRingBufferSynchronousWriter writer = new BroadcastRingBufferSynchronousWriter(file,
+                MAX_MESSAGE_SIZE, CAPACITY, MAX_READERS, true) {
+            @Override
+            protected Duration getBackPressureTimeout() {
+                return new Duration(100, FTimeUnit.MILLISECONDS);
+            }
+        };
+        writer.open();
+        final BroadcastRingBufferSynchronousReader reader = new BroadcastRingBufferSynchronousReader(file,
+                MAX_MESSAGE_SIZE, CAPACITY, MAX_READERS);
+        reader.open();
+        writer.write(0, RingBufferTestFixtures.newMessage(0, MAX_MESSAGE_SIZE));
+        final SynchronousMessageView view = reader.readMessageView();
+        try {
+            for (int i = 1; i < writer.getCapacity(); i++) {
+                writer.write(i, RingBufferTestFixtures.newMessage(i, MAX_MESSAGE_SIZE));
+            }
+            Assertions.fail("buffer full expected");
+        } catch (final IOException e) {
+            //the message of the view is only released on the next read
+        }
+        Assertions.checkTrue(reader.isMessageViewValid());
+        Assertions.checkTrue(Arrays.equals(RingBufferTestFixtures.newMessage(0, MAX_MESSAGE_SIZE), view.toBytes()));
+        Assertions.checkEquals(1, reader.readMessageView().getType());
+        reader.close();
+        writer.close();
+    }
+
+    @Test
+    public void testCapacityAboveMaxIsRejected() {
+        final File file = RingBufferTestFixtures.newFile("testCapacityAboveMaxIsRejected");
+        try {
+            new BroadcastRingBufferSynchronousWriter(file, MAX_MESSAGE_SIZE,
+                    ARingBufferSynchronousChannel.MAX_CAPACITY + 1, MAX_READERS, true);
+            Assertions.fail("Exception expected!");
+        } catch (final IllegalArgumentException e) {
+            Assertions.checkNotNull(e);
+        }
+    }
+
+    private BroadcastRingBufferSynchronousReader newReader(final File file, final long readerTimeoutMillis) {
+        return new BroadcastRingBufferSynchronousReader(file, MAX_MESSAGE_SIZE, CAPACITY, 1) {
+            @Override
+            protected long getReaderTimeoutMillis() {
+                return readerTimeoutMillis;
+            }
+        };
+    }
+
+    private void assertNextMessage(final BroadcastRingBufferSynchronousReader reader, final int type,
+            final byte[] message) throws IOException {
+        Assertions.checkTrue(reader.hasNext());
+        final Pair<Integer, byte[]> read = reader.readMessage();
+        Assertions.checkEquals(type, read.getFirst().intValue());
+        Assertions.checkTrue(Arrays.equals(message, read.getSecond()));
+    }
+
+}
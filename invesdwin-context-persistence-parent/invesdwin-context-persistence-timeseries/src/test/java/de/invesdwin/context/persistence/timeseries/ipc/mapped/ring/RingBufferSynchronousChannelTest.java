@@ -0,0 +1,186 @@
+package de.invesdwin.context.persistence.timeseries.ipc.mapped.ring;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.junit.Test;
+
+import de.invesdwin.context.persistence.timeseries.ipc.SynchronousMessageView;
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.bean.tuple.Pair;
+import de.invesdwin.util.time.duration.Duration;
+import de.invesdwin.util.time.fdate.FTimeUnit;
+
+@NotThreadSafe
+public class RingBufferSynchronousChannelTest extends ATest {
+
+    private static final int MAX_MESSAGE_SIZE = 64;
+    private static final int CAPACITY = 256;
+
+    @Test
+    public void testMessageViewWithWrapAround() throws IOException {
+        final File file = RingBufferTestFixtures.newFile("testMessageViewWithWrapAround");
+        final RingBufferSynchronousWriter writer = new RingBufferSynchronousWriter(file, MAX_MESSAGE_SIZE, CAPACITY);
+        writer.open();
+        final RingBufferSynchronousReader reader = new RingBufferSynchronousReader(file, MAX_MESSAGE_SIZE, CAPACITY);
+        reader.open();
+        Assertions.checkNull(reader.readMessageView());
+        final int count = 100 * writer.getCapacity() / MAX_MESSAGE_SIZE;
+        for (int i = 0; i < count; i++) {
+            final byte[] message = RingBufferTestFixtures.newMessage(i, i % (MAX_MESSAGE_SIZE + 1));
+            writer.write(i, message);
+            Assertions.checkTrue(reader.hasNext());
+            final SynchronousMessageView view = reader.readMessageView();
+            Assertions.checkEquals(i, view.getType());
+            Assertions.checkTrue(Arrays.equals(message, view.toBytes()));
+            //the view points into the mapped file instead of being a copy
+            Assertions.checkTrue(view.getBuffer().isDirect());
+        }
+        Assertions.checkFalse(reader.hasNext());
+        reader.close();
+        writer.close();
+    }
+
+    @Test
+    public void testHeldMessageViewIsNotOverwritten() throws IOException {
+        final File file = RingBufferTestFixtures.newFile("testHeldMessageViewIsNotOverwritten");
+        final RingBufferSynchronousWriter writer = new RingBufferSynchronousWriter(file, MAX_MESSAGE_SIZE,
+                CAPACITY) {
+            @Override
+            protected Duration getBackPressureTimeout() {
+                return new Duration(100, FTimeUnit.MILLISECONDS);
+            }
+        };
+        writer.open();
+        final RingBufferSynchronousReader reader = new RingBufferSynchronousReader(file, MAX_MESSAGE_SIZE, CAPACITY);
+        reader.open();
+        final byte[] first = RingBufferTestFixtures.newMessage(0, MAX_MESSAGE_SIZE);
+        writer.write(0, first);
+        final SynchronousMessageView view = reader.readMessageView();
+        int written = 1;
+        try {
+            while (written < writer.getCapacity()) {
+                writer.write(written, RingBufferTestFixtures.newMessage(written, MAX_MESSAGE_SIZE));
+                written++;
+            }
+            Assertions.fail("buffer full expected");
+        } catch (final IOException e) {
+            //the held view is not released before the next read
+        }
+        Assertions.checkTrue(Arrays.equals(first, view.toBytes()));
+        for (int i = 1; i < written; i++) {
+            final SynchronousMessageView next = reader.readMessageView();
+            Assertions.checkEquals(i, next.getType());
+            Assertions.checkTrue(Arrays.equals(RingBufferTestFixtures.newMessage(i, MAX_MESSAGE_SIZE), next.toBytes()));
+        }
+        Assertions.checkNull(reader.readMessageView());
+        //the last view was released, so there is space again
+        writer.write(written, RingBufferTestFixtures.newMessage(written, MAX_MESSAGE_SIZE));
+        reader.close();
+        writer.close();
+    }
+
+    @Test
+    public void testCompetingReadersWithMessageView() throws IOException {
+        final File file = RingBufferTestFixtures.newFile("testCompetingReadersWithMessageView");
+        final RingBufferSynchronousWriter writer = new RingBufferSynchronousWriter(file, MAX_MESSAGE_SIZE, CAPACITY);
+        writer.open();
+        final RingBufferSynchronousReader viewReader = new RingBufferSynchronousReader(file, MAX_MESSAGE_SIZE,
+                CAPACITY);
+        viewReader.open();
+        final RingBufferSynchronousReader copyReader = new RingBufferSynchronousReader(file, MAX_MESSAGE_SIZE,
+                CAPACITY);
+        copyReader.open();
+        writer.write(0, RingBufferTestFixtures.newMessage(0, 1));
+        writer.write(1, RingBufferTestFixtures.newMessage(1, 1));
+
+        final SynchronousMessageView view = viewReader.readMessageView();
+        Assertions.checkEquals(0, view.getType());
+        //the held message is neither read twice nor skipped by the competing reader
+        Assertions.checkNull(copyReader.readMessage());
+        Assertions.checkNull(copyReader.readMessageView());
+        Assertions.checkTrue(Arrays.equals(RingBufferTestFixtures.newMessage(0, 1), view.toBytes()));
+        //the next read of the view reader releases the message
+        Assertions.checkEquals(1, viewReader.readMessageView().getType());
+        Assertions.checkNull(copyReader.readMessage());
+        Assertions.checkNull(viewReader.readMessageView());
+        final Pair<Integer, byte[]> copy = copyReader.readMessage();
+        Assertions.checkNull(copy);
+
+        writer.write(2, RingBufferTestFixtures.newMessage(2, 1));
+        final Pair<Integer, byte[]> next = copyReader.readMessage();
+        Assertions.checkEquals(2, next.getFirst().intValue());
+        Assertions.checkNull(viewReader.readMessageView());
+
+        viewReader.close();
+        copyReader.close();
+        writer.close();
+    }
+
+    @Test
+    public void testReopenReleasesMappedBuffer() throws IOException {
+        final File file = RingBufferTestFixtures.newFile("testReopenReleasesMappedBuffer");
+        final RingBufferSynchronousWriter writer = new RingBufferSynchronousWriter(file, MAX_MESSAGE_SIZE, CAPACITY);
+        writer.open();
+        for (int i = 0; i < 1000; i++) {
+            final RingBufferSynchronousReader reader = new RingBufferSynchronousReader(file, MAX_MESSAGE_SIZE,
+                    CAPACITY);
+            reader.open();
+            writer.write(i, RingBufferTestFixtures.newMessage(i, MAX_MESSAGE_SIZE));
+            final SynchronousMessageView view = reader.readMessageView();
+            Assertions.checkEquals(i, view.getType());
+            //unmaps both the unsafe mapping and the mapping of the view
+            reader.close();
+        }
+        writer.close();
+    }
+
+    @Test
+    public void testCapacityLimits() throws IOException {
+        final File file = RingBufferTestFixtures.newFile("testCapacityLimits");
+        Assertions.checkEquals(ARingBufferSynchronousChannel.MAX_CAPACITY,
+                new RingBufferSynchronousWriter(file, MAX_MESSAGE_SIZE, ARingBufferSynchronousChannel.MAX_CAPACITY)
+                        .getCapacity());
+        //would be rounded up to a negative capacity
+        try {
+            new RingBufferSynchronousWriter(file, MAX_MESSAGE_SIZE, ARingBufferSynchronousChannel.MAX_CAPACITY + 1);
+            Assertions.fail("Exception expected!");
+        } catch (final IllegalArgumentException e) {
+            Assertions.checkNotNull(e);
+        }
+        //two messages of this size do not fit
+        try {
+            new RingBufferSynchronousWriter(file, ARingBufferSynchronousChannel.MAX_CAPACITY, CAPACITY);
+            Assertions.fail("Exception expected!");
+        } catch (final IllegalArgumentException e) {
+            Assertions.checkNotNull(e);
+        }
+        try {
+            new RingBufferSynchronousWriter(file, Integer.MAX_VALUE, CAPACITY);
+            Assertions.fail("Exception expected!");
+        } catch (final IllegalArgumentException e) {
+            Assertions.checkNotNull(e);
+        }
+    }
+
+    @Test
+    public void testCapacityMismatchIsRejected() throws IOException {
+        final File file = RingBufferTestFixtures.newFile("testCapacityMismatchIsRejected");
+        final RingBufferSynchronousWriter writer = new RingBufferSynchronousWriter(file, MAX_MESSAGE_SIZE, CAPACITY);
+        writer.open();
+        final RingBufferSynchronousReader reader = new RingBufferSynchronousReader(file, MAX_MESSAGE_SIZE,
+                CAPACITY * 2);
+        try {
+            reader.open();
+            Assertions.fail("Exception expected!");
+        } catch (final IOException e) {
+            Assertions.checkNotNull(e);
+        }
+        writer.close();
+    }
+
+}
@@ -0,0 +1,39 @@
+package de.invesdwin.context.persistence.timeseries.ipc.mapped.ring;
+
+import java.io.File;
+
+import javax.annotation.concurrent.Immutable;
+
+import org.apache.commons.io.FileUtils;
+
+import de.invesdwin.context.ContextProperties;
+
+/**
+ * Shared setup of the ring buffer tests.
+ */
+@Immutable
+final class RingBufferTestFixtures {
+
+    private RingBufferTestFixtures() {}
+
+    /**
+     * Returns a file that does not exist yet, the file of a previous run gets deleted.
+     */
+    static File newFile(final String name) {
+        final File file = new File(ContextProperties.TEMP_DIRECTORY, name);
+        FileUtils.deleteQuietly(file);
+        return file;
+    }
+
+    /**
+     * The content depends on the seed, so that a message that was read in place of another one is detected.
+     */
+    static byte[] newMessage(final int seed, final int size) {
+        final byte[] message = new byte[size];
+        for (int i = 0; i < size; i++) {
+            message[i] = (byte) (seed + i);
+        }
+        return message;
+    }
+
+}
@@ -0,0 +1,66 @@
+package de.invesdwin.context.persistence.timeseries.ipc.rpc;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.junit.Test;
+
+import de.invesdwin.context.persistence.timeseries.ipc.queue.QueueSynchronousReader;
+import de.invesdwin.context.persistence.timeseries.ipc.queue.QueueSynchronousWriter;
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.bean.tuple.Pair;
+import de.invesdwin.util.time.duration.Duration;
+import de.invesdwin.util.time.fdate.FTimeUnit;
+
+@NotThreadSafe
+public class RpcClientTest extends ATest {
+
+    private static final int MAX_MESSAGE_SIZE = 1024;
+
+    @Test
+    public void testTimeoutRemovesPendingRequest() throws IOException {
+        final RpcClient client = newClientWithoutServer();
+        try {
+            client.call(1, new byte[] { 1 });
+            Assertions.fail("timeout expected");
+        } catch (final IOException e) {
+            //no server is answering
+        }
+        Assertions.checkEquals(0, client.getPendingRequestCount());
+        client.close();
+    }
+
+    @Test
+    public void testCancelRemovesPendingRequest() throws IOException {
+        final RpcClient client = newClientWithoutServer();
+        final Future<byte[]> first = client.request(1, new byte[] { 1 });
+        final Future<byte[]> second = client.request(1, new byte[] { 2 });
+        Assertions.checkEquals(2, client.getPendingRequestCount());
+        Assertions.checkTrue(first.cancel(false));
+        Assertions.checkEquals(1, client.getPendingRequestCount());
+        Assertions.checkFalse(second.isDone());
+        client.close();
+        Assertions.checkEquals(0, client.getPendingRequestCount());
+        Assertions.checkTrue(second.isDone());
+    }
+
+    private RpcClient newClientWithoutServer() throws IOException {
+        final Queue<Pair<Integer, byte[]>> requestQueue = new ConcurrentLinkedQueue<>();
+        final Queue<Pair<Integer, byte[]>> responseQueue = new ConcurrentLinkedQueue<>();
+        final RpcClient client = new RpcClient(new QueueSynchronousWriter(requestQueue),
+                new QueueSynchronousReader(responseQueue), MAX_MESSAGE_SIZE) {
+            @Override
+            protected Duration getRequestTimeout() {
+                return new Duration(50, FTimeUnit.MILLISECONDS);
+            }
+        };
+        client.open();
+        return client;
+    }
+
+}
@@ -0,0 +1,191 @@
+package de.invesdwin.context.persistence.timeseries.ipc.socket.nio.server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.junit.Test;
+
+import de.invesdwin.context.persistence.timeseries.ipc.SynchronousMessageView;
+import de.invesdwin.context.persistence.timeseries.ipc.socket.nio.NioSocketSynchronousReader;
+import de.invesdwin.context.persistence.timeseries.ipc.socket.nio.NioSocketSynchronousWriter;
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.bean.tuple.Pair;
+
+@NotThreadSafe
+public class NioSocketSynchronousServerTest extends ATest {
+
+    private static final int MAX_MESSAGE_SIZE = 1024;
+    /**
+     * small socket buffers let the responses pile up in the queue of the connection quickly
+     */
+    private static final int SOCKET_BUFFER_SIZE = 4096;
+
+    @Test
+    public void testMultipleClients() throws Exception {
+        //each test uses its own port so that a socket of a previous test in TIME_WAIT does not get in the way
+        final SocketAddress address = new InetSocketAddress("localhost", 7880);
+        final EchoHandler handler = new EchoHandler();
+        final NioSocketSynchronousServer server = new NioSocketSynchronousServer(address, MAX_MESSAGE_SIZE,
+                handler) {
+            @Override
+            protected int getSelectorThreadCount() {
+                return 2;
+            }
+        };
+        server.open();
+        final int clientCount = 4;
+        final NioSocketSynchronousWriter[] writers = new NioSocketSynchronousWriter[clientCount];
+        final NioSocketSynchronousReader[] readers = new NioSocketSynchronousReader[clientCount];
+        for (int c = 0; c < clientCount; c++) {
+            writers[c] = new NioSocketSynchronousWriter(address, false, MAX_MESSAGE_SIZE);
+            writers[c].open();
+            readers[c] = new NioSocketSynchronousReader(writers[c]);
+            readers[c].open();
+        }
+        //interleave the clients so that each selector thread serves several connections at once
+        for (int i = 0; i < 100; i++) {
+            for (int c = 0; c < clientCount; c++) {
+                writers[c].write(c, newMessage(c * 1000 + i, i % MAX_MESSAGE_SIZE));
+            }
+            for (int c = 0; c < clientCount; c++) {
+                final Pair<Integer, byte[]> response = readers[c].readMessage();
+                Assertions.checkEquals(c, response.getFirst());
+                Assertions.checkTrue(Arrays.equals(newMessage(c * 1000 + i, i % MAX_MESSAGE_SIZE),
+                        response.getSecond()));
+            }
+        }
+        Assertions.checkEquals(clientCount, server.getConnections().size());
+        for (int c = 0; c < clientCount; c++) {
+            readers[c].close();
+            writers[c].close();
+        }
+        server.close();
+        Assertions.checkEquals(0, server.getConnections().size());
+    }
+
+    @Test
+    public void testSlowClientResponsesAreQueued() throws Exception {
+        final SocketAddress address = new InetSocketAddress("localhost", 7881);
+        final EchoHandler handler = new EchoHandler();
+        final NioSocketSynchronousServer server = newServer(address, handler, 64 * 1024 * 1024);
+        server.open();
+        final NioSocketSynchronousWriter writer = newClientWriter(address);
+        writer.open();
+        final NioSocketSynchronousReader reader = new NioSocketSynchronousReader(writer);
+        reader.open();
+        final NioSocketServerConnection connection = handler.awaitOpened();
+        //the client does not read yet, thus the writes only succeed because the connection queues them
+        final int count = 1000;
+        for (int i = 0; i < count; i++) {
+            connection.write(i, newMessage(i, MAX_MESSAGE_SIZE));
+        }
+        Assertions.checkTrue(connection.getPendingWriteSize() > 0);
+        for (int i = 0; i < count; i++) {
+            final Pair<Integer, byte[]> response = reader.readMessage();
+            Assertions.checkEquals(i, response.getFirst());
+            Assertions.checkTrue(Arrays.equals(newMessage(i, MAX_MESSAGE_SIZE), response.getSecond()));
+        }
+        Assertions.checkEquals(0, connection.getPendingWriteSize());
+        Assertions.checkFalse(connection.isClosed());
+        reader.close();
+        writer.close();
+        server.close();
+    }
+
+    @Test
+    public void testSlowClientIsDisconnectedAtPendingLimit() throws Exception {
+        final SocketAddress address = new InetSocketAddress("localhost", 7882);
+        final EchoHandler handler = new EchoHandler();
+        final NioSocketSynchronousServer server = newServer(address, handler, 16 * MAX_MESSAGE_SIZE);
+        server.open();
+        final NioSocketSynchronousWriter writer = newClientWriter(address);
+        writer.open();
+        final NioSocketServerConnection connection = handler.awaitOpened();
+        try {
+            for (int i = 0; i < 1000; i++) {
+                connection.write(i, newMessage(i, MAX_MESSAGE_SIZE));
+            }
+            Assertions.fail("Exception expected!");
+        } catch (final EOFException e) {
+            Assertions.checkNotNull(e);
+        }
+        Assertions.checkTrue(connection.isClosed());
+        Assertions.checkEquals(0, connection.getPendingWriteSize());
+        Assertions.checkFalse(server.getConnections().contains(connection));
+        writer.close();
+        server.close();
+    }
+
+    private NioSocketSynchronousServer newServer(final SocketAddress address, final ISynchronousServerHandler handler,
+            final int maxPendingWriteSize) {
+        return new NioSocketSynchronousServer(address, MAX_MESSAGE_SIZE, handler) {
+            @Override
+            protected Integer getSocketBufferSize() {
+                return SOCKET_BUFFER_SIZE;
+            }
+
+            @Override
+            protected int getMaxPendingWriteSize() {
+                return maxPendingWriteSize;
+            }
+        };
+    }
+
+    private NioSocketSynchronousWriter newClientWriter(final SocketAddress address) {
+        return new NioSocketSynchronousWriter(address, false, MAX_MESSAGE_SIZE) {
+            @Override
+            protected Integer getSocketBufferSize() {
+                return SOCKET_BUFFER_SIZE;
+            }
+        };
+    }
+
+    private static byte[] newMessage(final int seed, final int size) {
+        final byte[] message = new byte[size];
+        for (int i = 0; i < size; i++) {
+            message[i] = (byte) (seed + i);
+        }
+        return message;
+    }
+
+    /**
+     * Answers each message with a copy of it and remembers the opened connections.
+     */
+    @ThreadSafe
+    private static final class EchoHandler implements ISynchronousServerHandler {
+
+        private final BlockingQueue<NioSocketServerConnection> opened = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onOpen(final NioSocketServerConnection connection) throws IOException {
+            opened.add(connection);
+        }
+
+        @Override
+        public void onMessage(final NioSocketServerConnection connection, final SynchronousMessageView message)
+                throws IOException {
+            connection.write(message.getType(), message.toBytes());
+        }
+
+        @Override
+        public void onClose(final NioSocketServerConnection connection) {}
+
+        private NioSocketServerConnection awaitOpened() throws InterruptedException {
+            final NioSocketServerConnection connection = opened.poll(10, TimeUnit.SECONDS);
+            Assertions.checkNotNull(connection);
+            return connection;
+        }
+
+    }
+
+}
@@ -0,0 +1,258 @@
+package de.invesdwin.context.persistence.timeseries.timeseriesdb.remote;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.junit.Test;
+
+import com.google.common.base.Function;
+
+import de.invesdwin.context.ContextProperties;
+import de.invesdwin.context.persistence.timeseries.ipc.queue.QueueSynchronousReader;
+import de.invesdwin.context.persistence.timeseries.ipc.queue.QueueSynchronousWriter;
+import de.invesdwin.context.persistence.timeseries.ipc.rpc.RpcClient;
+import de.invesdwin.context.persistence.timeseries.ipc.rpc.RpcServer;
+import de.invesdwin.context.persistence.timeseries.serde.ExtendedTypeDelegateSerde;
+import de.invesdwin.context.persistence.timeseries.timeseriesdb.ATimeSeriesDB;
+import de.invesdwin.context.persistence.timeseries.timeseriesdb.ATimeSeriesUpdater;
+import de.invesdwin.context.persistence.timeseries.timeseriesdb.IncompleteUpdateFoundException;
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.bean.tuple.Pair;
+import de.invesdwin.util.collections.iterable.ICloseableIterable;
+import de.invesdwin.util.collections.iterable.ICloseableIterator;
+import de.invesdwin.util.collections.iterable.WrapperCloseableIterable;
+import de.invesdwin.util.time.Instant;
+import de.invesdwin.util.time.fdate.FDate;
+import de.invesdwin.util.time.fdate.FDateBuilder;
+import ezdb.serde.Serde;
+
+@NotThreadSafe
+public class RemoteTimeSeriesDBTest extends ATest {
+
+    private static final int MAX_MESSAGE_SIZE = 1024;
+
+    private final Serde<String> keySerde = new ExtendedTypeDelegateSerde<String>(String.class);
+    private final Serde<FDate> valueSerde = new ExtendedTypeDelegateSerde<FDate>(FDate.class);
+    private final List<Closeable> closeables = new ArrayList<>();
+
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        for (int i = closeables.size() - 1; i >= 0; i--) {
+            closeables.get(i).close();
+        }
+        closeables.clear();
+    }
+
+    @Test
+    public void testRemoteQueries() throws IncompleteUpdateFoundException, IOException {
+        final String key = "asdf";
+        final ATimeSeriesDB<String, FDate> table = newTable("testRemoteQueries", key);
+        final List<FDate> dates = newDates(2000, 2010);
+        update(table, key, dates);
+        final RemoteTimeSeriesDB<String, FDate> remote = newRemote(newServer(table));
+
+        Assertions.checkEquals(dates, toList(remote.rangeValues(key, null, null)));
+        //second time from the chunk cache
+        Assertions.checkEquals(dates, toList(remote.rangeValues(key, null, null)));
+        Assertions.checkEquals(reverse(dates), toList(remote.rangeReverseValues(key, FDate.MAX_DATE, FDate.MIN_DATE)));
+        Assertions.checkEquals(dates.subList(2, 5), toList(remote.rangeValues(key, dates.get(2), dates.get(4))));
+
+        Assertions.checkFalse(remote.isEmptyOrInconsistent(key));
+        Assertions.checkEquals(dates.get(dates.size() - 1), remote.getLatestValue(key, FDate.MAX_DATE));
+        Assertions.checkEquals(dates.get(dates.size() - 1), remote.getLatestValueKey(key, FDate.MAX_DATE));
+        Assertions.checkEquals(dates.get(1), remote.getNextValue(key, dates.get(0), 1));
+        Assertions.checkEquals(dates.get(1), remote.getNextValueKey(key, dates.get(0), 1));
+        for (int i = 1; i < dates.size(); i++) {
+            final FDate value = remote.getPreviousValue(key, dates.get(dates.size() - 1), i);
+            final FDate expectedValue = dates.get(dates.size() - i);
+            Assertions.checkEquals(value, expectedValue, i + ": expected [" + expectedValue + "] got [" + value + "]");
+            Assertions.checkEquals(remote.getPreviousValueKey(key, dates.get(dates.size() - 1), i), expectedValue);
+        }
+        Assertions.checkNull(remote.getLatestValue("unknown", FDate.MAX_DATE));
+
+        remote.deleteRange(key);
+        Assertions.checkTrue(remote.isEmptyOrInconsistent(key));
+        Assertions.checkTrue(toList(remote.rangeValues(key, null, null)).isEmpty());
+    }
+
+    @Test
+    public void testAppendAfterCachedRead() throws IncompleteUpdateFoundException, IOException {
+        final String key = "append";
+        final ATimeSeriesDB<String, FDate> table = newTable("testAppendAfterCachedRead", key);
+        final List<FDate> dates = newDates(2000, 2010);
+        update(table, key, dates);
+        final RemoteTimeSeriesDB<String, FDate> remote = newRemote(newServer(table));
+        Assertions.checkEquals(dates, toList(remote.rangeValues(key, null, null)));
+        Assertions.checkEquals(reverse(dates), toList(remote.rangeReverseValues(key, FDate.MAX_DATE, FDate.MIN_DATE)));
+
+        //the chunks that contain the latest value must not have been cached
+        final List<FDate> appendedDates = newDates(2000, 2013);
+        update(table, key, appendedDates);
+        Assertions.checkEquals(appendedDates, toList(remote.rangeValues(key, null, null)));
+        Assertions.checkEquals(reverse(appendedDates),
+                toList(remote.rangeReverseValues(key, FDate.MAX_DATE, FDate.MIN_DATE)));
+    }
+
+    @Test
+    public void testDeleteFromSecondClient() throws IncompleteUpdateFoundException, IOException {
+        final String key = "delete";
+        final ATimeSeriesDB<String, FDate> table = newTable("testDeleteFromSecondClient", key);
+        final List<FDate> dates = newDates(2000, 2010);
+        update(table, key, dates);
+        final RemoteTimeSeriesDBServer<String, FDate> server = newServer(table);
+        final RemoteTimeSeriesDB<String, FDate> remote = newRemote(server);
+        final RemoteTimeSeriesDB<String, FDate> otherRemote = newRemote(server);
+        Assertions.checkEquals(dates, toList(remote.rangeValues(key, null, null)));
+        Assertions.checkEquals(reverse(dates), toList(remote.rangeReverseValues(key, FDate.MAX_DATE, FDate.MIN_DATE)));
+
+        otherRemote.deleteRange(key);
+        Assertions.checkTrue(toList(remote.rangeValues(key, null, null)).isEmpty());
+        //the chunks start at the same times as before but contain different values
+        final List<FDate> changedDates = new ArrayList<>(dates);
+        changedDates.remove(FDateBuilder.newDate(2004));
+        update(table, key, changedDates);
+        Assertions.checkEquals(changedDates, toList(remote.rangeValues(key, null, null)));
+        Assertions.checkEquals(reverse(changedDates),
+                toList(remote.rangeReverseValues(key, FDate.MAX_DATE, FDate.MIN_DATE)));
+    }
+
+    /**
+     * Removes the values of a previous run.
+     */
+    private ATimeSeriesDB<String, FDate> newTable(final String name, final String key) {
+        final ATimeSeriesDB<String, FDate> table = new ATimeSeriesDB<String, FDate>(name) {
+
+            @Override
+            protected Serde<FDate> newValueSerde() {
+                return new ExtendedTypeDelegateSerde<FDate>(FDate.class);
+            }
+
+            @Override
+            protected Integer newFixedLength() {
+                return null;
+            }
+
+            @Override
+            protected String hashKeyToString(final String key) {
+                return key;
+            }
+
+            @Override
+            protected FDate extractTime(final FDate value) {
+                return value;
+            }
+
+            @Override
+            protected File getBaseDirectory() {
+                return ContextProperties.TEMP_DIRECTORY;
+            }
+        };
+        table.deleteRange(key);
+        closeables.add(table);
+        return table;
+    }
+
+    private List<FDate> newDates(final int fromYear, final int toYear) {
+        final List<FDate> dates = new ArrayList<>();
+        for (int i = fromYear; i <= toYear; i++) {
+            dates.add(FDateBuilder.newDate(i));
+        }
+        return dates;
+    }
+
+    private List<FDate> reverse(final List<FDate> dates) {
+        final List<FDate> reverseDates = new ArrayList<>(dates);
+        Collections.reverse(reverseDates);
+        return reverseDates;
+    }
+
+    private void update(final ATimeSeriesDB<String, FDate> table, final String key, final List<FDate> dates)
+            throws IncompleteUpdateFoundException {
+        new ATimeSeriesUpdater<String, FDate>(key, table) {
+
+            @Override
+            protected ICloseableIterable<? extends FDate> getSource(final FDate updateFrom) {
+                return WrapperCloseableIterable.maybeWrap(dates);
+            }
+
+            @Override
+            protected void onUpdateFinished(final Instant updateStart) {}
+
+            @Override
+            protected void onUpdateStart() {}
+
+            @Override
+            protected FDate extractTime(final FDate element) {
+                return element;
+            }
+
+            @Override
+            protected FDate extractEndTime(final FDate element) {
+                return element;
+            }
+
+            @Override
+            protected void onFlush(final int flushIndex, final Instant flushStart,
+                    final ATimeSeriesUpdater<String, FDate>.UpdateProgress updateProgress) {
+
+            }
+        }.update();
+    }
+
+    private RemoteTimeSeriesDBServer<String, FDate> newServer(final ATimeSeriesDB<String, FDate> table) {
+        return new RemoteTimeSeriesDBServer<String, FDate>(table, keySerde, valueSerde, new Function<FDate, FDate>() {
+            @Override
+            public FDate apply(final FDate input) {
+                return input;
+            }
+        });
+    }
+
+    /**
+     * Each remote gets its own connection to the server.
+     */
+    private RemoteTimeSeriesDB<String, FDate> newRemote(final RemoteTimeSeriesDBServer<String, FDate> server)
+            throws IOException {
+        final Queue<Pair<Integer, byte[]>> requestQueue = new ConcurrentLinkedQueue<>();
+        final Queue<Pair<Integer, byte[]>> responseQueue = new ConcurrentLinkedQueue<>();
+        final RpcServer rpcServer = server.newRpcServer(new QueueSynchronousReader(requestQueue),
+                new QueueSynchronousWriter(responseQueue), MAX_MESSAGE_SIZE);
+        rpcServer.open();
+        closeables.add(rpcServer);
+        final RpcClient rpcClient = new RpcClient(new QueueSynchronousWriter(requestQueue),
+                new QueueSynchronousReader(responseQueue), MAX_MESSAGE_SIZE);
+        rpcClient.open();
+        closeables.add(rpcClient);
+        final RemoteTimeSeriesDB<String, FDate> remote = new RemoteTimeSeriesDB<String, FDate>("remote", rpcClient,
+                MAX_MESSAGE_SIZE, keySerde, valueSerde) {
+            @Override
+            protected int getChunkSize() {
+                //multiple chunks per range
+                return 3;
+            }
+        };
+        closeables.add(remote);
+        return remote;
+    }
+
+    private List<FDate> toList(final ICloseableIterable<FDate> iterable) {
+        final List<FDate> list = new ArrayList<>();
+        try (ICloseableIterator<FDate> it = iterable.iterator()) {
+            while (it.hasNext()) {
+                list.add(it.next());
+            }
+        }
+        return list;
+    }
+
+}
@@ -0,0 +1,118 @@
+package de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.junit.Test;
+
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.time.fdate.FDate;
+import de.invesdwin.util.time.range.TimeRange;
+
+@NotThreadSafe
+public class SegmentDiskQuotaTest extends ATest {
+
+    private static final long SEGMENT_SIZE = 10;
+
+    @Test
+    public void testEvictionOrder() {
+        final List<SegmentedKey<String>> evicted = new ArrayList<SegmentedKey<String>>();
+        final ASegmentDiskQuota<String> quota = newQuota(25L, new HashSet<String>(), evicted);
+        final SegmentedKey<String> a = newSegmentedKey("a", 1);
+        final SegmentedKey<String> b = newSegmentedKey("b", 1);
+        final SegmentedKey<String> c = newSegmentedKey("c", 1);
+        final SegmentedKey<String> d = newSegmentedKey("d", 1);
+
+        quota.onSegmentAccessed(a, true);
+        quota.onSegmentAccessed(b, true);
+        Assertions.checkEquals(20L, quota.getDiskUsageBytes());
+        //touching a makes b the least recently used one
+        quota.onSegmentAccessed(a, false);
+        quota.onSegmentAccessed(c, true);
+        Assertions.checkEquals(Arrays.asList(b), evicted);
+        Assertions.checkEquals(20L, quota.getDiskUsageBytes());
+
+        quota.onSegmentAccessed(d, true);
+        Assertions.checkEquals(Arrays.asList(b, a), evicted);
+        Assertions.checkEquals(20L, quota.getDiskUsageBytes());
+    }
+
+    @Test
+    public void testPinnedKeysAreNotEvicted() {
+        final Set<String> pinned = new HashSet<String>();
+        pinned.add("a");
+        final List<SegmentedKey<String>> evicted = new ArrayList<SegmentedKey<String>>();
+        final ASegmentDiskQuota<String> quota = newQuota(25L, pinned, evicted);
+        final SegmentedKey<String> a1 = newSegmentedKey("a", 1);
+        final SegmentedKey<String> a2 = newSegmentedKey("a", 2);
+        final SegmentedKey<String> b = newSegmentedKey("b", 1);
+
+        quota.onSegmentAccessed(a1, true);
+        quota.onSegmentAccessed(a2, true);
+        quota.onSegmentAccessed(b, true);
+        //nothing else can be evicted, the accessed segment itself is kept
+        Assertions.checkTrue(evicted.isEmpty());
+        Assertions.checkEquals(30L, quota.getDiskUsageBytes());
+
+        pinned.clear();
+        quota.onSegmentAccessed(newSegmentedKey("c", 1), true);
+        Assertions.checkEquals(Arrays.asList(a1, a2), evicted);
+        Assertions.checkEquals(20L, quota.getDiskUsageBytes());
+    }
+
+    @Test
+    public void testSeededSegmentsAreEvictedFirst() {
+        final List<SegmentedKey<String>> evicted = new ArrayList<SegmentedKey<String>>();
+        final ASegmentDiskQuota<String> quota = newQuota(25L, new HashSet<String>(), evicted);
+        final SegmentedKey<String> accessed = newSegmentedKey("a", 1);
+        final SegmentedKey<String> seeded1 = newSegmentedKey("b", 1);
+        final SegmentedKey<String> seeded2 = newSegmentedKey("b", 2);
+
+        quota.onSegmentAccessed(accessed, true);
+        quota.seed(Arrays.asList(seeded1, seeded2, accessed));
+        //seeding does not count the accessed segment twice and does not evict
+        Assertions.checkEquals(30L, quota.getDiskUsageBytes());
+        Assertions.checkTrue(evicted.isEmpty());
+
+        quota.onSegmentAccessed(newSegmentedKey("c", 1), true);
+        Assertions.checkEquals(Arrays.asList(seeded1, seeded2), evicted);
+        Assertions.checkEquals(20L, quota.getDiskUsageBytes());
+    }
+
+    private SegmentedKey<String> newSegmentedKey(final String key, final long segment) {
+        return new SegmentedKey<String>(key, new TimeRange(FDate.valueOf(segment), FDate.valueOf(segment + 1)));
+    }
+
+    private ASegmentDiskQuota<String> newQuota(final Long maxDiskUsageBytes, final Set<String> pinned,
+            final List<SegmentedKey<String>> evicted) {
+        return new ASegmentDiskQuota<String>() {
+            @Override
+            protected Long getMaxDiskUsageBytes() {
+                return maxDiskUsageBytes;
+            }
+
+            @Override
+            protected boolean isPinned(final String key) {
+                return pinned.contains(key);
+            }
+
+            @Override
+            protected long measureSegmentSize(final SegmentedKey<String> segmentedKey) {
+                return SEGMENT_SIZE;
+            }
+
+            @Override
+            protected boolean evictSegment(final SegmentedKey<String> segmentedKey) {
+                evicted.add(segmentedKey);
+                return true;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,99 @@
+package de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.junit.Test;
+
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.bean.tuple.Pair;
+import de.invesdwin.util.time.fdate.FDate;
+import de.invesdwin.util.time.fdate.FDateBuilder;
+
+@NotThreadSafe
+public class LiveSegmentedTimeSeriesStorageCacheTest extends ATest {
+
+    private static final String KEY = "asdf";
+    private static final FDate HISTORICAL = FDateBuilder.newDate(1999, 1, 1);
+    private static final int BATCH_FLUSH_INTERVAL = 100;
+    private static final int COUNT = BATCH_FLUSH_INTERVAL * 3 + BATCH_FLUSH_INTERVAL / 2;
+    //the batches cross from the yearly segment of 2000 into the one of 2001
+    private static final FDate LIVE_START = FDateBuilder.newDate(2001, 1, 1).addMilliseconds(-COUNT / 2);
+
+    @Test
+    public void testPutNextLiveValues() {
+        final TestLiveSegmentedTimeSeriesDB table = newTable("testPutNextLiveValues");
+        try {
+            final LiveValueSubscription<String, FDate> subscription = table.subscribe(KEY, null);
+            table.putNextLiveValue(KEY, LIVE_START);
+            table.putNextLiveValues(KEY, newValues(1, COUNT));
+            Assertions.checkEquals(COUNT, table.assertGaplessLiveValues(KEY, LIVE_START));
+            Assertions.checkEquals(LIVE_START.addMilliseconds(COUNT - 1), table.getLatestValue(KEY, FDate.MAX_DATE));
+            for (int i = 0; i < COUNT; i++) {
+                Assertions.checkEquals(Pair.of(KEY, LIVE_START.addMilliseconds(i)), subscription.poll());
+            }
+            Assertions.checkNull(subscription.poll());
+            subscription.close();
+        } finally {
+            table.deleteRange(KEY);
+            table.close();
+        }
+    }
+
+    @Test
+    public void testPutNextLiveValuesRejectsUnorderedBatch() {
+        final TestLiveSegmentedTimeSeriesDB table = newTable("testPutNextLiveValuesRejectsUnorderedBatch");
+        try {
+            final int existing = BATCH_FLUSH_INTERVAL / 2;
+            table.putNextLiveValues(KEY, newValues(0, existing));
+            final LiveValueSubscription<String, FDate> subscription = table.subscribe(KEY, null);
+
+            //the violation is after the first chunks and after the segment rollover
+            final List<FDate> duplicateAtEnd = newValues(existing, COUNT);
+            duplicateAtEnd.add(duplicateAtEnd.get(duplicateAtEnd.size() - 1));
+            assertRejected(table, duplicateAtEnd);
+            //the first value overlaps the existing values
+            assertRejected(table, newValues(existing - 1, COUNT));
+
+            Assertions.checkEquals(existing, table.assertGaplessLiveValues(KEY, LIVE_START));
+            Assertions.checkEquals(LIVE_START.addMilliseconds(existing - 1),
+                    table.getLatestValue(KEY, FDate.MAX_DATE));
+            Assertions.checkNull(subscription.poll());
+
+            //a valid batch is still accepted afterwards
+            table.putNextLiveValues(KEY, newValues(existing, COUNT));
+            Assertions.checkEquals(COUNT, table.assertGaplessLiveValues(KEY, LIVE_START));
+            Assertions.checkEquals(Pair.of(KEY, LIVE_START.addMilliseconds(existing)), subscription.poll());
+            subscription.close();
+        } finally {
+            table.deleteRange(KEY);
+            table.close();
+        }
+    }
+
+    private void assertRejected(final TestLiveSegmentedTimeSeriesDB table, final List<FDate> values) {
+        try {
+            table.putNextLiveValues(KEY, values);
+            Assertions.fail("Exception expected!");
+        } catch (final IllegalStateException e) {
+            Assertions.checkNotNull(e);
+        }
+    }
+
+    private List<FDate> newValues(final int from, final int to) {
+        final List<FDate> values = new ArrayList<FDate>();
+        for (int i = from; i < to; i++) {
+            values.add(LIVE_START.addMilliseconds(i));
+        }
+        return values;
+    }
+
+    private TestLiveSegmentedTimeSeriesDB newTable(final String name) {
+        return new TestLiveSegmentedTimeSeriesDB(name, Arrays.asList(HISTORICAL), false, null, BATCH_FLUSH_INTERVAL);
+    }
+
+}
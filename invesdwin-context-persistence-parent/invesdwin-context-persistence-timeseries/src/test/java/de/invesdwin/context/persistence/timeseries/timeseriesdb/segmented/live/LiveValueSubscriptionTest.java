@@ -0,0 +1,166 @@
+package de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.junit.Test;
+
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.bean.tuple.Pair;
+import de.invesdwin.util.time.fdate.FDate;
+import de.invesdwin.util.time.fdate.FDateBuilder;
+
+@NotThreadSafe
+public class LiveValueSubscriptionTest extends ATest {
+
+    private static final String KEY = "asdf";
+    private static final String OTHER_KEY = "other";
+    private static final FDate HISTORICAL = FDateBuilder.newDate(1999, 1, 1);
+    private static final FDate LIVE_START = FDateBuilder.newDate(2000, 1, 1);
+    private static final int BATCH_FLUSH_INTERVAL = 100;
+    private static final int COUNT = BATCH_FLUSH_INTERVAL * 3;
+
+    @Test
+    public void testSubscribeAndUnsubscribe() {
+        final TestLiveSegmentedTimeSeriesDB table = newTable("testSubscribeAndUnsubscribe");
+        try {
+            final LiveValueSubscription<String, FDate> subscription = table.subscribe(KEY, null);
+            final LiveValueSubscription<String, FDate> allKeysSubscription = table.subscribeAll();
+            Assertions.checkNull(subscription.poll());
+            for (int i = 0; i < COUNT; i++) {
+                table.putNextLiveValue(KEY, LIVE_START.addMilliseconds(i));
+                table.putNextLiveValue(OTHER_KEY, LIVE_START.addMilliseconds(i));
+            }
+            Assertions.checkEquals(COUNT, subscription.getPendingValues());
+            //values of other keys are only delivered to the subscription of all keys
+            for (int i = 0; i < COUNT; i++) {
+                Assertions.checkEquals(Pair.of(KEY, LIVE_START.addMilliseconds(i)), subscription.poll());
+                Assertions.checkEquals(Pair.of(KEY, LIVE_START.addMilliseconds(i)), allKeysSubscription.poll());
+                Assertions.checkEquals(Pair.of(OTHER_KEY, LIVE_START.addMilliseconds(i)), allKeysSubscription.poll());
+            }
+            Assertions.checkNull(subscription.poll());
+            Assertions.checkNull(allKeysSubscription.poll());
+
+            subscription.close();
+            allKeysSubscription.close();
+            Assertions.checkTrue(subscription.isClosed());
+            Assertions.checkFalse(subscription.isOverflowed());
+            table.putNextLiveValue(KEY, LIVE_START.addMilliseconds(COUNT));
+            Assertions.checkNull(subscription.poll());
+            Assertions.checkNull(allKeysSubscription.poll());
+            Assertions.checkEquals(0, subscription.getPendingValues());
+        } finally {
+            table.deleteRange(KEY);
+            table.deleteRange(OTHER_KEY);
+            table.close();
+        }
+    }
+
+    @Test
+    public void testCatchUpBeforeLiveValues() {
+        final TestLiveSegmentedTimeSeriesDB table = newTable("testCatchUpBeforeLiveValues");
+        try {
+            for (int i = 0; i < COUNT; i++) {
+                table.putNextLiveValue(KEY, LIVE_START.addMilliseconds(i));
+            }
+            final LiveValueSubscription<String, FDate> subscription = table.subscribe(KEY, LIVE_START);
+            for (int i = COUNT; i < COUNT * 2; i++) {
+                table.putNextLiveValue(KEY, LIVE_START.addMilliseconds(i));
+            }
+            for (int i = 0; i < COUNT * 2; i++) {
+                Assertions.checkEquals(Pair.of(KEY, LIVE_START.addMilliseconds(i)), subscription.poll());
+            }
+            Assertions.checkNull(subscription.poll());
+            subscription.close();
+        } finally {
+            table.deleteRange(KEY);
+            table.close();
+        }
+    }
+
+    @Test
+    public void testListenerDeliveryOrder() throws InterruptedException {
+        final TestLiveSegmentedTimeSeriesDB table = newTable("testListenerDeliveryOrder");
+        try {
+            for (int i = 0; i < COUNT; i++) {
+                table.putNextLiveValue(KEY, LIVE_START.addMilliseconds(i));
+            }
+            final List<FDate> received = Collections.synchronizedList(new ArrayList<FDate>());
+            final CountDownLatch complete = new CountDownLatch(1);
+            final LiveValueSubscription<String, FDate> subscription = table.subscribe(KEY,
+                    LIVE_START.addMilliseconds(COUNT / 2), new ILiveValueListener<String, FDate>() {
+                        @Override
+                        public void onNextLiveValue(final String key, final FDate value) {
+                            received.add(value);
+                            if (value.equals(LIVE_START.addMilliseconds(COUNT * 2 - 1))) {
+                                complete.countDown();
+                            }
+                        }
+                    });
+            for (int i = COUNT; i < COUNT * 2; i++) {
+                table.putNextLiveValue(KEY, LIVE_START.addMilliseconds(i));
+            }
+            Assertions.checkTrue(complete.await(1, TimeUnit.MINUTES));
+            final List<FDate> expected = new ArrayList<FDate>();
+            for (int i = COUNT / 2; i < COUNT * 2; i++) {
+                expected.add(LIVE_START.addMilliseconds(i));
+            }
+            Assertions.checkEquals(expected, new ArrayList<FDate>(received));
+            subscription.close();
+        } finally {
+            table.deleteRange(KEY);
+            table.close();
+        }
+    }
+
+    @Test
+    public void testOverflowClosesSubscription() {
+        final int maxPendingLiveValues = 10;
+        final TestLiveSegmentedTimeSeriesDB table = new TestLiveSegmentedTimeSeriesDB("testOverflowClosesSubscription",
+                Arrays.asList(HISTORICAL), false, null, BATCH_FLUSH_INTERVAL) {
+            @Override
+            protected int getMaxPendingLiveValues() {
+                return maxPendingLiveValues;
+            }
+        };
+        try {
+            final LiveValueSubscription<String, FDate> subscription = table.subscribe(KEY, null);
+            for (int i = 0; i < maxPendingLiveValues; i++) {
+                table.putNextLiveValue(KEY, LIVE_START.addMilliseconds(i));
+            }
+            Assertions.checkFalse(subscription.isClosed());
+            Assertions.checkEquals(Pair.of(KEY, LIVE_START), subscription.poll());
+            //polling makes room for one more value
+            table.putNextLiveValue(KEY, LIVE_START.addMilliseconds(maxPendingLiveValues));
+            Assertions.checkFalse(subscription.isClosed());
+            table.putNextLiveValue(KEY, LIVE_START.addMilliseconds(maxPendingLiveValues + 1));
+            Assertions.checkTrue(subscription.isClosed());
+            Assertions.checkTrue(subscription.isOverflowed());
+            Assertions.checkNull(subscription.poll());
+
+            //resubscribing with a catch-up continues without gaps
+            final LiveValueSubscription<String, FDate> resubscription = table.subscribe(KEY,
+                    LIVE_START.addMilliseconds(1));
+            for (int i = 1; i <= maxPendingLiveValues + 1; i++) {
+                Assertions.checkEquals(Pair.of(KEY, LIVE_START.addMilliseconds(i)), resubscription.poll());
+            }
+            Assertions.checkNull(resubscription.poll());
+            resubscription.close();
+        } finally {
+            table.deleteRange(KEY);
+            table.close();
+        }
+    }
+
+    private TestLiveSegmentedTimeSeriesDB newTable(final String name) {
+        return new TestLiveSegmentedTimeSeriesDB(name, Arrays.asList(HISTORICAL), false, null, BATCH_FLUSH_INTERVAL);
+    }
+
+}
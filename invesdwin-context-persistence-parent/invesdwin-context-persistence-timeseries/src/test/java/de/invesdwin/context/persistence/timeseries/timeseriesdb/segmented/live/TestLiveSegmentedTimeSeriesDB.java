@@ -0,0 +1,223 @@
+package de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.ContextProperties;
+import de.invesdwin.context.persistence.timeseries.serde.ExtendedTypeDelegateSerde;
+import de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.PeriodicalSegmentFinder;
+import de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.SegmentedKey;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.collections.iterable.ASkippingIterable;
+import de.invesdwin.util.collections.iterable.ICloseableIterable;
+import de.invesdwin.util.collections.iterable.ICloseableIterator;
+import de.invesdwin.util.collections.iterable.WrapperCloseableIterable;
+import de.invesdwin.util.collections.loadingcache.historical.AHistoricalCache;
+import de.invesdwin.util.concurrent.WrappedExecutorService;
+import de.invesdwin.util.error.Throwables;
+import de.invesdwin.util.time.duration.Duration;
+import de.invesdwin.util.time.fdate.FDate;
+import de.invesdwin.util.time.fdate.FDates;
+import de.invesdwin.util.time.fdate.FTimeUnit;
+import de.invesdwin.util.time.range.TimeRange;
+import ezdb.serde.Serde;
+
+/**
+ * Live table with yearly segments that uses the values themselves as keys. The historical values are downloaded from
+ * the given list, the live values are expected to be put by the test.
+ */
+@ThreadSafe
+public class TestLiveSegmentedTimeSeriesDB extends ALiveSegmentedTimeSeriesDB<String, FDate> {
+
+    private final AHistoricalCache<TimeRange> segmentFinder = PeriodicalSegmentFinder
+            .newCache(new Duration(1, FTimeUnit.YEARS));
+    private final List<FDate> historicalValues;
+    private final boolean concurrentLiveSegment;
+    private final WrappedExecutorService liveSegmentFlushExecutor;
+    private final int batchFlushInterval;
+    private volatile FDate curTime;
+
+    public TestLiveSegmentedTimeSeriesDB(final String name, final List<FDate> historicalValues,
+            final boolean concurrentLiveSegment, final WrappedExecutorService liveSegmentFlushExecutor,
+            final int batchFlushInterval) {
+        super(name);
+        this.historicalValues = historicalValues;
+        this.concurrentLiveSegment = concurrentLiveSegment;
+        this.liveSegmentFlushExecutor = liveSegmentFlushExecutor;
+        this.batchFlushInterval = batchFlushInterval;
+    }
+
+    @Override
+    protected boolean isConcurrentLiveSegment() {
+        return concurrentLiveSegment;
+    }
+
+    @Override
+    protected WrappedExecutorService getLiveSegmentFlushExecutor() {
+        return liveSegmentFlushExecutor;
+    }
+
+    @Override
+    protected int getBatchFlushInterval() {
+        return batchFlushInterval;
+    }
+
+    @Override
+    protected AHistoricalCache<TimeRange> getSegmentFinder(final String key) {
+        return segmentFinder;
+    }
+
+    @Override
+    protected Serde<FDate> newValueSerde() {
+        return new ExtendedTypeDelegateSerde<FDate>(FDate.class);
+    }
+
+    @Override
+    protected Integer newFixedLength() {
+        return null;
+    }
+
+    @Override
+    protected String hashKeyToString(final String key) {
+        return key;
+    }
+
+    @Override
+    protected FDate extractTime(final FDate value) {
+        return value;
+    }
+
+    @Override
+    protected FDate extractEndTime(final FDate value) {
+        return value;
+    }
+
+    @Override
+    protected File getBaseDirectory() {
+        return ContextProperties.TEMP_DIRECTORY;
+    }
+
+    @Override
+    protected ICloseableIterable<? extends FDate> downloadSegmentElements(final SegmentedKey<String> segmentedKey) {
+        return new ASkippingIterable<FDate>(WrapperCloseableIterable.maybeWrap(historicalValues)) {
+            private final FDate from = segmentedKey.getSegment().getFrom();
+            private final FDate to = segmentedKey.getSegment().getTo();
+
+            @Override
+            protected boolean skip(final FDate element) {
+                return element.isBefore(from) || element.isAfter(to);
+            }
+        };
+    }
+
+    @Override
+    protected FDate getFirstAvailableHistoricalSegmentFrom(final String key) {
+        final FDate curTimeCopy = curTime;
+        if (historicalValues.isEmpty() || curTimeCopy == null) {
+            return null;
+        }
+        final FDate firstTime = FDates.min(curTimeCopy, historicalValues.get(0));
+        final TimeRange firstSegment = segmentFinder.query().getValue(firstTime);
+        if (firstSegment.getTo().isBeforeOrEqualTo(curTimeCopy)) {
+            return firstSegment.getFrom();
+        } else {
+            return segmentFinder.query().getValue(firstSegment.getFrom().addMilliseconds(-1)).getFrom();
+        }
+    }
+
+    @Override
+    protected FDate getLastAvailableHistoricalSegmentTo(final String key) {
+        final FDate curTimeCopy = curTime;
+        if (historicalValues.isEmpty() || curTimeCopy == null) {
+            return null;
+        }
+        final TimeRange lastSegment = segmentFinder.query().getValue(curTimeCopy);
+        if (lastSegment.getTo().isBeforeOrEqualTo(curTimeCopy)) {
+            return lastSegment.getTo();
+        } else {
+            return segmentFinder.query().getValue(lastSegment.getFrom().addMilliseconds(-1)).getTo();
+        }
+    }
+
+    @Override
+    public void putNextLiveValue(final String key, final FDate nextLiveValue) {
+        curTime = nextLiveValue;
+        super.putNextLiveValue(key, nextLiveValue);
+    }
+
+    @Override
+    public void putNextLiveValues(final String key, final Iterable<? extends FDate> nextLiveValues) {
+        super.putNextLiveValues(key, nextLiveValues);
+        //the time only advances when the batch was accepted
+        for (final FDate nextLiveValue : nextLiveValues) {
+            curTime = FDates.max(curTime, nextLiveValue);
+        }
+    }
+
+    @Override
+    protected String getElementsName() {
+        return "values";
+    }
+
+    /**
+     * Verifies that a reader sees a gapless prefix of the live values that were put with one millisecond distance
+     * starting from liveStart and that the last value is contained in that prefix. Returns the number of values.
+     */
+    public int assertGaplessLiveValues(final String key, final FDate liveStart) {
+        final FDate lastValue = getLatestValue(key, FDate.MAX_DATE);
+        int count = 0;
+        try (ICloseableIterator<FDate> values = rangeValues(key, liveStart, null).iterator()) {
+            while (values.hasNext()) {
+                Assertions.checkEquals(liveStart.addMilliseconds(count), values.next());
+                count++;
+            }
+        }
+        if (lastValue != null && lastValue.isAfterOrEqualTo(liveStart)) {
+            //the range is read after the last value, thus it can only contain more values
+            Assertions.checkTrue(count > lastValue.millisValue() - liveStart.millisValue());
+            Assertions.checkEquals(lastValue, getLatestValue(key, lastValue));
+        }
+        return count;
+    }
+
+    /**
+     * Runs the writer while the readers continuously verify the live values, the first reader error is rethrown.
+     */
+    public void writeWithConcurrentReaders(final String key, final FDate liveStart, final int readerCount,
+            final Runnable writer) throws InterruptedException {
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        final Thread[] readers = new Thread[readerCount];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (writing.get()) {
+                            assertGaplessLiveValues(key, liveStart);
+                        }
+                    } catch (final Throwable t) {
+                        error.compareAndSet(null, t);
+                    }
+                }
+            }, getName() + "_reader" + r);
+            readers[r].start();
+        }
+        try {
+            writer.run();
+        } finally {
+            writing.set(false);
+            for (int r = 0; r < readers.length; r++) {
+                readers[r].join();
+            }
+        }
+        if (error.get() != null) {
+            throw Throwables.propagate(error.get());
+        }
+    }
+
+}
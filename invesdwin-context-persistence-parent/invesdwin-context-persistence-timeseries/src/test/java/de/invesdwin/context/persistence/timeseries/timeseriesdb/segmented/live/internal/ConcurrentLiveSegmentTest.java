@@ -0,0 +1,74 @@
+package de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live.internal;
+
+import java.util.Arrays;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.junit.Test;
+
+import de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live.TestLiveSegmentedTimeSeriesDB;
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.time.fdate.FDate;
+import de.invesdwin.util.time.fdate.FDateBuilder;
+
+@NotThreadSafe
+public class ConcurrentLiveSegmentTest extends ATest {
+
+    private static final String KEY = "asdf";
+    private static final FDate HISTORICAL = FDateBuilder.newDate(1999, 1, 1);
+    private static final FDate LIVE_START = FDateBuilder.newDate(2000, 1, 1);
+    private static final int BATCH_FLUSH_INTERVAL = 100;
+    private static final int COUNT = BATCH_FLUSH_INTERVAL * 50;
+    private static final int READERS = 4;
+
+    @Test
+    public void testConcurrentReadersDuringFlush() throws InterruptedException {
+        final TestLiveSegmentedTimeSeriesDB table = new TestLiveSegmentedTimeSeriesDB(
+                "testConcurrentReadersDuringFlush", Arrays.asList(HISTORICAL), true, null, BATCH_FLUSH_INTERVAL);
+        try {
+            table.writeWithConcurrentReaders(KEY, LIVE_START, READERS, new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < COUNT; i++) {
+                        table.putNextLiveValue(KEY, LIVE_START.addMilliseconds(i));
+                    }
+                }
+            });
+            Assertions.checkEquals(COUNT, table.assertGaplessLiveValues(KEY, LIVE_START));
+            Assertions.checkEquals(LIVE_START.addMilliseconds(COUNT - 1), table.getLatestValue(KEY, FDate.MAX_DATE));
+        } finally {
+            table.deleteRange(KEY);
+            table.close();
+        }
+    }
+
+    @Test
+    public void testGetNextValue() {
+        final TestLiveSegmentedTimeSeriesDB table = new TestLiveSegmentedTimeSeriesDB("testGetNextValue",
+                Arrays.asList(HISTORICAL), true, null, BATCH_FLUSH_INTERVAL);
+        try {
+            //half of the values are flushed to the persistent segment
+            final int count = BATCH_FLUSH_INTERVAL * 3 / 2;
+            for (int i = 0; i < count; i++) {
+                table.putNextLiveValue(KEY, LIVE_START.addMilliseconds(i));
+            }
+            final FDate tenth = LIVE_START.addMilliseconds(10);
+            final FDate last = LIVE_START.addMilliseconds(count - 1);
+            //shift 0 and 1 both return the ceiling value
+            Assertions.checkEquals(tenth, table.getNextValue(KEY, tenth, 0));
+            Assertions.checkEquals(tenth, table.getNextValue(KEY, tenth, 1));
+            //crosses from the persistent part into the memory
+            Assertions.checkEquals(LIVE_START.addMilliseconds(BATCH_FLUSH_INTERVAL),
+                    table.getNextValue(KEY, tenth, BATCH_FLUSH_INTERVAL - 9));
+            //shifting beyond the end returns the last value
+            Assertions.checkEquals(last, table.getNextValue(KEY, tenth, count));
+            Assertions.checkEquals(last, table.getNextValue(KEY, last.addMilliseconds(1), 0));
+            Assertions.checkEquals(last, table.getNextValue(KEY, last.addMilliseconds(1), 1));
+        } finally {
+            table.deleteRange(KEY);
+            table.close();
+        }
+    }
+
+}
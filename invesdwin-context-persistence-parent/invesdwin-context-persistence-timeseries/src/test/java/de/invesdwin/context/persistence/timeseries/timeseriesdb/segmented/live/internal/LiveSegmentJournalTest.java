@@ -0,0 +1,117 @@
+package de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live.internal;
+
+import java.io.File;
+import java.util.List;
+import java.util.function.Function;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import de.invesdwin.context.ContextProperties;
+import de.invesdwin.context.persistence.timeseries.serde.FDateSerde;
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.time.fdate.FDate;
+
+// CHECKSTYLE:OFF
+@NotThreadSafe
+public class LiveSegmentJournalTest extends ATest {
+    //CHECKSTYLE:ON
+
+    private static final Function<FDate, FDate> EXTRACT_TIME = new Function<FDate, FDate>() {
+        @Override
+        public FDate apply(final FDate t) {
+            return t;
+        }
+    };
+
+    @Test
+    public void testReplayAfterReopen() {
+        final File directory = new File(ContextProperties.TEMP_DIRECTORY, "testReplayAfterReopen");
+        FileUtils.deleteQuietly(directory);
+        final LiveSegmentJournal<FDate> journal = new LiveSegmentJournal<FDate>(directory, FDateSerde.GET,
+                EXTRACT_TIME);
+        for (int i = 1; i <= 10; i++) {
+            journal.append(FDate.valueOf(i));
+        }
+        //simulate a flush of the first values that is still in progress
+        journal.rotate();
+        for (int i = 11; i <= 15; i++) {
+            journal.append(FDate.valueOf(i));
+        }
+        journal.close();
+
+        final LiveSegmentJournal<FDate> reopened = new LiveSegmentJournal<FDate>(directory, FDateSerde.GET,
+                EXTRACT_TIME);
+        final List<FDate> replayed = reopened.replay();
+        Assertions.checkEquals(15, replayed.size());
+        for (int i = 0; i < replayed.size(); i++) {
+            Assertions.checkEquals(FDate.valueOf(i + 1), replayed.get(i));
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void testTruncateFlushed() {
+        final File directory = new File(ContextProperties.TEMP_DIRECTORY, "testTruncateFlushed");
+        FileUtils.deleteQuietly(directory);
+        final LiveSegmentJournal<FDate> journal = new LiveSegmentJournal<FDate>(directory, FDateSerde.GET,
+                EXTRACT_TIME);
+        for (int i = 1; i <= 10; i++) {
+            journal.append(FDate.valueOf(i));
+        }
+        journal.rotate();
+        journal.append(FDate.valueOf(11));
+        journal.truncateFlushed();
+        final List<FDate> replayed = journal.replay();
+        Assertions.checkEquals(1, replayed.size());
+        Assertions.checkEquals(FDate.valueOf(11), replayed.get(0));
+
+        //stale records after a truncation must not be replayed
+        journal.clear();
+        journal.append(FDate.valueOf(12));
+        Assertions.checkEquals(1, journal.replay().size());
+        journal.close();
+    }
+
+    @Test
+    public void testCrashDuringReplay() {
+        final File directory = new File(ContextProperties.TEMP_DIRECTORY, "testCrashDuringReplay");
+        FileUtils.deleteQuietly(directory);
+        final LiveSegmentJournal<FDate> journal = new LiveSegmentJournal<FDate>(directory, FDateSerde.GET,
+                EXTRACT_TIME);
+        for (int i = 1; i <= 10; i++) {
+            journal.append(FDate.valueOf(i));
+        }
+        journal.close();
+
+        final LiveSegmentJournal<FDate> replaying = new LiveSegmentJournal<FDate>(directory, FDateSerde.GET,
+                EXTRACT_TIME);
+        Assertions.checkEquals(10, replaying.replay().size());
+        //the replay appends the first values again and flushes them before it crashes
+        for (int i = 1; i <= 5; i++) {
+            replaying.append(FDate.valueOf(i));
+        }
+        replaying.rotate();
+        replaying.truncateFlushed();
+        replaying.append(FDate.valueOf(6));
+        replaying.close();
+
+        final LiveSegmentJournal<FDate> reopened = new LiveSegmentJournal<FDate>(directory, FDateSerde.GET,
+                EXTRACT_TIME);
+        final List<FDate> replayed = reopened.replay();
+        Assertions.checkEquals(10, replayed.size());
+        for (int i = 0; i < replayed.size(); i++) {
+            Assertions.checkEquals(FDate.valueOf(i + 1), replayed.get(i));
+        }
+        for (int i = 1; i <= 10; i++) {
+            reopened.append(FDate.valueOf(i));
+        }
+        reopened.finishReplay();
+        Assertions.checkEquals(10, reopened.replay().size());
+        reopened.close();
+    }
+
+}
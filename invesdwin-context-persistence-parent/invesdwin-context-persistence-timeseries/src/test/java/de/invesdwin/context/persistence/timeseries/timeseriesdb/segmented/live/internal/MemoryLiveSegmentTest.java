@@ -0,0 +1,38 @@
+package de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live.internal;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.junit.Test;
+
+import de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.SegmentedKey;
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.time.fdate.FDate;
+import de.invesdwin.util.time.range.TimeRange;
+
+@NotThreadSafe
+public class MemoryLiveSegmentTest extends ATest {
+
+    @Test
+    public void testGetNextValue() {
+        final MemoryLiveSegment<String, FDate> segment = new MemoryLiveSegment<String, FDate>(
+                new SegmentedKey<String>("asdf", new TimeRange(FDate.valueOf(0), FDate.valueOf(100))), null);
+        Assertions.checkNull(segment.getNextValue(FDate.valueOf(1), 1));
+        for (int i = 10; i <= 50; i += 10) {
+            segment.putNextLiveValue(FDate.valueOf(i), FDate.valueOf(i));
+        }
+        //shift 0 and 1 both return the ceiling value
+        Assertions.checkEquals(FDate.valueOf(10), segment.getNextValue(FDate.valueOf(1), 0));
+        Assertions.checkEquals(FDate.valueOf(10), segment.getNextValue(FDate.valueOf(1), 1));
+        Assertions.checkEquals(FDate.valueOf(10), segment.getNextValue(FDate.valueOf(10), 0));
+        Assertions.checkEquals(FDate.valueOf(10), segment.getNextValue(FDate.valueOf(10), 1));
+        Assertions.checkEquals(FDate.valueOf(20), segment.getNextValue(FDate.valueOf(10), 2));
+        Assertions.checkEquals(FDate.valueOf(20), segment.getNextValue(FDate.valueOf(11), 1));
+        Assertions.checkEquals(FDate.valueOf(40), segment.getNextValue(FDate.valueOf(11), 3));
+        //shifting beyond the end returns the last value
+        Assertions.checkEquals(FDate.valueOf(50), segment.getNextValue(FDate.valueOf(11), 100));
+        Assertions.checkEquals(FDate.valueOf(50), segment.getNextValue(FDate.valueOf(60), 0));
+        Assertions.checkEquals(FDate.valueOf(50), segment.getNextValue(FDate.valueOf(60), 1));
+    }
+
+}
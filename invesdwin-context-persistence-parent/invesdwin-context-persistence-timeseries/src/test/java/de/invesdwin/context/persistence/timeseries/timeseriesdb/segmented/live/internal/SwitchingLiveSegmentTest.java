@@ -0,0 +1,112 @@
+package de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live.internal;
+
+import java.util.Arrays;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.junit.Test;
+
+import de.invesdwin.context.persistence.timeseries.timeseriesdb.segmented.live.TestLiveSegmentedTimeSeriesDB;
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.concurrent.Executors;
+import de.invesdwin.util.concurrent.WrappedExecutorService;
+import de.invesdwin.util.time.fdate.FDate;
+import de.invesdwin.util.time.fdate.FDateBuilder;
+
+@NotThreadSafe
+public class SwitchingLiveSegmentTest extends ATest {
+
+    private static final String KEY = "asdf";
+    private static final FDate HISTORICAL = FDateBuilder.newDate(1999, 1, 1);
+    private static final FDate LIVE_START = FDateBuilder.newDate(2000, 1, 1);
+    private static final int BATCH_FLUSH_INTERVAL = 100;
+    private static final int COUNT = BATCH_FLUSH_INTERVAL * 50;
+    private static final int READERS = 4;
+
+    private WrappedExecutorService flushExecutor;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        flushExecutor = Executors.newFixedThreadPool(SwitchingLiveSegmentTest.class.getSimpleName() + "_flush", 1);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        flushExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentReadersDuringFlush() throws InterruptedException {
+        final TestLiveSegmentedTimeSeriesDB table = new TestLiveSegmentedTimeSeriesDB(
+                "testConcurrentReadersDuringFlush", Arrays.asList(HISTORICAL), false, flushExecutor,
+                BATCH_FLUSH_INTERVAL);
+        try {
+            putWithConcurrentReaders(table, LIVE_START, COUNT);
+            Assertions.checkEquals(COUNT, table.assertGaplessLiveValues(KEY, LIVE_START));
+            Assertions.checkEquals(LIVE_START.addMilliseconds(COUNT - 1), table.getLatestValue(KEY, FDate.MAX_DATE));
+        } finally {
+            table.deleteRange(KEY);
+            table.close();
+        }
+    }
+
+    @Test
+    public void testSwitchWhileFlushing() throws InterruptedException {
+        final TestLiveSegmentedTimeSeriesDB table = new TestLiveSegmentedTimeSeriesDB("testSwitchWhileFlushing",
+                Arrays.asList(HISTORICAL), false, flushExecutor, BATCH_FLUSH_INTERVAL);
+        try {
+            //the values cross into the next yearly segment while the previous memory is still being flushed
+            final int count = BATCH_FLUSH_INTERVAL * 5;
+            final FDate liveStart = FDateBuilder.newDate(2001, 1, 1).addMilliseconds(-count / 2);
+            putWithConcurrentReaders(table, liveStart, count);
+            Assertions.checkEquals(count, table.assertGaplessLiveValues(KEY, liveStart));
+            Assertions.checkEquals(liveStart.addMilliseconds(count - 1), table.getLatestValue(KEY, FDate.MAX_DATE));
+        } finally {
+            table.deleteRange(KEY);
+            table.close();
+        }
+    }
+
+    @Test
+    public void testGetNextValue() {
+        final TestLiveSegmentedTimeSeriesDB table = new TestLiveSegmentedTimeSeriesDB("testGetNextValue",
+                Arrays.asList(HISTORICAL), false, flushExecutor, BATCH_FLUSH_INTERVAL);
+        try {
+            //the first values might still be in the flushing memory
+            final int count = BATCH_FLUSH_INTERVAL * 3 / 2;
+            for (int i = 0; i < count; i++) {
+                table.putNextLiveValue(KEY, LIVE_START.addMilliseconds(i));
+            }
+            final FDate tenth = LIVE_START.addMilliseconds(10);
+            final FDate last = LIVE_START.addMilliseconds(count - 1);
+            //shift 0 and 1 both return the ceiling value
+            Assertions.checkEquals(tenth, table.getNextValue(KEY, tenth, 0));
+            Assertions.checkEquals(tenth, table.getNextValue(KEY, tenth, 1));
+            Assertions.checkEquals(LIVE_START.addMilliseconds(BATCH_FLUSH_INTERVAL),
+                    table.getNextValue(KEY, tenth, BATCH_FLUSH_INTERVAL - 9));
+            //shifting beyond the end returns the last value
+            Assertions.checkEquals(last, table.getNextValue(KEY, tenth, count));
+            Assertions.checkEquals(last, table.getNextValue(KEY, last.addMilliseconds(1), 0));
+            Assertions.checkEquals(last, table.getNextValue(KEY, last.addMilliseconds(1), 1));
+        } finally {
+            table.deleteRange(KEY);
+            table.close();
+        }
+    }
+
+    private void putWithConcurrentReaders(final TestLiveSegmentedTimeSeriesDB table, final FDate liveStart,
+            final int count) throws InterruptedException {
+        table.writeWithConcurrentReaders(KEY, liveStart, READERS, new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    table.putNextLiveValue(KEY, liveStart.addMilliseconds(i));
+                }
+            }
+        });
+    }
+
+}